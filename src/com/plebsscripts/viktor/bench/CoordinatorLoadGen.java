@@ -0,0 +1,485 @@
+package com.plebsscripts.viktor.bench;
+
+import com.plebsscripts.viktor.coord.CoordinatorServer;
+import com.plebsscripts.viktor.coord.LatencyHistogram;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Load generator for CoordinatorServer: how many bots can one server take?
+ *
+ * Simulates a fleet of bots, each doing what CoordinatorClient does - limit
+ * reports (POST /batch), delta polls (/list?since=), leases (/claim,
+ * /release) - with an exponential think time between requests. The bots are
+ * virtual: a pool of worker threads, each with its own keep-alive
+ * connection, serves whichever bot is due next, so thousands of bots don't
+ * need thousands of threads. Optional long-poll subscribers hold
+ * connections open the way live replicas do.
+ *
+ * Latency is measured from when the bot intended to send, not when a worker
+ * got to it, so a server that falls behind shows up in the tail instead of
+ * silently lowering the offered load (coordinated omission). Service time
+ * (send to last byte) is printed alongside; when the two diverge the
+ * generator itself is short of workers.
+ *
+ * Run: java com.plebsscripts.viktor.bench.CoordinatorLoadGen [key=value...]
+ *   url=local          server URL, or "local" to start one in-process
+ *   bots=2000          simulated bots
+ *   think=2000         mean ms between one bot's requests
+ *   report=0.2 list=0.7 claim=0.1   request mix (weights)
+ *   batch=1            reports per /batch request
+ *   workers=64         client threads (= connections)
+ *   keepalive=true     reuse connections, or reconnect per request
+ *   subscribers=0      parked /subscribe long-polls
+ *   items=2000         distinct item names
+ *   warmup=5 duration=30   seconds
+ */
+public class CoordinatorLoadGen {
+
+    private enum Op { REPORT, LIST, CLAIM }
+
+    private final String host;
+    private final int port;
+    private final int bots;
+    private final long thinkMs;
+    private final double reportWeight;
+    private final double listWeight;
+    private final double claimWeight;
+    private final int batch;
+    private final int workers;
+    private final boolean keepAlive;
+    private final int subscribers;
+    private final int items;
+    private final int warmupS;
+    private final int durationS;
+
+    private final DelayQueue<Bot> due = new DelayQueue<>();
+    private volatile boolean running = true;
+    private volatile boolean measuring = false;
+
+    private final Map<Op, LatencyHistogram> latency = new EnumMap<>(Op.class);
+    private final Map<Op, LatencyHistogram> service = new EnumMap<>(Op.class);
+    private final Map<Op, LongAdder> errors = new EnumMap<>(Op.class);
+    private final LongAdder conflicts = new LongAdder();
+    private final LongAdder connects = new LongAdder();
+    private final AtomicLong maxLagMicros = new AtomicLong();
+
+    private static final class Bot implements Delayed {
+        final int id;
+        final String account;
+        final Random rnd;
+        long nextNanos;
+        long version = -1;
+        String leased;
+        long leaseToken;
+
+        Bot(int id, long seed) {
+            this.id = id;
+            this.account = "LoadBot" + id;
+            this.rnd = new Random(seed);
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(nextNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed o) {
+            return Long.compare(nextNanos, ((Bot) o).nextNanos);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opts = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) {
+                System.err.println("Bad argument (expected key=value): " + arg);
+                System.exit(2);
+            }
+            opts.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+
+        String url = opts.getOrDefault("url", "local");
+        CoordinatorServer local = null;
+        if (url.equals("local")) {
+            int port = freePort();
+            local = new CoordinatorServer(port);
+            local.start();
+            url = "http://127.0.0.1:" + port;
+            waitForServer(url);
+        }
+
+        try {
+            new CoordinatorLoadGen(url, opts).run();
+        } finally {
+            if (local != null) {
+                local.stop();
+            }
+        }
+        System.exit(0); // Subscriber threads may still sit in a read
+    }
+
+    private CoordinatorLoadGen(String url, Map<String, String> opts) {
+        URI uri = URI.create(url);
+        this.host = uri.getHost();
+        this.port = uri.getPort() > 0 ? uri.getPort() : 80;
+        this.bots = Integer.parseInt(opts.getOrDefault("bots", "2000"));
+        this.thinkMs = Long.parseLong(opts.getOrDefault("think", "2000"));
+        this.reportWeight = Double.parseDouble(opts.getOrDefault("report", "0.2"));
+        this.listWeight = Double.parseDouble(opts.getOrDefault("list", "0.7"));
+        this.claimWeight = Double.parseDouble(opts.getOrDefault("claim", "0.1"));
+        this.batch = Math.max(1, Integer.parseInt(opts.getOrDefault("batch", "1")));
+        this.workers = Integer.parseInt(opts.getOrDefault("workers", "64"));
+        this.keepAlive = Boolean.parseBoolean(opts.getOrDefault("keepalive", "true"));
+        this.subscribers = Integer.parseInt(opts.getOrDefault("subscribers", "0"));
+        this.items = Integer.parseInt(opts.getOrDefault("items", "2000"));
+        this.warmupS = Integer.parseInt(opts.getOrDefault("warmup", "5"));
+        this.durationS = Integer.parseInt(opts.getOrDefault("duration", "30"));
+
+        for (Op op : Op.values()) {
+            latency.put(op, new LatencyHistogram(5));
+            service.put(op, new LatencyHistogram(5));
+            errors.put(op, new LongAdder());
+        }
+    }
+
+    private void run() throws InterruptedException {
+        System.out.println(String.format("Target %s:%d | %d bots, think %dms (offered ~%.0f req/s) | mix report=%.2f "
+                        + "list=%.2f claim=%.2f, batch=%d | %d workers, keepalive=%s, %d subscribers | %ds + %ds warmup",
+                host, port, bots, thinkMs, bots * 1000.0 / thinkMs, reportWeight, listWeight, claimWeight, batch,
+                workers, keepAlive, subscribers, durationS, warmupS));
+
+        // Spread the first requests over one think period
+        long start = System.nanoTime();
+        Random seeds = new Random(42);
+        for (int i = 0; i < bots; i++) {
+            Bot bot = new Bot(i, seeds.nextLong());
+            bot.nextNanos = start + (long) (seeds.nextDouble() * thinkMs * 1_000_000L);
+            due.add(bot);
+        }
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < subscribers; i++) {
+            threads.add(daemon(this::subscribeLoop, "loadgen-subscriber-" + i));
+        }
+        for (int i = 0; i < workers; i++) {
+            threads.add(daemon(this::workerLoop, "loadgen-worker-" + i));
+        }
+        for (Thread t : threads) t.start();
+
+        Thread.sleep(warmupS * 1000L);
+        measuring = true;
+        long measureStart = System.nanoTime();
+        Thread.sleep(durationS * 1000L);
+        measuring = false;
+        double seconds = (System.nanoTime() - measureStart) / 1e9;
+        running = false;
+
+        printResults(seconds);
+    }
+
+    private static Thread daemon(Runnable r, String name) {
+        Thread t = new Thread(r, name);
+        t.setDaemon(true);
+        return t;
+    }
+
+    // ===== Workers =====
+
+    private void workerLoop() {
+        Connection conn = new Connection();
+        while (running) {
+            Bot bot;
+            try {
+                bot = due.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (bot == null) continue;
+
+            long intended = bot.nextNanos;
+            Op op = pickOp(bot.rnd);
+            long sent = System.nanoTime();
+            boolean ok;
+            try {
+                ok = execute(conn, bot, op);
+            } catch (IOException e) {
+                conn.close();
+                ok = false;
+            }
+            long done = System.nanoTime();
+
+            if (measuring) {
+                latency.get(op).record((done - intended) / 1000);
+                service.get(op).record((done - sent) / 1000);
+                if (!ok) errors.get(op).increment();
+                long lag = (sent - intended) / 1000;
+                if (lag > maxLagMicros.get()) maxLagMicros.set(lag);
+            }
+            if (!keepAlive) conn.close();
+
+            // Next request is scheduled from the intended time, not from now
+            bot.nextNanos = intended + (long) (-Math.log(1 - bot.rnd.nextDouble()) * thinkMs * 1_000_000L);
+            due.add(bot);
+        }
+        conn.close();
+    }
+
+    private Op pickOp(Random rnd) {
+        double r = rnd.nextDouble() * (reportWeight + listWeight + claimWeight);
+        if (r < reportWeight) return Op.REPORT;
+        if (r < reportWeight + listWeight) return Op.LIST;
+        return Op.CLAIM;
+    }
+
+    /**
+     * @return false on an unexpected status (409 on claim is expected)
+     */
+    private boolean execute(Connection conn, Bot bot, Op op) throws IOException {
+        switch (op) {
+            case REPORT: {
+                StringBuilder body = new StringBuilder();
+                for (int i = 0; i < batch; i++) {
+                    body.append("item=").append(enc(item(bot.rnd)))
+                            .append("&account=").append(enc(bot.account))
+                            .append('\n');
+                }
+                return conn.request("POST", "/batch", body.toString()) == 200;
+            }
+            case LIST: {
+                int status = conn.request("GET", "/list?since=" + bot.version, null);
+                if (status != 200) return false;
+                bot.version = jsonLong(conn.body, "\"version\":", bot.version);
+                return true;
+            }
+            case CLAIM:
+            default: {
+                if (bot.leased != null) {
+                    int status = conn.request("GET", "/release?item=" + enc(bot.leased)
+                            + "&account=" + enc(bot.account) + "&token=" + bot.leaseToken, null);
+                    bot.leased = null;
+                    return status == 200 || status == 409;
+                }
+                String item = item(bot.rnd);
+                int status = conn.request("GET", "/claim?item=" + enc(item) + "&account=" + enc(bot.account)
+                        + "&ttl=60", null);
+                if (status == 409) {
+                    conflicts.increment();
+                    return true;
+                }
+                if (status != 200) return false;
+                bot.leased = item;
+                bot.leaseToken = jsonLong(conn.body, "\"token\":", 0);
+                return true;
+            }
+        }
+    }
+
+    private void subscribeLoop() {
+        Connection conn = new Connection();
+        long version = -1;
+        while (running) {
+            try {
+                int status = conn.request("GET", "/subscribe?since=" + version + "&timeout=25", null);
+                if (status == 200) {
+                    version = jsonLong(conn.body, "\"version\":", version);
+                } else {
+                    Thread.sleep(1000);
+                }
+            } catch (IOException e) {
+                conn.close();
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+        conn.close();
+    }
+
+    private String item(Random rnd) {
+        return "Load item " + rnd.nextInt(items);
+    }
+
+    private static String enc(String s) {
+        try {
+            return URLEncoder.encode(s, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static long jsonLong(String json, String key, long def) {
+        int at = json.indexOf(key);
+        if (at < 0) return def;
+        int i = at + key.length();
+        int end = i;
+        while (end < json.length() && (Character.isDigit(json.charAt(end)) || json.charAt(end) == '-')) end++;
+        try {
+            return Long.parseLong(json.substring(i, end));
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
+
+    // ===== Output =====
+
+    private void printResults(double seconds) {
+        System.out.println();
+        System.out.println(String.format("%-8s %9s %7s %9s | %9s %9s %9s %9s | %9s %9s",
+                "op", "requests", "errors", "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms", "svc p50", "svc p99"));
+
+        long total = 0;
+        long totalErrors = 0;
+        for (Op op : Op.values()) {
+            LatencyHistogram l = latency.get(op);
+            LatencyHistogram s = service.get(op);
+            long n = l.count();
+            long err = errors.get(op).sum();
+            total += n;
+            totalErrors += err;
+            System.out.println(String.format("%-8s %9d %7d %9.0f | %9.2f %9.2f %9.2f %9.2f | %9.2f %9.2f",
+                    op.name().toLowerCase(), n, err, n / seconds,
+                    ms(l.quantile(0.5)), ms(l.quantile(0.99)), ms(l.quantile(0.999)), ms(l.maxMicros()),
+                    ms(s.quantile(0.5)), ms(s.quantile(0.99))));
+        }
+
+        System.out.println(String.format("%-8s %9d %7d %9.0f", "total", total, totalErrors, total / seconds));
+        System.out.println(String.format("claim conflicts (409): %d, connections opened: %d, max generator lag: %.1f ms",
+                conflicts.sum(), connects.sum(), ms(maxLagMicros.get())));
+        if (ms(maxLagMicros.get()) > thinkMs) {
+            System.out.println("WARNING: workers fell more than one think time behind - add workers or the "
+                    + "numbers above measure the generator, not the server");
+        }
+    }
+
+    private static double ms(long micros) {
+        return micros / 1000.0;
+    }
+
+    // ===== Minimal HTTP/1.1 client =====
+
+    /**
+     * One keep-alive connection. Reconnects on demand; the worker owns it.
+     */
+    private final class Connection {
+        private Socket socket;
+        private InputStream in;
+        private OutputStream out;
+        String body = "";
+
+        int request(String method, String path, String requestBody) throws IOException {
+            if (socket == null) {
+                connect();
+            }
+
+            byte[] payload = requestBody != null ? requestBody.getBytes(StandardCharsets.UTF_8) : new byte[0];
+            String head = method + " " + path + " HTTP/1.1\r\n"
+                    + "Host: " + host + ":" + port + "\r\n"
+                    + "User-Agent: Viktor-LoadGen/1.0\r\n"
+                    + "Connection: " + (keepAlive ? "keep-alive" : "close") + "\r\n"
+                    + (requestBody != null ? "Content-Type: text/plain; charset=utf-8\r\n" : "")
+                    + "Content-Length: " + payload.length + "\r\n\r\n";
+            out.write(head.getBytes(StandardCharsets.ISO_8859_1));
+            out.write(payload);
+            out.flush();
+
+            String statusLine = readLine();
+            if (statusLine == null) throw new EOFException("Connection closed");
+            String[] parts = statusLine.split(" ");
+            if (parts.length < 2) throw new IOException("Bad status line: " + statusLine);
+            int status = Integer.parseInt(parts[1]);
+
+            int contentLength = 0;
+            boolean close = false;
+            String line;
+            while ((line = readLine()) != null && !line.isEmpty()) {
+                int colon = line.indexOf(':');
+                if (colon <= 0) continue;
+                String name = line.substring(0, colon).trim();
+                String value = line.substring(colon + 1).trim();
+                if (name.equalsIgnoreCase("Content-Length")) {
+                    contentLength = Integer.parseInt(value);
+                } else if (name.equalsIgnoreCase("Connection") && value.equalsIgnoreCase("close")) {
+                    close = true;
+                }
+            }
+
+            byte[] bytes = new byte[contentLength];
+            int read = 0;
+            while (read < contentLength) {
+                int n = in.read(bytes, read, contentLength - read);
+                if (n < 0) throw new EOFException("Body cut short");
+                read += n;
+            }
+            body = new String(bytes, StandardCharsets.UTF_8);
+
+            if (close) close();
+            return status;
+        }
+
+        private void connect() throws IOException {
+            socket = new Socket();
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(60_000);
+            socket.connect(new InetSocketAddress(host, port), 5000);
+            in = new BufferedInputStream(socket.getInputStream());
+            out = new BufferedOutputStream(socket.getOutputStream());
+            connects.increment();
+        }
+
+        private String readLine() throws IOException {
+            StringBuilder sb = new StringBuilder();
+            int c;
+            while ((c = in.read()) >= 0) {
+                if (c == '\n') {
+                    int len = sb.length();
+                    if (len > 0 && sb.charAt(len - 1) == '\r') sb.setLength(len - 1);
+                    return sb.toString();
+                }
+                sb.append((char) c);
+            }
+            return sb.length() > 0 ? sb.toString() : null;
+        }
+
+        void close() {
+            if (socket != null) {
+                try { socket.close(); } catch (IOException ignored) {}
+            }
+            socket = null;
+            in = null;
+            out = null;
+        }
+    }
+
+    // ===== Local server =====
+
+    private static int freePort() throws IOException {
+        try (ServerSocket s = new ServerSocket(0)) {
+            return s.getLocalPort();
+        }
+    }
+
+    private static void waitForServer(String url) throws Exception {
+        URI uri = URI.create(url);
+        for (int i = 0; i < 50; i++) {
+            try (Socket s = new Socket()) {
+                s.connect(new InetSocketAddress(uri.getHost(), uri.getPort()), 200);
+                return;
+            } catch (IOException e) {
+                Thread.sleep(100);
+            }
+        }
+        throw new IOException("Local coordinator didn't start on " + url);
+    }
+}
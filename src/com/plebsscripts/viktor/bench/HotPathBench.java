@@ -0,0 +1,364 @@
+package com.plebsscripts.viktor.bench;
+
+import com.plebsscripts.viktor.config.CSVConfigLoader;
+import com.plebsscripts.viktor.config.ItemConfig;
+import com.plebsscripts.viktor.coord.CoordinatorServer;
+import com.plebsscripts.viktor.coord.JsonCoordinator;
+import com.plebsscripts.viktor.core.ProfitTracker;
+import com.plebsscripts.viktor.core.SmartRotation;
+import com.plebsscripts.viktor.limits.LimitRegistry;
+import com.plebsscripts.viktor.util.Logs;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * Microbenchmarks for the bot's CPU hot paths, with allocation per op so
+ * garbage regressions show up next to time regressions.
+ *
+ * Each benchmark runs warmup rounds (discarded, to let the JIT settle),
+ * then measured rounds of a fixed duration; the table shows the median
+ * round. Allocation comes from the thread's allocated-bytes counter
+ * (HotSpot's com.sun.management.ThreadMXBean) over the measured rounds:
+ * bytes/op and the allocation rate in MB/s. Results go through a volatile
+ * sink so the JIT can't drop the work.
+ *
+ * Covered:
+ *   rotation.buildQueue    SmartRotation.buildPrioritizedQueue
+ *   rotation.nextItem      SmartRotation.getNextItem with items in flight
+ *   csv.load               CSVConfigLoader.load of an n-row file
+ *   csv.safeSplit          one typical CSV line
+ *   coord.read             JsonCoordinator.getLimitsOfOtherBots, n limits in the log
+ *   coord.reportLimit      JsonCoordinator.reportLimit (appends to the log)
+ *   limits.isBlocked       LimitRegistry.isBlocked, n entries
+ *   limits.blockedCount    LimitRegistry.getBlockedCount, n entries
+ *   server.list            CoordinatorServer /list body, n limits
+ *   profit.recordSell      ProfitTracker.recordSell
+ *
+ * Run: java com.plebsscripts.viktor.bench.HotPathBench [key=value...]
+ *   sizes=1000,10000,50000   item / entry counts for the sized benchmarks
+ *   only=                    run benchmarks whose name contains this
+ *   warmup=3 rounds=5        rounds per benchmark
+ *   roundMs=500              length of one round
+ */
+public class HotPathBench {
+
+    private interface Op {
+        Object run() throws Exception;
+    }
+
+    private static volatile Object sink;
+
+    private final int warmupRounds;
+    private final int rounds;
+    private final long roundNs;
+    private final com.sun.management.ThreadMXBean threads;
+
+    private HotPathBench(Map<String, String> opts) {
+        this.warmupRounds = Integer.parseInt(opts.getOrDefault("warmup", "3"));
+        this.rounds = Math.max(1, Integer.parseInt(opts.getOrDefault("rounds", "5")));
+        this.roundNs = Long.parseLong(opts.getOrDefault("roundMs", "500")) * 1_000_000;
+
+        java.lang.management.ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        if (mx instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) mx).isThreadAllocatedMemorySupported()) {
+            this.threads = (com.sun.management.ThreadMXBean) mx;
+            this.threads.setThreadAllocatedMemoryEnabled(true);
+        } else {
+            this.threads = null;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opts = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) {
+                System.err.println("Bad argument (expected key=value): " + arg);
+                System.exit(2);
+            }
+            opts.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+
+        List<Integer> sizes = new ArrayList<>();
+        for (String s : opts.getOrDefault("sizes", "1000,10000,50000").split(",")) {
+            sizes.add(Integer.parseInt(s.trim()));
+        }
+        String only = opts.getOrDefault("only", "");
+
+        Logs.setQuiet(true); // Measure the work, not the console
+        HotPathBench bench = new HotPathBench(opts);
+
+        System.out.println(String.format("%-22s %7s %12s %12s %12s %10s",
+                "benchmark", "n", "ns/op", "ops/s", "bytes/op", "alloc MB/s"));
+
+        for (int n : sizes) {
+            if (matches(only, "rotation")) bench.rotation(n, only);
+            if (matches(only, "csv.load")) bench.csvLoad(n);
+            if (matches(only, "coord")) bench.coordinator(n, only);
+            if (matches(only, "limits")) bench.limits(n, only);
+            if (matches(only, "server.list")) bench.serverList(n);
+        }
+        if (matches(only, "csv.safeSplit")) bench.safeSplit();
+        if (matches(only, "profit.recordSell")) bench.recordSell();
+
+        System.exit(0); // Coordinator threads
+    }
+
+    private static boolean matches(String only, String name) {
+        return only.isEmpty() || name.contains(only) || only.contains(name);
+    }
+
+    // ===== Benchmarks =====
+
+    private void rotation(int n, String only) throws Exception {
+        List<ItemConfig> items = items(n);
+        LimitRegistry limits = new LimitRegistry();
+        for (int i = 0; i < n; i += 20) {
+            limits.blockFor4h(items.get(i)); // 5% blocked
+        }
+        SmartRotation rotation = new SmartRotation(null, limits, "Bench");
+
+        if (matches(only, "rotation.buildQueue")) {
+            measure("rotation.buildQueue", n, () -> rotation.buildPrioritizedQueue(items));
+        }
+        if (matches(only, "rotation.nextItem")) {
+            List<ItemConfig> queue = rotation.buildPrioritizedQueue(items);
+            Set<String> inFlight = new HashSet<>();
+            for (int i = 0; i < 7; i++) {
+                inFlight.add(queue.get(i).key()); // A full set of slots busy
+            }
+            measure("rotation.nextItem", n, () -> rotation.getNextItem(queue, inFlight));
+        }
+    }
+
+    private void csvLoad(int n) throws Exception {
+        File f = File.createTempFile("bench-items", ".csv");
+        try {
+            writeItemsCsv(f, n);
+            String path = f.getPath();
+            measure("csv.load", n, () -> CSVConfigLoader.load(path));
+        } finally {
+            f.delete();
+        }
+    }
+
+    private void safeSplit() throws Exception {
+        String line = "2024-01-01T00:00:00Z,561,\"Nature rune, noted\",0.62,180,190,6.2,0.033,185,8000,60,0.61,0.58";
+        measure("csv.safeSplit", 1, () -> CSVConfigLoader.safeSplit(line));
+    }
+
+    private void coordinator(int n, String only) throws Exception {
+        File dir = Files.createTempDirectory("bench-coord").toFile();
+        String path = new File(dir, "coordination.json").getPath();
+        JsonCoordinator other = new JsonCoordinator(path, "Other");
+        for (int i = 0; i < n; i++) {
+            other.reportLimit("Item " + i);
+        }
+        JsonCoordinator self = new JsonCoordinator(path, "Bench"); // Reads them all on open
+        try {
+            if (self.getLimitsOfOtherBots().size() != n) {
+                throw new IllegalStateException("coordinator sees " + self.getLimitsOfOtherBots().size()
+                        + " of " + n + " limits");
+            }
+
+            if (matches(only, "coord.read")) {
+                measure("coord.read", n, self::getLimitsOfOtherBots);
+            }
+            if (matches(only, "coord.reportLimit")) {
+                int[] i = {0};
+                measure("coord.reportLimit", n, () -> {
+                    self.reportLimit("Item " + (i[0]++ % n));
+                    return null;
+                });
+            }
+        } finally {
+            other.close();
+            self.close();
+            deleteRecursively(dir);
+        }
+    }
+
+    private void limits(int n, String only) throws Exception {
+        List<ItemConfig> items = items(n);
+        LimitRegistry limits = new LimitRegistry();
+        for (int i = 0; i < n; i += 10) {
+            limits.blockFor4h(items.get(i)); // 10% blocked
+        }
+
+        if (matches(only, "limits.isBlocked")) {
+            int[] i = {0};
+            measure("limits.isBlocked", n, () -> limits.isBlocked(items.get(i[0]++ % n)));
+        }
+        if (matches(only, "limits.blockedCount")) {
+            measure("limits.blockedCount", n, limits::getBlockedCount);
+        }
+    }
+
+    private void serverList(int n) throws Exception {
+        int port = freePort();
+        CoordinatorServer server = new CoordinatorServer(port);
+        server.start();
+        try {
+            waitForServer(port);
+            StringBuilder batch = new StringBuilder();
+            for (int i = 0; i < n; i++) {
+                batch.append("item=").append(URLEncoder.encode("Item " + i, "UTF-8"))
+                        .append("&account=Bot").append(i % 50).append('\n');
+            }
+            post(port, "/batch", batch.toString());
+
+            measure("server.list", n, server::renderList);
+        } finally {
+            server.stop();
+        }
+    }
+
+    private void recordSell() throws Exception {
+        ProfitTracker profit = new ProfitTracker();
+        String[] names = new String[100];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = "Item " + i;
+            profit.recordBuy(names[i], 1_000_000, 150);
+        }
+        int[] i = {0};
+        measure("profit.recordSell", names.length, () -> {
+            profit.recordSell(names[i[0]++ % names.length], 10, 160);
+            return null;
+        });
+    }
+
+    // ===== Harness =====
+
+    private void measure(String name, int n, Op op) throws Exception {
+        for (int r = 0; r < warmupRounds; r++) {
+            round(op);
+        }
+
+        long[] nsPerOp = new long[rounds];
+        long totalOps = 0;
+        long totalNs = 0;
+        long allocStart = allocatedBytes();
+        for (int r = 0; r < rounds; r++) {
+            long start = System.nanoTime();
+            long ops = round(op);
+            long ns = System.nanoTime() - start;
+            nsPerOp[r] = ns / ops;
+            totalOps += ops;
+            totalNs += ns;
+        }
+        long allocated = allocatedBytes() - allocStart;
+
+        Arrays.sort(nsPerOp);
+        long median = nsPerOp[rounds / 2];
+        String bytesPerOp = allocated < 0 ? "n/a" : String.valueOf(allocated / totalOps);
+        String allocRate = allocated < 0 ? "n/a"
+                : String.format("%.1f", allocated / (1024.0 * 1024.0) / (totalNs / 1e9));
+
+        System.out.println(String.format("%-22s %7d %12d %12.0f %12s %10s",
+                name, n, median, median > 0 ? 1e9 / median : 0.0, bytesPerOp, allocRate));
+    }
+
+    /**
+     * Run op until the round time is up, checking the clock every few calls
+     * so cheap ops aren't dominated by nanoTime()
+     * @return number of calls
+     */
+    private long round(Op op) throws Exception {
+        long end = System.nanoTime() + roundNs;
+        long ops = 0;
+        int batch = 1;
+        while (true) {
+            for (int i = 0; i < batch; i++) {
+                sink = op.run();
+            }
+            ops += batch;
+            if (System.nanoTime() >= end) return ops;
+            if (batch < 1024) batch <<= 1;
+        }
+    }
+
+    private long allocatedBytes() {
+        return threads != null ? threads.getThreadAllocatedBytes(Thread.currentThread().getId()) : -1;
+    }
+
+    // ===== Fixtures =====
+
+    private static List<ItemConfig> items(int n) {
+        Random rnd = new Random(42);
+        List<ItemConfig> items = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            int buy = 50 + rnd.nextInt(50_000);
+            int sell = buy + 1 + rnd.nextInt(Math.max(2, buy / 20));
+            items.add(new ItemConfig("Item " + i, i, buy, sell, 0.5 + rnd.nextDouble() / 2,
+                    rnd.nextInt(20_000), 60, (int) (buy * 1.01), (int) (sell * 0.99),
+                    100 + rnd.nextInt(1000), 1, Math.max(2, (sell - buy) / 2), null, null, null));
+        }
+        return items;
+    }
+
+    private static void writeItemsCsv(File f, int n) throws IOException {
+        Random rnd = new Random(42);
+        try (Writer w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(f), StandardCharsets.UTF_8))) {
+            w.write("timestamp,item_id,item_name,prob_up,est_buy_price,est_sell_price,expected_net_profit,"
+                    + "expected_net_margin,current_mid,liquidity_recent_sum,horizon_minutes,auc_test,acc_test\n");
+            for (int i = 0; i < n; i++) {
+                int buy = 50 + rnd.nextInt(50_000);
+                int sell = buy + 1 + rnd.nextInt(Math.max(2, buy / 20));
+                String name = (i % 10 == 0) ? "\"Item " + i + ", noted\"" : "Item " + i;
+                w.write("2024-01-01T00:00:00Z," + i + "," + name + "," + (0.5 + rnd.nextDouble() / 2) + ","
+                        + buy + "," + sell + "," + (sell - buy) + ",0.03," + (buy + sell) / 2 + ","
+                        + rnd.nextInt(20_000) + ",60,0.6,0.6\n");
+            }
+        }
+    }
+
+    private static void deleteRecursively(File f) {
+        File[] children = f.listFiles();
+        if (children != null) {
+            for (File c : children) deleteRecursively(c);
+        }
+        f.delete();
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket s = new ServerSocket(0)) {
+            return s.getLocalPort();
+        }
+    }
+
+    private static void waitForServer(int port) throws Exception {
+        for (int i = 0; i < 50; i++) {
+            try (Socket s = new Socket()) {
+                s.connect(new InetSocketAddress("127.0.0.1", port), 200);
+                return;
+            } catch (IOException e) {
+                Thread.sleep(100);
+            }
+        }
+        throw new IOException("Local coordinator didn't start on port " + port);
+    }
+
+    private static void post(int port, String path, String body) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL("http://127.0.0.1:" + port + path).openConnection();
+        conn.setRequestMethod("POST");
+        conn.setDoOutput(true);
+        try (OutputStream out = conn.getOutputStream()) {
+            out.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        int code = conn.getResponseCode();
+        if (code != 200) {
+            throw new IOException("POST " + path + " returned " + code);
+        }
+        conn.getInputStream().close();
+    }
+}
@@ -0,0 +1,97 @@
+package com.plebsscripts.viktor.bench;
+
+import com.plebsscripts.viktor.coord.CoordinatorWal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Measures CoordinatorServer startup recovery time against WAL size.
+ *
+ * For each size it writes that many report records (spread over the last
+ * 8h, so about half are expired and get dropped during replay), closes the
+ * WAL without checkpointing, then times a fresh recover().
+ *
+ * Run: java com.plebsscripts.viktor.bench.WalRecoveryBench [sizes...]
+ * Default sizes: 10000 100000 1000000
+ */
+public class WalRecoveryBench {
+    private static final long TTL_MS = 4 * 60 * 60 * 1000 + 5 * 60 * 1000;
+    private static final long SPREAD_MS = 8 * 60 * 60 * 1000;
+    private static final int ITEMS = 2000;
+    private static final int ACCOUNTS = 50;
+
+    public static void main(String[] args) throws Exception {
+        int[] sizes = {10_000, 100_000, 1_000_000};
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+
+        System.out.println(String.format("%10s %10s %10s %8s %10s %12s",
+                "records", "walKB", "writeMs", "live", "recoverMs", "records/s"));
+
+        for (int size : sizes) {
+            run(size);
+        }
+    }
+
+    private static void run(int records) throws IOException {
+        File dir = Files.createTempDirectory("wal-bench").toFile();
+        try {
+            Random rnd = new Random(42);
+            long now = System.currentTimeMillis();
+
+            CoordinatorWal writer = new CoordinatorWal(dir, TTL_MS);
+            writer.recover();
+
+            long writeStart = System.nanoTime();
+            long seq = 0;
+            for (int i = 0; i < records; i++) {
+                String item = "Item " + rnd.nextInt(ITEMS);
+                String account = "Bot" + rnd.nextInt(ACCOUNTS);
+                long at = now - (long) (rnd.nextDouble() * SPREAD_MS);
+                seq = writer.logReport(item, account, at);
+                if ((i & 1023) == 1023) {
+                    writer.awaitDurable(seq); // Keep the queue bounded
+                }
+            }
+            writer.awaitDurable(seq);
+            long writeMs = (System.nanoTime() - writeStart) / 1_000_000;
+            writer.close();
+
+            long walBytes = 0;
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File f : files) {
+                    if (f.getName().endsWith(".log")) walBytes += f.length();
+                }
+            }
+
+            CoordinatorWal reader = new CoordinatorWal(dir, TTL_MS);
+            long start = System.nanoTime();
+            int live = reader.recover().size();
+            long recoverNs = System.nanoTime() - start;
+            reader.close();
+
+            System.out.println(String.format("%10d %10d %10d %8d %10.1f %12.0f",
+                    records, walBytes / 1024, writeMs, live, recoverNs / 1e6, records / (recoverNs / 1e9)));
+        } finally {
+            deleteTree(dir);
+        }
+    }
+
+    private static void deleteTree(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        dir.delete();
+    }
+}
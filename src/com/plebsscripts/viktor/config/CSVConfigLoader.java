@@ -113,8 +113,8 @@ public class CSVConfigLoader {
         return out;
     }
 
-    // Naive CSV split that respects simple quoted fields
-    private static String[] safeSplit(String line) {
+    // Naive CSV split that respects simple quoted fields (also used for price history)
+    public static String[] safeSplit(String line) {
         ArrayList<String> parts = new ArrayList<>();
         StringBuilder cur = new StringBuilder();
         boolean inQ = false;
@@ -28,6 +28,10 @@ public class ItemConfig {
     public Integer lastProbeSell;
     public Instant lastProbeAt;
 
+    // Lowercase itemName for lookups, recomputed only if itemName changes
+    private transient String key;
+    private transient String keySource;
+
     public ItemConfig(String itemName, Integer itemId, int estBuy, int estSell,
                       double probUp, double liquidity, int horizonMinutes,
                       int maxBuy, int minSell, int maxQtyPerCycle, int probeQty, int minMarginGp,
@@ -49,10 +53,28 @@ public class ItemConfig {
         this.lastProbeAt = lastProbeAt;
     }
 
+    /**
+     * Lowercase item name, cached - the key LimitRegistry and the
+     * coordinator maps use.
+     */
+    public String key() {
+        String name = itemName;
+        if (name != keySource) {
+            key = name != null ? name.toLowerCase() : "";
+            keySource = name;
+        }
+        return key;
+    }
+
     // IMPROVEMENT 1: Helper to check if probe is stale
     public boolean needsProbe(int staleMinutes) {
+        return needsProbe(staleMinutes, System.currentTimeMillis());
+    }
+
+    // As of nowMs (epoch ms, from the caller's Clock)
+    public boolean needsProbe(int staleMinutes, long nowMs) {
         if (lastProbeAt == null) return true;
-        long ageMinutes = (System.currentTimeMillis() - lastProbeAt.toEpochMilli()) / 60000;
+        long ageMinutes = (nowMs - lastProbeAt.toEpochMilli()) / 60000;
         return ageMinutes >= staleMinutes;
     }
 
@@ -71,9 +93,14 @@ public class ItemConfig {
 
     // IMPROVEMENT 4: Update probe results
     public void updateProbe(int buyPrice, int sellPrice) {
+        updateProbe(buyPrice, sellPrice, Instant.now());
+    }
+
+    // Probe measured at another time (e.g. by another bot in the fleet)
+    public void updateProbe(int buyPrice, int sellPrice, Instant probedAt) {
         this.lastProbeBuy = buyPrice;
         this.lastProbeSell = sellPrice;
-        this.lastProbeAt = Instant.now();
+        this.lastProbeAt = probedAt;
     }
 
     // IMPROVEMENT 5: Get best buy price (use probe if available)
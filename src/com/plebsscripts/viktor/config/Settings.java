@@ -11,6 +11,7 @@ public class Settings {
     public int sellStaleMinutes = 30;
     public int reprobeMinMinutes = 60;
     public int probeStaleMinutes = 60; // Re-probe every 60 minutes
+    public boolean rankByFillTime = false; // Rank items by learned GP per slot-minute instead of margin
 
     // ADD: Budget limits (used by AppGUI)
     public long maxGpPerFlip = 250_000;
@@ -20,6 +21,7 @@ public class Settings {
     public boolean enableCoordinator = true; //
     public String coordinatorUrl = "http://127.0.0.1:8888"; // CHANGED: Match CoordinatorServer default port
     public String botId = "";
+    public boolean fleetScheduler = false; // Ask the CoordinatorServer at coordinatorUrl which items to trade
 
     // Discord
     public DiscordBlock discord = new DiscordBlock();
@@ -123,6 +125,7 @@ public class Settings {
         copy.buyStaleMinutes = this.buyStaleMinutes;
         copy.sellStaleMinutes = this.sellStaleMinutes;
         copy.reprobeMinMinutes = this.reprobeMinMinutes;
+        copy.rankByFillTime = this.rankByFillTime;
         copy.maxGpPerFlip = this.maxGpPerFlip;
         copy.respectLimits = this.respectLimits;
         copy.enableCoordinator = this.enableCoordinator;
@@ -0,0 +1,210 @@
+package com.plebsscripts.viktor.coord;
+
+import java.util.*;
+
+/**
+ * Fleet-level item-to-bot assignment, run by CoordinatorServer.
+ *
+ * Each bot reports its free capital, free GE slots and, per candidate item,
+ * the buy price, margin, recent liquidity and how many it may still buy in
+ * the current 4h window. The solver hands every item to at most one bot so
+ * that the best items are all covered and no two bots bid against each other.
+ *
+ * Greedy on expected profit: value(bot, item) = margin * qty, where qty is
+ * capped by the bot's remaining allowance, what its capital can pay for and
+ * the item's recent liquidity. Pairs are taken best first; taking one uses
+ * a slot and some capital of the bot, so the next pair for that bot is
+ * re-valued with what's left before it is accepted (lazy greedy).
+ *
+ * Solving is cheap (bots x items pairs) but the result should not churn: a
+ * bot keeps its current items unless another pair beats them by more than
+ * STICKINESS. The server only re-solves after something changed.
+ *
+ * Not thread-safe; CoordinatorServer calls it under its own lock.
+ */
+public final class AssignmentSolver {
+    // Current assignments win ties up to this factor
+    private static final double STICKINESS = 1.15;
+
+    /**
+     * One item as seen by one bot
+     */
+    public static final class Candidate {
+        public final String item;
+        public final int price;       // Buy price each
+        public final int margin;      // Expected gp per item
+        public final long liquidity;  // Recent traded volume, <= 0 if unknown
+        public final int remaining;   // What the bot may still buy this 4h window
+
+        public Candidate(String item, int price, int margin, long liquidity, int remaining) {
+            this.item = item;
+            this.price = price;
+            this.margin = margin;
+            this.liquidity = liquidity;
+            this.remaining = remaining;
+        }
+    }
+
+    public static final class BotState {
+        public final String account;
+        public final long freeCapital;
+        public final int freeSlots;
+        public final List<Candidate> candidates;
+        public final long updatedAt;
+
+        public BotState(String account, long freeCapital, int freeSlots, List<Candidate> candidates, long updatedAt) {
+            this.account = account;
+            this.freeCapital = freeCapital;
+            this.freeSlots = freeSlots;
+            this.candidates = candidates;
+            this.updatedAt = updatedAt;
+        }
+    }
+
+    public static final class Assignment {
+        public final String item;
+        public final int qty;
+        public final long expectedProfit;
+
+        public Assignment(String item, int qty, long expectedProfit) {
+            this.item = item;
+            this.qty = qty;
+            this.expectedProfit = expectedProfit;
+        }
+    }
+
+    // Pair on the greedy heap, valued with the bot's capital at push time
+    private static final class Pair {
+        final String key;        // Lowercase account
+        final Candidate candidate;
+        final double value;
+
+        Pair(String key, Candidate candidate, double value) {
+            this.key = key;
+            this.candidate = candidate;
+            this.value = value;
+        }
+    }
+
+    private Map<String, List<Assignment>> current = new HashMap<>(); // Lowercase account -> items
+    private long version = 0;
+    private long solvedAt = 0;
+    private long lastSolveNanos = 0;
+
+    /**
+     * Re-solve from the latest bot states.
+     *
+     * @param bots          bot states keyed by lowercase account
+     * @param leaseHolders  lowercase item -> account working it; only that bot may get it
+     * @param limitHolders  lowercase item -> account that hit its limit; that bot may not get it
+     */
+    public void solve(Map<String, BotState> bots, Map<String, String> leaseHolders, Map<String, String> limitHolders) {
+        long start = System.nanoTime();
+
+        Set<String> wasAssigned = new HashSet<>();
+        for (Map.Entry<String, List<Assignment>> e : current.entrySet()) {
+            for (Assignment a : e.getValue()) {
+                wasAssigned.add(e.getKey() + "|" + a.item.toLowerCase());
+            }
+        }
+
+        Map<String, Long> capital = new HashMap<>();
+        Map<String, Integer> slots = new HashMap<>();
+        PriorityQueue<Pair> heap = new PriorityQueue<>((a, b) -> Double.compare(b.value, a.value));
+
+        for (Map.Entry<String, BotState> e : bots.entrySet()) {
+            String key = e.getKey();
+            BotState bot = e.getValue();
+            capital.put(key, bot.freeCapital);
+            slots.put(key, bot.freeSlots);
+            if (bot.freeSlots <= 0) continue;
+
+            for (Candidate c : bot.candidates) {
+                String item = c.item.toLowerCase();
+                String holder = leaseHolders.get(item);
+                if (holder != null && !holder.equalsIgnoreCase(bot.account)) continue;
+                String limited = limitHolders.get(item);
+                if (limited != null && limited.equalsIgnoreCase(bot.account)) continue;
+
+                double value = value(c, bot.freeCapital, wasAssigned.contains(key + "|" + item));
+                if (value > 0) {
+                    heap.add(new Pair(key, c, value));
+                }
+            }
+        }
+
+        Map<String, List<Assignment>> result = new HashMap<>();
+        Set<String> taken = new HashSet<>();
+
+        while (!heap.isEmpty()) {
+            Pair p = heap.poll();
+            String item = p.candidate.item.toLowerCase();
+            if (taken.contains(item) || slots.get(p.key) <= 0) continue;
+
+            // Capital may have gone to a better pair since this one was valued
+            long left = capital.get(p.key);
+            boolean sticky = wasAssigned.contains(p.key + "|" + item);
+            double value = value(p.candidate, left, sticky);
+            if (value <= 0) continue;
+            if (value < p.value) {
+                heap.add(new Pair(p.key, p.candidate, value));
+                continue;
+            }
+
+            int qty = quantity(p.candidate, left);
+            taken.add(item);
+            slots.put(p.key, slots.get(p.key) - 1);
+            capital.put(p.key, left - (long) qty * p.candidate.price);
+            result.computeIfAbsent(p.key, k -> new ArrayList<>())
+                    .add(new Assignment(p.candidate.item, qty, (long) qty * p.candidate.margin));
+        }
+
+        current = result;
+        version++;
+        solvedAt = System.currentTimeMillis();
+        lastSolveNanos = System.nanoTime() - start;
+    }
+
+    private static double value(Candidate c, long capital, boolean sticky) {
+        if (c.margin <= 0) return 0;
+        double v = (double) quantity(c, capital) * c.margin;
+        return sticky ? v * STICKINESS : v;
+    }
+
+    private static int quantity(Candidate c, long capital) {
+        if (c.price <= 0) return 0;
+        long qty = Math.min(c.remaining, capital / c.price);
+        if (c.liquidity > 0) {
+            qty = Math.min(qty, c.liquidity);
+        }
+        return (int) Math.max(0, qty);
+    }
+
+    /**
+     * @return items assigned to the account, best first (empty if none)
+     */
+    public List<Assignment> assignmentsFor(String account) {
+        List<Assignment> list = current.get(account.toLowerCase());
+        return list != null ? list : Collections.<Assignment>emptyList();
+    }
+
+    public int assignedItems() {
+        int n = 0;
+        for (List<Assignment> list : current.values()) {
+            n += list.size();
+        }
+        return n;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public long getSolvedAt() {
+        return solvedAt;
+    }
+
+    public long getLastSolveMicros() {
+        return lastSolveNanos / 1000;
+    }
+}
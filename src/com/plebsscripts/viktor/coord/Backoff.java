@@ -1,5 +1,6 @@
 package com.plebsscripts.viktor.coord;
 
+import com.plebsscripts.viktor.util.Clock;
 import com.plebsscripts.viktor.util.Logs;
 
 /**
@@ -13,6 +14,7 @@ public class Backoff {
     private long currentDelayMs;
     private long maxDelayMs;
     private int attempts;
+    private final Clock clock;
 
     // Default: 500ms initial, 30s max
     public Backoff() {
@@ -20,6 +22,11 @@ public class Backoff {
     }
 
     public Backoff(long initialDelayMs, long maxDelayMs) {
+        this(initialDelayMs, maxDelayMs, Clock.SYSTEM);
+    }
+
+    public Backoff(long initialDelayMs, long maxDelayMs, Clock clock) {
+        this.clock = clock;
         this.initialDelayMs = initialDelayMs;
         this.maxDelayMs = maxDelayMs;
         this.currentDelayMs = initialDelayMs;
@@ -47,11 +54,7 @@ public class Backoff {
      * Sleep for current delay duration
      */
     public void sleep() {
-        try {
-            Thread.sleep(currentDelayMs);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-        }
+        clock.sleep(currentDelayMs);
     }
 
     /**
@@ -70,12 +73,7 @@ public class Backoff {
      */
     public void sleepWithJitter() {
         long jitter = (long)(Math.random() * currentDelayMs * 0.3); // ±30% jitter
-        long actualDelay = currentDelayMs + jitter;
-        try {
-            Thread.sleep(actualDelay);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-        }
+        clock.sleep(currentDelayMs + jitter);
     }
 
     // Getters
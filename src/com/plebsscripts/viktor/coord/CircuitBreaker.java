@@ -0,0 +1,103 @@
+package com.plebsscripts.viktor.coord;
+
+import com.plebsscripts.viktor.util.Logs;
+
+/**
+ * Circuit breaker for calls to the coordinator.
+ *
+ * CLOSED:    calls go through; consecutive failures are counted
+ * OPEN:      after failureThreshold failures in a row, calls are refused
+ *            until the cool-down passes (cool-down doubles each time a
+ *            trial call fails, up to a maximum)
+ * HALF_OPEN: one trial call is let through; success closes the breaker,
+ *            failure opens it again
+ *
+ * Thread-safe. Used by CoordinatorClient so a dead server costs one cheap
+ * check instead of a connect timeout on every call.
+ */
+public class CircuitBreaker {
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final String name;
+    private final int failureThreshold;
+    private final Backoff coolDown;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures = 0;
+    private long openedAt = 0;
+    private long openCount = 0;
+
+    public CircuitBreaker(String name, int failureThreshold, long initialCoolDownMs, long maxCoolDownMs) {
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.coolDown = new Backoff(initialCoolDownMs, maxCoolDownMs);
+    }
+
+    /**
+     * @return true if a call may be made now (moves OPEN -> HALF_OPEN once the cool-down has passed)
+     */
+    public synchronized boolean allowRequest() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.currentTimeMillis() - openedAt >= coolDown.getCurrentDelay()) {
+                    state = State.HALF_OPEN;
+                    return true;
+                }
+                return false;
+            case HALF_OPEN:
+            default:
+                return false; // Trial call already in flight
+        }
+    }
+
+    public synchronized void recordSuccess() {
+        if (state != State.CLOSED) {
+            Logs.info(name + ": circuit closed");
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        coolDown.reset();
+    }
+
+    public synchronized void recordFailure() {
+        consecutiveFailures++;
+
+        if (state == State.HALF_OPEN) {
+            coolDown.increase();
+            open();
+        } else if (state == State.CLOSED && consecutiveFailures >= failureThreshold) {
+            open();
+        }
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.currentTimeMillis();
+        openCount++;
+        Logs.warn(name + ": circuit open after " + consecutiveFailures + " failures, retry in "
+                + coolDown.getCurrentDelay() + "ms");
+    }
+
+    /**
+     * @return ms until the next trial call is allowed (0 if calls are allowed now)
+     */
+    public synchronized long millisUntilRetry() {
+        if (state != State.OPEN) return 0;
+        return Math.max(0, openedAt + coolDown.getCurrentDelay() - System.currentTimeMillis());
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized boolean isOpen() {
+        return state == State.OPEN && millisUntilRetry() > 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%s{state=%s, failures=%d, opened=%d}", name, state, consecutiveFailures, openCount);
+    }
+}
@@ -0,0 +1,74 @@
+package com.plebsscripts.viktor.coord;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Consistent hash ring mapping keys (item names) to nodes (coordinator shards).
+ *
+ * Each node is placed at VIRTUAL_NODES points on a 64-bit ring so load
+ * stays even with only a handful of shards. A key belongs to the first node
+ * point at or after its hash. Adding or removing a node only moves the keys
+ * in the arcs next to its points - about 1/N of them - so a shard joining or
+ * leaving doesn't reshuffle the whole fleet.
+ *
+ * Immutable: build a new ring when membership changes.
+ */
+public final class ConsistentHashRing<T> {
+    private static final int VIRTUAL_NODES = 128;
+
+    private final TreeMap<Long, T> points = new TreeMap<>();
+    private final List<T> nodes;
+
+    /**
+     * @param nodes ring members; toString() is the node's identity on the ring
+     */
+    public ConsistentHashRing(Collection<T> nodes) {
+        this.nodes = Collections.unmodifiableList(new ArrayList<>(nodes));
+        for (T node : nodes) {
+            String id = node.toString();
+            for (int i = 0; i < VIRTUAL_NODES; i++) {
+                points.put(hash(id + "#" + i), node);
+            }
+        }
+    }
+
+    /**
+     * @return owner of the key, or null if the ring is empty
+     */
+    public T get(String key) {
+        if (points.isEmpty()) return null;
+
+        Map.Entry<Long, T> e = points.ceilingEntry(hash(key.toLowerCase()));
+        return e != null ? e.getValue() : points.firstEntry().getValue();
+    }
+
+    public List<T> nodes() {
+        return nodes;
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    public boolean isEmpty() {
+        return nodes.isEmpty();
+    }
+
+    /**
+     * FNV-1a over UTF-8 bytes, then the murmur3 finalizer to spread the bits
+     */
+    static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : s.getBytes(StandardCharsets.UTF_8)) {
+            h ^= (b & 0xff);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb93fe53aec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
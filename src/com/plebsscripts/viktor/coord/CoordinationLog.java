@@ -0,0 +1,461 @@
+package com.plebsscripts.viktor.coord;
+
+import com.plebsscripts.viktor.util.Logs;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only record log shared by every bot pointing at the same data dir.
+ *
+ * Layout:
+ *   [header 32 bytes][record][record]...
+ *   header = magic(4) version(4) reserved(8) generation(8) bodyOffset(8)
+ *   record = payloadLength(4) crc32(4) payload
+ *
+ * Records start at bodyOffset (0 in logs written before it existed means
+ * right after the header). Bytes between the header and bodyOffset are
+ * dead space left by the last compaction.
+ *
+ * Cross-process safety comes from FileChannel.lock():
+ * - appends and compaction take an exclusive lock on the whole file
+ * - readers take a shared lock while tailing
+ *
+ * Readers only look at bytes past their last offset, so a poll costs one
+ * size check when nothing changed. Reads are plain channel reads, never a
+ * memory mapping: the JVM only unmaps on GC, and Windows won't truncate a
+ * file any process still has mapped.
+ *
+ * Compaction rewrites the file in place (Windows refuses to replace a file
+ * other bots still have open) without touching the live records until the
+ * new ones are on disk:
+ * - the live set goes where no reader looks - the dead space in front of
+ *   bodyOffset if it fits, otherwise past the end of the file - followed
+ *   or preceded by an empty frame, so to a reader it looks like a torn tail
+ * - it is forced to disk, then the header is flipped to the new generation
+ *   and bodyOffset in one 16-byte write, and forced again
+ * - space in front of the body is reclaimed by truncating after the flip;
+ *   space a body past the end left behind is reused by the next compaction
+ * A crash before the flip leaves the old generation intact (the next append
+ * truncates the half-written copy as a torn tail); after it, the new one is
+ * complete. Readers that see a new generation reset and reload from
+ * bodyOffset.
+ */
+final class CoordinationLog implements Closeable {
+
+    static final byte REC_LIMIT = 1;
+    static final byte REC_LEASE = 2;     // values[0] = fencing token
+    static final byte REC_PROBE = 3;     // values[0] = buy price, values[1] = sell price
+
+    private static final int MAGIC = 0x564B434C; // "VKCL"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int GENERATION_OFFSET = 16;
+    private static final int BODY_OFFSET_OFFSET = 24;
+    private static final int FRAME_OVERHEAD = 8;
+    private static final int MAX_RECORD_SIZE = 64 * 1024;
+
+    // FileChannel locks are per-JVM: two channels on the same file in one
+    // JVM throw OverlappingFileLockException instead of waiting, so
+    // serialize them ourselves first.
+    private static final Map<String, Object> JVM_LOCKS = new ConcurrentHashMap<>();
+
+    private final File file;
+    private final Object jvmLock;
+    private RandomAccessFile raf;
+    private FileChannel channel;
+
+    private long generation = -1;
+    private long readOffset = HEADER_SIZE;
+    private volatile long writtenSize = -1;  // File size right after our last write
+
+    /**
+     * Receives records as they are tailed from the log.
+     */
+    interface Visitor {
+        /** Log was compacted (or is new) - drop everything, records follow from the start */
+        void onReset();
+
+        void onRecord(Record record);
+    }
+
+    /**
+     * Single log record. Extra values carry type-specific numbers.
+     */
+    static final class Record {
+        final byte type;
+        final String item;
+        final String account;
+        final long at;          // Epoch millis when written
+        final long expiresAt;   // Epoch millis when the record stops mattering
+        final long[] values;
+
+        Record(byte type, String item, String account, long at, long expiresAt, long... values) {
+            this.type = type;
+            this.item = item;
+            this.account = account;
+            this.at = at;
+            this.expiresAt = expiresAt;
+            this.values = values != null ? values : new long[0];
+        }
+    }
+
+    CoordinationLog(File file) throws IOException {
+        this.file = file;
+        this.jvmLock = JVM_LOCKS.computeIfAbsent(file.getCanonicalPath(), k -> new Object());
+        open();
+    }
+
+    /**
+     * Tail records written since the last call.
+     * @return number of records delivered
+     */
+    int tail(Visitor visitor) throws IOException {
+        synchronized (jvmLock) {
+            FileLock lock = channel.lock(0, Long.MAX_VALUE, true);
+            try {
+                return readNew(visitor);
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    /**
+     * Append records atomically with respect to other bots.
+     * Everything written by others up to this point is tailed first.
+     */
+    void append(Visitor visitor, Record... records) throws IOException {
+        appendIf(visitor, () -> records);
+    }
+
+    /**
+     * Compare-and-append: the log is tailed under the exclusive lock, then
+     * the supplier decides what to write from the up-to-date state. No other
+     * bot can write in between, which makes read-check-write atomic.
+     * @return true if the supplier returned any records
+     */
+    boolean appendIf(Visitor visitor, Supplier<Record[]> decide) throws IOException {
+        synchronized (jvmLock) {
+            FileLock lock = channel.lock();
+            try {
+                readNew(visitor);
+
+                Record[] records = decide.get();
+                if (records == null || records.length == 0) {
+                    return false;
+                }
+
+                // Drop a torn tail left by a crashed writer
+                if (channel.size() > readOffset) {
+                    Logs.warn("CoordinationLog: truncating " + (channel.size() - readOffset) + " torn bytes");
+                    channel.truncate(readOffset);
+                }
+
+                ByteBuffer buf = encode(records);
+                long pos = readOffset;
+                writtenSize = pos + buf.remaining(); // Before writing: the watcher may wake on the write itself
+                while (buf.hasRemaining()) {
+                    pos += channel.write(buf, pos);
+                }
+
+                // Our own records come back through the visitor on the next
+                // tail - keep that single code path for state changes.
+                readNew(visitor);
+                return true;
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    /**
+     * Rewrite the log with only the live records and bump the generation.
+     * The log is tailed under the lock first, so the supplier sees every
+     * record written by other bots before it decides what is still live.
+     */
+    void compact(Visitor visitor, Supplier<Collection<Record>> live) throws IOException {
+        synchronized (jvmLock) {
+            FileLock lock = channel.lock();
+            try {
+                readNew(visitor);
+
+                long newGeneration = readGeneration() + 1;
+                ByteBuffer body = encode(live.get().toArray(new Record[0]));
+                int length = body.remaining();
+
+                if (HEADER_SIZE + length + FRAME_OVERHEAD <= readBodyOffset()) {
+                    // Fits in the dead space in front: body, then an empty
+                    // frame so readers stop before the old bytes behind it
+                    ByteBuffer buf = ByteBuffer.allocate(length + FRAME_OVERHEAD);
+                    buf.put(body).rewind();
+                    writtenSize = channel.size();
+                    writeFully(buf, HEADER_SIZE);
+                    channel.force(true);
+                    writeHeader(newGeneration, HEADER_SIZE);
+                    channel.force(true);
+
+                    writtenSize = HEADER_SIZE + length;
+                    channel.truncate(HEADER_SIZE + length);
+                } else {
+                    // Past the end, behind an empty frame: until the header
+                    // moves, readers of the old generation see a torn tail
+                    long start = channel.size() + FRAME_OVERHEAD;
+                    ByteBuffer buf = ByteBuffer.allocate(FRAME_OVERHEAD + length);
+                    buf.position(FRAME_OVERHEAD);
+                    buf.put(body).rewind();
+                    writtenSize = start + length;
+                    writeFully(buf, start - FRAME_OVERHEAD);
+                    channel.force(true);
+                    writeHeader(newGeneration, start);
+                    channel.force(true);
+                }
+
+                readNew(visitor);
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    /**
+     * @return file size right after this instance's last write, -1 if it hasn't
+     * written. Lets the watcher tell our own changes from other bots'.
+     */
+    long lastWrittenSize() {
+        return writtenSize;
+    }
+
+    long sizeBytes() {
+        try {
+            return channel.size();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (raf != null) raf.close();
+        } catch (IOException ignored) {}
+    }
+
+    // ===== Internal Methods =====
+
+    private void open() throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+
+        raf = new RandomAccessFile(file, "rw");
+        channel = raf.getChannel();
+
+        synchronized (jvmLock) {
+            FileLock lock = channel.lock();
+            try {
+                if (!hasValidHeader()) {
+                    if (channel.size() > 0) {
+                        Logs.warn("CoordinationLog: bad header in " + file.getName() + ", starting fresh");
+                    }
+                    writtenSize = HEADER_SIZE;
+                    channel.truncate(0);
+                    writeHeader(1, HEADER_SIZE);
+                    channel.force(true);
+                }
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    /**
+     * Must hold a lock. Delivers records between readOffset and end of file.
+     */
+    private int readNew(Visitor visitor) throws IOException {
+        long currentGeneration = readGeneration();
+        if (currentGeneration != generation) {
+            generation = currentGeneration;
+            readOffset = readBodyOffset();
+            visitor.onReset();
+        }
+
+        long size = channel.size();
+        if (size < readOffset) {
+            // Shrunk without a generation bump (manual edit?) - reload
+            readOffset = readBodyOffset();
+            visitor.onReset();
+        }
+        if (size <= readOffset) {
+            return 0;
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate((int) Math.min(Integer.MAX_VALUE, size - readOffset));
+        long pos = readOffset;
+        while (buf.hasRemaining()) {
+            int n = channel.read(buf, pos);
+            if (n < 0) break;
+            pos += n;
+        }
+        buf.flip();
+
+        int delivered = 0;
+        CRC32 crc = new CRC32();
+
+        while (buf.remaining() >= FRAME_OVERHEAD) {
+            int start = buf.position();
+            int len = buf.getInt();
+            int expectedCrc = buf.getInt();
+
+            if (len <= 0 || len > MAX_RECORD_SIZE || buf.remaining() < len) {
+                buf.position(start);
+                break; // Incomplete or torn - stop here
+            }
+
+            byte[] payload = new byte[len];
+            buf.get(payload);
+
+            crc.reset();
+            crc.update(payload, 0, len);
+            if ((int) crc.getValue() != expectedCrc) {
+                buf.position(start);
+                break;
+            }
+
+            visitor.onRecord(decode(payload));
+            delivered++;
+        }
+
+        readOffset += buf.position();
+        return delivered;
+    }
+
+    private boolean hasValidHeader() throws IOException {
+        if (channel.size() < HEADER_SIZE) return false;
+        ByteBuffer header = ByteBuffer.allocate(8);
+        channel.read(header, 0);
+        header.flip();
+        return header.getInt() == MAGIC && header.getInt() == VERSION;
+    }
+
+    private long readGeneration() throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(8);
+        channel.read(buf, GENERATION_OFFSET);
+        buf.flip();
+        return buf.remaining() == 8 ? buf.getLong() : 0;
+    }
+
+    /**
+     * @return where the current generation's records start
+     */
+    private long readBodyOffset() throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(8);
+        channel.read(buf, BODY_OFFSET_OFFSET);
+        buf.flip();
+        long offset = buf.remaining() == 8 ? buf.getLong() : 0;
+        return offset >= HEADER_SIZE ? offset : HEADER_SIZE;
+    }
+
+    /**
+     * Generation and body offset go in one write, so a reader never sees
+     * one without the other.
+     */
+    private void writeHeader(long newGeneration, long bodyOffset) throws IOException {
+        if (channel.size() < HEADER_SIZE) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putLong(0);
+            header.putLong(newGeneration);
+            header.putLong(bodyOffset);
+            header.flip();
+            writeFully(header, 0);
+            return;
+        }
+
+        ByteBuffer fields = ByteBuffer.allocate(16);
+        fields.putLong(newGeneration);
+        fields.putLong(bodyOffset);
+        fields.flip();
+        writeFully(fields, GENERATION_OFFSET);
+    }
+
+    private void writeFully(ByteBuffer buf, long pos) throws IOException {
+        while (buf.hasRemaining()) {
+            pos += channel.write(buf, pos);
+        }
+    }
+
+    private static ByteBuffer encode(Record[] records) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        CRC32 crc = new CRC32();
+
+        for (Record r : records) {
+            byte[] payload = payload(r);
+            crc.reset();
+            crc.update(payload, 0, payload.length);
+
+            out.writeInt(payload.length);
+            out.writeInt((int) crc.getValue());
+            out.write(payload);
+        }
+
+        out.flush();
+        return ByteBuffer.wrap(bytes.toByteArray());
+    }
+
+    private static byte[] payload(Record r) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(r.type);
+        writeString(out, r.item);
+        writeString(out, r.account);
+        out.writeLong(r.at);
+        out.writeLong(r.expiresAt);
+        out.writeByte(r.values.length);
+        for (long v : r.values) {
+            out.writeLong(v);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static Record decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte type = in.readByte();
+        String item = readString(in);
+        String account = readString(in);
+        long at = in.readLong();
+        long expiresAt = in.readLong();
+        long[] values = new long[in.readUnsignedByte()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readLong();
+        }
+        return new Record(type, item, account, at, expiresAt, values);
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] b = (s != null ? s : "").getBytes(StandardCharsets.UTF_8);
+        out.writeShort(b.length);
+        out.write(b);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] b = new byte[in.readUnsignedShort()];
+        in.readFully(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+}
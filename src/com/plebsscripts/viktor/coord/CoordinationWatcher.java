@@ -0,0 +1,129 @@
+package com.plebsscripts.viktor.coord;
+
+import com.plebsscripts.viktor.util.Logs;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Watches the coordination log and runs a callback when it may have changed.
+ *
+ * Uses java.nio WatchService (inotify / ReadDirectoryChangesW) so other bots'
+ * reports are picked up within milliseconds instead of on the next poll.
+ * Network shares often never deliver change events, so the callback also
+ * runs on a timer:
+ * - every 2s until we've seen an event for a write some other bot made
+ * - every 15s once events are known to work (just a safety net)
+ *
+ * Our own appends raise events even on a network share, where other
+ * machines' appends never do, so they don't count: an event that leaves
+ * the file at the size our last write did is ours.
+ *
+ * The callback is cheap when nothing changed (a single size check on the log).
+ */
+final class CoordinationWatcher implements Runnable {
+    private static final long FALLBACK_POLL_MS = 2_000;
+    private static final long SAFETY_POLL_MS = 15_000;
+
+    private final File file;
+    private final LongSupplier ownWriteSize;  // File size after our last write
+    private final Runnable onChange;
+    private volatile boolean running = true;
+    private volatile boolean eventsWork = false;
+    private Thread thread;
+
+    CoordinationWatcher(File file, LongSupplier ownWriteSize, Runnable onChange) {
+        this.file = file.getAbsoluteFile();
+        this.ownWriteSize = ownWriteSize;
+        this.onChange = onChange;
+    }
+
+    void start() {
+        thread = new Thread(this, "JsonCoordinator-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * @return true once the OS has delivered an event for another bot's write
+     */
+    boolean isPushActive() {
+        return eventsWork;
+    }
+
+    @Override
+    public void run() {
+        WatchService watcher = null;
+        Path dir = file.getParentFile().toPath();
+        Path name = file.toPath().getFileName();
+
+        try {
+            watcher = FileSystems.getDefault().newWatchService();
+            dir.register(watcher, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_CREATE);
+            Logs.info("CoordinationWatcher: watching " + file.getName());
+        } catch (IOException | UnsupportedOperationException e) {
+            Logs.warn("CoordinationWatcher: file events unavailable (" + e.getMessage() + "), polling every "
+                    + (FALLBACK_POLL_MS / 1000) + "s");
+            watcher = null;
+        }
+
+        try {
+            while (running) {
+                long timeout = eventsWork ? SAFETY_POLL_MS : FALLBACK_POLL_MS;
+                boolean ours = false;
+
+                if (watcher != null) {
+                    WatchKey key = watcher.poll(timeout, TimeUnit.MILLISECONDS);
+                    if (key != null) {
+                        for (WatchEvent<?> event : key.pollEvents()) {
+                            if (event.kind() == StandardWatchEventKinds.OVERFLOW || name.equals(event.context())) {
+                                ours = true;
+                            }
+                        }
+                        if (ours && !eventsWork && file.length() != ownWriteSize.getAsLong()) {
+                            eventsWork = true;
+                            Logs.info("CoordinationWatcher: file events confirmed, push mode active");
+                        }
+                        if (!key.reset()) {
+                            // Directory deleted or remounted - no more events will come
+                            Logs.warn("CoordinationWatcher: watch key invalid, falling back to polling every "
+                                    + (FALLBACK_POLL_MS / 1000) + "s");
+                            watcher.close();
+                            watcher = null;
+                            eventsWork = false;
+                        }
+                        if (!ours) {
+                            continue; // Some other file in the data dir
+                        }
+                    }
+                } else {
+                    Thread.sleep(timeout);
+                }
+
+                try {
+                    onChange.run();
+                } catch (Exception e) {
+                    Logs.warn("CoordinationWatcher: refresh failed: " + e.getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | ClosedWatchServiceException e) {
+            Logs.warn("CoordinationWatcher stopped: " + e.getMessage());
+        } finally {
+            if (watcher != null) {
+                try { watcher.close(); } catch (IOException ignored) {}
+            }
+        }
+    }
+}
@@ -1,13 +1,51 @@
 package com.plebsscripts.viktor.coord;
 
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
 import com.plebsscripts.viktor.util.Logs;
 import java.io.*;
 import java.net.*;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Client for communicating with CoordinatorServer.
  * Handles limit reporting and querying blocked items across multiple bots.
+ *
+ * Accepts one URL or a comma-separated list. With several URLs the servers
+ * form a sharded cluster: every item belongs to one shard, picked by
+ * consistent hashing on the item name (ConsistentHashRing). Reports and
+ * leases go to the owning shard; list queries merge every shard.
+ *
+ * Each shard has a background thread long-polling /subscribe and keeping a
+ * local replica of its blocked list, so lookups are answered from memory
+ * and see other bots' reports within one round trip. While no replica is
+ * live, lookups poll /list?since=<version> and apply the delta instead.
+ *
+ * reportLimit() never blocks: reports go into an outbound queue and a
+ * reporter thread sends everything queued so far as one POST /batch per
+ * shard. Failures are retried on that thread behind each shard's circuit
+ * breaker, so a dead coordinator never stalls the trading loop.
+ *
+ * Rebalancing: when a shard goes down or comes back the ring is rebuilt
+ * and this client re-reports those of its own active limits that changed
+ * owner (with their original time) to the new owner. Every bot does the same, so the
+ * fleet's limits follow the ring without any server-to-server traffic.
+ *
+ * Margin probe results are shared through the item's shard as well; use
+ * probeCache(account) to hand this client to MarginProbe.
+ *
+ * Fleet scheduling (reportBotState / getAssignments) always talks to the
+ * first URL: one server has to see every bot to split items between them.
+ * The trading loop uses reportBotStateAsync(), which posts on a background
+ * thread (only the newest state is kept if one is already waiting) and
+ * reads the answer later from getLastAssignments().
  */
 public class CoordinatorClient {
     private final String serverUrl;
@@ -15,183 +53,538 @@ public class CoordinatorClient {
     private volatile boolean serverAvailable = true;
     private long lastHealthCheck = 0;
     private static final long HEALTH_CHECK_INTERVAL = 60_000; // 1 minute
+    private static final long LIMIT_DURATION_MS = 4L * 60 * 60 * 1000; // 4 hours
+    private static final long MIN_POLL_INTERVAL_MS = 1000;
+
+    private final List<CoordinatorShard> shards = new ArrayList<>();
+    private volatile ConsistentHashRing<CoordinatorShard> ring;
+    private volatile boolean running = true;
+
+    // Outbound reports: {item, account, reportedAt}
+    private static final int REPORT_QUEUE_CAPACITY = 10_000;
+    private static final int MAX_BATCH = 500;
+    private static final long BATCH_LINGER_MS = 50;
+    private final BlockingQueue<String[]> outbound = new LinkedBlockingQueue<>(REPORT_QUEUE_CAPACITY);
+    private final Thread reporter;
+    private volatile long reportsSent = 0;
+    private volatile long batchesSent = 0;
+
+    // Our own reports, kept for re-reporting when ring ownership changes
+    private final Map<String, String[]> ownReports = new ConcurrentHashMap<>();
+    private volatile long rebalances = 0;
+
+    // Fleet scheduler calls, off the trading loop. One waiting state at most:
+    // a newer one replaces it.
+    private final ExecutorService schedulerExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(1), r -> {
+                Thread t = new Thread(r, "CoordinatorClient-scheduler");
+                t.setDaemon(true);
+                return t;
+            }, new ThreadPoolExecutor.DiscardOldestPolicy());
+    private volatile List<AssignmentSolver.Assignment> lastAssignments = null;
+
+    private final Gson gson = new Gson();
 
+    /**
+     * @param serverUrl one URL, or several separated by commas for a sharded cluster
+     */
     public CoordinatorClient(String serverUrl) {
         this.serverUrl = serverUrl;
         this.backoff = new Backoff(1000, 30_000); // 1s initial, 30s max
+
+        for (String url : serverUrl.split(",")) {
+            url = url.trim();
+            while (url.endsWith("/")) url = url.substring(0, url.length() - 1);
+            if (!url.isEmpty()) {
+                shards.add(new CoordinatorShard(url, true, this::onMembershipChanged));
+            }
+        }
+        this.ring = new ConsistentHashRing<>(shards);
+
         checkHealth(); // Initial health check
+
+        for (CoordinatorShard shard : shards) {
+            shard.start();
+        }
+
+        reporter = new Thread(this::reportLoop, "CoordinatorClient-reporter");
+        reporter.setDaemon(true);
+        reporter.start();
+    }
+
+    /**
+     * Stop the background threads. Reports still queued are sent if the
+     * server answers within a few seconds.
+     */
+    public void close() {
+        running = false;
+        for (CoordinatorShard shard : shards) {
+            shard.stop();
+        }
+        reporter.interrupt();
+        schedulerExecutor.shutdownNow();
+        try {
+            reporter.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     /**
-     * Report that this account hit 4h limit on an item
+     * Report that this account hit 4h limit on an item.
+     * Queued for the reporter thread - returns immediately.
      */
     public void reportLimit(String item, String account) {
-        if (!serverAvailable) {
-            Logs.warn("Coordinator server unavailable, skipping report");
-            return;
+        String[] report = {item, account, String.valueOf(System.currentTimeMillis())};
+        ownReports.put(reportKey(report), report);
+        if (!outbound.offer(report)) {
+            Logs.warn("Coordinator report queue full, dropping " + item);
         }
+    }
 
-        int maxAttempts = 3;
-        int attempt = 0;
+    /**
+     * Get list of items currently blocked by other bots
+     */
+    public Set<String> getBlockedItems() {
+        return new HashSet<>(getBlockedItemsWithAccounts().keySet());
+    }
 
-        while (attempt < maxAttempts) {
+    /**
+     * Check if coordinator server is reachable (any shard, for a cluster)
+     */
+    public boolean checkHealth() {
+        boolean any = false;
+        for (CoordinatorShard shard : shards) {
             try {
-                String url = serverUrl + "/report?item=" + URLEncoder.encode(item, "UTF-8")
-                        + "&account=" + URLEncoder.encode(account, "UTF-8");
-                String response = httpGet(url);
+                shard.get("/health");
+                any = true;
+            } catch (Exception e) {
+                Logs.warn("Coordinator health check failed for " + shard.url + ": " + e.getMessage());
+            }
+        }
 
-                backoff.reset(); // Success!
-                Logs.info("Coordinator: reported " + item + " blocked for " + account);
-                return;
+        serverAvailable = any;
+        lastHealthCheck = System.currentTimeMillis();
+        if (any) {
+            Logs.info("Coordinator health check: OK");
+        }
+        return any;
+    }
 
-            } catch (Exception e) {
-                attempt++;
-                Logs.warn("reportLimit failed (attempt " + attempt + "/" + maxAttempts + "): " + e.getMessage());
+    /**
+     * Get status info for debugging
+     */
+    public String getStatus() {
+        StringBuilder shardStatus = new StringBuilder();
+        for (CoordinatorShard shard : shards) {
+            if (shardStatus.length() > 0) shardStatus.append(", ");
+            shardStatus.append(shard.getStatus());
+        }
 
-                if (attempt < maxAttempts) {
-                    backoff.increase();
-                    backoff.sleepWithJitter(); // Retry with backoff
-                } else {
-                    serverAvailable = false; // Mark as unavailable after max retries
-                    Logs.error("Coordinator unavailable after " + maxAttempts + " attempts");
+        return String.format("Coordinator{available=%s, backoff=%dms, ring=%d/%d, rebalances=%d, "
+                        + "queued=%d, sent=%d in %d batches, shards=[%s]}",
+                serverAvailable, backoff.getCurrentDelay(), ring.size(), shards.size(), rebalances,
+                outbound.size(), reportsSent, batchesSent, shardStatus);
+    }
+
+    /**
+     * Check if a specific item is blocked by another bot
+     */
+    public boolean isItemBlocked(String itemName) {
+        String key = itemName.toLowerCase();
+
+        if (anyReplicaLive()) {
+            // The owner normally has it, but right after a rebalance the
+            // old owner may still be the only one that does
+            long now = System.currentTimeMillis();
+            CoordinatorShard owner = ring.get(key);
+            if (owner != null && isActive(owner.lookup(key), now)) {
+                return true;
+            }
+            for (CoordinatorShard shard : shards) {
+                if (shard != owner && shard.isLive() && isActive(shard.lookup(key), now)) {
+                    return true;
                 }
             }
+            return false;
+        }
+
+        for (String blocked : getBlockedItems()) {
+            if (blocked.equalsIgnoreCase(itemName)) return true;
         }
+        return false;
     }
 
     /**
-     * Get list of items currently blocked by other bots
+     * Get detailed info about who blocked which items (merged across shards)
      */
-    public Set<String> getBlockedItems() {
+    public Map<String, String> getBlockedItemsWithAccounts() {
+        Map<String, String> result = new HashMap<>();
+
+        if (anyReplicaLive()) {
+            long now = System.currentTimeMillis();
+            for (CoordinatorShard shard : shards) {
+                if (!shard.isLive()) continue;
+                for (CoordinatorShard.Blocked b : shard.blocked()) {
+                    if (b.expiresAt > now) {
+                        result.put(b.item, b.account);
+                    }
+                }
+            }
+            return result;
+        }
+
         if (!serverAvailable) {
             // Periodically retry health check
             if (System.currentTimeMillis() - lastHealthCheck > HEALTH_CHECK_INTERVAL) {
                 checkHealth();
             }
-            return Collections.emptySet();
+            return result;
         }
 
-        try {
-            String response = httpGet(serverUrl + "/list");
-            Set<String> items = parseBlockedItems(response);
-            backoff.reset(); // Success
-            return items;
+        // No subscription: catch each replica up with a delta poll (only
+        // changes since its version come over the wire)
+        long now = System.currentTimeMillis();
+        for (CoordinatorShard shard : shards) {
+            if (now - shard.getLastPollAt() >= MIN_POLL_INTERVAL_MS) {
+                shard.poll();
+            }
+            for (CoordinatorShard.Blocked b : shard.blocked()) {
+                if (b.expiresAt > now) {
+                    result.put(b.item, b.account);
+                }
+            }
+        }
+
+        return result;
+    }
 
-        } catch (Exception e) {
-            Logs.warn("getBlockedItems failed: " + e.getMessage());
-            backoff.increase();
-            return Collections.emptySet();
+    private boolean anyReplicaLive() {
+        for (CoordinatorShard shard : shards) {
+            if (shard.isLive()) return true;
         }
+        return false;
     }
 
+    private static boolean isActive(CoordinatorShard.Blocked b, long now) {
+        return b != null && b.expiresAt > now;
+    }
+
+    // === Ring membership ===
+
     /**
-     * Check if coordinator server is reachable
+     * A shard went down or came back: rebuild the ring and re-report the
+     * active limits of ours whose owner changed.
      */
-    public boolean checkHealth() {
-        try {
-            String response = httpGet(serverUrl + "/health");
-            serverAvailable = true;
-            lastHealthCheck = System.currentTimeMillis();
-            Logs.info("Coordinator health check: OK");
-            return true;
-        } catch (Exception e) {
-            serverAvailable = false;
-            lastHealthCheck = System.currentTimeMillis();
-            Logs.warn("Coordinator health check failed: " + e.getMessage());
-            return false;
+    private synchronized void onMembershipChanged() {
+        List<CoordinatorShard> upShards = new ArrayList<>();
+        for (CoordinatorShard shard : shards) {
+            if (shard.isUp()) upShards.add(shard);
+        }
+        if (upShards.size() == ring.size() && upShards.containsAll(ring.nodes())) {
+            return;
+        }
+
+        ConsistentHashRing<CoordinatorShard> old = ring;
+        ring = new ConsistentHashRing<>(upShards);
+        rebalances++;
+        serverAvailable = !upShards.isEmpty();
+
+        long now = System.currentTimeMillis();
+        int requeued = 0;
+        Iterator<String[]> it = ownReports.values().iterator();
+        while (it.hasNext()) {
+            String[] report = it.next();
+            if (now - Long.parseLong(report[2]) > LIMIT_DURATION_MS) {
+                it.remove();
+            } else if (old.get(report[0]) != ring.get(report[0]) && outbound.offer(report)) {
+                requeued++;
+            }
+        }
+
+        Logs.info("Coordinator ring now " + upShards.size() + "/" + shards.size() + " shards, re-reporting "
+                + requeued + " own limit(s)");
+    }
+
+    // === Reporting ===
+
+    private void reportLoop() {
+        // item|account -> report; reports that failed stay here and merge with new ones
+        Map<String, String[]> pending = new LinkedHashMap<>();
+
+        while (running || !pending.isEmpty() || !outbound.isEmpty()) {
+            try {
+                if (pending.isEmpty()) {
+                    String[] first = running ? outbound.take() : outbound.poll();
+                    if (first == null) break;
+                    pending.put(reportKey(first), first);
+                    if (running) {
+                        Thread.sleep(BATCH_LINGER_MS); // Let a burst pile up
+                    }
+                }
+                List<String[]> drained = new ArrayList<>();
+                outbound.drainTo(drained, MAX_BATCH);
+                for (String[] r : drained) pending.put(reportKey(r), r);
+
+                boolean sentAny = sendPending(pending);
+
+                if (!pending.isEmpty()) {
+                    if (!running) break; // Shutting down, couldn't deliver
+                    if (!sentAny) {
+                        backoff.increase();
+                        backoff.sleepWithJitter(); // On the reporter thread, not the bot's
+                    }
+                } else {
+                    backoff.reset();
+                }
+            } catch (InterruptedException e) {
+                if (running) continue;
+                // close(): one last attempt without waiting
+                List<String[]> rest = new ArrayList<>();
+                outbound.drainTo(rest);
+                for (String[] r : rest) pending.put(reportKey(r), r);
+                sendPending(pending);
+                if (!pending.isEmpty()) {
+                    Logs.warn("Coordinator: " + pending.size() + " report(s) not sent before shutdown");
+                }
+                break;
+            }
         }
     }
 
     /**
-     * Get status info for debugging
+     * Send each owning shard its slice of the pending reports in one POST.
+     * Delivered reports are removed from the map.
+     * @return true if at least one shard accepted its batch
      */
-    public String getStatus() {
-        return String.format("Coordinator{url=%s, available=%s, backoff=%dms}",
-                serverUrl, serverAvailable, backoff.getCurrentDelay());
+    private boolean sendPending(Map<String, String[]> pending) {
+        ConsistentHashRing<CoordinatorShard> current = ring;
+        Map<CoordinatorShard, List<String>> byShard = new LinkedHashMap<>();
+        for (Map.Entry<String, String[]> e : pending.entrySet()) {
+            CoordinatorShard owner = current.get(e.getValue()[0]);
+            if (owner != null) {
+                byShard.computeIfAbsent(owner, k -> new ArrayList<>()).add(e.getKey());
+            }
+        }
+
+        boolean sentAny = false;
+        for (Map.Entry<CoordinatorShard, List<String>> e : byShard.entrySet()) {
+            CoordinatorShard shard = e.getKey();
+            if (!shard.breaker.allowRequest()) continue;
+
+            try {
+                StringBuilder body = new StringBuilder();
+                for (String key : e.getValue()) {
+                    String[] r = pending.get(key);
+                    body.append("item=").append(URLEncoder.encode(r[0], "UTF-8"))
+                            .append("&account=").append(URLEncoder.encode(r[1], "UTF-8"))
+                            .append("&at=").append(r[2])
+                            .append('\n');
+                }
+                shard.post("/batch", body.toString());
+                shard.recordSuccess();
+
+                for (String key : e.getValue()) pending.remove(key);
+                reportsSent += e.getValue().size();
+                batchesSent++;
+                sentAny = true;
+                Logs.info("Coordinator: reported " + e.getValue().size() + " limit(s) to " + shard.url);
+
+            } catch (IOException ex) {
+                shard.recordFailure();
+                Logs.warn("Coordinator batch report to " + shard.url + " failed (" + e.getValue().size()
+                        + " queued): " + ex.getMessage());
+            }
+        }
+        return sentAny;
+    }
+
+    private static String reportKey(String[] report) {
+        return report[0].toLowerCase() + "|" + report[1].toLowerCase();
     }
 
     /**
-     * Check if a specific item is blocked by another bot
+     * Reports waiting to be sent (for status displays)
      */
-    public boolean isItemBlocked(String itemName) {
-        Set<String> blocked = getBlockedItems();
-        return blocked.contains(itemName);
+    public int getQueuedReports() {
+        return outbound.size();
     }
 
+    // === Item leases (routed to the item's shard) ===
+
     /**
-     * Get detailed info about who blocked which items
+     * Lease an item on the coordinator.
+     * @return fencing token, JsonCoordinator.NO_LEASE if another bot holds it,
+     *         or JsonCoordinator.UNCOORDINATED if the server can't be reached
      */
-    public Map<String, String> getBlockedItemsWithAccounts() {
-        Map<String, String> result = new HashMap<>();
-
+    public long claimItem(String item, String account, long durationMs) {
+        CoordinatorShard shard = ring.get(item);
+        if (shard == null || shard.breaker.isOpen()) return JsonCoordinator.UNCOORDINATED;
         try {
-            String response = httpGet(serverUrl + "/list");
-            // Parse: {"blocked":[{"item":"Maple logs","account":"Bot1"},...]}
+            return shard.lease("/claim?item=" + URLEncoder.encode(item, "UTF-8")
+                    + "&account=" + URLEncoder.encode(account, "UTF-8")
+                    + "&ttl=" + Math.max(1, durationMs / 1000));
+        } catch (IOException e) {
+            Logs.warn("claimItem failed: " + e.getMessage());
+            return JsonCoordinator.UNCOORDINATED;
+        }
+    }
 
-            String[] entries = response.split("\\{\"item\":");
-            for (int i = 1; i < entries.length; i++) {
-                String entry = entries[i];
+    /**
+     * @return false if the token is stale (someone else holds the item now).
+     *         Also false if the item moved to another shard - re-claim it.
+     */
+    public boolean renewLease(String item, String account, long token, long durationMs) {
+        if (token <= JsonCoordinator.NO_LEASE) return token == JsonCoordinator.UNCOORDINATED;
+        CoordinatorShard shard = ring.get(item);
+        if (shard == null) return true; // No cluster to take it from us
+        try {
+            return shard.lease("/renew?item=" + URLEncoder.encode(item, "UTF-8")
+                    + "&account=" + URLEncoder.encode(account, "UTF-8")
+                    + "&token=" + token + "&ttl=" + Math.max(1, durationMs / 1000)) == token;
+        } catch (IOException e) {
+            Logs.warn("renewLease failed: " + e.getMessage());
+            return true; // Server trouble isn't a takeover - keep working
+        }
+    }
 
-                // Extract item name
-                int itemStart = entry.indexOf("\"") + 1;
-                int itemEnd = entry.indexOf("\"", itemStart);
-                String item = entry.substring(itemStart, itemEnd);
+    public void releaseLease(String item, String account, long token) {
+        if (token <= JsonCoordinator.NO_LEASE) return;
+        CoordinatorShard shard = ring.get(item);
+        if (shard == null) return;
+        try {
+            shard.lease("/release?item=" + URLEncoder.encode(item, "UTF-8")
+                    + "&account=" + URLEncoder.encode(account, "UTF-8") + "&token=" + token);
+        } catch (IOException e) {
+            Logs.warn("releaseLease failed: " + e.getMessage());
+        }
+    }
 
-                // Extract account name
-                int accStart = entry.indexOf("\"account\":\"") + 11;
-                int accEnd = entry.indexOf("\"", accStart);
-                String account = entry.substring(accStart, accEnd);
+    // === Shared probe results (routed to the item's shard) ===
 
-                result.put(item, account);
-            }
-
-        } catch (Exception e) {
-            Logs.warn("getBlockedItemsWithAccounts failed: " + e.getMessage());
+    /**
+     * @return newest fleet probe for the item, or null if none or the shard is unreachable
+     */
+    public ProbeCache.ProbeResult getProbe(String item) {
+        CoordinatorShard shard = ring.get(item);
+        if (shard == null || shard.breaker.isOpen()) return null;
+        try {
+            String body = shard.getIfPresent("/probe/get?item=" + URLEncoder.encode(item, "UTF-8"));
+            if (body == null) return null;
+            CoordinatorShard.ProbeResponse p = gson.fromJson(body, CoordinatorShard.ProbeResponse.class);
+            return p != null ? new ProbeCache.ProbeResult(p.item, p.account, p.buy, p.sell, p.at) : null;
+        } catch (IOException | JsonSyntaxException e) {
+            Logs.warn("getProbe failed: " + e.getMessage());
+            return null;
         }
+    }
 
-        return result;
+    public void publishProbe(String item, String account, int buyPrice, int sellPrice) {
+        CoordinatorShard shard = ring.get(item);
+        if (shard == null || !shard.breaker.allowRequest()) return;
+        try {
+            shard.get("/probe/report?item=" + URLEncoder.encode(item, "UTF-8")
+                    + "&account=" + URLEncoder.encode(account, "UTF-8")
+                    + "&buy=" + buyPrice + "&sell=" + sellPrice
+                    + "&at=" + System.currentTimeMillis());
+            shard.recordSuccess();
+        } catch (IOException e) {
+            shard.recordFailure();
+            Logs.warn("publishProbe failed: " + e.getMessage());
+        }
     }
 
-    // === HTTP helpers ===
+    // === Fleet scheduler (first shard) ===
 
-    private String httpGet(String urlStr) throws IOException {
-        URL url = new URL(urlStr);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setRequestMethod("GET");
-        conn.setConnectTimeout(5000);
-        conn.setReadTimeout(5000);
-        conn.setRequestProperty("User-Agent", "Viktor-Bot/1.0");
+    /**
+     * Send this bot's capital, slots and candidate items to the scheduler.
+     * @return the items assigned to this bot, best first, or null if the scheduler can't be reached
+     */
+    public List<AssignmentSolver.Assignment> reportBotState(AssignmentSolver.BotState state) {
+        CoordinatorShard shard = shards.isEmpty() ? null : shards.get(0);
+        if (shard == null || !shard.breaker.allowRequest()) return null;
 
-        int responseCode = conn.getResponseCode();
-        if (responseCode != 200) {
-            throw new IOException("HTTP " + responseCode + " from coordinator");
+        try {
+            StringBuilder body = new StringBuilder();
+            body.append("account=").append(URLEncoder.encode(state.account, "UTF-8"))
+                    .append("&capital=").append(state.freeCapital)
+                    .append("&slots=").append(state.freeSlots)
+                    .append('\n');
+            for (AssignmentSolver.Candidate c : state.candidates) {
+                body.append("item=").append(URLEncoder.encode(c.item, "UTF-8"))
+                        .append("&price=").append(c.price)
+                        .append("&margin=").append(c.margin)
+                        .append("&liquidity=").append(c.liquidity)
+                        .append("&remaining=").append(c.remaining)
+                        .append('\n');
+            }
+            List<AssignmentSolver.Assignment> result = parseAssignments(shard.post("/state", body.toString()));
+            shard.recordSuccess();
+            return result;
+        } catch (IOException | JsonSyntaxException e) {
+            shard.recordFailure();
+            Logs.warn("reportBotState failed: " + e.getMessage());
+            return null;
         }
+    }
 
-        BufferedReader in = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-        StringBuilder response = new StringBuilder();
-        String line;
-        while ((line = in.readLine()) != null) {
-            response.append(line);
-        }
-        in.close();
-        conn.disconnect();
+    /**
+     * reportBotState() on the scheduler thread. Returns immediately; the
+     * answer shows up in getLastAssignments().
+     */
+    public void reportBotStateAsync(AssignmentSolver.BotState state) {
+        schedulerExecutor.execute(() -> lastAssignments = reportBotState(state));
+    }
 
-        return response.toString();
+    /**
+     * @return assignments from the last reportBotStateAsync() answer, or null
+     *         if there's none yet or the scheduler couldn't be reached
+     */
+    public List<AssignmentSolver.Assignment> getLastAssignments() {
+        return lastAssignments;
     }
 
-    private Set<String> parseBlockedItems(String json) {
-        Set<String> items = new HashSet<>();
+    /**
+     * @return the scheduler's current items for the account, or null if it can't be reached
+     */
+    public List<AssignmentSolver.Assignment> getAssignments(String account) {
+        CoordinatorShard shard = shards.isEmpty() ? null : shards.get(0);
+        if (shard == null || shard.breaker.isOpen()) return null;
+
         try {
-            // Simple parse: {"blocked":[{"item":"Maple logs","account":"Bot1"},...]}
-            String[] parts = json.split("\"item\":\"");
-            for (int i = 1; i < parts.length; i++) {
-                String item = parts[i].split("\"")[0];
-                items.add(item);
+            return parseAssignments(shard.get("/assignments?account=" + URLEncoder.encode(account, "UTF-8")));
+        } catch (IOException | JsonSyntaxException e) {
+            Logs.warn("getAssignments failed: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private List<AssignmentSolver.Assignment> parseAssignments(String body) {
+        CoordinatorShard.AssignmentsResponse response = gson.fromJson(body, CoordinatorShard.AssignmentsResponse.class);
+        List<AssignmentSolver.Assignment> result = new ArrayList<>();
+        if (response != null && response.assignments != null) {
+            for (CoordinatorShard.AssignmentEntry a : response.assignments) {
+                result.add(new AssignmentSolver.Assignment(a.item, a.qty, a.expectedProfit));
             }
-        } catch (Exception e) {
-            Logs.warn("JSON parse error: " + e.getMessage());
         }
-        return items;
+        return result;
+    }
+
+    /**
+     * This client as a ProbeCache publishing under the given account
+     */
+    public ProbeCache probeCache(String account) {
+        return new ProbeCache() {
+            @Override
+            public ProbeCache.ProbeResult getProbe(String itemName) {
+                return CoordinatorClient.this.getProbe(itemName);
+            }
+
+            @Override
+            public void publishProbe(String itemName, int buyPrice, int sellPrice) {
+                CoordinatorClient.this.publishProbe(itemName, account, buyPrice, sellPrice);
+            }
+        };
     }
 
     // === Getters ===
@@ -200,7 +593,19 @@ public class CoordinatorClient {
         return serverAvailable;
     }
 
+    public boolean isSubscriptionLive() {
+        return anyReplicaLive();
+    }
+
     public String getServerUrl() {
         return serverUrl;
     }
+
+    /**
+     * @return shard URL that owns the item, or null if no shard is up
+     */
+    public String getOwner(String item) {
+        CoordinatorShard shard = ring.get(item);
+        return shard != null ? shard.url : null;
+    }
 }
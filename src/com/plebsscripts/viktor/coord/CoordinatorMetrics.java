@@ -0,0 +1,167 @@
+package com.plebsscripts.viktor.coord;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Request metrics for CoordinatorServer, rendered in the Prometheus text
+ * exposition format by /metrics.
+ *
+ * Recording is lock-free: counters are LongAdders and each endpoint has a
+ * LatencyHistogram with 2 sub-bits (every power of two split into 4
+ * buckets, so any value is within 25% of its bucket bound). Scrapes export
+ * the power-of-two bounds as cumulative le buckets; the sub-buckets are
+ * used for the quantiles in /stats.
+ *
+ * Latency is measured from the moment a request is parsed until its
+ * response is handed back, so it includes time waiting for a worker - and,
+ * for /subscribe, the long-poll hold.
+ */
+final class CoordinatorMetrics {
+    private static final int SUB_BITS = 2;
+    private static final int EXPORT_MIN_EXPONENT = 6;                 // 64us
+    private static final int EXPORT_MAX_EXPONENT = 26;                // 67s
+    private static final int MAX_ACCOUNTS = 1000;                     // Label cardinality cap
+
+    private static final String[] ENDPOINTS = {
+            "/report", "/batch", "/list", "/subscribe", "/health", "/stats", "/metrics", "/clear",
+            "/claim", "/renew", "/release", "/leases", "/probe/report", "/probe/get", "/state", "/assignments"
+    };
+
+    private static final class Endpoint {
+        final LongAdder requests = new LongAdder();
+        final LongAdder errors = new LongAdder();   // 4xx and 5xx
+        final LatencyHistogram latency = new LatencyHistogram(SUB_BITS);
+    }
+
+    private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> reportsByAccount = new ConcurrentHashMap<>();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder accountsDropped = new LongAdder();
+
+    CoordinatorMetrics() {
+        for (String path : ENDPOINTS) {
+            endpoints.put(path, new Endpoint());
+        }
+        endpoints.put("other", new Endpoint());
+    }
+
+    /**
+     * One answered request.
+     */
+    void record(String path, int status, long latencyNanos) {
+        Endpoint e = endpoints.get(path);
+        if (e == null) e = endpoints.get("other"); // Unknown paths share one label
+        e.requests.increment();
+        if (status >= 400) e.errors.increment();
+        e.latency.record(latencyNanos / 1000);
+    }
+
+    /**
+     * A request turned away with 503 because the worker queue was full.
+     */
+    void recordRejected() {
+        rejected.increment();
+    }
+
+    void recordReports(String account, int count) {
+        LongAdder adder = reportsByAccount.get(account);
+        if (adder == null) {
+            if (reportsByAccount.size() >= MAX_ACCOUNTS) {
+                accountsDropped.add(count);
+                return;
+            }
+            adder = reportsByAccount.computeIfAbsent(account, k -> new LongAdder());
+        }
+        adder.add(count);
+    }
+
+    LatencyHistogram latency(String path) {
+        Endpoint e = endpoints.get(path);
+        return e != null ? e.latency : endpoints.get("other").latency;
+    }
+
+    /**
+     * Counters and histograms; the server appends its gauges after this.
+     */
+    void render(StringBuilder out) {
+        Map<String, Endpoint> sorted = new TreeMap<>(endpoints);
+
+        header(out, "viktor_coordinator_requests_total", "Requests answered, by endpoint", "counter");
+        for (Map.Entry<String, Endpoint> e : sorted.entrySet()) {
+            sample(out, "viktor_coordinator_requests_total", "endpoint", e.getKey(), e.getValue().requests.sum());
+        }
+
+        header(out, "viktor_coordinator_request_errors_total", "Requests answered with 4xx/5xx, by endpoint", "counter");
+        for (Map.Entry<String, Endpoint> e : sorted.entrySet()) {
+            sample(out, "viktor_coordinator_request_errors_total", "endpoint", e.getKey(), e.getValue().errors.sum());
+        }
+
+        header(out, "viktor_coordinator_requests_rejected_total", "Requests refused with 503 (worker queue full)", "counter");
+        out.append("viktor_coordinator_requests_rejected_total ").append(rejected.sum()).append('\n');
+
+        header(out, "viktor_coordinator_request_duration_seconds", "Time from request parsed to response ready", "histogram");
+        for (Map.Entry<String, Endpoint> e : sorted.entrySet()) {
+            renderHistogram(out, "viktor_coordinator_request_duration_seconds", e.getKey(), e.getValue().latency);
+        }
+
+        header(out, "viktor_coordinator_limit_reports_total", "Limit reports received, by account", "counter");
+        for (Map.Entry<String, LongAdder> e : new TreeMap<>(reportsByAccount).entrySet()) {
+            sample(out, "viktor_coordinator_limit_reports_total", "account", e.getKey(), e.getValue().sum());
+        }
+        header(out, "viktor_coordinator_limit_reports_unlabeled_total",
+                "Limit reports from accounts past the label cap", "counter");
+        out.append("viktor_coordinator_limit_reports_unlabeled_total ").append(accountsDropped.sum()).append('\n');
+    }
+
+    private static void renderHistogram(StringBuilder out, String name, String endpoint, LatencyHistogram h) {
+        long[] snapshot = h.snapshot();
+        String label = "endpoint=\"" + escape(endpoint) + "\"";
+
+        // Bucket i is below 2^e exactly when i < index(2^e)
+        long cumulative = 0;
+        int i = 0;
+        for (int e = EXPORT_MIN_EXPONENT; e <= EXPORT_MAX_EXPONENT; e++) {
+            int limit = h.index(1L << e);
+            while (i < limit) cumulative += snapshot[i++];
+            out.append(name).append("_bucket{").append(label).append(",le=\"")
+                    .append(seconds(1L << e)).append("\"} ").append(cumulative).append('\n');
+        }
+        while (i < snapshot.length) cumulative += snapshot[i++];
+        out.append(name).append("_bucket{").append(label).append(",le=\"+Inf\"} ").append(cumulative).append('\n');
+        out.append(name).append("_sum{").append(label).append("} ").append(seconds(h.sumMicros())).append('\n');
+        // Count from the buckets so it always matches +Inf within one scrape
+        out.append(name).append("_count{").append(label).append("} ").append(cumulative).append('\n');
+    }
+
+    static void header(StringBuilder out, String name, String help, String type) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    static void gauge(StringBuilder out, String name, String help, double value) {
+        header(out, name, help, "gauge");
+        out.append(name).append(' ');
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String label, String value, long count) {
+        out.append(name).append('{').append(label).append("=\"").append(escape(value)).append("\"} ")
+                .append(count).append('\n');
+    }
+
+    private static String seconds(long micros) {
+        return Double.toString(micros / 1_000_000.0);
+    }
+
+    private static String escape(String s) {
+        return s.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -3,26 +3,130 @@ package com.plebsscripts.viktor.coord;
 import com.plebsscripts.viktor.util.Logs;
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Lightweight HTTP server that tracks which bots hit limits on which items.
  * When Bot A hits 4h limit on "Maple logs", Bot B can query and take over.
  *
- * Run standalone: java CoordinatorServer [port]
- * Default port: 8888
+ * One selector thread owns every socket (non-blocking NIO) and speaks
+ * HTTP/1.1 with keep-alive, so hundreds of bots can hold connections open
+ * without a thread each. Parsed requests go to a small worker pool through
+ * a bounded queue; when that queue is full the request gets a 503 right
+ * away instead of stalling everyone behind it. A connection has at most one
+ * request in flight - pipelined requests wait in its read buffer.
+ *
+ * Every change to the limits map is journaled with a version number.
+ * /subscribe?since=<version> long-polls: it answers as soon as there are
+ * newer events (or after the timeout with none), which lets clients keep a
+ * live local replica without re-downloading the list. /list?since=<version>
+ * is the non-blocking form for clients that poll.
+ *
+ * /claim, /renew and /release hand out item leases with fencing tokens so
+ * two bots don't work the same order book. Tokens start from the server's
+ * start time (x1000) and only go up, so they stay monotonic across
+ * restarts without being persisted; leases themselves are short-lived and
+ * simply re-claimed after a restart.
+ *
+ * /probe/report and /probe/get share margin probe results (newest per item,
+ * kept 2h, in memory only) so one bot's probe saves the rest of the fleet
+ * from paying for the same one.
+ *
+ * POST /state and /assignments run a fleet scheduler (AssignmentSolver):
+ * bots report free capital, free slots and their candidate items, and the
+ * server splits the items between them so the best ones are all covered
+ * once. It re-solves only after a state report, limit, lease or bot
+ * timeout changed something. In a sharded cluster bots send their state to
+ * the first shard only, which schedules for the whole fleet.
+ *
+ * /metrics serves CoordinatorMetrics (per-endpoint counts and latency
+ * histograms, reports per account) plus state gauges in the Prometheus
+ * text format.
+ *
+ * With a data directory, reports and clears go through CoordinatorWal
+ * (fsync'd before the response is sent) and are recovered on restart, so
+ * the fleet doesn't lose its active 4h blocks when the server bounces.
+ *
+ * Several servers can run side by side as shards of one cluster: give
+ * CoordinatorClient all their URLs and it partitions items between them.
+ * Each shard needs its own port and data dir.
+ *
+ * Run standalone: java CoordinatorServer [port] [dataDir]
+ * Default port: 8888, default data dir: coordinator-data
  */
 public class CoordinatorServer implements Runnable {
+    private static final int WORKER_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private static final int WORKER_QUEUE_CAPACITY = 1024;
+    private static final int MAX_CONNECTIONS = 4096;
+    private static final long IDLE_TIMEOUT_MS = 30_000;
+    private static final int READ_BUFFER_BYTES = 4096;
+
+    private static final long LIMIT_TTL_MS = 4 * 60 * 60 * 1000 + 5 * 60 * 1000; // 4h + 5min buffer
+    private static final int JOURNAL_CAPACITY = 10_000;
+    private static final long DEFAULT_SUBSCRIBE_TIMEOUT_S = 25;
+    private static final long MAX_SUBSCRIBE_TIMEOUT_S = 60;
+    private static final long LIST_CACHE_MS = 1000;
+    private static final long DEFAULT_LEASE_MS = 10 * 60 * 1000;
+    private static final long MAX_LEASE_MS = 60 * 60 * 1000;
+    private static final long CHECKPOINT_RECORDS = 10_000;
+    private static final long CHECKPOINT_INTERVAL_MS = 5 * 60 * 1000;
+
     private final int port;
     private final Map<String, LimitEntry> limits = new ConcurrentHashMap<>();
     private volatile boolean running = true;
     private long startTime;
-    private int totalRequests = 0;
+    private final AtomicLong totalRequests = new AtomicLong();
+    private final CoordinatorMetrics metrics = new CoordinatorMetrics();
+
+    // Guards limits mutations, the journal and parked subscribers together
+    private final LimitJournal journal = new LimitJournal(JOURNAL_CAPACITY);
+    private final List<Subscriber> subscribers = new ArrayList<>();
+    private HttpResponse cachedList;
+    private long cachedListVersion = -1;
+    private long cachedListAt = 0;
+    private ScheduledExecutorService sweeper;
+
+    // Item leases keyed by lowercase item; guarded by itself
+    private final Map<String, Lease> leases = new HashMap<>();
+    private long lastLeaseToken;
+
+    // Newest probe result per lowercase item; guarded by itself
+    private final Map<String, Probe> probes = new HashMap<>();
+    private static final long PROBE_RETENTION_MS = 2L * 60 * 60 * 1000;
+
+    // Fleet scheduler: bot states keyed by lowercase account, guarded by the solver
+    private final AssignmentSolver solver = new AssignmentSolver();
+    private final Map<String, AssignmentSolver.BotState> botStates = new HashMap<>();
+    private volatile boolean assignmentsDirty = false;
+    private static final long BOT_STATE_TTL_MS = 2 * 60 * 1000;
+
+    private final File dataDir;   // null = in-memory only
+    private CoordinatorWal wal;
+    private long lastCheckpoint = 0;
+
+    private volatile Selector selector;
+    private ThreadPoolExecutor workers;
+    private final Queue<Runnable> selectorTasks = new ConcurrentLinkedQueue<>();
+    private volatile int openConnections = 0; // Written by the selector thread only
 
     public CoordinatorServer(int port) {
+        this(port, null);
+    }
+
+    /**
+     * @param dataDir where to keep the WAL and snapshots, or null to keep
+     *                limits in memory only
+     */
+    public CoordinatorServer(int port, File dataDir) {
         this.port = port;
+        this.dataDir = dataDir;
         this.startTime = System.currentTimeMillis();
+        this.lastLeaseToken = startTime * 1000;
     }
 
     public void start() {
@@ -33,119 +137,469 @@ public class CoordinatorServer implements Runnable {
 
     public void stop() {
         running = false;
+        Selector sel = selector;
+        if (sel != null) {
+            sel.wakeup();
+        }
         Logs.info("CoordinatorServer stopping...");
     }
 
     @Override
     public void run() {
-        ServerSocket server = null;
-        try {
-            server = new ServerSocket(port);
-            Logs.info("Coordinator listening on port " + port);
-            Logs.info("Endpoints: /report, /list, /health, /stats");
+        if (dataDir != null) {
+            recover();
+        }
+
+        AtomicInteger workerIds = new AtomicInteger(1);
+        workers = new ThreadPoolExecutor(WORKER_THREADS, WORKER_THREADS, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(WORKER_QUEUE_CAPACITY), r -> {
+                    Thread t = new Thread(r, "CoordinatorServer-worker-" + workerIds.getAndIncrement());
+                    t.setDaemon(true);
+                    return t;
+                });
+
+        try (Selector sel = Selector.open();
+             ServerSocketChannel server = ServerSocketChannel.open()) {
+
+            server.bind(new InetSocketAddress(port), 1024);
+            server.configureBlocking(false);
+            server.register(sel, SelectionKey.OP_ACCEPT);
+            selector = sel;
+
+            Logs.info("Coordinator listening on port " + port + " (" + WORKER_THREADS + " workers)");
+            Logs.info("Endpoints: /report, /batch, /list, /subscribe, /claim, /renew, /release, /leases, /probe/report, /probe/get, /state, /assignments, /health, /stats, /metrics");
+
+            sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "CoordinatorServer-sweeper");
+                t.setDaemon(true);
+                return t;
+            });
+            sweeper.scheduleWithFixedDelay(this::sweep, 1, 1, TimeUnit.SECONDS);
+
+            long lastSweep = System.currentTimeMillis();
 
             while (running) {
-                try {
-                    Socket client = server.accept();
-                    // Handle in same thread (simple for now, could use thread pool)
-                    handleClient(client);
-                } catch (SocketException e) {
-                    if (running) {
-                        Logs.warn("Socket error: " + e.getMessage());
-                    }
-                } catch (Exception e) {
-                    if (running) {
-                        Logs.warn("Client error: " + e.getMessage());
+                sel.select(1000);
+
+                Runnable task;
+                while ((task = selectorTasks.poll()) != null) {
+                    task.run();
+                }
+
+                Iterator<SelectionKey> keys = sel.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    try {
+                        if (!key.isValid()) continue;
+
+                        if (key.isAcceptable()) {
+                            accept(server, sel);
+                        } else {
+                            Connection conn = (Connection) key.attachment();
+                            if (key.isReadable()) conn.onReadable();
+                            if (key.isValid() && key.isWritable()) conn.onWritable();
+                        }
+                    } catch (IOException | CancelledKeyException e) {
+                        if (key.attachment() instanceof Connection) {
+                            ((Connection) key.attachment()).close();
+                        }
                     }
                 }
+
+                long now = System.currentTimeMillis();
+                if (now - lastSweep >= 1000) {
+                    closeIdle(sel, now);
+                    lastSweep = now;
+                }
             }
         } catch (IOException e) {
             Logs.error("Server error: " + e.getMessage());
         } finally {
-            if (server != null && !server.isClosed()) {
-                try {
-                    server.close();
-                    Logs.info("Server socket closed");
-                } catch (IOException ignored) {}
+            workers.shutdownNow();
+            if (sweeper != null) {
+                sweeper.shutdownNow();
+            }
+            if (wal != null) {
+                wal.close();
             }
+            Logs.info("Server socket closed");
         }
     }
 
-    private void handleClient(Socket client) {
-        totalRequests++;
+    // ===== Connection handling (selector thread) =====
 
-        try (BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream()));
-             PrintWriter out = new PrintWriter(client.getOutputStream(), true)) {
+    private void accept(ServerSocketChannel server, Selector sel) throws IOException {
+        SocketChannel ch;
+        while ((ch = server.accept()) != null) {
+            if (openConnections >= MAX_CONNECTIONS) {
+                Logs.warn("Connection limit reached (" + MAX_CONNECTIONS + "), refusing client");
+                ch.close();
+                continue;
+            }
+            ch.configureBlocking(false);
+            ch.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            SelectionKey key = ch.register(sel, SelectionKey.OP_READ);
+            key.attach(new Connection(ch, key));
+            openConnections++;
+        }
+    }
+
+    private void closeIdle(Selector sel, long now) {
+        for (SelectionKey key : sel.keys()) {
+            Object att = key.attachment();
+            if (att instanceof Connection) {
+                Connection conn = (Connection) att;
+                if (!conn.busy && now - conn.lastActive > IDLE_TIMEOUT_MS) {
+                    conn.close();
+                }
+            }
+        }
+    }
 
-            String line = in.readLine();
-            if (line == null) return;
+    /**
+     * Hand a response back to the selector thread (called from workers)
+     */
+    private void complete(Connection conn, HttpResponse response, boolean keepAlive) {
+        selectorTasks.add(() -> conn.send(response, keepAlive));
+        Selector sel = selector;
+        if (sel != null) {
+            sel.wakeup();
+        }
+    }
+
+    /**
+     * Per-socket state. Only touched on the selector thread.
+     */
+    private final class Connection {
+        final SocketChannel channel;
+        final SelectionKey key;
+        ByteBuffer in = ByteBuffer.allocate(READ_BUFFER_BYTES);
+        ByteBuffer out;
+        boolean busy;             // A request is with the workers
+        boolean closeAfterWrite;
+        boolean closed;
+        long lastActive = System.currentTimeMillis();
+
+        Connection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
 
-            // Log request
-            String clientIP = client.getInetAddress().getHostAddress();
-            Logs.info("Request from " + clientIP + ": " + line);
+        void onReadable() throws IOException {
+            if (!in.hasRemaining()) {
+                int max = HttpRequest.MAX_HEADER_BYTES + HttpRequest.MAX_BODY_BYTES;
+                if (in.capacity() >= max) {
+                    send(HttpResponse.error(413, "Request too large"), false);
+                    return;
+                }
+                ByteBuffer bigger = ByteBuffer.allocate(Math.min(max, in.capacity() * 2));
+                in.flip();
+                bigger.put(in);
+                in = bigger;
+            }
+
+            int n = channel.read(in);
+            if (n < 0) {
+                close();
+                return;
+            }
+            lastActive = System.currentTimeMillis();
+            processBuffered();
+        }
 
-            // Route to handlers
-            if (line.startsWith("GET /report") || line.startsWith("GET /blocked")) {
-                handleReport(line, out);
+        void onWritable() throws IOException {
+            channel.write(out);
+            if (!out.hasRemaining()) {
+                finishWrite();
+            }
+        }
 
-            } else if (line.startsWith("GET /list")) {
-                handleList(out);
+        /**
+         * Parse the next buffered request (if any) and dispatch it
+         */
+        void processBuffered() {
+            if (busy || out != null || closed) return;
 
-            } else if (line.startsWith("GET /health")) {
-                handleHealth(out);
+            HttpRequest req;
+            in.flip();
+            try {
+                req = HttpRequest.tryParse(in);
+            } catch (HttpRequest.BadRequest e) {
+                in.clear();
+                send(HttpResponse.error(e.status, e.getMessage()), false);
+                return;
+            }
+            in.compact();
 
-            } else if (line.startsWith("GET /stats")) {
-                handleStats(out);
+            if (req == null) return;
 
-            } else if (line.startsWith("GET /clear")) {
-                handleClear(out);
+            busy = true;
+            key.interestOps(0); // Backpressure: don't read more until this one is answered
 
-            } else {
-                out.println("HTTP/1.1 404 Not Found\r\nContent-Type: application/json\r\n\r\n{\"error\":\"Unknown endpoint\"}");
+            final HttpRequest request = req;
+            final long parsedAt = System.nanoTime();
+            final Responder responder = response -> {
+                metrics.record(request.path, response.status, System.nanoTime() - parsedAt);
+                complete(this, response, request.keepAlive);
+            };
+            try {
+                workers.execute(() -> {
+                    HttpResponse response;
+                    try {
+                        response = route(request, responder);
+                    } catch (Exception e) {
+                        Logs.warn("Handler error: " + e.getMessage());
+                        response = HttpResponse.error(500, "Internal error");
+                    }
+                    if (response != null) {
+                        responder.respond(response);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                metrics.recordRejected();
+                send(HttpResponse.error(503, "Server busy"), request.keepAlive);
             }
+        }
 
-        } catch (Exception e) {
-            Logs.warn("handleClient error: " + e.getMessage());
-        } finally {
-            try { client.close(); } catch (IOException ignored) {}
+        void send(HttpResponse response, boolean keepAlive) {
+            if (closed) return;
+
+            busy = true;
+            out = response.encode(keepAlive);
+            closeAfterWrite = !keepAlive;
+
+            try {
+                channel.write(out);
+                if (out.hasRemaining()) {
+                    key.interestOps(SelectionKey.OP_WRITE);
+                } else {
+                    finishWrite();
+                }
+            } catch (IOException | CancelledKeyException e) {
+                close();
+            }
+        }
+
+        private void finishWrite() {
+            out = null;
+            busy = false;
+            lastActive = System.currentTimeMillis();
+
+            if (closeAfterWrite) {
+                close();
+                return;
+            }
+            key.interestOps(SelectionKey.OP_READ);
+            processBuffered(); // Pipelined request already waiting?
+        }
+
+        void close() {
+            if (closed) return;
+            closed = true;
+            openConnections--;
+            key.cancel();
+            try { channel.close(); } catch (IOException ignored) {}
         }
     }
 
-    private void handleReport(String line, PrintWriter out) {
-        String[] parts = line.split(" ");
-        if (parts.length < 2 || !parts[1].contains("?")) {
-            out.println("HTTP/1.1 400 Bad Request\r\nContent-Type: application/json\r\n\r\n{\"error\":\"Missing query params\"}");
-            return;
+    // ===== Routing (worker threads) =====
+
+    /**
+     * Sends the response for one request. Handlers that return null keep
+     * the responder and call it later (long-poll).
+     */
+    private interface Responder {
+        void respond(HttpResponse response);
+    }
+
+    private HttpResponse route(HttpRequest req, Responder responder) {
+        totalRequests.incrementAndGet();
+        Logs.debug("Request: " + req.method + " " + req.path);
+
+        // Everything is GET except the batch and bot state uploads
+        boolean upload = req.path.equals("/batch") || req.path.equals("/state");
+        if (!req.method.equals(upload ? "POST" : "GET")) {
+            return HttpResponse.error(405, "Method not allowed");
+        }
+
+        switch (req.path) {
+            case "/report":
+            case "/blocked":
+                return handleReport(req);
+            case "/batch":
+                return handleBatch(req);
+            case "/list":
+                return handleList(req);
+            case "/subscribe":
+                return handleSubscribe(req, responder);
+            case "/health":
+                return handleHealth();
+            case "/stats":
+                return handleStats();
+            case "/metrics":
+                return handleMetrics();
+            case "/clear":
+                return handleClear();
+            case "/claim":
+                return handleClaim(req);
+            case "/renew":
+                return handleRenew(req);
+            case "/release":
+                return handleRelease(req);
+            case "/leases":
+                return handleLeases();
+            case "/probe/report":
+                return handleProbeReport(req);
+            case "/probe/get":
+                return handleProbeGet(req);
+            case "/state":
+                return handleBotState(req);
+            case "/assignments":
+                return handleAssignments(req);
+            default:
+                return HttpResponse.error(404, "Unknown endpoint");
         }
+    }
 
-        String query = parts[1].split("\\?")[1];
-        Map<String, String> params = parseQuery(query);
-        String item = params.get("item");
-        String account = params.get("account");
+    private HttpResponse handleReport(HttpRequest req) {
+        String item = req.param("item");
+        String account = req.param("account");
 
         if (item != null && account != null) {
-            limits.put(item, new LimitEntry(account, System.currentTimeMillis()));
-            out.println("HTTP/1.1 200 OK\r\nContent-Type: application/json\r\n\r\n{\"status\":\"recorded\"}");
+            long seq;
+            synchronized (journal) {
+                seq = recordLimit(item, account, System.currentTimeMillis());
+                wakeSubscribers();
+            }
+            if (wal != null && !wal.awaitDurable(seq)) {
+                Logs.warn("Report for " + item + " not persisted");
+            }
+            metrics.recordReports(account, 1);
             Logs.info("Recorded: " + account + " blocked on " + item);
+            return HttpResponse.json("{\"status\":\"recorded\"}");
+        } else if (req.query.isEmpty()) {
+            return HttpResponse.error(400, "Missing query params");
         } else {
-            out.println("HTTP/1.1 400 Bad Request\r\nContent-Type: application/json\r\n\r\n{\"error\":\"Missing item or account\"}");
+            return HttpResponse.error(400, "Missing item or account");
         }
     }
 
-    private void handleList(PrintWriter out) {
-        StringBuilder json = new StringBuilder("{\"blocked\":[");
-        boolean first = true;
+    /**
+     * POST /batch - several reports in one request, one per line:
+     *   item=Maple%20logs&account=Bot1[&at=<epoch ms>]
+     * Applied under one lock with a single WAL wait. Lines missing either
+     * field are skipped and counted.
+     *
+     * at is the original report time, sent when a client re-reports its
+     * limits to a new owner after the shard ring changed. Such a line never
+     * replaces a newer entry and is dropped if it has already expired.
+     */
+    private HttpResponse handleBatch(HttpRequest req) {
+        int recorded = 0;
+        int skipped = 0;
+        long seq = 0;
+
+        synchronized (journal) {
+            long now = System.currentTimeMillis();
+            for (String line : req.body.split("\n")) {
+                line = line.trim();
+                if (line.isEmpty()) continue;
+
+                Map<String, String> params = HttpRequest.parseQuery(line);
+                String item = params.get("item");
+                String account = params.get("account");
+                if (item == null || account == null || item.isEmpty() || account.isEmpty()) {
+                    skipped++;
+                    continue;
+                }
+
+                long at = Math.min(now, parseLong(params.get("at"), now));
+                LimitEntry existing = limits.get(item);
+                if (now - at > LIMIT_TTL_MS || (existing != null && existing.timestamp >= at)) {
+                    continue; // Expired, or we already know a newer one
+                }
+                seq = recordLimit(item, account, at);
+                metrics.recordReports(account, 1);
+                recorded++;
+            }
+            if (recorded > 0) {
+                wakeSubscribers();
+            }
+        }
+
+        if (wal != null && recorded > 0 && !wal.awaitDurable(seq)) {
+            Logs.warn("Batch of " + recorded + " reports not persisted");
+        }
+        if (recorded > 0) {
+            Logs.info("Recorded batch: " + recorded + " limits" + (skipped > 0 ? " (" + skipped + " bad lines)" : ""));
+        }
+        return HttpResponse.json("{\"status\":\"recorded\",\"count\":" + recorded + ",\"skipped\":" + skipped + "}");
+    }
+
+    /**
+     * Must hold journal lock. Callers wake subscribers once they're done.
+     * @return WAL sequence to wait for (0 without persistence)
+     */
+    private long recordLimit(String item, String account, long now) {
+        limits.put(item, new LimitEntry(account, now));
+        assignmentsDirty = true;
+        journal.append(true, item, account, now + LIMIT_TTL_MS);
+        return wal != null ? wal.logReport(item, account, now) : 0;
+    }
+
+    /**
+     * Full list, or with since=<version> only what changed after it
+     * (same shape as /subscribe, but never waits).
+     *
+     * The full body is cached per journal version; ages are at most
+     * LIST_CACHE_MS stale.
+     */
+    private HttpResponse handleList(HttpRequest req) {
+        String since = req.param("since");
+        if (since != null) {
+            synchronized (journal) {
+                return eventsSince(parseLong(since, -1), true);
+            }
+        }
 
         long now = System.currentTimeMillis();
-        Iterator<Map.Entry<String, LimitEntry>> it = limits.entrySet().iterator();
+        synchronized (journal) {
+            if (cachedList != null && cachedListVersion == journal.version() && now - cachedListAt < LIST_CACHE_MS) {
+                return cachedList;
+            }
 
-        while (it.hasNext()) {
-            Map.Entry<String, LimitEntry> e = it.next();
+            cachedList = HttpResponse.json(listJson(now));
+            cachedListVersion = journal.version();
+            cachedListAt = now;
+            return cachedList;
+        }
+    }
 
-            // Remove stale entries (4h + 5min buffer)
+    /**
+     * The full /list body, built fresh (no cache). Public for bench.HotPathBench.
+     */
+    public String renderList() {
+        synchronized (journal) {
+            return listJson(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Must hold journal lock.
+     */
+    private String listJson(long now) {
+        StringBuilder json = new StringBuilder(64 + limits.size() * 64)
+                .append("{\"version\":").append(journal.version())
+                .append(",\"epoch\":").append(startTime)
+                .append(",\"blocked\":[");
+        boolean first = true;
+
+        for (Map.Entry<String, LimitEntry> e : limits.entrySet()) {
+            // Skip stale entries (the sweeper removes and journals them)
             long age = now - e.getValue().timestamp;
-            if (age > (4 * 60 * 60 * 1000 + 5 * 60 * 1000)) {
-                it.remove();
+            if (age > LIMIT_TTL_MS) {
                 continue;
             }
 
@@ -157,25 +611,44 @@ public class CoordinatorServer implements Runnable {
             first = false;
         }
 
-        json.append("]}");
-        out.println("HTTP/1.1 200 OK\r\nContent-Type: application/json\r\n\r\n" + json.toString());
+        return json.append("]}").toString();
     }
 
-    private void handleHealth(PrintWriter out) {
+    private HttpResponse handleHealth() {
         long uptime = System.currentTimeMillis() - startTime;
         String response = String.format("{\"status\":\"ok\",\"blockedCount\":%d,\"uptimeSeconds\":%d}",
                 limits.size(), uptime / 1000);
-        out.println("HTTP/1.1 200 OK\r\nContent-Type: application/json\r\n\r\n" + response);
+        return HttpResponse.json(response);
     }
 
-    private void handleStats(PrintWriter out) {
+    private HttpResponse handleStats() {
         long uptime = System.currentTimeMillis() - startTime;
 
         // Build detailed stats
         StringBuilder json = new StringBuilder("{");
         json.append("\"uptime\":").append(uptime / 1000).append(",");
-        json.append("\"totalRequests\":").append(totalRequests).append(",");
+        json.append("\"totalRequests\":").append(totalRequests.get()).append(",");
+        json.append("\"queuedRequests\":").append(workers.getQueue().size()).append(",");
         json.append("\"blockedItems\":").append(limits.size()).append(",");
+        json.append("\"persistence\":\"").append(wal != null ? escapeJson(wal.getStats()) : "off").append("\",");
+        json.append("\"latencyMicros\":{");
+        String[] watched = {"/report", "/batch", "/list", "/claim"};
+        for (int i = 0; i < watched.length; i++) {
+            LatencyHistogram h = metrics.latency(watched[i]);
+            if (i > 0) json.append(",");
+            json.append("\"").append(watched[i]).append("\":{\"count\":").append(h.count())
+                    .append(",\"p50\":").append(h.quantile(0.5))
+                    .append(",\"p99\":").append(h.quantile(0.99))
+                    .append("}");
+        }
+        json.append("},");
+        synchronized (solver) {
+            json.append("\"scheduler\":{\"bots\":").append(botStates.size())
+                    .append(",\"assignedItems\":").append(solver.assignedItems())
+                    .append(",\"version\":").append(solver.getVersion())
+                    .append(",\"lastSolveMicros\":").append(solver.getLastSolveMicros())
+                    .append("},");
+        }
         json.append("\"items\":[");
 
         boolean first = true;
@@ -190,32 +663,537 @@ public class CoordinatorServer implements Runnable {
         }
 
         json.append("]}");
-        out.println("HTTP/1.1 200 OK\r\nContent-Type: application/json\r\n\r\n" + json.toString());
+        return HttpResponse.json(json.toString());
     }
 
-    private void handleClear(PrintWriter out) {
-        int count = limits.size();
-        limits.clear();
+    /**
+     * Prometheus text format: request metrics, then gauges read now
+     */
+    private HttpResponse handleMetrics() {
+        StringBuilder out = new StringBuilder(16 * 1024);
+        metrics.render(out);
+
+        long now = System.currentTimeMillis();
+        int parked;
+        long version;
+        synchronized (journal) {
+            parked = subscribers.size();
+            version = journal.version();
+        }
+        int activeLeases = 0;
+        synchronized (leases) {
+            for (Lease l : leases.values()) {
+                if (l.expiresAt > now) activeLeases++;
+            }
+        }
+        int probeCount;
+        synchronized (probes) {
+            probeCount = probes.size();
+        }
+        int bots;
+        int assigned;
+        long solveMicros;
+        synchronized (solver) {
+            bots = botStates.size();
+            assigned = solver.assignedItems();
+            solveMicros = solver.getLastSolveMicros();
+        }
+
+        CoordinatorMetrics.gauge(out, "viktor_coordinator_uptime_seconds", "Seconds since start", (now - startTime) / 1000);
+        CoordinatorMetrics.gauge(out, "viktor_coordinator_active_limits", "Items with an active 4h limit", limits.size());
+        CoordinatorMetrics.gauge(out, "viktor_coordinator_active_leases", "Unexpired item leases", activeLeases);
+        CoordinatorMetrics.gauge(out, "viktor_coordinator_shared_probes", "Probe results held for the fleet", probeCount);
+        CoordinatorMetrics.gauge(out, "viktor_coordinator_journal_version", "Version of the last limit change", version);
+        CoordinatorMetrics.gauge(out, "viktor_coordinator_parked_subscribers", "Long-polls waiting for changes", parked);
+        CoordinatorMetrics.gauge(out, "viktor_coordinator_open_connections", "Open client connections", openConnections);
+        CoordinatorMetrics.gauge(out, "viktor_coordinator_worker_queue_depth", "Requests waiting for a worker",
+                workers.getQueue().size());
+        CoordinatorMetrics.gauge(out, "viktor_coordinator_workers_busy", "Workers running a request", workers.getActiveCount());
+        CoordinatorMetrics.gauge(out, "viktor_coordinator_scheduler_bots", "Bots with a current state report", bots);
+        CoordinatorMetrics.gauge(out, "viktor_coordinator_scheduler_assigned_items", "Items assigned by the last solve", assigned);
+        CoordinatorMetrics.gauge(out, "viktor_coordinator_scheduler_solve_seconds", "Duration of the last solve",
+                solveMicros / 1_000_000.0);
+        if (wal != null) {
+            CoordinatorMetrics.gauge(out, "viktor_coordinator_wal_records_since_checkpoint",
+                    "WAL records a restart would replay", wal.recordsSinceCheckpoint());
+        }
+
+        return new HttpResponse(200, "text/plain; version=0.0.4; charset=utf-8", out.toString());
+    }
+
+    private HttpResponse handleClear() {
+        int count;
+        long seq = 0;
+        synchronized (journal) {
+            count = limits.size();
+            for (Map.Entry<String, LimitEntry> e : limits.entrySet()) {
+                journal.append(false, e.getKey(), e.getValue().account, 0);
+            }
+            limits.clear();
+            assignmentsDirty = true;
+            if (wal != null) {
+                seq = wal.logClear(System.currentTimeMillis());
+            }
+            wakeSubscribers();
+        }
+        if (wal != null) {
+            wal.awaitDurable(seq);
+        }
         String response = String.format("{\"status\":\"cleared\",\"removedCount\":%d}", count);
-        out.println("HTTP/1.1 200 OK\r\nContent-Type: application/json\r\n\r\n" + response);
         Logs.info("Cleared " + count + " limit entries");
+        return HttpResponse.json(response);
+    }
+
+    /**
+     * Lease an item: 200 with a token, or 409 naming the current holder.
+     * The same account re-claiming extends its lease and keeps the token.
+     */
+    private HttpResponse handleClaim(HttpRequest req) {
+        String item = req.param("item");
+        String account = req.param("account");
+        if (item == null || account == null) {
+            return HttpResponse.error(400, "Missing item or account");
+        }
+        long ttl = leaseTtl(req);
+
+        synchronized (leases) {
+            long now = System.currentTimeMillis();
+            String key = item.toLowerCase();
+            Lease current = leases.get(key);
+
+            if (current != null && current.expiresAt > now && !current.account.equalsIgnoreCase(account)) {
+                return leaseResponse(409, current);
+            }
+
+            long token = current != null && current.expiresAt > now ? current.token : ++lastLeaseToken;
+            Lease lease = new Lease(item, account, token, now + ttl);
+            leases.put(key, lease);
+            if (current == null || current.expiresAt <= now) {
+                assignmentsDirty = true;
+            }
+            Logs.debug("Lease: " + account + " claimed " + item + " (token " + token + ")");
+            return leaseResponse(200, lease);
+        }
     }
 
-    private Map<String, String> parseQuery(String query) {
-        Map<String, String> map = new HashMap<>();
-        if (query == null || query.isEmpty()) return map;
+    /**
+     * Extend a lease. 409 if the token isn't the current one for the item.
+     */
+    private HttpResponse handleRenew(HttpRequest req) {
+        String item = req.param("item");
+        String account = req.param("account");
+        long token = parseLong(req.param("token"), -1);
+        if (item == null || account == null || token < 0) {
+            return HttpResponse.error(400, "Missing item, account or token");
+        }
+        long ttl = leaseTtl(req);
+
+        synchronized (leases) {
+            String key = item.toLowerCase();
+            Lease current = leases.get(key);
+            if (current == null || current.token != token || !current.account.equalsIgnoreCase(account)) {
+                return current != null ? leaseResponse(409, current) : HttpResponse.error(409, "No lease");
+            }
+
+            Lease renewed = new Lease(current.item, current.account, token, System.currentTimeMillis() + ttl);
+            leases.put(key, renewed);
+            return leaseResponse(200, renewed);
+        }
+    }
+
+    private HttpResponse handleRelease(HttpRequest req) {
+        String item = req.param("item");
+        String account = req.param("account");
+        long token = parseLong(req.param("token"), -1);
+        if (item == null || account == null || token < 0) {
+            return HttpResponse.error(400, "Missing item, account or token");
+        }
+
+        synchronized (leases) {
+            String key = item.toLowerCase();
+            Lease current = leases.get(key);
+            if (current == null || current.token != token || !current.account.equalsIgnoreCase(account)) {
+                return HttpResponse.error(409, "Not the lease holder");
+            }
+            leases.remove(key);
+            assignmentsDirty = true;
+            return HttpResponse.json("{\"status\":\"released\"}");
+        }
+    }
+
+    private HttpResponse handleLeases() {
+        StringBuilder json = new StringBuilder("{\"leases\":[");
+        boolean first = true;
+        long now = System.currentTimeMillis();
+
+        synchronized (leases) {
+            for (Lease l : leases.values()) {
+                if (l.expiresAt <= now) continue;
+                if (!first) json.append(",");
+                appendLease(json, l);
+                first = false;
+            }
+        }
+
+        json.append("]}");
+        return HttpResponse.json(json.toString());
+    }
+
+    /**
+     * Store a probe result unless a newer one for the item is already here.
+     */
+    private HttpResponse handleProbeReport(HttpRequest req) {
+        String item = req.param("item");
+        String account = req.param("account");
+        long buy = parseLong(req.param("buy"), -1);
+        long sell = parseLong(req.param("sell"), -1);
+        if (item == null || account == null || buy <= 0 || sell <= 0
+                || buy > Integer.MAX_VALUE || sell > Integer.MAX_VALUE) {
+            return HttpResponse.error(400, "Missing item, account, buy or sell");
+        }
+        long now = System.currentTimeMillis();
+        long at = Math.min(now, parseLong(req.param("at"), now));
+
+        synchronized (probes) {
+            String key = item.toLowerCase();
+            Probe current = probes.get(key);
+            if (current == null || at >= current.at) {
+                probes.put(key, new Probe(item, account, (int) buy, (int) sell, at));
+                Logs.debug("Probe: " + account + " measured " + item + " at " + buy + "/" + sell);
+            }
+        }
+        return HttpResponse.json("{\"status\":\"ok\"}");
+    }
+
+    /**
+     * Newest probe result for an item, 404 if there is none.
+     */
+    private HttpResponse handleProbeGet(HttpRequest req) {
+        String item = req.param("item");
+        if (item == null) {
+            return HttpResponse.error(400, "Missing item");
+        }
+
+        Probe p;
+        synchronized (probes) {
+            p = probes.get(item.toLowerCase());
+        }
+        if (p == null || System.currentTimeMillis() - p.at > PROBE_RETENTION_MS) {
+            return HttpResponse.error(404, "No probe");
+        }
+
+        return HttpResponse.json("{\"item\":\"" + escapeJson(p.item)
+                + "\",\"account\":\"" + escapeJson(p.account)
+                + "\",\"buy\":" + p.buy
+                + ",\"sell\":" + p.sell
+                + ",\"at\":" + p.at + "}");
+    }
+
+    /**
+     * POST /state - a bot's scheduling inputs. First line describes the bot,
+     * every further line one candidate item:
+     *   account=Bot1&capital=<gp>&slots=<n>
+     *   item=Maple%20logs&price=<gp>&margin=<gp>&liquidity=<n>&remaining=<n>
+     * Replaces the bot's previous state and answers with its assignments.
+     */
+    private HttpResponse handleBotState(HttpRequest req) {
+        String[] lines = req.body.split("\n");
+        Map<String, String> head = HttpRequest.parseQuery(lines[0].trim());
+        String account = head.get("account");
+        if (account == null || account.isEmpty()) {
+            return HttpResponse.error(400, "Missing account");
+        }
+
+        List<AssignmentSolver.Candidate> candidates = new ArrayList<>();
+        for (int i = 1; i < lines.length; i++) {
+            String line = lines[i].trim();
+            if (line.isEmpty()) continue;
+
+            Map<String, String> params = HttpRequest.parseQuery(line);
+            String item = params.get("item");
+            long price = parseLong(params.get("price"), 0);
+            if (item == null || item.isEmpty() || price <= 0 || price > Integer.MAX_VALUE) continue;
+            candidates.add(new AssignmentSolver.Candidate(item, (int) price,
+                    (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, parseLong(params.get("margin"), 0))),
+                    parseLong(params.get("liquidity"), 0),
+                    (int) Math.max(0, Math.min(Integer.MAX_VALUE, parseLong(params.get("remaining"), 0)))));
+        }
+
+        AssignmentSolver.BotState state = new AssignmentSolver.BotState(account,
+                Math.max(0, parseLong(head.get("capital"), 0)),
+                (int) Math.max(0, Math.min(64, parseLong(head.get("slots"), 0))),
+                candidates, System.currentTimeMillis());
+        synchronized (solver) {
+            botStates.put(account.toLowerCase(), state);
+        }
+        assignmentsDirty = true;
+
+        return assignmentsResponse(account);
+    }
+
+    /**
+     * GET /assignments?account=<name> - items the scheduler gave this bot
+     */
+    private HttpResponse handleAssignments(HttpRequest req) {
+        String account = req.param("account");
+        if (account == null) {
+            return HttpResponse.error(400, "Missing account");
+        }
+        return assignmentsResponse(account);
+    }
+
+    private HttpResponse assignmentsResponse(String account) {
+        solveIfDirty();
+
+        StringBuilder json = new StringBuilder();
+        synchronized (solver) {
+            json.append("{\"account\":\"").append(escapeJson(account))
+                    .append("\",\"version\":").append(solver.getVersion())
+                    .append(",\"solvedAt\":").append(solver.getSolvedAt())
+                    .append(",\"bots\":").append(botStates.size())
+                    .append(",\"assignments\":[");
+            boolean first = true;
+            for (AssignmentSolver.Assignment a : solver.assignmentsFor(account)) {
+                if (!first) json.append(",");
+                json.append("{\"item\":\"").append(escapeJson(a.item))
+                        .append("\",\"qty\":").append(a.qty)
+                        .append(",\"expectedProfit\":").append(a.expectedProfit)
+                        .append("}");
+                first = false;
+            }
+        }
+        json.append("]}");
+        return HttpResponse.json(json.toString());
+    }
+
+    /**
+     * Re-run the scheduler if a state report, limit or lease changed its
+     * inputs since the last solve.
+     */
+    private void solveIfDirty() {
+        if (!assignmentsDirty) return;
 
-        for (String param : query.split("&")) {
-            String[] kv = param.split("=", 2);
-            if (kv.length == 2) {
-                try {
-                    map.put(kv[0], URLDecoder.decode(kv[1], "UTF-8"));
-                } catch (UnsupportedEncodingException e) {
-                    map.put(kv[0], kv[1]);
+        // Snapshot the other inputs first so no two of our locks are ever nested
+        Map<String, String> leaseHolders = new HashMap<>();
+        long now = System.currentTimeMillis();
+        synchronized (leases) {
+            for (Map.Entry<String, Lease> e : leases.entrySet()) {
+                if (e.getValue().expiresAt > now) {
+                    leaseHolders.put(e.getKey(), e.getValue().account);
                 }
             }
         }
-        return map;
+        Map<String, String> limitHolders = new HashMap<>();
+        for (Map.Entry<String, LimitEntry> e : limits.entrySet()) {
+            limitHolders.put(e.getKey().toLowerCase(), e.getValue().account);
+        }
+
+        synchronized (solver) {
+            if (!assignmentsDirty) return; // Another worker just solved
+            assignmentsDirty = false;
+            solver.solve(botStates, leaseHolders, limitHolders);
+            Logs.debug("Scheduler: " + solver.assignedItems() + " items over " + botStates.size()
+                    + " bots in " + solver.getLastSolveMicros() + "us (v" + solver.getVersion() + ")");
+        }
+    }
+
+    private long leaseTtl(HttpRequest req) {
+        long ttlS = parseLong(req.param("ttl"), DEFAULT_LEASE_MS / 1000);
+        return Math.max(1000, Math.min(MAX_LEASE_MS, ttlS * 1000));
+    }
+
+    private HttpResponse leaseResponse(int status, Lease lease) {
+        StringBuilder json = new StringBuilder();
+        appendLease(json, lease);
+        return new HttpResponse(status, "application/json", json.toString());
+    }
+
+    private void appendLease(StringBuilder json, Lease lease) {
+        json.append("{\"item\":\"").append(escapeJson(lease.item))
+                .append("\",\"holder\":\"").append(escapeJson(lease.account))
+                .append("\",\"token\":").append(lease.token)
+                .append(",\"expiresAt\":").append(lease.expiresAt)
+                .append("}");
+    }
+
+    /**
+     * Long-poll for limit changes after a version.
+     * since missing/unknown -> full snapshot with reset=true.
+     */
+    private HttpResponse handleSubscribe(HttpRequest req, Responder responder) {
+        long since = parseLong(req.param("since"), -1);
+        long timeoutS = Math.max(1, Math.min(MAX_SUBSCRIBE_TIMEOUT_S,
+                parseLong(req.param("timeout"), DEFAULT_SUBSCRIBE_TIMEOUT_S)));
+
+        synchronized (journal) {
+            HttpResponse ready = eventsSince(since, false);
+            if (ready != null) {
+                return ready;
+            }
+            subscribers.add(new Subscriber(since, System.currentTimeMillis() + timeoutS * 1000, responder));
+            return null; // Parked until something changes or the timeout
+        }
+    }
+
+    /**
+     * Must hold journal lock. Answers every parked subscriber that has news.
+     */
+    private void wakeSubscribers() {
+        Iterator<Subscriber> it = subscribers.iterator();
+        while (it.hasNext()) {
+            Subscriber sub = it.next();
+            HttpResponse response = eventsSince(sub.since, false);
+            if (response != null) {
+                it.remove();
+                sub.responder.respond(response);
+            }
+        }
+    }
+
+    /**
+     * Must hold journal lock.
+     * @param always return an (empty) response even when there is nothing new
+     * @return null when nothing changed after since and always is false
+     */
+    private HttpResponse eventsSince(long since, boolean always) {
+        List<LimitJournal.Event> events = since < 0 ? null : journal.since(since);
+
+        StringBuilder json = new StringBuilder("{\"version\":").append(journal.version())
+                .append(",\"epoch\":").append(startTime);
+
+        if (events == null) {
+            // Too far behind (or first call) - send the whole state
+            json.append(",\"reset\":true,\"events\":[");
+            boolean first = true;
+            for (Map.Entry<String, LimitEntry> e : limits.entrySet()) {
+                if (!first) json.append(",");
+                appendEvent(json, true, e.getKey(), e.getValue().account, e.getValue().timestamp + LIMIT_TTL_MS);
+                first = false;
+            }
+        } else {
+            if (events.isEmpty() && !always) {
+                return null;
+            }
+            json.append(",\"reset\":false,\"events\":[");
+            boolean first = true;
+            for (LimitJournal.Event e : events) {
+                if (!first) json.append(",");
+                appendEvent(json, e.added, e.item, e.account, e.expiresAt);
+                first = false;
+            }
+        }
+
+        json.append("]}");
+        return HttpResponse.json(json.toString());
+    }
+
+    private void appendEvent(StringBuilder json, boolean added, String item, String account, long expiresAt) {
+        json.append("{\"type\":\"").append(added ? "added" : "expired")
+                .append("\",\"item\":\"").append(escapeJson(item))
+                .append("\",\"account\":\"").append(escapeJson(account))
+                .append("\",\"expiresAt\":").append(expiresAt)
+                .append("}");
+    }
+
+    /**
+     * Runs every second: expire old limits (journaled so subscribers see
+     * them go) and answer long-polls that hit their timeout.
+     */
+    private void sweep() {
+        try {
+            long now = System.currentTimeMillis();
+            synchronized (journal) {
+                Iterator<Map.Entry<String, LimitEntry>> it = limits.entrySet().iterator();
+                boolean expired = false;
+                while (it.hasNext()) {
+                    Map.Entry<String, LimitEntry> e = it.next();
+                    if (now - e.getValue().timestamp > LIMIT_TTL_MS) {
+                        it.remove();
+                        journal.append(false, e.getKey(), e.getValue().account, 0);
+                        expired = true;
+                    }
+                }
+                if (expired) {
+                    wakeSubscribers();
+                    assignmentsDirty = true;
+                }
+
+                Iterator<Subscriber> subs = subscribers.iterator();
+                while (subs.hasNext()) {
+                    Subscriber sub = subs.next();
+                    if (now >= sub.deadline) {
+                        subs.remove();
+                        sub.responder.respond(eventsSince(sub.since, true));
+                    }
+                }
+            }
+
+            synchronized (leases) {
+                leases.values().removeIf(l -> l.expiresAt <= now);
+            }
+
+            synchronized (probes) {
+                probes.values().removeIf(p -> now - p.at > PROBE_RETENTION_MS);
+            }
+
+            synchronized (solver) {
+                if (botStates.values().removeIf(b -> now - b.updatedAt > BOT_STATE_TTL_MS)) {
+                    assignmentsDirty = true; // A silent bot's items go to the others
+                }
+            }
+            solveIfDirty();
+
+            if (wal != null) {
+                long pending = wal.recordsSinceCheckpoint();
+                if (pending >= CHECKPOINT_RECORDS || (pending > 0 && now - lastCheckpoint > CHECKPOINT_INTERVAL_MS)) {
+                    checkpoint();
+                }
+            }
+        } catch (Exception e) {
+            Logs.warn("Sweep failed: " + e.getMessage());
+        }
+    }
+
+    // ===== Persistence =====
+
+    private void recover() {
+        try {
+            wal = new CoordinatorWal(dataDir, LIMIT_TTL_MS);
+            for (Map.Entry<String, CoordinatorWal.Entry> e : wal.recover().entrySet()) {
+                limits.put(e.getKey(), new LimitEntry(e.getValue().account, e.getValue().timestamp));
+            }
+            lastCheckpoint = System.currentTimeMillis();
+        } catch (IOException e) {
+            Logs.error("Couldn't open coordinator data in " + dataDir + ", running in-memory: " + e.getMessage());
+            wal = null;
+        }
+    }
+
+    /**
+     * Snapshot the live limits and start a new WAL generation, so recovery
+     * only has to replay what happened since.
+     */
+    private void checkpoint() throws IOException {
+        Map<String, CoordinatorWal.Entry> copy = new HashMap<>();
+        long gen;
+        synchronized (journal) {
+            for (Map.Entry<String, LimitEntry> e : limits.entrySet()) {
+                copy.put(e.getKey(), new CoordinatorWal.Entry(e.getValue().account, e.getValue().timestamp));
+            }
+            gen = wal.rotate();
+        }
+        wal.writeSnapshot(gen, copy);
+        lastCheckpoint = System.currentTimeMillis();
+        Logs.debug("Checkpoint: " + copy.size() + " limits in generation " + gen);
+    }
+
+    private static long parseLong(String s, long def) {
+        if (s == null) return def;
+        try {
+            return Long.parseLong(s);
+        } catch (NumberFormatException e) {
+            return def;
+        }
     }
 
     private String escapeJson(String s) {
@@ -227,6 +1205,48 @@ public class CoordinatorServer implements Runnable {
                 .replace("\t", "\\t");
     }
 
+    private static class Lease {
+        final String item;
+        final String account;
+        final long token;
+        final long expiresAt;
+
+        Lease(String item, String account, long token, long expiresAt) {
+            this.item = item;
+            this.account = account;
+            this.token = token;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static class Probe {
+        final String item;
+        final String account;
+        final int buy;
+        final int sell;
+        final long at;
+
+        Probe(String item, String account, int buy, int sell, long at) {
+            this.item = item;
+            this.account = account;
+            this.buy = buy;
+            this.sell = sell;
+            this.at = at;
+        }
+    }
+
+    private static class Subscriber {
+        final long since;
+        final long deadline;
+        final Responder responder;
+
+        Subscriber(long since, long deadline, Responder responder) {
+            this.since = since;
+            this.deadline = deadline;
+            this.responder = responder;
+        }
+    }
+
     private static class LimitEntry {
         final String account;
         final long timestamp;
@@ -250,23 +1270,37 @@ public class CoordinatorServer implements Runnable {
             }
         }
 
+        File dataDir = new File(args.length > 1 ? args[1] : "coordinator-data");
+
         System.out.println("═══════════════════════════════════════════");
         System.out.println("  Viktor Coordinator Server v1.0");
         System.out.println("═══════════════════════════════════════════");
         System.out.println("Port: " + port);
+        System.out.println("Data: " + dataDir.getAbsolutePath());
         System.out.println();
         System.out.println("Endpoints:");
         System.out.println("  GET /report?item=<name>&account=<name>  - Report limit hit");
-        System.out.println("  GET /list                                - Get blocked items");
+        System.out.println("  POST /batch (item=..&account=..[&at=ms] per line) - Report several limits");
+        System.out.println("  GET /list[?since=<version>]              - Get blocked items (or changes since)");
+        System.out.println("  GET /subscribe?since=<version>           - Long-poll limit changes");
         System.out.println("  GET /health                              - Health check");
         System.out.println("  GET /stats                               - Detailed stats");
+        System.out.println("  GET /metrics                             - Prometheus metrics");
         System.out.println("  GET /clear                               - Clear all limits");
+        System.out.println("  GET /claim?item=<name>&account=<name>    - Lease an item (409 if taken)");
+        System.out.println("  GET /renew?item=..&account=..&token=<n>  - Extend a lease");
+        System.out.println("  GET /release?item=..&account=..&token=<n> - Give a lease back");
+        System.out.println("  GET /leases                              - Active leases");
+        System.out.println("  GET /probe/report?item=..&account=..&buy=<gp>&sell=<gp> - Share a margin probe");
+        System.out.println("  GET /probe/get?item=<name>               - Newest probe for an item (404 if none)");
+        System.out.println("  POST /state (bot line, then one line per item) - Report bot state, get assignments");
+        System.out.println("  GET /assignments?account=<name>          - Items the scheduler gave a bot");
         System.out.println();
         System.out.println("Press Ctrl+C to stop");
         System.out.println("═══════════════════════════════════════════");
         System.out.println();
 
-        CoordinatorServer server = new CoordinatorServer(port);
+        CoordinatorServer server = new CoordinatorServer(port, dataDir);
 
         // Shutdown hook for graceful stop
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
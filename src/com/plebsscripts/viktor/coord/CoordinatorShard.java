@@ -0,0 +1,410 @@
+package com.plebsscripts.viktor.coord;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.plebsscripts.viktor.util.Logs;
+
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * One CoordinatorServer as seen by CoordinatorClient.
+ *
+ * Owns the HTTP calls to that server, a circuit breaker, and a replica of
+ * its limits kept current by a /subscribe long-poll thread.
+ *
+ * While the subscription is down, poll() catches the replica up with
+ * /list?since=<version>, which only transfers what changed.
+ *
+ * A shard is "up" (on the client's hash ring) while it answers. Two failed
+ * subscribe polls in a row, or the breaker opening, take it off the ring;
+ * the next successful poll puts it back. Either change calls onUpChanged.
+ */
+final class CoordinatorShard {
+    private static final int SUBSCRIBE_TIMEOUT_S = 25;
+    private static final int SUBSCRIBE_READ_TIMEOUT_MS = (SUBSCRIBE_TIMEOUT_S + 10) * 1000;
+    private static final int FAILURES_BEFORE_DOWN = 2;
+
+    final String url;
+    final CircuitBreaker breaker;
+
+    // Replica of the server's limits, keyed by lowercase item name
+    private final Map<String, Blocked> replica = new ConcurrentHashMap<>();
+    private final Gson gson = new Gson();
+    private final Backoff subscribeBackoff = new Backoff(1000, 30_000);
+    private final Runnable onUpChanged;
+    private volatile long replicaVersion = -1;
+    private volatile long replicaEpoch = 0;
+    private volatile boolean replicaLive = false;
+    private volatile long lastPollAt = 0;
+    private volatile boolean up;
+    private volatile boolean running = true;
+    private int subscribeFailures = 0; // Subscriber thread only
+    private Thread subscriber;
+
+    static final class Blocked {
+        final String item;
+        final String account;
+        final long expiresAt;
+
+        Blocked(String item, String account, long expiresAt) {
+            this.item = item;
+            this.account = account;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    CoordinatorShard(String url, boolean initiallyUp, Runnable onUpChanged) {
+        this.url = url;
+        this.up = initiallyUp;
+        this.onUpChanged = onUpChanged;
+        this.breaker = new CircuitBreaker("Coordinator " + url, 3, 1000, 60_000);
+    }
+
+    void start() {
+        subscriber = new Thread(this::subscribeLoop, "CoordinatorClient-subscriber-" + url);
+        subscriber.setDaemon(true);
+        subscriber.start();
+    }
+
+    void stop() {
+        running = false;
+        replicaLive = false;
+        if (subscriber != null) {
+            subscriber.interrupt();
+        }
+    }
+
+    boolean isUp() {
+        return up;
+    }
+
+    boolean isLive() {
+        return replicaLive;
+    }
+
+    Blocked lookup(String lowercaseItem) {
+        return replica.get(lowercaseItem);
+    }
+
+    Collection<Blocked> blocked() {
+        return replica.values();
+    }
+
+    /**
+     * Result of a call made outside this class (reporter thread).
+     */
+    void recordSuccess() {
+        breaker.recordSuccess();
+        setUp(true);
+    }
+
+    void recordFailure() {
+        breaker.recordFailure();
+        if (breaker.getState() == CircuitBreaker.State.OPEN) {
+            setUp(false);
+        }
+    }
+
+    private void setUp(boolean nowUp) {
+        if (up != nowUp) {
+            up = nowUp;
+            Logs.info("Coordinator shard " + url + (nowUp ? " is back" : " is down"));
+            onUpChanged.run();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return url; // Identity on the hash ring
+    }
+
+    String getStatus() {
+        return String.format("%s{%s, replica=%s v%d (%d items), %s}",
+                url, up ? "up" : "down", replicaLive ? "live" : "down",
+                replicaVersion, replica.size(), breaker.getState());
+    }
+
+    /**
+     * Delta poll for when the subscription is down.
+     * @return true if the replica is now current
+     */
+    boolean poll() {
+        if (replicaLive) return true;
+        if (breaker.isOpen()) return false;
+
+        try {
+            SubscribeResponse update = parseUpdate(get("/list?since=" + replicaVersion));
+            synchronized (this) {
+                applyUpdate(update);
+            }
+            lastPollAt = System.currentTimeMillis();
+            breaker.recordSuccess();
+            return true;
+        } catch (IOException e) {
+            Logs.warn("Coordinator " + url + " poll failed: " + e.getMessage());
+            breaker.recordFailure();
+            return false;
+        }
+    }
+
+    long getLastPollAt() {
+        return lastPollAt;
+    }
+
+    // ===== Subscription =====
+
+    private void subscribeLoop() {
+        while (running) {
+            try {
+                SubscribeResponse update = parseUpdate(get("/subscribe?since=" + replicaVersion
+                        + "&timeout=" + SUBSCRIBE_TIMEOUT_S, SUBSCRIBE_READ_TIMEOUT_MS));
+                synchronized (this) {
+                    applyUpdate(update);
+                }
+                if (!running) break; // stop() can't interrupt a blocked read
+
+                if (!replicaLive) {
+                    Logs.info("Coordinator " + url + ": subscription live at version " + replicaVersion
+                            + " (" + replica.size() + " blocked items)");
+                }
+                replicaLive = true;
+                subscribeFailures = 0;
+                subscribeBackoff.reset();
+                setUp(true);
+
+            } catch (IOException e) {
+                if (!running) break;
+                if (replicaLive) {
+                    Logs.warn("Coordinator " + url + " subscription lost: " + e.getMessage());
+                }
+                replicaLive = false;
+                if (++subscribeFailures >= FAILURES_BEFORE_DOWN) {
+                    setUp(false);
+                }
+                subscribeBackoff.increase();
+                try {
+                    Thread.sleep(subscribeBackoff.getCurrentDelay());
+                } catch (InterruptedException ie) {
+                    break;
+                }
+            }
+        }
+        replicaLive = false;
+    }
+
+    /**
+     * Parse a /subscribe or /list?since= body, rejecting anything
+     * applyUpdate() can't use.
+     */
+    private SubscribeResponse parseUpdate(String body) throws IOException {
+        SubscribeResponse update;
+        try {
+            update = gson.fromJson(body, SubscribeResponse.class);
+        } catch (JsonSyntaxException e) {
+            throw new IOException("Bad update from coordinator: " + e.getMessage());
+        }
+        if (update == null || update.events == null) {
+            throw new IOException("Empty update from coordinator");
+        }
+        for (SubscribeEvent e : update.events) {
+            if (e == null || e.item == null) {
+                throw new IOException("Update event without an item from coordinator");
+            }
+        }
+        return update;
+    }
+
+    /**
+     * Must hold this shard's lock (subscriber and poller can overlap).
+     */
+    private void applyUpdate(SubscribeResponse update) {
+        // A restarted server numbers versions from scratch
+        if (update.reset || update.epoch != replicaEpoch) {
+            if (!update.reset) {
+                replicaVersion = -1; // Ask again for a full snapshot
+                replicaEpoch = update.epoch;
+                return;
+            }
+            replica.clear();
+        }
+
+        for (SubscribeEvent e : update.events) {
+            String key = e.item.toLowerCase();
+            if ("added".equals(e.type)) {
+                replica.put(key, new Blocked(e.item, e.account, e.expiresAt));
+            } else {
+                replica.remove(key);
+            }
+        }
+
+        replicaEpoch = update.epoch;
+        replicaVersion = update.version;
+    }
+
+    // Gson shapes of /subscribe responses
+    private static class SubscribeResponse {
+        long version;
+        long epoch;
+        boolean reset;
+        List<SubscribeEvent> events = new ArrayList<>();
+    }
+
+    private static class SubscribeEvent {
+        String type;
+        String item;
+        String account;
+        long expiresAt;
+    }
+
+    static class ProbeResponse {
+        String item;
+        String account;
+        int buy;
+        int sell;
+        long at;
+    }
+
+    static class AssignmentsResponse {
+        long version;
+        List<AssignmentEntry> assignments = new ArrayList<>();
+    }
+
+    static class AssignmentEntry {
+        String item;
+        int qty;
+        long expectedProfit;
+    }
+
+    private static class LeaseResponse {
+        long token;
+    }
+
+    // ===== HTTP =====
+    // No disconnect(): it closes the socket. Reading each body to the end and
+    // closing the stream hands the connection back to the keep-alive pool.
+
+    String get(String path) throws IOException {
+        return get(path, 5000);
+    }
+
+    String get(String path, int readTimeoutMs) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url + path).openConnection();
+        conn.setRequestMethod("GET");
+        conn.setConnectTimeout(5000);
+        conn.setReadTimeout(readTimeoutMs);
+        conn.setRequestProperty("User-Agent", "Viktor-Bot/1.0");
+
+        int responseCode = conn.getResponseCode();
+        if (responseCode != 200) {
+            discard(conn);
+            throw new IOException("HTTP " + responseCode + " from coordinator");
+        }
+        return readAll(conn.getInputStream());
+    }
+
+    /**
+     * GET that treats 404 as "nothing there".
+     * @return response body, or null on 404
+     */
+    String getIfPresent(String path) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url + path).openConnection();
+        conn.setRequestMethod("GET");
+        conn.setConnectTimeout(5000);
+        conn.setReadTimeout(5000);
+        conn.setRequestProperty("User-Agent", "Viktor-Bot/1.0");
+
+        int code = conn.getResponseCode();
+        if (code == 404) {
+            discard(conn);
+            return null;
+        }
+        if (code != 200) {
+            discard(conn);
+            throw new IOException("HTTP " + code + " from coordinator");
+        }
+        return readAll(conn.getInputStream());
+    }
+
+    String post(String path, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+
+        HttpURLConnection conn = (HttpURLConnection) new URL(url + path).openConnection();
+        conn.setRequestMethod("POST");
+        conn.setConnectTimeout(5000);
+        conn.setReadTimeout(10_000);
+        conn.setDoOutput(true);
+        conn.setFixedLengthStreamingMode(bytes.length);
+        conn.setRequestProperty("Content-Type", "text/plain; charset=utf-8");
+        conn.setRequestProperty("User-Agent", "Viktor-Bot/1.0");
+
+        try (OutputStream out = conn.getOutputStream()) {
+            out.write(bytes);
+        }
+        int code = conn.getResponseCode();
+        if (code != 200) {
+            discard(conn);
+            throw new IOException("HTTP " + code + " from coordinator");
+        }
+        return readAll(conn.getInputStream());
+    }
+
+    /**
+     * @return token from a 200 response, JsonCoordinator.NO_LEASE on 409
+     */
+    long lease(String path) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url + path).openConnection();
+        conn.setRequestMethod("GET");
+        conn.setConnectTimeout(5000);
+        conn.setReadTimeout(5000);
+        conn.setRequestProperty("User-Agent", "Viktor-Bot/1.0");
+
+        int code = conn.getResponseCode();
+        if (code == 409) {
+            discard(conn);
+            return JsonCoordinator.NO_LEASE;
+        }
+        if (code != 200) {
+            discard(conn);
+            throw new IOException("HTTP " + code + " from coordinator");
+        }
+        try {
+            LeaseResponse lease = gson.fromJson(readAll(conn.getInputStream()), LeaseResponse.class);
+            return lease != null ? lease.token : JsonCoordinator.NO_LEASE;
+        } catch (JsonSyntaxException e) {
+            throw new IOException("Bad lease response: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Read and close an error body so the connection can be reused.
+     */
+    private static void discard(HttpURLConnection conn) {
+        InputStream err = conn.getErrorStream();
+        if (err == null) return;
+        try (InputStream in = err) {
+            byte[] buf = new byte[512];
+            while (in.read(buf) != -1) {
+                // drain
+            }
+        } catch (IOException ignored) {}
+    }
+
+    private static String readAll(InputStream stream) throws IOException {
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+            StringBuilder response = new StringBuilder();
+            String line;
+            while ((line = in.readLine()) != null) {
+                response.append(line);
+            }
+            return response.toString();
+        }
+    }
+}
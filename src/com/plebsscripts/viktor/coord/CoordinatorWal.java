@@ -0,0 +1,520 @@
+package com.plebsscripts.viktor.coord;
+
+import com.plebsscripts.viktor.util.Logs;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead log + snapshots for CoordinatorServer, so a restart keeps
+ * every active 4h block instead of making the fleet rediscover them.
+ *
+ * Files in the data directory, numbered by generation:
+ * - wal-N.log       report/clear operations since snapshot N
+ * - snapshot-N.snap every live limit at the moment generation N started
+ *
+ * Appends are group-committed: callers queue their record and wait, one
+ * flusher thread writes everything queued so far and fsyncs once. Under
+ * load many reports share a single fsync.
+ *
+ * A checkpoint is rotate() (start a new generation) followed by
+ * writeSnapshot() of the state at that point, which then deletes older files. Recovery loads the newest
+ * snapshot and replays the WALs after it, dropping entries older than the
+ * TTL as it goes. A torn record at the end of a WAL (crash mid-write) ends
+ * replay of that file.
+ *
+ * Record framing (WAL and snapshot): [int len][int crc32][payload]
+ * payload: [byte type][long timestamp][utf item][utf account]
+ */
+public final class CoordinatorWal implements Closeable {
+    private static final byte REC_REPORT = 1;
+    private static final byte REC_CLEAR = 2;
+
+    private static final int SNAPSHOT_MAGIC = 0x564B534E; // "VKSN"
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final int MAX_RECORD_BYTES = 64 * 1024;
+    private static final long DURABLE_WAIT_MS = 5_000;
+
+    /**
+     * One live limit as recovered from disk.
+     */
+    public static final class Entry {
+        public final String account;
+        public final long timestamp;
+
+        public Entry(String account, long timestamp) {
+            this.account = account;
+            this.timestamp = timestamp;
+        }
+    }
+
+    /**
+     * What recover() did, for logs and the benchmark.
+     */
+    public static final class RecoveryStats {
+        public long snapshotEntries;
+        public long walRecords;
+        public long droppedExpired;
+        public long tornBytes;
+        public long bytesRead;
+        public long elapsedMs;
+
+        @Override
+        public String toString() {
+            return String.format("snapshot=%d, walRecords=%d, expired=%d, torn=%dB, read=%dKB in %dms",
+                    snapshotEntries, walRecords, droppedExpired, tornBytes, bytesRead / 1024, elapsedMs);
+        }
+    }
+
+    private final File dir;
+    private final long ttlMs;
+
+    // Guards pending/seq counters; flusher and waiters use it as the monitor
+    private List<byte[]> pending = new ArrayList<>();
+    private long lastSeq = 0;
+    private long durableSeq = 0;
+    private volatile boolean running = false;
+    private volatile boolean failed = false;
+
+    // Held while writing to / swapping the current WAL file
+    private final Object ioLock = new Object();
+    private FileChannel wal;
+    private long generation = 0;
+    private long recordsSinceCheckpoint = 0;
+    private long fsyncs = 0;
+    private long recordsWritten = 0;
+
+    private Thread flusher;
+    private RecoveryStats lastRecovery;
+
+    public CoordinatorWal(File dir, long ttlMs) {
+        this.dir = dir;
+        this.ttlMs = ttlMs;
+    }
+
+    // ===== Recovery =====
+
+    /**
+     * Load the newest snapshot, replay the WALs after it and open a fresh
+     * generation for new writes. Must be called once before logging.
+     * @return live limits keyed by item
+     */
+    public Map<String, Entry> recover() throws IOException {
+        long start = System.currentTimeMillis();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Can't create " + dir);
+        }
+
+        RecoveryStats stats = new RecoveryStats();
+        Map<String, Entry> state = new HashMap<>();
+        long now = System.currentTimeMillis();
+
+        TreeMap<Long, File> snapshots = listGenerations("snapshot-", ".snap");
+        TreeMap<Long, File> wals = listGenerations("wal-", ".log");
+
+        // Newest snapshot that reads back cleanly
+        long base = 0;
+        for (Map.Entry<Long, File> snap : snapshots.descendingMap().entrySet()) {
+            try {
+                state.clear();
+                stats.bytesRead += readSnapshot(snap.getValue(), state, now, stats);
+                base = snap.getKey();
+                stats.snapshotEntries = state.size();
+                break;
+            } catch (IOException e) {
+                Logs.warn("CoordinatorWal: skipping bad snapshot " + snap.getValue().getName() + ": " + e.getMessage());
+                state.clear();
+            }
+        }
+
+        for (Map.Entry<Long, File> w : wals.tailMap(base, true).entrySet()) {
+            stats.bytesRead += replayWal(w.getValue(), state, now, stats);
+        }
+
+        // Entries that were live in the snapshot may have expired since
+        Iterator<Entry> it = state.values().iterator();
+        while (it.hasNext()) {
+            if (now - it.next().timestamp > ttlMs) {
+                it.remove();
+                stats.droppedExpired++;
+            }
+        }
+
+        long maxGen = Math.max(snapshots.isEmpty() ? 0 : snapshots.lastKey(), wals.isEmpty() ? 0 : wals.lastKey());
+        generation = maxGen + 1;
+
+        // Start clean: snapshot the recovered state and drop the old files
+        synchronized (ioLock) {
+            wal = openWal(generation);
+        }
+        writeSnapshot(generation, state);
+
+        stats.elapsedMs = System.currentTimeMillis() - start;
+        lastRecovery = stats;
+        Logs.info("CoordinatorWal: recovered " + state.size() + " limits (" + stats + ")");
+
+        running = true;
+        flusher = new Thread(this::flushLoop, "CoordinatorWal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+
+        return state;
+    }
+
+    private long readSnapshot(File file, Map<String, Entry> state, long now, RecoveryStats stats) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+                throw new IOException("bad header");
+            }
+            in.readLong(); // generation, already known from the name
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Record r = readRecord(in);
+                if (r == null) {
+                    throw new IOException("truncated at entry " + i + "/" + count);
+                }
+                apply(r, state, now, stats);
+            }
+        }
+        return file.length();
+    }
+
+    private long replayWal(File file, Map<String, Entry> state, long now, RecoveryStats stats) throws IOException {
+        long good = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024))) {
+            Record r;
+            while ((r = readRecord(in)) != null) {
+                apply(r, state, now, stats);
+                stats.walRecords++;
+                good += 8 + r.size;
+            }
+        }
+        long torn = file.length() - good;
+        if (torn > 0) {
+            stats.tornBytes += torn;
+            Logs.warn("CoordinatorWal: " + file.getName() + " has a torn tail (" + torn + " bytes ignored)");
+        }
+        return file.length();
+    }
+
+    private void apply(Record r, Map<String, Entry> state, long now, RecoveryStats stats) {
+        if (r.type == REC_CLEAR) {
+            state.clear();
+        } else if (r.type == REC_REPORT) {
+            if (now - r.timestamp > ttlMs) {
+                // Already expired - and so is anything older for the item
+                state.remove(r.item);
+                stats.droppedExpired++;
+                return;
+            }
+            state.put(r.item, new Entry(r.account, r.timestamp));
+        }
+    }
+
+    // ===== Logging =====
+
+    /**
+     * Queue a report. Call under the same lock that orders the in-memory
+     * update, then awaitDurable() outside it.
+     * @return sequence number to wait for
+     */
+    public long logReport(String item, String account, long timestamp) {
+        return enqueue(encode(REC_REPORT, timestamp, item, account));
+    }
+
+    public long logClear(long timestamp) {
+        return enqueue(encode(REC_CLEAR, timestamp, "", ""));
+    }
+
+    private synchronized long enqueue(byte[] record) {
+        pending.add(record);
+        lastSeq++;
+        recordsSinceCheckpoint++;
+        notifyAll();
+        return lastSeq;
+    }
+
+    /**
+     * Block until the record with this sequence number is fsynced.
+     * @return false if the WAL failed or didn't catch up in time
+     */
+    public synchronized boolean awaitDurable(long seq) {
+        long deadline = System.currentTimeMillis() + DURABLE_WAIT_MS;
+        while (durableSeq < seq && !failed) {
+            long left = deadline - System.currentTimeMillis();
+            if (left <= 0 || !running) return false;
+            try {
+                wait(left);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return !failed;
+    }
+
+    private void flushLoop() {
+        while (running) {
+            synchronized (this) {
+                while (pending.isEmpty() && running) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+            synchronized (ioLock) {
+                flushPending();
+            }
+        }
+    }
+
+    /**
+     * Must hold ioLock. Writes everything queued so far with one fsync.
+     */
+    private void flushPending() {
+        List<byte[]> batch;
+        long upTo;
+        synchronized (this) {
+            if (pending.isEmpty()) return;
+            batch = pending;
+            pending = new ArrayList<>();
+            upTo = lastSeq;
+        }
+
+        int total = 0;
+        for (byte[] rec : batch) total += rec.length;
+        ByteBuffer buf = ByteBuffer.allocate(total);
+        for (byte[] rec : batch) buf.put(rec);
+        buf.flip();
+
+        try {
+            while (buf.hasRemaining()) {
+                wal.write(buf);
+            }
+            wal.force(false);
+            fsyncs++;
+            recordsWritten += batch.size();
+        } catch (IOException e) {
+            if (!failed) {
+                Logs.error("CoordinatorWal: write failed, limits are no longer persisted: " + e.getMessage());
+            }
+            failed = true;
+        }
+
+        synchronized (this) {
+            durableSeq = upTo;
+            notifyAll();
+        }
+    }
+
+    // ===== Checkpoints =====
+
+    public synchronized long recordsSinceCheckpoint() {
+        return recordsSinceCheckpoint;
+    }
+
+    /**
+     * Switch to a new generation. Call under the server's state lock at the
+     * same moment the state is copied, then pass the copy to writeSnapshot()
+     * outside the lock.
+     * @return the new generation
+     */
+    public long rotate() throws IOException {
+        synchronized (ioLock) {
+            flushPending();
+            wal.close();
+            generation++;
+            wal = openWal(generation);
+        }
+        synchronized (this) {
+            recordsSinceCheckpoint = 0;
+        }
+        return generation;
+    }
+
+    /**
+     * Write snapshot-N atomically, then delete every older WAL and snapshot.
+     */
+    public void writeSnapshot(long gen, Map<String, Entry> state) throws IOException {
+        File tmp = new File(dir, String.format("snapshot-%08d.snap.tmp", gen));
+        File dest = new File(dir, String.format("snapshot-%08d.snap", gen));
+
+        try (FileOutputStream fos = new FileOutputStream(tmp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 64 * 1024))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeLong(gen);
+            out.writeInt(state.size());
+            for (Map.Entry<String, Entry> e : state.entrySet()) {
+                out.write(encode(REC_REPORT, e.getValue().timestamp, e.getKey(), e.getValue().account));
+            }
+            out.flush();
+            fos.getFD().sync();
+        }
+
+        Files.move(tmp.toPath(), dest.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        for (File f : listGenerations("snapshot-", ".snap").headMap(gen, false).values()) {
+            deleteQuietly(f);
+        }
+        for (File f : listGenerations("wal-", ".log").headMap(gen, false).values()) {
+            deleteQuietly(f);
+        }
+    }
+
+    // ===== Status =====
+
+    public synchronized String getStats() {
+        return String.format("gen=%d, records=%d, fsyncs=%d, sinceCheckpoint=%d%s",
+                generation, recordsWritten, fsyncs, recordsSinceCheckpoint, failed ? ", FAILED" : "");
+    }
+
+    public RecoveryStats getLastRecovery() {
+        return lastRecovery;
+    }
+
+    public boolean isHealthy() {
+        return running && !failed;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        synchronized (this) {
+            notifyAll();
+        }
+        if (flusher != null) {
+            try {
+                flusher.join(DURABLE_WAIT_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (ioLock) {
+            if (wal != null) {
+                flushPending();
+                try {
+                    wal.close();
+                } catch (IOException e) {
+                    Logs.warn("CoordinatorWal: close failed: " + e.getMessage());
+                }
+                wal = null;
+            }
+        }
+    }
+
+    // ===== Encoding =====
+
+    private static final class Record {
+        final byte type;
+        final long timestamp;
+        final String item;
+        final String account;
+        final int size;
+
+        Record(byte type, long timestamp, String item, String account, int size) {
+            this.type = type;
+            this.timestamp = timestamp;
+            this.item = item;
+            this.account = account;
+            this.size = size;
+        }
+    }
+
+    private static byte[] encode(byte type, long timestamp, String item, String account) {
+        byte[] itemBytes = item.getBytes(StandardCharsets.UTF_8);
+        byte[] accountBytes = account.getBytes(StandardCharsets.UTF_8);
+        int payload = 1 + 8 + 2 + itemBytes.length + 2 + accountBytes.length;
+
+        ByteBuffer buf = ByteBuffer.allocate(8 + payload);
+        buf.putInt(payload);
+        buf.putInt(0); // crc placeholder
+        buf.put(type);
+        buf.putLong(timestamp);
+        buf.putShort((short) itemBytes.length).put(itemBytes);
+        buf.putShort((short) accountBytes.length).put(accountBytes);
+
+        CRC32 crc = new CRC32();
+        crc.update(buf.array(), 8, payload);
+        buf.putInt(4, (int) crc.getValue());
+        return buf.array();
+    }
+
+    /**
+     * @return null at end of stream or on a short/corrupt record
+     */
+    private static Record readRecord(DataInputStream in) throws IOException {
+        int len;
+        int crc;
+        try {
+            len = in.readInt();
+            crc = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (len < 13 || len > MAX_RECORD_BYTES) return null;
+
+        byte[] payload = new byte[len];
+        try {
+            in.readFully(payload);
+        } catch (EOFException e) {
+            return null;
+        }
+
+        CRC32 check = new CRC32();
+        check.update(payload, 0, len);
+        if ((int) check.getValue() != crc) return null;
+
+        ByteBuffer buf = ByteBuffer.wrap(payload);
+        byte type = buf.get();
+        long timestamp = buf.getLong();
+        String item = readString(buf);
+        String account = readString(buf);
+        return new Record(type, timestamp, item, account, len);
+    }
+
+    private static String readString(ByteBuffer buf) {
+        int n = buf.getShort() & 0xFFFF;
+        byte[] b = new byte[n];
+        buf.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    // ===== Files =====
+
+    private FileChannel openWal(long gen) throws IOException {
+        File f = new File(dir, String.format("wal-%08d.log", gen));
+        return FileChannel.open(f.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private TreeMap<Long, File> listGenerations(String prefix, String suffix) {
+        TreeMap<Long, File> result = new TreeMap<>();
+        File[] files = dir.listFiles();
+        if (files == null) return result;
+
+        for (File f : files) {
+            String name = f.getName();
+            if (name.startsWith(prefix) && name.endsWith(suffix)) {
+                try {
+                    result.put(Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())), f);
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+        return result;
+    }
+
+    private static void deleteQuietly(File f) {
+        if (!f.delete() && f.exists()) {
+            Logs.warn("CoordinatorWal: couldn't delete " + f.getName());
+        }
+    }
+}
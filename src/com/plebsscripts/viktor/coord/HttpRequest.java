@@ -0,0 +1,163 @@
+package com.plebsscripts.viktor.coord;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Minimal HTTP/1.1 request, parsed incrementally from a connection buffer.
+ *
+ * Supports what the coordinator needs: request line, headers,
+ * Content-Length bodies and keep-alive. Chunked bodies are rejected.
+ */
+final class HttpRequest {
+    static final int MAX_HEADER_BYTES = 8 * 1024;
+    static final int MAX_BODY_BYTES = 1024 * 1024;
+
+    final String method;
+    final String path;
+    final Map<String, String> query;
+    final Map<String, String> headers;
+    final String body;
+    final boolean keepAlive;
+
+    private HttpRequest(String method, String path, Map<String, String> query,
+                        Map<String, String> headers, String body, boolean keepAlive) {
+        this.method = method;
+        this.path = path;
+        this.query = query;
+        this.headers = headers;
+        this.body = body;
+        this.keepAlive = keepAlive;
+    }
+
+    /**
+     * Thrown for requests we can't serve; status is sent back before closing.
+     */
+    static final class BadRequest extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        BadRequest(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    String param(String name) {
+        return query.get(name);
+    }
+
+    /**
+     * Try to parse one request from the buffer (read mode).
+     * On success the buffer position is moved past the request.
+     * Returns null (position unchanged) if more bytes are needed.
+     */
+    static HttpRequest tryParse(ByteBuffer in) throws BadRequest {
+        int start = in.position();
+        int limit = in.limit();
+
+        int headerEnd = indexOfHeaderEnd(in, start, limit);
+        if (headerEnd < 0) {
+            if (limit - start > MAX_HEADER_BYTES) {
+                throw new BadRequest(431, "Headers too large");
+            }
+            return null;
+        }
+
+        byte[] headBytes = new byte[headerEnd - start];
+        in.get(headBytes);
+        String head = new String(headBytes, StandardCharsets.ISO_8859_1);
+        String[] lines = head.split("\r\n");
+
+        String[] requestLine = lines[0].split(" ");
+        if (requestLine.length != 3 || !requestLine[2].startsWith("HTTP/1.")) {
+            throw new BadRequest(400, "Malformed request line");
+        }
+
+        Map<String, String> headers = new HashMap<>();
+        for (int i = 1; i < lines.length; i++) {
+            int colon = lines[i].indexOf(':');
+            if (colon > 0) {
+                headers.put(lines[i].substring(0, colon).trim().toLowerCase(Locale.ROOT),
+                        lines[i].substring(colon + 1).trim());
+            }
+        }
+
+        if (headers.containsKey("transfer-encoding")) {
+            throw new BadRequest(501, "Chunked bodies not supported");
+        }
+
+        int contentLength = 0;
+        String cl = headers.get("content-length");
+        if (cl != null) {
+            try {
+                contentLength = Integer.parseInt(cl);
+            } catch (NumberFormatException e) {
+                throw new BadRequest(400, "Bad Content-Length");
+            }
+            if (contentLength < 0 || contentLength > MAX_BODY_BYTES) {
+                throw new BadRequest(413, "Body too large");
+            }
+        }
+
+        int bodyStart = headerEnd + 4;
+        if (limit - bodyStart < contentLength) {
+            in.position(start);
+            return null; // Wait for the rest of the body
+        }
+
+        in.position(bodyStart);
+        byte[] bodyBytes = new byte[contentLength];
+        in.get(bodyBytes);
+
+        String method = requestLine[0];
+        String target = requestLine[1];
+        String path = target;
+        Map<String, String> query = new HashMap<>();
+        int q = target.indexOf('?');
+        if (q >= 0) {
+            path = target.substring(0, q);
+            query = parseQuery(target.substring(q + 1));
+        }
+
+        String connection = headers.getOrDefault("connection", "").toLowerCase(Locale.ROOT);
+        boolean keepAlive = requestLine[2].equals("HTTP/1.1")
+                ? !connection.equals("close")
+                : connection.equals("keep-alive");
+
+        return new HttpRequest(method, path, query, headers,
+                new String(bodyBytes, StandardCharsets.UTF_8), keepAlive);
+    }
+
+    static Map<String, String> parseQuery(String query) {
+        Map<String, String> map = new HashMap<>();
+        if (query == null || query.isEmpty()) return map;
+
+        for (String param : query.split("&")) {
+            String[] kv = param.split("=", 2);
+            if (kv.length == 2) {
+                try {
+                    map.put(kv[0], URLDecoder.decode(kv[1], "UTF-8"));
+                } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+                    map.put(kv[0], kv[1]);
+                }
+            }
+        }
+        return map;
+    }
+
+    private static int indexOfHeaderEnd(ByteBuffer in, int start, int limit) {
+        for (int i = start; i + 3 < limit; i++) {
+            if (in.get(i) == '\r' && in.get(i + 1) == '\n' && in.get(i + 2) == '\r' && in.get(i + 3) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
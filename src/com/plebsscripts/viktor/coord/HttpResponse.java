@@ -0,0 +1,62 @@
+package com.plebsscripts.viktor.coord;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * HTTP/1.1 response with a fixed Content-Length body.
+ */
+final class HttpResponse {
+    final int status;
+    final String contentType;
+    final byte[] body;
+
+    HttpResponse(int status, String contentType, String body) {
+        this(status, contentType, body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    HttpResponse(int status, String contentType, byte[] body) {
+        this.status = status;
+        this.contentType = contentType;
+        this.body = body;
+    }
+
+    static HttpResponse json(String json) {
+        return new HttpResponse(200, "application/json", json);
+    }
+
+    static HttpResponse error(int status, String message) {
+        return new HttpResponse(status, "application/json",
+                "{\"error\":\"" + message.replace("\"", "'") + "\"}");
+    }
+
+    ByteBuffer encode(boolean keepAlive) {
+        String head = "HTTP/1.1 " + status + " " + reason(status) + "\r\n"
+                + "Content-Type: " + contentType + "\r\n"
+                + "Content-Length: " + body.length + "\r\n"
+                + "Connection: " + (keepAlive ? "keep-alive" : "close") + "\r\n"
+                + "\r\n";
+        byte[] headBytes = head.getBytes(StandardCharsets.ISO_8859_1);
+
+        ByteBuffer buf = ByteBuffer.allocate(headBytes.length + body.length);
+        buf.put(headBytes).put(body);
+        buf.flip();
+        return buf;
+    }
+
+    private static String reason(int status) {
+        switch (status) {
+            case 200: return "OK";
+            case 400: return "Bad Request";
+            case 404: return "Not Found";
+            case 405: return "Method Not Allowed";
+            case 409: return "Conflict";
+            case 413: return "Payload Too Large";
+            case 431: return "Request Header Fields Too Large";
+            case 500: return "Internal Server Error";
+            case 501: return "Not Implemented";
+            case 503: return "Service Unavailable";
+            default: return "Status";
+        }
+    }
+}
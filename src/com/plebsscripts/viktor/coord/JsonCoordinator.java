@@ -2,20 +2,39 @@ package com.plebsscripts.viktor.coord;
 
 import com.plebsscripts.viktor.util.Logs;
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.reflect.TypeToken;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.*;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
- * JSON file-based coordinator (no network calls - SAFER!)
+ * File-based coordinator (no network calls - SAFER!)
  *
- * Multiple bots read/write to a shared JSON file: data/coordination.json
- * Format: {"limits": [{"item":"Dragon bones","account":"Bot1","expiresAt":1729278000},...]}
+ * Multiple bots share an append-only record log next to the old JSON file:
+ * data/coordination.json -> data/coordination.log (see CoordinationLog).
+ * An existing coordination.json is imported once when the log is created.
+ *
+ * Each report appends one small record under an OS file lock instead of
+ * rewriting the whole file, so 40+ bots on one data dir don't lose each
+ * other's updates. Readers only tail the bytes added since their last read.
+ * Expired entries are compacted away by a background thread.
+ *
+ * Call addListener() to get pushed updates: a watcher thread reloads the
+ * log only when it changes on disk and hands the new blocked set to every
+ * listener, so takeovers reach other bots in well under a second.
+ *
+ * Item leases stop several bots from working the same order book:
+ * claimItem() atomically takes "item X for N minutes" if nobody else holds
+ * it and returns a fencing token. Tokens only go up per item, so a bot whose
+ * lease lapsed and was taken over can't renew or release the new holder's
+ * lease with its stale token.
+ *
+ * Margin probe results are shared too (ProbeCache), so a bot can skip
+ * probing an item another bot measured a few minutes ago.
  *
  * Benefits over HTTP server:
  * - No network traffic to detect
@@ -28,57 +47,148 @@ import java.util.concurrent.ConcurrentHashMap;
  *   coord.reportLimit("Dragon bones");
  *   Set<String> blocked = coord.getItemsBlockedByOtherBots();
  */
-public class JsonCoordinator {
-    private final File coordinationFile;
+public class JsonCoordinator implements ProbeCache {
+    private static final long LIMIT_DURATION_MS = 4L * 60 * 60 * 1000; // 4 hours
+
+    private final File legacyJsonFile;
     private final String botId;
-    private final Gson gson;
+    private CoordinationLog log;
+
+    // Live view of the log, keyed by item|account (lowercase)
+    private final Map<String, LimitEntry> entries = new HashMap<>();
+    private int recordsInLog = 0;
+
+    // Latest lease record per item (lowercase), expired ones included so
+    // tokens keep increasing after the lease lapses
+    private final Map<String, Lease> leases = new HashMap<>();
 
-    // Cache to reduce file I/O
-    private CoordinationData cachedData;
+    // Newest probe per item (lowercase)
+    private final Map<String, ProbeResult> probes = new HashMap<>();
+    private static final long PROBE_RETENTION_MS = 2L * 60 * 60 * 1000; // 2 hours
+
+    /** claimItem() result when another bot holds the lease */
+    public static final long NO_LEASE = 0;
+    /** claimItem() result when the log is unavailable - trade without a lease */
+    public static final long UNCOORDINATED = -1;
+
+    // Rate limit tailing
     private long lastReadTime = 0;
     private static final long CACHE_DURATION_MS = 5000; // 5 seconds
 
-    // File lock to prevent corruption
+    // Compact once dead records outnumber live ones (and there are enough to matter)
+    private static final int MIN_DEAD_RECORDS_TO_COMPACT = 256;
+    private static final long COMPACT_INTERVAL_MINUTES = 10;
+    private ScheduledExecutorService compactor;
+
+    // Guards entries/recordsInLog (the log itself handles cross-process locking)
     private final Object fileLock = new Object();
 
+    // Push mode: watcher thread + listeners
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private CoordinationWatcher watcher;
+
+    // Per-tail flags (guarded by fileLock)
+    private boolean changedSinceTail = false;
+    private boolean trackLatency = false;
+
+    // Earliest expiry in the last pushed set - expiring entries don't touch
+    // the file, so the watcher's timer pass re-pushes once this passes
+    private long nextPushExpiry = Long.MAX_VALUE;
+
+    // Propagation latency: other bot's report -> seen here
+    private long latencySamples = 0;
+    private long latencyTotalMs = 0;
+    private long latencyMaxMs = 0;
+    private long lastLatencyMs = -1;
+
+    /**
+     * Receives the blocked set whenever other bots' reports change it.
+     * Called on the watcher thread.
+     */
+    public interface Listener {
+        /** @param blockedByOthers item name -> account, other bots only, expired entries removed */
+        void onBlockedItemsChanged(Map<String, String> blockedByOthers);
+    }
+
+    private final CoordinationLog.Visitor applier = new CoordinationLog.Visitor() {
+        @Override
+        public void onReset() {
+            entries.clear();
+            leases.clear();
+            probes.clear();
+            recordsInLog = 0;
+            changedSinceTail = true;
+            trackLatency = false; // Everything after a reset is a replay
+        }
+
+        @Override
+        public void onRecord(CoordinationLog.Record r) {
+            recordsInLog++;
+            changedSinceTail = true;
+            if (r.type == CoordinationLog.REC_LIMIT) {
+                if (trackLatency && !r.account.equalsIgnoreCase(botId)) {
+                    recordLatency(System.currentTimeMillis() - r.at);
+                }
+
+                LimitEntry entry = new LimitEntry();
+                entry.item = r.item;
+                entry.account = r.account;
+                entry.expiresAt = r.expiresAt;
+                entry.reportedAt = r.at;
+                entries.put(key(r.item, r.account), entry);
+            } else if (r.type == CoordinationLog.REC_LEASE && r.values.length > 0) {
+                String item = r.item.toLowerCase();
+                Lease current = leases.get(item);
+                // Stale holders can't write over a newer token
+                if (current == null || r.values[0] >= current.token) {
+                    leases.put(item, new Lease(r.item, r.account, r.values[0], r.at, r.expiresAt));
+                }
+            } else if (r.type == CoordinationLog.REC_PROBE && r.values.length >= 2) {
+                String item = r.item.toLowerCase();
+                ProbeResult current = probes.get(item);
+                if (current == null || r.at >= current.probedAt) {
+                    probes.put(item, new ProbeResult(r.item, r.account, (int) r.values[0], (int) r.values[1], r.at));
+                }
+            }
+        }
+    };
+
     public JsonCoordinator(String filePath, String botId) {
-        this.coordinationFile = new File(filePath);
+        this.legacyJsonFile = new File(filePath);
         this.botId = botId;
-        this.gson = new GsonBuilder().setPrettyPrinting().create();
 
-        // Create file if doesn't exist
-        ensureFileExists();
+        File logFile = new File(legacyJsonFile.getAbsoluteFile().getParentFile(), logName(legacyJsonFile.getName()));
 
-        Logs.info("JsonCoordinator initialized: file=" + filePath + ", botId=" + botId);
+        try {
+            boolean isNew = !logFile.exists();
+            this.log = new CoordinationLog(logFile);
+            if (isNew) {
+                importLegacyJson();
+            }
+            refresh(true);
+        } catch (IOException e) {
+            Logs.warn("Failed to open coordination log: " + e.getMessage());
+        }
+
+        startCompactor();
+
+        Logs.info("JsonCoordinator initialized: file=" + logFile.getPath() + ", botId=" + botId);
     }
 
     /**
      * Report that this bot hit 4h limit on an item
      */
     public void reportLimit(String itemName) {
+        if (log == null) return;
+
         synchronized (fileLock) {
             try {
-                CoordinationData data = readData();
-
-                // Add or update limit entry
-                LimitEntry entry = new LimitEntry();
-                entry.item = itemName;
-                entry.account = botId;
-                entry.expiresAt = System.currentTimeMillis() + (4L * 60 * 60 * 1000); // 4 hours
-                entry.reportedAt = System.currentTimeMillis();
-
-                // Remove old entry for same item/account (if exists)
-                data.limits.removeIf(e ->
-                        e.item.equalsIgnoreCase(itemName) &&
-                                e.account.equalsIgnoreCase(botId));
-
-                // Add new entry
-                data.limits.add(entry);
-
-                // Write back to file
-                writeData(data);
+                long now = System.currentTimeMillis();
+                log.append(applier, new CoordinationLog.Record(
+                        CoordinationLog.REC_LIMIT, itemName, botId, now, now + LIMIT_DURATION_MS));
+                lastReadTime = now;
 
-                Logs.info("Reported limit to JSON: " + itemName + " (expires in 4h)");
+                Logs.info("Reported limit to coordination log: " + itemName + " (expires in 4h)");
 
             } catch (Exception e) {
                 Logs.warn("Failed to report limit: " + e.getMessage());
@@ -92,78 +202,226 @@ public class JsonCoordinator {
     public Set<String> getItemsBlockedByOtherBots() {
         Set<String> otherBotsBlocked = new HashSet<>();
 
-        try {
-            CoordinationData data = readData();
+        synchronized (fileLock) {
+            refresh(false);
             long now = System.currentTimeMillis();
 
-            for (LimitEntry entry : data.limits) {
-                // Skip expired entries
-                if (entry.expiresAt < now) {
+            for (LimitEntry entry : entries.values()) {
+                // Skip expired entries and our own
+                if (entry.expiresAt < now || entry.account.equalsIgnoreCase(botId)) {
                     continue;
                 }
-
-                // Only include if ANOTHER bot blocked it (not us)
-                if (!entry.account.equalsIgnoreCase(botId)) {
-                    otherBotsBlocked.add(entry.item.toLowerCase());
-                }
+                otherBotsBlocked.add(entry.item.toLowerCase());
             }
-
-        } catch (Exception e) {
-            Logs.warn("Failed to read blocked items: " + e.getMessage());
         }
 
         return otherBotsBlocked;
     }
 
+    /**
+     * Active limits of other bots, with their expiry (for LimitRegistry)
+     */
+    public List<FleetLimit> getLimitsOfOtherBots() {
+        List<FleetLimit> result = new ArrayList<>();
+        synchronized (fileLock) {
+            refresh(false);
+            long now = System.currentTimeMillis();
+            for (LimitEntry entry : entries.values()) {
+                if (entry.expiresAt >= now && !entry.account.equalsIgnoreCase(botId)) {
+                    result.add(new FleetLimit(entry.item, entry.account, entry.expiresAt));
+                }
+            }
+        }
+        return result;
+    }
+
     /**
      * Get detailed info about all blocked items (with account names)
      */
     public Map<String, String> getBlockedItemsWithAccounts() {
-        Map<String, String> result = new HashMap<>();
+        synchronized (fileLock) {
+            refresh(false);
+            return blockedByOthers();
+        }
+    }
 
-        try {
-            CoordinationData data = readData();
-            long now = System.currentTimeMillis();
+    /**
+     * Compact the log: drop expired entries and superseded records.
+     * Runs in the background every few minutes; safe to call any time.
+     */
+    public void cleanup() {
+        if (log == null) return;
 
-            for (LimitEntry entry : data.limits) {
-                // Skip expired entries
-                if (entry.expiresAt < now) {
-                    continue;
-                }
+        synchronized (fileLock) {
+            try {
+                long now = System.currentTimeMillis();
+                int before = recordsInLog;
+
+                log.compact(applier, () -> {
+                    List<CoordinationLog.Record> live = new ArrayList<>();
+                    for (LimitEntry e : entries.values()) {
+                        if (e.expiresAt >= now) {
+                            live.add(new CoordinationLog.Record(
+                                    CoordinationLog.REC_LIMIT, e.item, e.account, e.reportedAt, e.expiresAt));
+                        }
+                    }
+                    // Keep the last lease per item even when expired - it carries the token
+                    for (Lease l : leases.values()) {
+                        live.add(new CoordinationLog.Record(
+                                CoordinationLog.REC_LEASE, l.item, l.holder, l.at, l.expiresAt, l.token));
+                    }
+                    for (ProbeResult p : probes.values()) {
+                        if (p.probedAt + PROBE_RETENTION_MS >= now) {
+                            live.add(new CoordinationLog.Record(CoordinationLog.REC_PROBE, p.item, p.account,
+                                    p.probedAt, p.probedAt + PROBE_RETENTION_MS, p.buyPrice, p.sellPrice));
+                        }
+                    }
+                    return live;
+                });
+                lastReadTime = now;
 
-                // Only include other bots
-                if (!entry.account.equalsIgnoreCase(botId)) {
-                    result.put(entry.item, entry.account);
+                if (before > recordsInLog) {
+                    Logs.info("Compacted coordination log: " + before + " -> " + recordsInLog + " records");
                 }
+
+            } catch (Exception e) {
+                Logs.warn("Cleanup failed: " + e.getMessage());
             }
+        }
+    }
 
-        } catch (Exception e) {
-            Logs.warn("Failed to read blocked items: " + e.getMessage());
+    // ===== Item leases =====
+
+    /**
+     * Lease an item for this bot. Re-claiming an item we already hold
+     * extends it and keeps the token.
+     * @return fencing token, NO_LEASE if another bot holds a live lease,
+     *         or UNCOORDINATED if the log can't be used
+     */
+    public long claimItem(String itemName, long durationMs) {
+        if (log == null) return UNCOORDINATED;
+
+        synchronized (fileLock) {
+            final long[] token = {NO_LEASE};
+            try {
+                log.appendIf(applier, () -> {
+                    long now = System.currentTimeMillis();
+                    Lease current = leases.get(itemName.toLowerCase());
+
+                    if (current != null && current.isLive(now) && !current.holder.equalsIgnoreCase(botId)) {
+                        return null; // Someone else is working it
+                    }
+
+                    boolean ours = current != null && current.isLive(now);
+                    token[0] = ours ? current.token : (current != null ? current.token + 1 : 1);
+                    return new CoordinationLog.Record[] {new CoordinationLog.Record(
+                            CoordinationLog.REC_LEASE, itemName, botId, now, now + durationMs, token[0])};
+                });
+                lastReadTime = System.currentTimeMillis();
+            } catch (Exception e) {
+                Logs.warn("Failed to claim " + itemName + ": " + e.getMessage());
+                return UNCOORDINATED;
+            }
+
+            if (token[0] == NO_LEASE) {
+                Lease holder = leases.get(itemName.toLowerCase());
+                Logs.debug("Lease on " + itemName + " held by " + (holder != null ? holder.holder : "?"));
+            }
+            return token[0];
         }
+    }
 
-        return result;
+    /**
+     * Extend our lease. Fails if the token is no longer the current one
+     * (the lease lapsed and another bot claimed the item).
+     */
+    public boolean renewLease(String itemName, long token, long durationMs) {
+        if (log == null || token <= NO_LEASE) return token == UNCOORDINATED;
+
+        synchronized (fileLock) {
+            try {
+                return log.appendIf(applier, () -> {
+                    Lease current = leases.get(itemName.toLowerCase());
+                    if (current == null || current.token != token || !current.holder.equalsIgnoreCase(botId)) {
+                        return null;
+                    }
+                    long now = System.currentTimeMillis();
+                    return new CoordinationLog.Record[] {new CoordinationLog.Record(
+                            CoordinationLog.REC_LEASE, itemName, botId, now, now + durationMs, token)};
+                });
+            } catch (Exception e) {
+                Logs.warn("Failed to renew lease on " + itemName + ": " + e.getMessage());
+                return false;
+            }
+        }
     }
 
     /**
-     * Clean up expired entries (optional maintenance)
+     * Give the item back early so another bot can pick it up right away.
+     * No-op if the token is stale.
      */
-    public void cleanup() {
+    public void releaseLease(String itemName, long token) {
+        if (log == null || token <= NO_LEASE) return;
+
         synchronized (fileLock) {
             try {
-                CoordinationData data = readData();
-                long now = System.currentTimeMillis();
+                log.appendIf(applier, () -> {
+                    Lease current = leases.get(itemName.toLowerCase());
+                    if (current == null || current.token != token || !current.holder.equalsIgnoreCase(botId)) {
+                        return null;
+                    }
+                    long now = System.currentTimeMillis();
+                    return new CoordinationLog.Record[] {new CoordinationLog.Record(
+                            CoordinationLog.REC_LEASE, itemName, botId, now, now, token)};
+                });
+            } catch (Exception e) {
+                Logs.warn("Failed to release lease on " + itemName + ": " + e.getMessage());
+            }
+        }
+    }
 
-                int beforeSize = data.limits.size();
-                data.limits.removeIf(e -> e.expiresAt < now);
-                int afterSize = data.limits.size();
+    /**
+     * Items other bots currently hold leases on (lowercase name -> holder)
+     */
+    public Map<String, String> getItemsLeasedByOthers() {
+        Map<String, String> result = new HashMap<>();
 
-                if (beforeSize > afterSize) {
-                    writeData(data);
-                    Logs.info("Cleaned up " + (beforeSize - afterSize) + " expired limit entries");
+        synchronized (fileLock) {
+            refresh(false);
+            long now = System.currentTimeMillis();
+            for (Map.Entry<String, Lease> e : leases.entrySet()) {
+                Lease lease = e.getValue();
+                if (lease.isLive(now) && !lease.holder.equalsIgnoreCase(botId)) {
+                    result.put(e.getKey(), lease.holder);
                 }
+            }
+        }
+        return result;
+    }
 
+    // ===== Probe cache =====
+
+    @Override
+    public ProbeResult getProbe(String itemName) {
+        synchronized (fileLock) {
+            refresh(true); // Rare call, and a miss costs a real probe - always tail
+            return probes.get(itemName.toLowerCase());
+        }
+    }
+
+    @Override
+    public void publishProbe(String itemName, int buyPrice, int sellPrice) {
+        if (log == null) return;
+
+        synchronized (fileLock) {
+            try {
+                long now = System.currentTimeMillis();
+                log.append(applier, new CoordinationLog.Record(
+                        CoordinationLog.REC_PROBE, itemName, botId, now, now + PROBE_RETENTION_MS,
+                        buyPrice, sellPrice));
+                lastReadTime = now;
             } catch (Exception e) {
-                Logs.warn("Cleanup failed: " + e.getMessage());
+                Logs.warn("Failed to publish probe: " + e.getMessage());
             }
         }
     }
@@ -172,15 +430,15 @@ public class JsonCoordinator {
      * Get statistics for monitoring
      */
     public String getStats() {
-        try {
-            CoordinationData data = readData();
+        synchronized (fileLock) {
+            refresh(false);
             long now = System.currentTimeMillis();
 
             int activeCount = 0;
             int myCount = 0;
             int othersCount = 0;
 
-            for (LimitEntry entry : data.limits) {
+            for (LimitEntry entry : entries.values()) {
                 if (entry.expiresAt > now) {
                     activeCount++;
                     if (entry.account.equalsIgnoreCase(botId)) {
@@ -191,11 +449,54 @@ public class JsonCoordinator {
                 }
             }
 
-            return String.format("JsonCoordinator{active=%d, mine=%d, others=%d}",
-                    activeCount, myCount, othersCount);
+            return String.format("JsonCoordinator{active=%d, mine=%d, others=%d, records=%d, bytes=%d, push=%s, %s}",
+                    activeCount, myCount, othersCount, recordsInLog, log != null ? log.sizeBytes() : 0,
+                    watcher != null && watcher.isPushActive(), getPropagationStats());
+        }
+    }
 
-        } catch (Exception e) {
-            return "JsonCoordinator{error=" + e.getMessage() + "}";
+    /**
+     * Subscribe to blocked-set changes. Starts the file watcher on first use.
+     * The listener is called once right away with the current state.
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+
+        if (log != null && watcher == null) {
+            synchronized (fileLock) {
+                if (watcher == null) {
+                    watcher = new CoordinationWatcher(log.getFile(), log::lastWrittenSize, this::onLogChanged);
+                    watcher.start();
+                }
+            }
+        }
+
+        listener.onBlockedItemsChanged(getBlockedItemsWithAccounts());
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * True when the watcher has confirmed OS file events work here.
+     * False means we're on the polling fallback (e.g. network share).
+     */
+    public boolean isPushActive() {
+        return watcher != null && watcher.isPushActive();
+    }
+
+    /**
+     * Time between another bot writing a report and this bot seeing it.
+     * Based on the reporter's clock, so cross-machine skew shows up here too.
+     */
+    public String getPropagationStats() {
+        synchronized (fileLock) {
+            if (latencySamples == 0) {
+                return "propagation=n/a";
+            }
+            return String.format("propagation{last=%dms, avg=%dms, max=%dms, n=%d}",
+                    lastLatencyMs, latencyTotalMs / latencySamples, latencyMaxMs, latencySamples);
         }
     }
 
@@ -203,110 +504,240 @@ public class JsonCoordinator {
      * Always available (no server to check)
      */
     public boolean isAvailable() {
-        return coordinationFile.exists();
+        return log != null && log.getFile().exists();
     }
 
     /**
-     * Force cache refresh on next read
+     * Force a tail of the log on next read
      */
     public void invalidateCache() {
         lastReadTime = 0;
-        cachedData = null;
+    }
+
+    /**
+     * Stop the background compactor and release the log file
+     */
+    public void close() {
+        if (compactor != null) {
+            compactor.shutdownNow();
+        }
+        if (watcher != null) {
+            watcher.stop();
+        }
+        synchronized (fileLock) {
+            if (log != null) {
+                log.close();
+            }
+        }
     }
 
     // ===== Internal Methods =====
 
     /**
-     * Read coordination data from JSON file (with caching)
+     * Pick up records other bots appended since our last read.
+     * Must hold fileLock.
      */
-    private CoordinationData readData() throws IOException {
-        long now = System.currentTimeMillis();
+    private void refresh(boolean force) {
+        if (log == null) return;
 
-        // Return cached data if fresh enough
-        if (cachedData != null && (now - lastReadTime) < CACHE_DURATION_MS) {
-            return cachedData;
+        long now = System.currentTimeMillis();
+        if (!force && (now - lastReadTime) < CACHE_DURATION_MS) {
+            return;
         }
-
-        // Ensure file exists
-        if (!coordinationFile.exists()) {
-            ensureFileExists();
+        if (!force && isPushActive()) {
+            return; // Watcher keeps us current
         }
 
-        // Read from file
-        try (Reader reader = new InputStreamReader(
-                new FileInputStream(coordinationFile), StandardCharsets.UTF_8)) {
+        try {
+            log.tail(applier);
+            lastReadTime = now;
+        } catch (IOException e) {
+            Logs.warn("Failed to read coordination log: " + e.getMessage());
+        }
+    }
 
-            CoordinationData data = gson.fromJson(reader, CoordinationData.class);
+    /**
+     * Watcher callback: tail the log and push the blocked set if anything changed
+     */
+    private void onLogChanged() {
+        if (log == null) return;
 
-            if (data == null) {
-                data = new CoordinationData();
-            }
-            if (data.limits == null) {
-                data.limits = new ArrayList<>();
+        Map<String, String> snapshot = null;
+        synchronized (fileLock) {
+            changedSinceTail = false;
+            trackLatency = true;
+            try {
+                log.tail(applier);
+                lastReadTime = System.currentTimeMillis();
+            } catch (IOException e) {
+                Logs.warn("Failed to read coordination log: " + e.getMessage());
+            } finally {
+                trackLatency = false;
             }
 
-            // Update cache
-            cachedData = data;
-            lastReadTime = now;
+            boolean expired = System.currentTimeMillis() >= nextPushExpiry;
+            if ((changedSinceTail || expired) && !listeners.isEmpty()) {
+                snapshot = blockedByOthers();
+                nextPushExpiry = Long.MAX_VALUE;
+                for (LimitEntry e : entries.values()) {
+                    if (snapshot.containsKey(e.item)) {
+                        nextPushExpiry = Math.min(nextPushExpiry, e.expiresAt);
+                    }
+                }
+            }
+        }
 
-            return data;
+        if (snapshot != null) {
+            for (Listener l : listeners) {
+                l.onBlockedItemsChanged(snapshot);
+            }
+            if (lastLatencyMs >= 0) {
+                Logs.debug("Coordination update pushed (" + snapshot.size() + " blocked, last propagation "
+                        + lastLatencyMs + "ms)");
+            }
         }
     }
 
     /**
-     * Write coordination data to JSON file
+     * Must hold fileLock.
      */
-    private void writeData(CoordinationData data) throws IOException {
-        // Write to temp file first (atomic write)
-        File tempFile = new File(coordinationFile.getParentFile(),
-                coordinationFile.getName() + ".tmp");
-
-        try (Writer writer = new OutputStreamWriter(
-                new FileOutputStream(tempFile), StandardCharsets.UTF_8)) {
-            gson.toJson(data, writer);
+    private Map<String, String> blockedByOthers() {
+        Map<String, String> result = new HashMap<>();
+        long now = System.currentTimeMillis();
+
+        for (LimitEntry entry : entries.values()) {
+            // Skip expired entries and our own
+            if (entry.expiresAt < now || entry.account.equalsIgnoreCase(botId)) {
+                continue;
+            }
+            result.put(entry.item, entry.account);
         }
+        return result;
+    }
 
-        // Atomic rename (replaces old file)
-        Files.move(tempFile.toPath(), coordinationFile.toPath(),
-                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    /**
+     * Must hold fileLock.
+     */
+    private void recordLatency(long ms) {
+        ms = Math.max(0, ms);
+        lastLatencyMs = ms;
+        latencySamples++;
+        latencyTotalMs += ms;
+        latencyMaxMs = Math.max(latencyMaxMs, ms);
+    }
 
-        // Invalidate cache
-        cachedData = data;
-        lastReadTime = System.currentTimeMillis();
+    private void startCompactor() {
+        compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "JsonCoordinator-compactor");
+            t.setDaemon(true);
+            return t;
+        });
+
+        compactor.scheduleWithFixedDelay(() -> {
+            boolean worthIt;
+            synchronized (fileLock) {
+                refresh(true);
+                long now = System.currentTimeMillis();
+                int live = 0;
+                for (LimitEntry e : entries.values()) {
+                    if (e.expiresAt >= now) live++;
+                }
+                int dead = recordsInLog - live - leases.size() - probes.size();
+                worthIt = dead >= MIN_DEAD_RECORDS_TO_COMPACT && dead > live;
+            }
+            if (worthIt) {
+                cleanup();
+            }
+        }, COMPACT_INTERVAL_MINUTES, COMPACT_INTERVAL_MINUTES, TimeUnit.MINUTES);
     }
 
     /**
-     * Create empty coordination file if doesn't exist
+     * One-time import of entries from the old coordination.json format
      */
-    private void ensureFileExists() {
-        try {
-            if (!coordinationFile.exists()) {
-                coordinationFile.getParentFile().mkdirs();
+    private void importLegacyJson() {
+        if (!legacyJsonFile.exists()) return;
+
+        try (Reader reader = new InputStreamReader(
+                new FileInputStream(legacyJsonFile), StandardCharsets.UTF_8)) {
 
-                CoordinationData emptyData = new CoordinationData();
-                emptyData.limits = new ArrayList<>();
+            CoordinationData data = new Gson().fromJson(reader, CoordinationData.class);
+            if (data == null || data.limits == null) return;
 
-                try (Writer writer = new OutputStreamWriter(
-                        new FileOutputStream(coordinationFile), StandardCharsets.UTF_8)) {
-                    gson.toJson(emptyData, writer);
+            long now = System.currentTimeMillis();
+            List<CoordinationLog.Record> records = new ArrayList<>();
+            for (LimitEntry e : data.limits) {
+                if (e.item != null && e.account != null && e.expiresAt >= now) {
+                    records.add(new CoordinationLog.Record(
+                            CoordinationLog.REC_LIMIT, e.item, e.account, e.reportedAt, e.expiresAt));
                 }
+            }
 
-                Logs.info("Created coordination file: " + coordinationFile.getPath());
+            if (!records.isEmpty()) {
+                log.append(applier, records.toArray(new CoordinationLog.Record[0]));
             }
+            Logs.info("Imported " + records.size() + " active limits from " + legacyJsonFile.getName());
+
         } catch (Exception e) {
-            Logs.warn("Failed to create coordination file: " + e.getMessage());
+            Logs.warn("Failed to import " + legacyJsonFile.getName() + ": " + e.getMessage());
         }
     }
 
+    private static String logName(String jsonName) {
+        int dot = jsonName.lastIndexOf('.');
+        return (dot > 0 ? jsonName.substring(0, dot) : jsonName) + ".log";
+    }
+
+    private static String key(String item, String account) {
+        return item.toLowerCase() + "|" + account.toLowerCase();
+    }
+
     // ===== Data Classes =====
 
     /**
-     * Root JSON structure
+     * Root JSON structure (legacy coordination.json)
      */
     private static class CoordinationData {
         List<LimitEntry> limits;
     }
 
+    /**
+     * Latest lease record for an item
+     */
+    private static class Lease {
+        final String item;
+        final String holder;
+        final long token;
+        final long at;
+        final long expiresAt;
+
+        Lease(String item, String holder, long token, long at, long expiresAt) {
+            this.item = item;
+            this.holder = holder;
+            this.token = token;
+            this.at = at;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isLive(long now) {
+            return expiresAt > now;
+        }
+    }
+
+    /**
+     * Another bot's limit, as returned by getLimitsOfOtherBots()
+     */
+    public static final class FleetLimit {
+        public final String item;
+        public final String account;
+        public final long expiresAt;   // Epoch millis
+
+        FleetLimit(String item, String account, long expiresAt) {
+            this.item = item;
+            this.account = account;
+            this.expiresAt = expiresAt;
+        }
+    }
+
     /**
      * Single limit entry
      */
@@ -316,4 +747,4 @@ public class JsonCoordinator {
         long expiresAt;     // Epoch millis when limit expires
         long reportedAt;    // Epoch millis when reported
     }
-}
\ No newline at end of file
+}
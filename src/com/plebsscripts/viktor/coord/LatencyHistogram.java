@@ -0,0 +1,102 @@
+package com.plebsscripts.viktor.coord;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram in microseconds.
+ *
+ * Log-linear buckets as in HdrHistogram: every power of two is split into
+ * 2^subBits linear sub-buckets, so a value is never more than 1/2^subBits
+ * off its bucket bound however large it is. Values of 2^36 us (19h) and up
+ * share the last bucket.
+ *
+ * Used by CoordinatorMetrics (2 sub-bits) and the coordinator load generator
+ * (finer, for p999).
+ */
+public final class LatencyHistogram {
+    private static final int MAX_EXPONENT = 36;
+
+    private final int subBits;
+    private final int subBuckets;
+    private final AtomicLongArray buckets;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumMicros = new LongAdder();
+    private volatile long maxMicros = 0;
+
+    public LatencyHistogram(int subBits) {
+        this.subBits = subBits;
+        this.subBuckets = 1 << subBits;
+        // Exponents below MAX_EXPONENT, plus one overflow bucket
+        this.buckets = new AtomicLongArray((MAX_EXPONENT - subBits + 1) * subBuckets + 1);
+    }
+
+    public void record(long micros) {
+        if (micros < 0) micros = 0;
+        buckets.incrementAndGet(index(micros));
+        count.increment();
+        sumMicros.add(micros);
+        if (micros > maxMicros) {
+            maxMicros = micros; // Racy but only ever raised close to the true max
+        }
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public long sumMicros() {
+        return sumMicros.sum();
+    }
+
+    public long maxMicros() {
+        return maxMicros;
+    }
+
+    /**
+     * @return upper bound (us) of the bucket holding the q-quantile, 0 if empty
+     */
+    public long quantile(double q) {
+        long[] snapshot = snapshot();
+        long total = 0;
+        for (long c : snapshot) total += c;
+        if (total == 0) return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(q * total));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) return upperBound(i);
+        }
+        return upperBound(snapshot.length - 1);
+    }
+
+    /**
+     * Bucket counts at one moment (each read atomically, not the whole array)
+     */
+    public long[] snapshot() {
+        long[] copy = new long[buckets.length()];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = buckets.get(i);
+        }
+        return copy;
+    }
+
+    public int index(long micros) {
+        if (micros < subBuckets) return (int) micros;
+        int e = 63 - Long.numberOfLeadingZeros(micros);
+        if (e >= MAX_EXPONENT) return buckets.length() - 1;
+        int sub = (int) ((micros >>> (e - subBits)) & (subBuckets - 1));
+        return (e - subBits + 1) * subBuckets + sub;
+    }
+
+    /**
+     * Exclusive upper bound of a bucket, in microseconds
+     */
+    public long upperBound(int index) {
+        if (index < subBuckets) return index + 1;
+        int e = index / subBuckets + subBits - 1;
+        int sub = index % subBuckets;
+        return ((long) (subBuckets + sub + 1)) << (e - subBits);
+    }
+}
@@ -0,0 +1,73 @@
+package com.plebsscripts.viktor.coord;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bounded, versioned history of limit changes on the coordinator.
+ *
+ * Every mutation gets the next version number. Subscribers remember the
+ * last version they applied and ask for everything after it; if they fell
+ * further behind than the ring holds, since() returns null and they need
+ * a full snapshot instead.
+ *
+ * Not thread-safe on its own - the server mutates it under one lock
+ * together with the limits map so versions and state always agree.
+ */
+final class LimitJournal {
+
+    static final class Event {
+        final long version;
+        final boolean added;    // false = expired/cleared
+        final String item;
+        final String account;
+        final long expiresAt;
+
+        Event(long version, boolean added, String item, String account, long expiresAt) {
+            this.version = version;
+            this.added = added;
+            this.item = item;
+            this.account = account;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final Event[] ring;
+    private long version = 0;   // Last assigned version
+
+    LimitJournal(int capacity) {
+        this.ring = new Event[capacity];
+    }
+
+    Event append(boolean added, String item, String account, long expiresAt) {
+        version++;
+        Event e = new Event(version, added, item, account, expiresAt);
+        ring[(int) (version % ring.length)] = e;
+        return e;
+    }
+
+    long version() {
+        return version;
+    }
+
+    /**
+     * Events with version > since, oldest first.
+     * @return null if some of those events were already overwritten
+     */
+    List<Event> since(long since) {
+        if (since > version) {
+            return null; // Cursor from a previous server run
+        }
+
+        long oldest = Math.max(1, version - ring.length + 1);
+        if (since + 1 < oldest) {
+            return null;
+        }
+
+        List<Event> events = new ArrayList<>((int) (version - since));
+        for (long v = since + 1; v <= version; v++) {
+            events.add(ring[(int) (v % ring.length)]);
+        }
+        return events;
+    }
+}
@@ -0,0 +1,46 @@
+package com.plebsscripts.viktor.coord;
+
+/**
+ * Fleet-wide store of margin probe results.
+ *
+ * A probe costs GP, a GE slot and minutes of waiting. When another bot
+ * probed the same item a few minutes ago, its observed buy/sell prices are
+ * as good as our own - MarginProbe checks here first and publishes what it
+ * measures. Implemented by JsonCoordinator (shared file) and
+ * CoordinatorClient (server).
+ */
+public interface ProbeCache {
+
+    /**
+     * One probe observation.
+     */
+    final class ProbeResult {
+        public final String item;
+        public final String account;
+        public final int buyPrice;
+        public final int sellPrice;
+        public final long probedAt;   // Epoch millis
+
+        public ProbeResult(String item, String account, int buyPrice, int sellPrice, long probedAt) {
+            this.item = item;
+            this.account = account;
+            this.buyPrice = buyPrice;
+            this.sellPrice = sellPrice;
+            this.probedAt = probedAt;
+        }
+
+        public long ageMs() {
+            return System.currentTimeMillis() - probedAt;
+        }
+    }
+
+    /**
+     * @return newest fleet observation for the item, or null if none / unavailable
+     */
+    ProbeResult getProbe(String itemName);
+
+    /**
+     * Share a probe this bot just completed. Must not block for long.
+     */
+    void publishProbe(String itemName, int buyPrice, int sellPrice);
+}
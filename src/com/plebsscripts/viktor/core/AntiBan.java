@@ -79,10 +79,16 @@ public class AntiBan {
     }
 
     public void sleep(int min, int max) {
+        Sleep.sleep(pauseMs(min, max));
+    }
+
+    /**
+     * Duration sleep(min, max) would take for this account, without sleeping
+     */
+    public int pauseMs(int min, int max) {
         int baseSleep = min + random.nextInt(max - min);
         int adjustedSleep = (int) (baseSleep * accountSpeedMultiplier) + accountTimingOffset;
-        adjustedSleep = Math.max(100, adjustedSleep);
-        Sleep.sleep(adjustedSleep);
+        return Math.max(100, adjustedSleep);
     }
 
     public void sleepExact(int ms) {
@@ -197,26 +203,39 @@ public class AntiBan {
      * NEW: Take a short break (30 seconds - 2 minutes)
      */
     public void takeShortBreak() {
+        Sleep.sleep(startShortBreak());
+        Logger.log("[AntiBan] Short break complete");
+    }
+
+    /**
+     * Start a short break without sleeping: moves the mouse off-screen
+     * @return how long to stay away, in ms (30 seconds - 2 minutes)
+     */
+    public int startShortBreak() {
         int seconds = 30 + random.nextInt(90); // 30-120 seconds
         Logger.log("[AntiBan] Taking short break for " + seconds + " seconds");
 
         getSmartMouse().moveOffScreen();
-        Sleep.sleep(seconds * 1000);
-
-        Logger.log("[AntiBan] Short break complete");
+        return seconds * 1000;
     }
 
     /**
      * NEW: Take a medium break (2-5 minutes)
      */
     public void takeMediumBreak() {
+        Sleep.sleep(startMediumBreak());
+        Logger.log("[AntiBan] Medium break complete");
+    }
+
+    /**
+     * Like startShortBreak, 2-5 minutes
+     */
+    public int startMediumBreak() {
         int minutes = 2 + random.nextInt(3); // 2-5 minutes
         Logger.log("[AntiBan] Taking medium break for " + minutes + " minutes");
 
         getSmartMouse().moveOffScreen();
-        Sleep.sleep(minutes * 60 * 1000);
-
-        Logger.log("[AntiBan] Medium break complete");
+        return minutes * 60 * 1000;
     }
 
     // ============================================================================
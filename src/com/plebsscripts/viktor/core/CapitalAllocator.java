@@ -0,0 +1,175 @@
+package com.plebsscripts.viktor.core;
+
+import com.plebsscripts.viktor.config.ItemConfig;
+import com.plebsscripts.viktor.config.Settings;
+import com.plebsscripts.viktor.ge.PriceModel;
+import com.plebsscripts.viktor.limits.LimitRegistry;
+import com.plebsscripts.viktor.util.KellyCalculator;
+import com.plebsscripts.viktor.util.Logs;
+
+import java.util.*;
+
+/**
+ * Splits the bankroll (maxGpInFlight) across all the items we could trade at
+ * once, instead of sizing each item's buys against the whole bankroll as if
+ * it were the only position.
+ *
+ * Each candidate is a flip that sells at its sell price with probUp, or is
+ * dumped about one margin below cost otherwise. That gives it an expected
+ * return per gp, (2p - 1) * margin / price with the margin after GE tax,
+ * and a Kelly stake. Its budget is
+ * capped by kellyFraction of that stake, by maxQtyPerCycle and recent
+ * liquidity (the CSV derives one from the other), and 4h-blocked items get
+ * nothing.
+ *
+ * Within those caps the bankroll is a knapsack on expected gp with at most
+ * offerSlots items, solved greedily: the best item is taken first, and as
+ * taking one uses bankroll the next is re-valued with what's left before it
+ * is accepted (lazy greedy, as in the fleet's AssignmentSolver).
+ *
+ * GEOffers.placeBuys consumes the published budget: it buys up to the item's
+ * budget less what already sits in its buy offers.
+ */
+public class CapitalAllocator {
+
+    public static final class Allocation {
+        public final String itemName;
+        public final long budgetGp;
+        public final double expectedReturn;   // Per gp, per flip
+        public final double kelly;            // Full-Kelly fraction
+
+        Allocation(String itemName, long budgetGp, double expectedReturn, double kelly) {
+            this.itemName = itemName;
+            this.budgetGp = budgetGp;
+            this.expectedReturn = expectedReturn;
+            this.kelly = kelly;
+        }
+
+        public long expectedProfit() {
+            return (long) (budgetGp * expectedReturn);
+        }
+    }
+
+    // Candidate on the greedy heap, valued with the bankroll left at push time
+    private static final class Option {
+        final ItemConfig item;
+        final double expectedReturn;
+        final double kelly;
+        final long cap;                 // Most gp it may get
+        final double value;
+
+        Option(ItemConfig item, double expectedReturn, double kelly, long cap, double value) {
+            this.item = item;
+            this.expectedReturn = expectedReturn;
+            this.kelly = kelly;
+            this.cap = cap;
+            this.value = value;
+        }
+
+        Option revalue(long left) {
+            return new Option(item, expectedReturn, kelly, cap, expectedReturn * Math.min(cap, left));
+        }
+    }
+
+    private final Settings settings;
+    private final LimitRegistry limits;
+    private volatile Map<String, Allocation> budgets = null; // Lowercase name -> allocation, null = not run yet
+
+    public CapitalAllocator(Settings settings, LimitRegistry limits) {
+        this.settings = settings;
+        this.limits = limits;
+    }
+
+    /**
+     * Re-split the bankroll across the candidates and publish the budgets.
+     * @return the allocations, biggest expected profit first
+     */
+    public List<Allocation> rebalance(List<ItemConfig> candidates) {
+        long bankroll = settings.maxGpInFlight;
+        PriorityQueue<Option> heap = new PriorityQueue<>((a, b) -> Double.compare(b.value, a.value));
+
+        for (ItemConfig ic : candidates) {
+            if (limits.isBlocked(ic)) continue;
+
+            int buy = ic.getBuyPrice();
+            int sell = ic.getSellPrice();
+            long margin = sell - PriceModel.taxEach(sell) - buy; // After GE tax, as FillTimeModel counts it
+            if (buy <= 0 || margin <= 0) continue;
+
+            double expectedReturn = (2 * ic.probUp - 1) * margin / buy;
+            double kelly = KellyCalculator.calculateFlipKelly(ic.probUp, buy, sell);
+            if (expectedReturn <= 0 || kelly <= 0) continue;
+
+            long qtyCap = ic.maxQtyPerCycle;
+            if (ic.liquidity > 0) {
+                qtyCap = Math.min(qtyCap, (long) ic.liquidity);
+            }
+            long cap = Math.min((long) (bankroll * kelly * settings.kellyFraction), qtyCap * buy);
+            if (cap < buy) continue;
+
+            heap.add(new Option(ic, expectedReturn, kelly, cap, 0).revalue(bankroll));
+        }
+
+        Map<String, Allocation> result = new LinkedHashMap<>();
+        long left = bankroll;
+
+        while (!heap.isEmpty() && result.size() < settings.offerSlots) {
+            Option o = heap.poll();
+            if (result.containsKey(o.item.key())) continue;
+
+            // Bankroll may have gone to a better item since this one was valued
+            Option now = o.revalue(left);
+            if (now.value <= 0) continue;
+            if (now.value < o.value) {
+                heap.add(now);
+                continue;
+            }
+
+            int buy = o.item.getBuyPrice();
+            long budget = Math.min(o.cap, left) / buy * buy; // Whole items
+            if (budget <= 0) continue;
+
+            result.put(o.item.key(), new Allocation(o.item.itemName, budget, o.expectedReturn, o.kelly));
+            left -= budget;
+        }
+
+        budgets = result;
+
+        long expected = 0;
+        for (Allocation a : result.values()) expected += a.expectedProfit();
+        Logs.info("Capital allocated: " + (bankroll - left) + " of " + bankroll + " gp across "
+                + result.size() + " item(s), " + expected + " gp expected per round");
+        for (Allocation a : result.values()) {
+            Logs.debug("  " + a.itemName + ": " + a.budgetGp + " gp ("
+                    + String.format("%.2f%%", a.expectedReturn * 100) + " edge, Kelly "
+                    + String.format("%.0f%%", a.kelly * 100) + ")");
+        }
+        return new ArrayList<>(result.values());
+    }
+
+    /**
+     * @return gp the item may have in buy offers, 0 if it got none,
+     * -1 before the first rebalance
+     */
+    public long budgetFor(ItemConfig ic) {
+        Map<String, Allocation> b = budgets;
+        if (b == null) return -1;
+        Allocation a = b.get(ic.key());
+        return a != null ? a.budgetGp : 0;
+    }
+
+    /**
+     * @return true if the last rebalance gave the item a budget
+     */
+    public boolean isAllocated(ItemConfig ic) {
+        return budgetFor(ic) > 0;
+    }
+
+    /**
+     * @return the last published allocations, empty before the first rebalance
+     */
+    public Collection<Allocation> getAllocations() {
+        Map<String, Allocation> b = budgets;
+        return b != null ? Collections.unmodifiableCollection(b.values()) : Collections.<Allocation>emptyList();
+    }
+}
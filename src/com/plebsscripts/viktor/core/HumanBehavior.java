@@ -7,10 +7,15 @@ import java.util.Random;
 /**
  * Simulates human mistakes and corrections.
  * Makes bot behavior less perfect and more human-like.
+ *
+ * Nothing here sleeps: the time a human would spend (noticing a typo,
+ * hesitating, looking away) adds up, and the caller takes it with
+ * takePause() and waits it out without blocking the script loop.
  */
 public class HumanBehavior {
     private final Random random = new Random();
     private final AntiBan antiBan;
+    private int pendingPauseMs = 0;
 
     public HumanBehavior(AntiBan antiBan) {
         this.antiBan = antiBan;
@@ -52,7 +57,7 @@ public class HumanBehavior {
         Logs.info("Human mistake: Entered " + wrongPrice + " instead of " + correctPrice + " (" + action + ")");
 
         // Simulate "noticing" the mistake after 1-3 seconds
-        antiBan.sleep(1000, 3000);
+        pause(1000, 3000);
         Logs.info("Correcting mistake to " + correctPrice);
 
         return correctPrice; // Return correct price (as if we corrected it)
@@ -77,7 +82,7 @@ public class HumanBehavior {
      */
     public void handleMisclick() {
         Logs.debug("Misclick - correcting...");
-        antiBan.sleep(500, 1500); // Notice the mistake
+        pause(500, 1500); // Notice the mistake
         // In real implementation, would move mouse to correct position
     }
 
@@ -93,7 +98,7 @@ public class HumanBehavior {
      */
     public void checkItemDetails(ItemConfig item) {
         Logs.info("Checking GE details for " + item.itemName);
-        antiBan.sleep(1500, 4000); // Read the info
+        pause(1500, 4000); // Read the info
     }
 
     /**
@@ -102,7 +107,7 @@ public class HumanBehavior {
     public void maybeHesitate() {
         if (random.nextInt(100) < 10) {
             Logs.debug("Hesitating before confirming...");
-            antiBan.sleep(1000, 3000);
+            pause(1000, 3000);
         }
     }
 
@@ -119,7 +124,20 @@ public class HumanBehavior {
     public void simulateDistraction() {
         int duration = 3000 + random.nextInt(12000); // 3-15 seconds
         Logs.debug("Simulating distraction for " + (duration / 1000) + "s");
-        antiBan.sleepExact(duration);
+        pendingPauseMs += duration;
+    }
+
+    /**
+     * @return ms of human time owed since the last call; resets to 0
+     */
+    public int takePause() {
+        int ms = pendingPauseMs;
+        pendingPauseMs = 0;
+        return ms;
+    }
+
+    private void pause(int minMs, int maxMs) {
+        pendingPauseMs += antiBan.pauseMs(minMs, maxMs);
     }
 
     /**
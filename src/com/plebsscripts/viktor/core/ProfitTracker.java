@@ -1,5 +1,6 @@
 package com.plebsscripts.viktor.core;
 
+import com.plebsscripts.viktor.util.Clock;
 import com.plebsscripts.viktor.util.Logs;
 import java.text.DecimalFormat;
 import java.util.*;
@@ -9,7 +10,8 @@ import java.util.*;
  * Provides formatted output for GUI and Discord notifications.
  */
 public class ProfitTracker {
-    private final long startTime = System.currentTimeMillis();
+    private final Clock clock;
+    private final long startTime;
     private long realizedGp = 0L;
     private long unrealizedGp = 0L; // Items bought but not sold yet
     private int totalBuys = 0;
@@ -26,6 +28,16 @@ public class ProfitTracker {
 
     private final DecimalFormat df0 = new DecimalFormat("#,##0");
 
+    public ProfitTracker() {
+        this(Clock.SYSTEM);
+    }
+
+    // Runtime (and so GP/h) measured on this clock
+    public ProfitTracker(Clock clock) {
+        this.clock = clock;
+        this.startTime = clock.now();
+    }
+
     // === Core tracking ===
 
     public void addRealized(long gp) {
@@ -64,7 +76,7 @@ public class ProfitTracker {
     public long getTotalGp() { return realizedGp + unrealizedGp; }
     public int getTotalBuys() { return totalBuys; }
     public int getTotalSells() { return totalSells; }
-    public long getRuntimeMs() { return System.currentTimeMillis() - startTime; }
+    public long getRuntimeMs() { return clock.now() - startTime; }
 
     public long getGpPerHour() {
         long ms = getRuntimeMs();
@@ -0,0 +1,490 @@
+package com.plebsscripts.viktor.core;
+
+import com.plebsscripts.viktor.config.ItemConfig;
+import com.plebsscripts.viktor.config.Settings;
+import com.plebsscripts.viktor.ge.FillTimeModel;
+import com.plebsscripts.viktor.ge.GEApi;
+import com.plebsscripts.viktor.ge.GEOffers;
+import com.plebsscripts.viktor.ge.MarginProbe;
+import com.plebsscripts.viktor.ge.PriceModel;
+import com.plebsscripts.viktor.ge.RepricingEngine;
+import com.plebsscripts.viktor.limits.LimitRegistry;
+import com.plebsscripts.viktor.util.Clock;
+import com.plebsscripts.viktor.util.Logs;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Keeps several items in flight across the GE offer slots.
+ *
+ * Each item gets its own pipeline (probe -> buy -> wait for fill -> sell),
+ * so while one item's buys sit in the GE the next is already being probed
+ * or bought. New pipelines are started from the SmartRotation queue while
+ * there is a free slot and capital left under maxGpInFlight, up to
+ * Settings.offerSlots items at once.
+ *
+ * tick() does at most one GE action - the pipeline that's been due the
+ * longest - and returns how long until the next one is due, so it never
+ * blocks the script loop.
+ *
+ * Only one pipeline probes at a time: a probe collects all offers and reads
+ * inventory to see what it got, which the other pipelines' offers must not
+ * confuse. A pipeline waiting on its buys therefore also counts them as
+ * filled once the items are in the inventory, in case the probe collected
+ * them.
+ *
+ * Batches the GE refuses are not retried in place: the pipeline moves to
+ * RETRY_BUYS / RETRY_SELLS and comes back after GEOffers' retry delay.
+ * Human pauses GEOffers reports (hesitating, fixing a typo) hold off every
+ * pipeline until they've passed, as a player would be busy meanwhile.
+ *
+ * Offers left in the GE when a pipeline finishes (sells, buys that timed
+ * out) are handed to a RepricingEngine, which collects them, lists leftover
+ * items and reprices offers that stop filling whenever no step is due.
+ *
+ * Slot utilisation (busy slots / offerSlots, time-weighted) is sampled
+ * every time the free slot count is read.
+ */
+public class SlotScheduler {
+    private static final long SLOT_WAIT_MS = 120_000;        // Free slot, then give up on the item
+    private static final long BUY_WAIT_MS = 120_000;         // Buy fill, then collect what we have
+    private static final long SLOT_CHECK_INTERVAL_MS = 5_000;
+
+    enum Stage { PROBE, BUY, RETRY_BUYS, WAIT_BUYS, SELL, RETRY_SELLS, DONE }
+
+    static final class Pipeline {
+        final ItemConfig item;
+        Stage stage;
+        MarginProbe.Session probe;
+        long nextAt;          // Epoch ms this pipeline wants its next step
+        long deadline;        // 0 = no wait running
+        int placedQty;
+        GEOffers.Result retry; // Batches to place again at nextAt
+        final long startedAt;
+
+        Pipeline(ItemConfig item, Stage stage, long now) {
+            this.item = item;
+            this.stage = stage;
+            this.nextAt = now;
+            this.startedAt = now;
+        }
+    }
+
+    private final Settings settings;
+    private final GEApi ge;
+    private final GEOffers offers;
+    private final MarginProbe probe;
+    private final PriceModel price;
+    private final LimitRegistry limits;
+    private final SmartRotation rotation;
+    private final Consumer<ItemConfig> probeFailed;
+    private Random rng = new Random();
+    private Clock clock = Clock.SYSTEM;
+
+    private final List<Pipeline> active = new ArrayList<>();
+    private final RepricingEngine repricer;
+    private FillTimeModel fillModel;       // Optional: learns fill times from every tick's snapshot
+    private long nextStartAt = 0;
+    private long humanBusyUntil = 0; // No GE action before this
+    private boolean starved = false; // Last start attempt found nothing we could start
+
+    // Slot utilisation
+    private int busySlots = -1;      // At the last read
+    private long busySlotsAt = 0;
+    private long busySlotMs = 0;
+    private long sampledMs = 0;
+    private long completed = 0;
+
+    public SlotScheduler(Settings settings, GEApi ge, GEOffers offers, MarginProbe probe, PriceModel price,
+                         LimitRegistry limits, SmartRotation rotation, Consumer<ItemConfig> probeFailed) {
+        this.settings = settings;
+        this.ge = ge;
+        this.offers = offers;
+        this.probe = probe;
+        this.price = price;
+        this.limits = limits;
+        this.rotation = rotation;
+        this.probeFailed = probeFailed;
+        this.repricer = new RepricingEngine(settings, ge, offers, price);
+    }
+
+    public void setClock(Clock clock) {
+        this.clock = clock;
+        this.repricer.setClock(clock);
+    }
+
+    public void setFillTimeModel(FillTimeModel fillModel) {
+        this.fillModel = fillModel;
+    }
+
+    /**
+     * Pacing between new pipelines
+     */
+    public void setRandom(Random rng) {
+        this.rng = rng;
+    }
+
+    /**
+     * Start new pipelines if there's room, then run the most overdue step.
+     * @return ms until the next pipeline step is due
+     */
+    public long tick(List<ItemConfig> queue) {
+        long now = clock.now();
+
+        if (fillModel != null) {
+            fillModel.observe(ge.snapshot(), now);
+        }
+
+        // Lost a lease before buying? Let the other bot have it
+        for (Iterator<Pipeline> it = active.iterator(); it.hasNext(); ) {
+            Pipeline p = it.next();
+            if (!rotation.renewLeaseIfDue(p.item)
+                    && (p.stage == Stage.BUY || (p.stage == Stage.PROBE && p.probe == null))) {
+                Logs.warn("Lease lost on " + p.item.itemName + " - dropping it");
+                it.remove();
+            }
+        }
+
+        if (now < humanBusyUntil) {
+            return humanBusyUntil - now;
+        }
+
+        maybeStartPipeline(queue, now);
+
+        Pipeline due = null;
+        for (Pipeline p : active) {
+            if (p.nextAt <= now && (due == null || p.nextAt < due.nextAt)) {
+                due = p;
+            }
+        }
+        if (due != null) {
+            step(due, now);
+            if (due.stage == Stage.DONE) {
+                finish(due);
+            }
+        } else {
+            tendOffers();
+        }
+
+        return untilNextStep(clock.now());
+    }
+
+    /**
+     * @return true when nothing is in flight and nothing more could be started
+     * (time to bank, cool down and rotate)
+     */
+    public boolean isDrained() {
+        return active.isEmpty() && starved;
+    }
+
+    public int activeCount() {
+        return active.size();
+    }
+
+    /**
+     * @return the most recently started item in flight, or null
+     */
+    public ItemConfig latestItem() {
+        return active.isEmpty() ? null : active.get(active.size() - 1).item;
+    }
+
+    public Set<String> activeItems() {
+        Set<String> items = new LinkedHashSet<>();
+        for (Pipeline p : active) items.add(p.item.itemName);
+        return items;
+    }
+
+    /**
+     * @return busy slots at the last check, or -1 before the first
+     */
+    public int busySlots() {
+        return busySlots;
+    }
+
+    /**
+     * @return time-weighted share of offer slots in use since start, 0..1
+     */
+    public double slotUtilisation() {
+        return sampledMs == 0 ? 0 : (double) busySlotMs / (sampledMs * (long) settings.offerSlots);
+    }
+
+    public long completedCount() {
+        return completed;
+    }
+
+    public RepricingEngine getRepricer() {
+        return repricer;
+    }
+
+    /**
+     * Give back all leases (script stopping)
+     */
+    public void stop() {
+        active.clear();
+        rotation.releaseAllLeases();
+    }
+
+    // ===== Starting pipelines =====
+
+    private void maybeStartPipeline(List<ItemConfig> queue, long now) {
+        if (now < nextStartAt || active.size() >= settings.offerSlots) return;
+        nextStartAt = now + SLOT_CHECK_INTERVAL_MS;
+        starved = true;
+
+        // Slots and capital not yet spoken for by pipelines that haven't bought
+        int pending = 0;
+        long reservedGp = 0;
+        for (Pipeline p : active) {
+            if (p.stage == Stage.PROBE || p.stage == Stage.BUY || p.stage == Stage.RETRY_BUYS) {
+                pending++;
+                reservedGp += (long) p.item.getBuyPrice() * Math.max(1, Math.min(p.item.maxQtyPerCycle, 100));
+            }
+        }
+
+        // Snapshot reads - no need to open the GE just to look
+        int free = readFreeSlots(now);
+        long capital = (long) settings.maxGpInFlight - ge.gpInFlight() - reservedGp;
+
+        if (free - pending <= 0) return;
+
+        Set<String> inFlight = new HashSet<>();
+        for (Pipeline p : active) inFlight.add(p.item.key());
+
+        ItemConfig next = rotation.getNextItem(queue, inFlight);
+        if (next == null) return;
+
+        if (capital < next.getBuyPrice()) {
+            Logs.debug("Not starting " + next.itemName + " - " + capital + " gp free under maxGpInFlight");
+            rotation.releaseLease(next);
+            return;
+        }
+
+        Stage first = next.needsProbe(settings.probeStaleMinutes, now) ? Stage.PROBE : Stage.BUY;
+        active.add(new Pipeline(next, first, now));
+        starved = false;
+        Logs.info("Slot pipeline started: " + next.itemName + " (" + first + ", " + active.size() + " in flight)");
+
+        // Human pacing between new items
+        nextStartAt = now + Math.max(1000, (long) (5000 + rng.nextGaussian() * 1500));
+    }
+
+    // ===== Per-item lifecycle =====
+
+    private void step(Pipeline p, long now) {
+        switch (p.stage) {
+            case PROBE:
+                stepProbe(p, now);
+                break;
+            case BUY:
+                stepBuy(p, now);
+                break;
+            case RETRY_BUYS:
+                afterBuys(p, offers.retryBuys(p.item, p.retry, limits), now);
+                break;
+            case WAIT_BUYS:
+                stepWaitBuys(p, now);
+                break;
+            case SELL:
+                afterSells(p, offers.listSells(p.item, price, settings), now);
+                break;
+            case RETRY_SELLS:
+                afterSells(p, offers.retrySells(p.item, p.retry), now);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void stepProbe(Pipeline p, long now) {
+        if (p.probe == null) {
+            for (Pipeline other : active) {
+                if (other != p && other.stage == Stage.PROBE && other.probe != null) {
+                    p.nextAt = now + 2000; // One probe at a time
+                    return;
+                }
+            }
+            p.probe = probe.startProbe(p.item);
+        }
+
+        int delay = p.probe.step();
+        if (!p.probe.isDone()) {
+            p.nextAt = now + delay;
+            return;
+        }
+
+        boolean ok = p.probe.isProfitable();
+        p.probe = null;
+        repricer.watch(p.item); // A probe that timed out leaves its offers behind
+        if (ok && p.item.hasGoodMargin()) {
+            Logs.info("✓ Margin verified: " + p.item.itemName);
+            enter(p, Stage.BUY, now);
+        } else {
+            Logs.warn("✗ Margin not profitable: " + p.item.itemName + ", skipping");
+            probeFailed.accept(p.item);
+            p.stage = Stage.DONE;
+        }
+    }
+
+    private void stepBuy(Pipeline p, long now) {
+        int free = readFreeSlots(now);
+
+        if (free <= 0) {
+            if (p.deadline == 0) {
+                Logs.debug("No free GE slots for " + p.item.itemName + " - waiting");
+                p.deadline = now + SLOT_WAIT_MS;
+            } else if (now >= p.deadline) {
+                Logs.warn("Still no free slots after " + (SLOT_WAIT_MS / 1000) + "s - dropping " + p.item.itemName);
+                p.stage = Stage.DONE;
+                return;
+            }
+            p.nextAt = now + gaussian(5000, 1000);
+            return;
+        }
+
+        Logs.info("Placing buy orders for " + p.item.itemName);
+        afterBuys(p, offers.placeBuys(p.item, price, limits, settings), now);
+    }
+
+    /**
+     * Retry what failed after the delay, else wait for the buys to fill
+     */
+    private void afterBuys(Pipeline p, GEOffers.Result result, long now) {
+        long resume = humanPause(result, now);
+        p.placedQty += result.getQty();
+
+        if (result.hasRetry() && !result.hit4hLimit()) {
+            p.stage = Stage.RETRY_BUYS;
+            p.retry = result;
+            p.nextAt = resume + result.retryDelayMs();
+            return;
+        }
+        p.retry = null;
+
+        if (p.placedQty <= 0) {
+            p.stage = Stage.DONE;
+            return;
+        }
+        Logs.info("✓ Buy orders placed (" + p.placedQty + "x), waiting for completion...");
+        repricer.watch(p.item);
+        enter(p, Stage.WAIT_BUYS, resume);
+        p.deadline = now + BUY_WAIT_MS;
+        p.nextAt = resume + gaussian(5000, 1000);
+    }
+
+    private void afterSells(Pipeline p, GEOffers.Result result, long now) {
+        long resume = humanPause(result, now);
+
+        if (result.hasRetry()) {
+            p.stage = Stage.RETRY_SELLS;
+            p.retry = result;
+            p.nextAt = resume + result.retryDelayMs();
+            if (result.isOk()) {
+                repricer.watch(p.item); // Some are listed already
+            }
+            return;
+        }
+        p.retry = null;
+
+        repricer.watch(p.item); // Also lists anything still in the inventory later
+        Logs.info("✓ Sell orders placed for " + p.item.itemName);
+        p.stage = Stage.DONE;
+    }
+
+    /**
+     * Hold off every pipeline while the player "hesitates"
+     * @return when the GE is ours again
+     */
+    private long humanPause(GEOffers.Result result, long now) {
+        long resume = now + result.pauseMs();
+        humanBusyUntil = Math.max(humanBusyUntil, resume);
+        return resume;
+    }
+
+    private void stepWaitBuys(Pipeline p, long now) {
+        String itemName = p.item.itemName;
+
+        if (ge.offersComplete(itemName)) {
+            Logs.info("✓ Buy offers completed: " + itemName);
+            ge.collectIfReady(itemName);
+        } else if (p.placedQty > 0 && ge.inventoryCount(itemName) >= p.placedQty) {
+            Logs.info("✓ Buy offers already collected: " + itemName);
+        } else if (now < p.deadline) {
+            p.nextAt = now + gaussian(5000, 1000);
+            return;
+        } else {
+            Logs.warn("Buy offers timed out - collecting what we have: " + itemName);
+            ge.collectIfReady(itemName);
+        }
+
+        // Verify we got items
+        int received = ge.inventoryCount(itemName);
+
+        if (received > 0) {
+            enter(p, Stage.SELL, now);
+        } else {
+            Logs.warn("No items received - skipping sell phase: " + itemName);
+            p.stage = Stage.DONE;
+        }
+    }
+
+    private void enter(Pipeline p, Stage stage, long now) {
+        p.stage = stage;
+        p.deadline = 0;
+        p.nextAt = now;
+    }
+
+    private void finish(Pipeline p) {
+        active.remove(p);
+        rotation.releaseLease(p.item); // Let another bot pick it up
+        completed++;
+        Logs.info("Slot pipeline done: " + p.item.itemName + " after "
+                + (clock.now() - p.startedAt) / 1000 + "s | " + active.size() + " in flight, "
+                + String.format("%.0f%%", slotUtilisation() * 100) + " slot utilisation");
+    }
+
+    /**
+     * Let the repricer collect, list or reprice offers pipelines have left behind.
+     * Skipped mid-probe so the probe's own offers and inventory checks aren't disturbed.
+     */
+    private void tendOffers() {
+        Set<String> inPipeline = new HashSet<>();
+        Set<String> probing = new HashSet<>();
+        for (Pipeline p : active) {
+            if (p.probe != null) return;
+            inPipeline.add(p.item.key());
+            if (p.stage == Stage.PROBE) probing.add(p.item.key());
+        }
+        repricer.tick(inPipeline, probing); // One GE action per tick
+    }
+
+    // ===== Helpers =====
+
+    /**
+     * Read the free slot count and add the time since the last read to the
+     * utilisation figures.
+     */
+    private int readFreeSlots(long now) {
+        int free = ge.freeSlots();
+        if (busySlots >= 0) {
+            long dt = now - busySlotsAt;
+            busySlotMs += dt * busySlots;
+            sampledMs += dt;
+        }
+        busySlots = Math.max(0, settings.offerSlots - free);
+        busySlotsAt = now;
+        return free;
+    }
+
+    private long untilNextStep(long now) {
+        long next = nextStartAt;
+        for (Pipeline p : active) {
+            next = Math.min(next, p.nextAt);
+        }
+        return Math.max(0, Math.max(next, humanBusyUntil) - now);
+    }
+
+    private long gaussian(int meanMs, int stdDevMs) {
+        return Math.max(50, (long) (meanMs + rng.nextGaussian() * stdDevMs));
+    }
+}
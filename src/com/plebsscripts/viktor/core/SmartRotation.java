@@ -1,8 +1,11 @@
 package com.plebsscripts.viktor.core;
 
 import com.plebsscripts.viktor.config.ItemConfig;
+import com.plebsscripts.viktor.coord.AssignmentSolver;
+import com.plebsscripts.viktor.coord.CoordinatorClient;
 import com.plebsscripts.viktor.coord.JsonCoordinator;
-import com.plebsscripts.viktor.limits.LimitTracker;
+import com.plebsscripts.viktor.ge.FillTimeModel;
+import com.plebsscripts.viktor.limits.LimitRegistry;
 import com.plebsscripts.viktor.util.Logs;
 
 import java.util.*;
@@ -20,26 +23,136 @@ import java.util.*;
  * 2. HIGH-PROFIT items (margin >= 1.5x minimum)
  * 3. REGULAR items (everything else)
  *
- * Each category is sorted by profit margin (best first).
+ * Each category is sorted by profit margin (best first), or with
+ * Settings.rankByFillTime by expected GP per slot-minute from the
+ * FillTimeModel - a big margin that takes an hour to fill earns a slot less
+ * than a small one that fills in seconds.
+ *
+ * Blocked and takeover items both come from the LimitRegistry: one lookup
+ * per item answers "did we hit it" (skip) and "did another bot hit it"
+ * (takeover). The registry keeps the fleet tier current from the
+ * coordinator in the background.
+ *
+ * Items another bot holds a lease on are skipped entirely, and getNextItem()
+ * claims the item it picks, so each bot works its own order book instead of
+ * bidding against the fleet. We hold one lease per item in flight; the
+ * SlotScheduler renews them while it trades and releases each one when its
+ * item is done.
+ *
+ * With a fleet scheduler (CoordinatorServer) set, the queue is rebuilt from
+ * the server's plan instead: we report our free capital, slots and items,
+ * and the items assigned to us go to the front, ahead of takeovers. The
+ * report goes out in the background, so each rebuild uses the answer to
+ * the previous one. The local categories still order everything behind
+ * them, and are all we use when the scheduler can't be reached.
  */
 public class SmartRotation {
     private final JsonCoordinator coordinator;  // Changed from CoordinatorClient
-    private final LimitTracker localLimits;
+    private final LimitRegistry limits;
     private final String botId;
 
-    // Cache to avoid excessive file reads
-    private Set<String> lastKnownBlocked = new HashSet<>();
-    private long lastUpdateTime = 0;
-    private static final long UPDATE_INTERVAL_MS = 30_000; // 30 seconds
+    // Leases on the items we're working, by lowercase name
+    private static final long LEASE_DURATION_MS = 10 * 60 * 1000;  // 10 minutes
+    private static final long LEASE_RENEW_AFTER_MS = 3 * 60 * 1000; // Renew well before expiry
+    private final Map<String, Lease> leases = new HashMap<>();
+
+    private static final class Lease {
+        final String item;
+        final long token;
+        long renewedAt;
+
+        Lease(String item, long token, long renewedAt) {
+            this.item = item;
+            this.token = token;
+            this.renewedAt = renewedAt;
+        }
+    }
+
+    // Optional fleet scheduler
+    private CoordinatorClient scheduler;
+
+    // Optional fill-time estimates for ranking
+    private FillTimeModel fillModel;
 
-    public SmartRotation(JsonCoordinator coordinator, LimitTracker localLimits, String botId) {
+    private Random random = new Random();
+
+    public SmartRotation(JsonCoordinator coordinator, LimitRegistry limits, String botId) {
         this.coordinator = coordinator;
-        this.localLimits = localLimits;
+        this.limits = limits;
         this.botId = botId;
 
         Logs.info("SmartRotation initialized for bot: " + botId);
     }
 
+    public void setScheduler(CoordinatorClient scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    public void setFillTimeModel(FillTimeModel fillModel) {
+        this.fillModel = fillModel;
+    }
+
+    /**
+     * Used for the random pick from the top 10
+     */
+    public void setRandom(Random random) {
+        this.random = random;
+    }
+
+    public boolean hasScheduler() {
+        return scheduler != null;
+    }
+
+    /**
+     * Build the queue with the fleet scheduler's assignments first.
+     * Never waits on the network: the state is reported in the background
+     * and the last assignments received are used.
+     *
+     * @param freeCapital gp this bot can still put into offers
+     * @param freeSlots   GE slots this bot has free
+     */
+    public List<ItemConfig> buildPrioritizedQueue(List<ItemConfig> allItems, long freeCapital, int freeSlots) {
+        List<ItemConfig> queue = buildPrioritizedQueue(allItems);
+        if (scheduler == null || queue.isEmpty()) {
+            return queue;
+        }
+
+        List<AssignmentSolver.Candidate> candidates = new ArrayList<>();
+        for (ItemConfig item : queue) {
+            candidates.add(new AssignmentSolver.Candidate(item.itemName, item.getBuyPrice(),
+                    item.getSellPrice() - item.getBuyPrice(), (long) item.liquidity, item.maxQtyPerCycle));
+        }
+
+        scheduler.reportBotStateAsync(new AssignmentSolver.BotState(
+                botId, freeCapital, freeSlots, candidates, System.currentTimeMillis()));
+        List<AssignmentSolver.Assignment> assigned = scheduler.getLastAssignments();
+        if (assigned == null || assigned.isEmpty()) {
+            return queue; // No answer yet, scheduler down, or nothing for us right now
+        }
+
+        Map<String, ItemConfig> byName = new HashMap<>();
+        for (ItemConfig item : queue) {
+            byName.put(item.itemName.toLowerCase(), item);
+        }
+
+        List<ItemConfig> result = new ArrayList<>(queue.size());
+        for (AssignmentSolver.Assignment a : assigned) {
+            ItemConfig item = byName.remove(a.item.toLowerCase());
+            if (item != null) {
+                result.add(item);
+            }
+        }
+        int assignedCount = result.size();
+        for (ItemConfig item : queue) {
+            if (byName.containsKey(item.itemName.toLowerCase())) {
+                result.add(item);
+            }
+        }
+
+        Logs.info("Fleet scheduler assigned " + assignedCount + " item(s) to " + botId);
+        return result;
+    }
+
     /**
      * Build prioritized item queue with takeover logic.
      *
@@ -56,8 +169,9 @@ public class SmartRotation {
             return new ArrayList<>();
         }
 
-        // Get items other bots are blocked on
-        Set<String> otherBotsBlocked = getItemsBlockedByOtherBots();
+        Map<String, String> leasedByOthers = coordinator != null
+                ? coordinator.getItemsLeasedByOthers() : Collections.<String, String>emptyMap();
+        int leasedSkipped = 0;
 
         // Categorize items
         List<ItemConfig> takeoverItems = new ArrayList<>();     // Other bots hit limit - PRIORITY
@@ -65,16 +179,24 @@ public class SmartRotation {
         List<ItemConfig> regularItems = new ArrayList<>();      // Everything else - LOW
 
         for (ItemConfig item : allItems) {
-            String itemName = item.itemName.toLowerCase();
+            LimitRegistry.Status status = limits.status(item);
 
             // Skip if WE hit the limit locally
-            if (localLimits.isBlocked(item.itemName)) {
+            if (status == LimitRegistry.Status.BLOCKED) {
                 Logs.debug("Skipping " + item.itemName + " - we hit local limit");
                 continue;
             }
 
+            // Skip if another bot is working it right now
+            String holder = leasedByOthers.isEmpty() ? null : leasedByOthers.get(item.key());
+            if (holder != null) {
+                Logs.debug("Skipping " + item.itemName + " - leased by " + holder);
+                leasedSkipped++;
+                continue;
+            }
+
             // Check if another bot is blocked on this item
-            if (otherBotsBlocked.contains(itemName)) {
+            if (status == LimitRegistry.Status.TAKEOVER) {
                 takeoverItems.add(item);
                 Logs.info("TAKEOVER OPPORTUNITY: " + item.itemName + " (another bot hit limit)");
                 continue;
@@ -89,12 +211,21 @@ public class SmartRotation {
             }
         }
 
-        // Sort each category by profit (descending)
-        Comparator<ItemConfig> profitSort = (a, b) -> {
-            int marginA = a.getSellPrice() - a.getBuyPrice();
-            int marginB = b.getSellPrice() - b.getBuyPrice();
-            return Integer.compare(marginB, marginA); // Descending
-        };
+        // Sort each category by profit (descending): per slot-minute if we know fill times
+        Comparator<ItemConfig> profitSort;
+        if (fillModel != null) {
+            Map<String, Double> rate = new HashMap<>();
+            for (ItemConfig item : allItems) {
+                rate.put(item.key(), fillModel.gpPerSlotMinute(item));
+            }
+            profitSort = (a, b) -> Double.compare(rate.get(b.key()), rate.get(a.key()));
+        } else {
+            profitSort = (a, b) -> {
+                int marginA = a.getSellPrice() - a.getBuyPrice();
+                int marginB = b.getSellPrice() - b.getBuyPrice();
+                return Integer.compare(marginB, marginA); // Descending
+            };
+        }
 
         takeoverItems.sort(profitSort);
         highProfitItems.sort(profitSort);
@@ -108,59 +239,12 @@ public class SmartRotation {
 
         Logs.info("Smart Queue: " + takeoverItems.size() + " takeovers, " +
                 highProfitItems.size() + " high-profit, " +
-                regularItems.size() + " regular items");
+                regularItems.size() + " regular items, " +
+                leasedSkipped + " leased by other bots");
 
         return prioritizedQueue;
     }
 
-    /**
-     * Get items that OTHER bots hit limits on (not us)
-     */
-    private Set<String> getItemsBlockedByOtherBots() {
-        // Coordinator not available - return empty
-        if (coordinator == null) {
-            return new HashSet<>();
-        }
-
-        // Rate limit file reads (cache for 30s)
-        long now = System.currentTimeMillis();
-        if (now - lastUpdateTime < UPDATE_INTERVAL_MS && !lastKnownBlocked.isEmpty()) {
-            Logs.debug("Using cached blocked items list (" + lastKnownBlocked.size() + " items)");
-            return new HashSet<>(lastKnownBlocked); // Return cached
-        }
-
-        Set<String> otherBotsBlocked = new HashSet<>();
-
-        try {
-            // Get detailed block info from JSON file
-            Map<String, String> blockedWithAccounts = coordinator.getBlockedItemsWithAccounts();
-
-            for (Map.Entry<String, String> entry : blockedWithAccounts.entrySet()) {
-                String itemName = entry.getKey().toLowerCase();
-                String accountName = entry.getValue();
-
-                // Only include if ANOTHER bot blocked it (not us)
-                if (!accountName.equalsIgnoreCase(botId)) {
-                    otherBotsBlocked.add(itemName);
-                    Logs.debug("Other bot blocked: " + itemName + " (by " + accountName + ")");
-                }
-            }
-
-            // Update cache
-            lastKnownBlocked = otherBotsBlocked;
-            lastUpdateTime = now;
-
-            Logs.info("JSON query: " + otherBotsBlocked.size() + " takeover opportunities");
-
-        } catch (Exception e) {
-            Logs.warn("Failed to read coordination file: " + e.getMessage());
-            // Return cached on failure (don't break bot if file corrupted)
-            return new HashSet<>(lastKnownBlocked);
-        }
-
-        return otherBotsBlocked;
-    }
-
     /**
      * Get next item to trade (with smart prioritization)
      *
@@ -168,89 +252,160 @@ public class SmartRotation {
      * 1. Try takeover items first (top 3)
      * 2. If none available, pick randomly from top 10 (avoid patterns)
      * 3. Ensure we're not locally blocked
+     * 4. Claim a lease on it - if another bot beat us to it, try the next one
+     *
+     * @param inFlight lowercase names of items we're already working (skipped)
      */
-    public ItemConfig getNextItem(List<ItemConfig> prioritizedQueue) {
+    public ItemConfig getNextItem(List<ItemConfig> prioritizedQueue, Set<String> inFlight) {
         if (prioritizedQueue == null || prioritizedQueue.isEmpty()) {
             Logs.warn("Empty prioritized queue - no items available");
             return null;
         }
 
+        List<ItemConfig> candidates = prioritizedQueue;
+        if (!inFlight.isEmpty()) {
+            candidates = new ArrayList<>();
+            for (ItemConfig item : prioritizedQueue) {
+                if (!inFlight.contains(item.key())) {
+                    candidates.add(item);
+                }
+            }
+            if (candidates.isEmpty()) {
+                return null; // Everything is already in flight
+            }
+        }
+
         // Try takeover items first (top 3 of queue)
-        for (int i = 0; i < Math.min(3, prioritizedQueue.size()); i++) {
-            ItemConfig item = prioritizedQueue.get(i);
+        for (int i = 0; i < Math.min(3, candidates.size()); i++) {
+            ItemConfig item = candidates.get(i);
 
             // Double-check we're not locally blocked (edge case)
-            if (!localLimits.isBlocked(item.itemName)) {
+            if (!limits.isBlocked(item) && claim(item)) {
                 Logs.info("Selected item (priority " + (i + 1) + "): " + item.itemName);
                 return item;
             }
         }
 
         // Fallback: pick random from top 10 (avoid predictable patterns)
-        int pickFrom = Math.min(10, prioritizedQueue.size());
-        Random random = new Random();
+        int pickFrom = Math.min(10, candidates.size());
 
         for (int attempt = 0; attempt < pickFrom; attempt++) {
             int idx = random.nextInt(pickFrom);
-            ItemConfig item = prioritizedQueue.get(idx);
+            ItemConfig item = candidates.get(idx);
 
-            if (!localLimits.isBlocked(item.itemName)) {
+            if (!limits.isBlocked(item) && claim(item)) {
                 Logs.info("Selected item (random from top " + pickFrom + "): " + item.itemName);
                 return item;
             }
         }
 
-        Logs.warn("All items in queue are blocked locally!");
+        Logs.warn("All items in queue are blocked locally or leased by other bots!");
         return null; // All items blocked
     }
 
+    // ===== Leases =====
+
     /**
-     * Report that we hit a limit (write to JSON file)
+     * Lease the item for this bot.
+     * @return false if another bot holds it
      */
-    public void reportLimitHit(String itemName) {
+    private boolean claim(ItemConfig item) {
         if (coordinator == null) {
-            Logs.debug("No coordinator - skipping limit report");
-            return;
+            return true;
+        }
+        Lease held = leases.get(item.key());
+        if (held != null) {
+            return renewLease(item.key(), held);
+        }
+
+        long token = coordinator.claimItem(item.itemName, LEASE_DURATION_MS);
+        if (token == JsonCoordinator.NO_LEASE) {
+            Logs.info("Skipping " + item.itemName + " - another bot just claimed it");
+            return false;
         }
 
-        try {
-            coordinator.reportLimit(itemName);
-            Logs.info("Reported 4h limit to JSON: " + itemName);
+        leases.put(item.key(), new Lease(item.itemName, token, System.currentTimeMillis()));
+        Logs.debug("Leased " + item.itemName + " (token " + token + ")");
+        return true;
+    }
 
-            // Invalidate cache so next query gets fresh data
-            lastKnownBlocked.remove(itemName.toLowerCase());
-            coordinator.invalidateCache(); // Force file re-read
+    /**
+     * Keep our lease on the item alive. Cheap to call every tick - only
+     * touches the log every few minutes.
+     * @return false if we lost the item to another bot (stop trading it)
+     */
+    public boolean renewLeaseIfDue(ItemConfig item) {
+        Lease lease = leases.get(item.key());
+        if (lease == null || System.currentTimeMillis() - lease.renewedAt < LEASE_RENEW_AFTER_MS) {
+            return true;
+        }
+        return renewLease(item.key(), lease);
+    }
 
-        } catch (Exception e) {
-            Logs.warn("Failed to report limit: " + e.getMessage());
+    private boolean renewLease(String key, Lease lease) {
+        if (coordinator.renewLease(lease.item, lease.token, LEASE_DURATION_MS)) {
+            lease.renewedAt = System.currentTimeMillis();
+            return true;
         }
+
+        Logs.warn("Lost lease on " + lease.item + " (token " + lease.token + " is stale)");
+        leases.remove(key);
+        return false;
+    }
+
+    /**
+     * Give the item back so another bot can take it immediately
+     */
+    public void releaseLease(ItemConfig item) {
+        Lease lease = leases.remove(item.key());
+        if (coordinator != null && lease != null) {
+            coordinator.releaseLease(lease.item, lease.token);
+            Logs.debug("Released lease on " + lease.item);
+        }
+    }
+
+    public void releaseAllLeases() {
+        if (coordinator != null) {
+            for (Lease lease : leases.values()) {
+                coordinator.releaseLease(lease.item, lease.token);
+            }
+        }
+        leases.clear();
+    }
+
+    /**
+     * Report that we hit a limit (local block + coordination log)
+     */
+    public void reportLimitHit(ItemConfig item) {
+        limits.blockFor4h(item);
+        Logs.info("Reported 4h limit: " + item.itemName);
     }
 
     /**
      * Get takeover statistics for display/logging
      */
     public String getTakeoverStats() {
-        Set<String> takeovers = getItemsBlockedByOtherBots();
+        Set<String> takeovers = limits.getFleetBlocked().keySet();
 
         if (takeovers.isEmpty()) {
             return "No takeover opportunities available";
         }
 
+        String latency = coordinator != null ? " [" + coordinator.getPropagationStats() + "]" : "";
         return takeovers.size() + " takeover opportunities: " +
-                String.join(", ", takeovers);
+                String.join(", ", takeovers) + latency;
     }
 
     /**
-     * Force refresh of blocked items cache
+     * Force refresh of the fleet's blocked items
      * (useful for testing or when coordinator data changes rapidly)
      */
     public void refreshCache() {
-        lastUpdateTime = 0;
-        lastKnownBlocked.clear();
         if (coordinator != null) {
             coordinator.invalidateCache();
         }
-        Logs.info("SmartRotation cache cleared - will refresh on next query");
+        limits.refreshFleet();
+        Logs.info("SmartRotation: fleet limits refreshed");
     }
 
     /**
@@ -3,10 +3,10 @@ package com.plebsscripts.viktor.core;
 import com.plebsscripts.viktor.config.ItemConfig;
 import com.plebsscripts.viktor.config.Settings;
 import com.plebsscripts.viktor.coord.JsonCoordinator;
-import com.plebsscripts.viktor.coord.SafeCoordinator;
 import com.plebsscripts.viktor.ge.*;
-import com.plebsscripts.viktor.limits.LimitTracker;
+import com.plebsscripts.viktor.limits.LimitRegistry;
 import com.plebsscripts.viktor.notify.DiscordNotifier;
+import com.plebsscripts.viktor.util.Clock;
 import com.plebsscripts.viktor.util.Logs;
 import com.plebsscripts.viktor.util.WorldDetector;
 import com.plebsscripts.viktor.core.SmartRotation;
@@ -14,7 +14,6 @@ import com.plebsscripts.viktor.core.SmartRotation;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
-import java.util.Set;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -24,9 +23,7 @@ public class StateMachine {
     public enum Phase {
         IDLE,
         WALK_TO_GE,
-        PROBE,
-        BUY_BULK,
-        SELL_BULK,
+        TRADING,     // SlotScheduler runs the per-item probe/buy/sell pipelines
         ROTATE,
         COOLDOWN,
         BANKING
@@ -36,31 +33,40 @@ public class StateMachine {
     private final Settings settings;
     private final List<ItemConfig> items;
     private List<ItemConfig> workingQueue;
-    private final SafeCoordinator coord;
-    private final LimitTracker limits;
+    private final LimitRegistry limits;
     private final GENavigator nav;
     private final GEApi ge;
-    private final GEOffers offers;
-    private final MarginProbe probe;
-    private final PriceModel price;
     private final InventoryBanking bank;
     private final AntiBan antiBan;
     private final Timers timers;
+    private final Clock clock;           // From timers: wall clock live, virtual in simulation
     private final DiscordNotifier notify;
     private final ProfitTracker profit;
     private final HumanBehavior humanBehavior;
     private final SmartRotation smartRotation;
-    private ItemConfig current;
+    private final SlotScheduler slots;
+    private final CapitalAllocator allocator;
     private long lastAction;
-    private final Random rng = new Random();
+    private Random rng = new Random();
     private final com.plebsscripts.viktor.ge.GEInteractionHandler geHandler;
 
     // NEW: Track recently failed items
     private final Map<String, Long> failedProbes = new ConcurrentHashMap<>();
     private static final long PROBE_FAIL_COOLDOWN_MS = 10 * 60 * 1000; // 10 minutes
 
+    // GE state for the fleet scheduler, read on the tick thread only:
+    // updateItems() runs on the HotReloader thread and must not touch the client
+    private volatile long freeCapital;
+    private volatile int freeSlots;
+
+    // tick() never sleeps: a phase that has to wait sets waitUntil and returns
+    private long waitUntil = 0;
+    private static final int MAX_TICK_MS = 1000;             // Keep onLoop responsive during waits
+
     // Constructor with all dependencies
-    public StateMachine(Settings s, List<ItemConfig> it, SafeCoordinator c, LimitTracker lt,
+    // nav, bank, antiBan and handler may be null when running without a client
+    // (simulation): no navigator means we're already at the GE
+    public StateMachine(Settings s, List<ItemConfig> it, LimitRegistry lt, GEApi g,
                         GENavigator n, GEOffers o, MarginProbe p, PriceModel pm,
                         InventoryBanking b, AntiBan ab, Timers t, DiscordNotifier dn, ProfitTracker pf, JsonCoordinator jsonCoord,
                         com.plebsscripts.viktor.ge.GEInteractionHandler handler) {
@@ -68,34 +74,43 @@ public class StateMachine {
         this.items = it;
         this.workingQueue = new ArrayList<ItemConfig>(it);
         this.smartRotation = new SmartRotation(jsonCoord, lt, s.getAccountName());
-        this.coord = c;
         this.limits = lt;
         this.nav = n;
-        this.ge = GEApiDreamBotAdapter.instance();
-        this.offers = o;
-        this.probe = p;
-        this.price = pm;
+        this.ge = g;
+        this.clock = t.getClock();
+        this.slots = new SlotScheduler(s, ge, o, p, pm, lt, smartRotation, this::markProbeFailed);
+        this.slots.setClock(clock);
+        if (s.rankByFillTime) {
+            FillTimeModel fillModel = new FillTimeModel(); // Learned from our own offers, ranks the queue
+            this.slots.setFillTimeModel(fillModel);
+            this.smartRotation.setFillTimeModel(fillModel);
+        }
+        this.allocator = new CapitalAllocator(s, lt);
+        o.setCapitalAllocator(allocator); // placeBuys sizes from the portfolio budgets
         this.bank = b;
         this.antiBan = ab;
         this.timers = t;
         this.notify = dn;
         this.profit = pf;
-        this.humanBehavior = new HumanBehavior(ab);
-        this.lastAction = System.currentTimeMillis();
+        this.humanBehavior = ab != null ? new HumanBehavior(ab) : null;
+        this.lastAction = clock.now();
+        this.freeCapital = s.maxGpInFlight;
+        this.freeSlots = s.offerSlots;
         this.geHandler = handler;
         Logs.info("StateMachine: SmartMouse integration enabled");
     }
 
     public void start() {
         Logs.info("StateMachine started. Loaded " + items.size() + " items.");
+        cacheGeState();
         updateItemQueue();
-        if (!workingQueue.isEmpty()) {
-            current = workingQueue.get(0);
-        }
     }
 
     public void stop() {
         Logs.info("StateMachine stopped.");
+        Logs.info("Slot utilisation: " + String.format("%.0f%%", slots.slotUtilisation() * 100)
+                + " over " + slots.completedCount() + " items");
+        slots.stop();
 
         // ADDED: Reset anti-ban state on stop
         if (antiBan != null) {
@@ -108,13 +123,10 @@ public class StateMachine {
             // Fallback: simple filtering
             workingQueue = new ArrayList<ItemConfig>(items);
 
-            if (coord != null) {
-                Set<String> localBlocked = coord.getBlockedItems();
-                workingQueue.removeIf(ic -> localBlocked.contains(ic.itemName.toLowerCase()));
-            }
+            workingQueue.removeIf(ic -> limits.isBlocked(ic));
 
             // NEW: Remove recently failed items
-            long now = System.currentTimeMillis();
+            long now = clock.now();
             workingQueue.removeIf(ic -> {
                 Long failTime = failedProbes.get(ic.itemName.toLowerCase());
                 if (failTime != null && (now - failTime) < PROBE_FAIL_COOLDOWN_MS) {
@@ -126,15 +138,20 @@ public class StateMachine {
                 return false;
             });
 
+            allocateCapital();
             Logs.info("Working queue: " + workingQueue.size() + " items available");
             return;
         }
 
         // Use SmartRotation for intelligent prioritization
-        workingQueue = smartRotation.buildPrioritizedQueue(items);
+        if (smartRotation.hasScheduler()) {
+            workingQueue = smartRotation.buildPrioritizedQueue(items, freeCapital, freeSlots);
+        } else {
+            workingQueue = smartRotation.buildPrioritizedQueue(items);
+        }
 
         // NEW: Remove recently failed items from smart queue too
-        long now = System.currentTimeMillis();
+        long now = clock.now();
         workingQueue.removeIf(ic -> {
             Long failTime = failedProbes.get(ic.itemName.toLowerCase());
             if (failTime != null && (now - failTime) < PROBE_FAIL_COOLDOWN_MS) {
@@ -146,6 +163,7 @@ public class StateMachine {
             return false;
         });
 
+        allocateCapital();
         Logs.info("Smart Queue: " + workingQueue.size() + " items prioritized");
         if (smartRotation != null) {
             Logs.info(smartRotation.getTakeoverStats());
@@ -161,254 +179,188 @@ public class StateMachine {
         }
     }
 
-    public LimitTracker getLimitTracker() { return limits; }
-    public Phase getPhase() { return phase; }
-    public ItemConfig getCurrentItem() { return current; }
-
-    /** Main tick loop called from onLoop() */
-    public int tick() {
-        if (workingQueue == null || workingQueue.isEmpty()) {
-            Logs.warn("No items available, idling...");
-            updateItemQueue(); // Try to refresh
-            timers.sleepShort();
-            return 5000;
-        }
-
-        switch (phase) {
-
-            case IDLE:
-                timers.sleepGaussian(1250, 400);
-
-                // Use SmartRotation for intelligent selection
-                if (smartRotation != null) {
-                    current = smartRotation.getNextItem(workingQueue);
-                } else {
-                    // Fallback: random selection
-                    if (!workingQueue.isEmpty()) {
-                        current = workingQueue.get(rng.nextInt(workingQueue.size()));
-                    }
-                }
-
-                if (current == null) {
-                    Logs.warn("No available items - all blocked or queue empty");
-                    updateItemQueue();
-                    timers.sleepShort();
-                    return 5000;
-                }
+    /**
+     * Seed this and the SlotScheduler/SmartRotation it owns, each from its
+     * own draw, so a backtest with a fixed seed repeats exactly
+     */
+    public void setRandom(Random seeds) {
+        this.rng = new Random(seeds.nextLong());
+        slots.setRandom(new Random(seeds.nextLong()));
+        smartRotation.setRandom(new Random(seeds.nextLong()));
+    }
 
-                Logs.info("Selected item: " + current.itemName);
-                phase = Phase.WALK_TO_GE;
-                break;
+    /** Optional: take item assignments from the fleet scheduler */
+    public void setScheduler(com.plebsscripts.viktor.coord.CoordinatorClient scheduler) {
+        smartRotation.setScheduler(scheduler);
+    }
 
-            case WALK_TO_GE:
-                if (nav.walkToGE()) {
-                    Logs.info("At GE — checking if probe needed for " + current.itemName);
-
-                    // Check if probe is stale
-                    if (WorldDetector.isHighRiskOrPvp()) {
-                        Logs.warn("Detected PvP/High Risk world - hopping to safe world...");
-                        if (WorldDetector.hopToP2P()) {
-                            Logs.info("Successfully hopped to safe world");
-                            antiBan.sleep(3000, 5000); // Wait for world change
-                        }
-                    }
-                    if (current.needsProbe(settings.probeStaleMinutes)) {
-                        Logs.info("Probe is stale, starting margin check");
-                        phase = Phase.PROBE;
-                    } else {
-                        Logs.info("Probe is fresh, moving to trading");
-                        phase = Phase.BUY_BULK;
-                    }
-                } else {
-                    antiBan.idleSleep();
-                }
-                break;
+    public LimitRegistry getLimitRegistry() { return limits; }
+    public Phase getPhase() { return phase; }
+    public ItemConfig getCurrentItem() { return slots.latestItem(); }
+    public SlotScheduler getSlotScheduler() { return slots; }
+    public CapitalAllocator getCapitalAllocator() { return allocator; }
+
+    /**
+     * Split the bankroll across the queue and keep only items that got a
+     * share - anything else would be probed just to be refused at buy time.
+     */
+    private void allocateCapital() {
+        if (allocator.rebalance(workingQueue).isEmpty() && !workingQueue.isEmpty()) {
+            Logs.warn("No queued item has a positive expected return - nothing allocated");
+        }
+        workingQueue.removeIf(ic -> !allocator.isAllocated(ic));
+    }
 
-            case PROBE:
-                boolean probeSuccess = probe.ensureFreshMargin(current);
+    /**
+     * Tick thread only: remember what the GE looks like for updateItemQueue()
+     */
+    private void cacheGeState() {
+        freeCapital = Math.max(0, (long) settings.maxGpInFlight - ge.gpInFlight());
+        freeSlots = ge.freeSlots();
+    }
 
-                if (probeSuccess && current.hasGoodMargin()) {
-                    Logs.info("✓ Margin verified: " + current.itemName);
+    private void markProbeFailed(ItemConfig ic) {
+        // NEW: Add to failed list with timestamp
+        failedProbes.put(ic.itemName.toLowerCase(), clock.now());
+        Logs.info("Item blacklisted for " + (PROBE_FAIL_COOLDOWN_MS / 60000) + " minutes");
 
-                    // NEW: Remove from failed list if it was there
-                    failedProbes.remove(current.itemName.toLowerCase());
+        // Update queue to exclude this item
+        updateItemQueue();
+    }
 
-                    phase = Phase.BUY_BULK;
-                } else {
-                    Logs.warn("✗ Margin not profitable: " + current.itemName + ", skipping");
+    /**
+     * Main tick loop called from onLoop()
+     * Returns quickly: waits become "come back in n ms". While TRADING, the
+     * SlotScheduler keeps up to offerSlots items in flight at once.
+     */
+    public int tick() {
+        if (workingQueue == null || workingQueue.isEmpty()) {
+            if (phase != Phase.TRADING || slots.activeCount() == 0) {
+                Logs.warn("No items available, idling...");
+                updateItemQueue(); // Try to refresh
+                return 5000;
+            }
+        }
 
-                    // NEW: Add to failed list with timestamp
-                    failedProbes.put(current.itemName.toLowerCase(), System.currentTimeMillis());
-                    Logs.info("Item blacklisted for " + (PROBE_FAIL_COOLDOWN_MS / 60000) + " minutes");
+        long now = clock.now();
+        if (now < waitUntil) {
+            return (int) Math.min(waitUntil - now, MAX_TICK_MS);
+        }
 
-                    // Update queue to exclude this item
-                    updateItemQueue();
+        // Every GE read this tick is answered from one fresh snapshot
+        ge.invalidateSnapshot();
 
-                    phase = Phase.ROTATE;
-                }
+        switch (phase) {
 
-                lastAction = System.currentTimeMillis();
-                break;
+            case IDLE:
+                Logs.info("Starting trading cycle: " + workingQueue.size() + " items queued");
+                enter(Phase.WALK_TO_GE);
+                return waitFor(gaussian(1250, 400));
 
-            case BUY_BULK:
-                // Check if GE has free slots
-                if (!ge.ensureOpen()) {
-                    Logs.warn("Cannot open GE");
-                    phase = Phase.ROTATE;
+            case WALK_TO_GE:
+                if (nav == null) {
+                    enter(Phase.TRADING); // No client - no world to walk or hop
                     break;
                 }
-
-                int freeSlots = ge.freeSlots();
-                ge.close();
-
-                if (freeSlots <= 0) {
-                    Logs.warn("No free GE slots - waiting for offers to complete");
-
-                    // Wait for offers to complete (with timeout)
-                    int maxWait = 120; // 2 minutes
-                    int waited = 0;
-
-                    while (waited < maxWait && freeSlots <= 0) {
-                        timers.sleepGaussian(5000, 1000); // Wait ~5 seconds
-
-                        if (ge.ensureOpen()) {
-                            freeSlots = ge.freeSlots();
-                            ge.close();
-                        }
-
-                        waited += 5;
-                        Logs.debug("Waiting for free slots... (" + waited + "s)");
-                    }
-
-                    if (freeSlots <= 0) {
-                        Logs.warn("Still no free slots after " + maxWait + "s - rotating item");
-                        phase = Phase.ROTATE;
-                        break;
-                    }
-
-                    Logs.info("Free slot available, continuing with buy");
+                if (!nav.walkToGE()) {
+                    return waitFor(timers.randomWait(2000, 5000));
                 }
-                Logs.info("Placing buy orders for " + current.itemName);
-                GEOffers.Result buyResult = offers.placeBuys(current, price, limits, settings);
-
-                if (buyResult.isOk()) {
-                    Logs.info("✓ Buy orders placed, waiting for completion...");
-
-                    // ADD THIS: Wait for offers to complete
-                    int maxWaitSeconds = 120; // 2 minutes max
-                    int elapsedSeconds = 0;
-                    boolean completed = false;
-
-                    while (elapsedSeconds < maxWaitSeconds) {
-                        timers.sleepGaussian(5000, 1000); // Check every ~5s
-
-                        if (ge.offersComplete(current.itemName)) {
-                            Logs.info("✓ Buy offers completed!");
-                            ge.collectIfReady(current.itemName);
-                            completed = true;
-                            break;
-                        }
-
-                        elapsedSeconds += 5;
-                        Logs.debug("Waiting for offers... " + elapsedSeconds + "s");
-                    }
-
-                    if (!completed) {
-                        Logs.warn("Buy offers timed out - collecting what we have");
-                        ge.collectIfReady(current.itemName);
-                    }
-
-                    // Verify we got items
-                    if (!ge.ensureOpen()) {
-                        phase = Phase.ROTATE;
-                        break;
-                    }
-
-                    int itemCount = ge.inventoryCount(current.itemName);
-                    ge.close();
-
-                    if (itemCount > 0) {
-                        phase = Phase.SELL_BULK;
-                    } else {
-                        Logs.warn("No items received - skipping sell phase");
-                        phase = Phase.ROTATE;
+                Logs.info("At GE — filling offer slots");
+
+                if (WorldDetector.isHighRiskOrPvp()) {
+                    Logs.warn("Detected PvP/High Risk world - hopping to safe world...");
+                    if (WorldDetector.hopToP2P()) {
+                        Logs.info("Successfully hopped to safe world");
+                        enter(Phase.TRADING);
+                        return waitFor(timers.randomWait(3000, 5000)); // Wait for world change
                     }
                 }
+                enter(Phase.TRADING);
                 break;
 
-            case SELL_BULK:
-                Logs.info("Placing sell orders for " + current.itemName);
-
-                // Check if we have items to sell
-                if (!ge.ensureOpen()) {
-                    Logs.warn("Cannot open GE");
-                    phase = Phase.ROTATE;
+            case TRADING:
+                long untilNext = slots.tick(workingQueue);
+                cacheGeState(); // Same snapshot the scheduler just read
+                if (slots.isDrained()) {
+                    // Nothing in flight and nothing new started - wrap up the cycle
+                    ge.close(); // Left open between orders while trading
+                    Logs.info("Slots drained (" + String.format("%.0f%%", slots.slotUtilisation() * 100)
+                            + " utilisation) - banking and cooling down");
+                    lastAction = now;
+                    enter(Phase.BANKING);
                     break;
                 }
-
-                int itemCount = ge.inventoryCount(current.itemName);
-                ge.close();
-
-                if (itemCount > 0) {
-                    offers.listSells(current, price, settings);
-                    Logs.info("✓ Sell orders placed for " + current.itemName);
-                } else {
-                    Logs.warn("No items to sell (offers may not have filled)");
-                }
-
-                phase = Phase.BANKING;
-                lastAction = System.currentTimeMillis();
-                break;
+                return waitFor(untilNext);
 
             case BANKING:
                 // Check if we need to bank collected GP
-                if (bank.needsBank()) {
+                if (bank != null && bank.needsBank()) {
                     Logs.info("Banking items...");
 
                     if (bank.nearBank()) {
                         bank.bankAll();
-                        antiBan.mediumPause();
-                    } else {
-                        Logs.warn("Not near bank, skipping");
+                        enter(Phase.COOLDOWN);
+                        return waitFor(timers.randomWait(1000, 2000));
                     }
+                    Logs.warn("Not near bank, skipping");
                 }
 
-                phase = Phase.COOLDOWN;
+                enter(Phase.COOLDOWN);
                 break;
 
             case COOLDOWN:
-                // IMPROVED: Use Gaussian distribution for cooldown (more human-like)
-                timers.sleepGaussian(20_000, 5_000); // Mean 20s, stddev 5s
-
-                // ADDED: 2% chance to simulate distraction (looking away)
+                // ADDED: 2% chance to simulate distraction (looking away) - added to the cooldown wait
+                int distractedMs = 0;
                 if (humanBehavior != null && rng.nextInt(100) < 2) {
                     humanBehavior.simulateDistraction();
+                    distractedMs = humanBehavior.takePause();
                 }
 
-                // Maybe take a break
-                if (antiBan.shouldTakeBreak()) {
+                // Maybe take a break - the player is away, also added to the cooldown wait
+                int breakMs = 0;
+                if (antiBan != null && antiBan.shouldTakeBreak()) {
                     // ADDED: Randomly choose short or medium break
-                    if (rng.nextBoolean()) {
-                        antiBan.takeShortBreak();
-                    } else {
-                        antiBan.takeMediumBreak();
-                    }
+                    breakMs = rng.nextBoolean() ? antiBan.startShortBreak() : antiBan.startMediumBreak();
                 }
 
-                phase = Phase.ROTATE;
-                break;
+                // IMPROVED: Use Gaussian distribution for cooldown (more human-like)
+                enter(Phase.ROTATE);
+                lastAction = now;
+                return waitFor(gaussian(20_000, 5_000) + distractedMs + breakMs); // Mean 20s, stddev 5s
 
             case ROTATE:
-                // Wait a bit then select new item
-                if (System.currentTimeMillis() - lastAction > 5_000) {
-                    updateItemQueue(); // Refresh available items
-                    phase = Phase.IDLE;
-                } else {
-                    antiBan.idleSleep();
+                // Wait a bit then start a new cycle
+                long idle = now - lastAction;
+                if (idle < 5_000) {
+                    return waitFor(5_000 - idle);
                 }
+                cacheGeState();
+                updateItemQueue(); // Refresh available items
+                enter(Phase.IDLE);
                 break;
         }
 
         return timers.shortWait();
     }
+
+    /**
+     * Switch phase; any wait belongs to the old phase
+     */
+    private void enter(Phase next) {
+        phase = next;
+        waitUntil = 0;
+    }
+
+    /**
+     * Come back to the current phase in ms; returns the tick delay
+     */
+    private int waitFor(long ms) {
+        ms = Math.max(50, ms);
+        waitUntil = clock.now() + ms;
+        return (int) Math.min(ms, MAX_TICK_MS);
+    }
+
+    private long gaussian(int meanMs, int stdDevMs) {
+        return (long) (meanMs + rng.nextGaussian() * stdDevMs);
+    }
 }
\ No newline at end of file
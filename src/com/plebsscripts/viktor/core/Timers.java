@@ -1,13 +1,44 @@
 package com.plebsscripts.viktor.core;
 
+import com.plebsscripts.viktor.util.Clock;
+
 import java.util.Random;
 
 /**
  * Centralized timing utility for bot delays.
  * Adds randomization to appear more human-like.
+ * All time and sleeping goes through the Clock, so a VirtualClock makes
+ * every delay instant.
  */
 public class Timers {
-    private final Random random = new Random();
+    private Random random = new Random();
+    private final Clock clock;
+
+    public Timers() {
+        this(Clock.SYSTEM);
+    }
+
+    public Timers(Clock clock) {
+        this.clock = clock;
+    }
+
+    public Clock getClock() {
+        return clock;
+    }
+
+    /**
+     * Live runs keep the default; a seeded one makes simulated waits repeat
+     */
+    public void setRandom(Random random) {
+        this.random = random;
+    }
+
+    /**
+     * Current time in epoch ms
+     */
+    public long now() {
+        return clock.now();
+    }
 
     // === Sleep methods (blocking) ===
 
@@ -15,33 +46,21 @@ public class Timers {
      * Short sleep with randomization (300-700ms)
      */
     public void sleepShort() {
-        try {
-            Thread.sleep(shortWait());
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-        }
+        clock.sleep(shortWait());
     }
 
     /**
      * Medium sleep with randomization (600-1400ms)
      */
     public void sleepMedium() {
-        try {
-            Thread.sleep(mediumWait());
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-        }
+        clock.sleep(mediumWait());
     }
 
     /**
      * Long sleep with randomization (1000-2200ms)
      */
     public void sleepLong() {
-        try {
-            Thread.sleep(longWait());
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-        }
+        clock.sleep(longWait());
     }
 
     // === Wait duration methods (returns ms, doesn't block) ===
@@ -89,22 +108,14 @@ public class Timers {
      * Custom sleep with range
      */
     public void sleep(int minMs, int maxMs) {
-        try {
-            Thread.sleep(randomWait(minMs, maxMs));
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-        }
+        clock.sleep(randomWait(minMs, maxMs));
     }
 
     /**
      * Exact sleep (no randomization)
      */
     public void sleepExact(int ms) {
-        try {
-            Thread.sleep(ms);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-        }
+        clock.sleep(ms);
     }
 
     /**
@@ -3,8 +3,8 @@
 package com.plebsscripts.viktor.core;
 
 import com.plebsscripts.viktor.config.*;
+import com.plebsscripts.viktor.coord.CoordinatorClient;
 import com.plebsscripts.viktor.coord.JsonCoordinator;
-import com.plebsscripts.viktor.coord.SafeCoordinator;
 import com.plebsscripts.viktor.ge.*;
 import com.plebsscripts.viktor.limits.*;
 import com.plebsscripts.viktor.notify.DiscordNotifier;
@@ -34,6 +34,8 @@ public class Viktor extends AbstractScript {
     private com.plebsscripts.viktor.ui.OnPaintOverlay overlay;
     private ProfitTracker profit;
     private HotReloader hotReloader;
+    private JsonCoordinator jsonCoord;
+    private CoordinatorClient scheduler;
     private File dataDir;
 
     // Flag to track if we've initialized after Start button
@@ -290,7 +292,7 @@ public class Viktor extends AbstractScript {
             }
 
             // Initialize JSON-based coordinator
-            JsonCoordinator jsonCoord = null;
+            jsonCoord = null;
 
             if (settings.enableCoordinator) {
                 String coordPath = new File(dataDir, "coordination.json").getAbsolutePath();
@@ -300,8 +302,10 @@ public class Viktor extends AbstractScript {
                 Logs.info("Coordinator disabled in settings");
             }
 
-            SafeCoordinator coord = new SafeCoordinator(settings.getAccountName());
-            LimitTracker limits = LimitStore.loadForAccount(dataDir, settings.getAccountName());
+            LimitRegistry limits = LimitStore.loadForAccount(dataDir, settings.getAccountName());
+            if (jsonCoord != null) {
+                limits.attachFleet(jsonCoord);
+            }
             DiscordNotifier notify = DiscordNotifier.fromSettings(settings);
             profit = new ProfitTracker();
 
@@ -317,6 +321,9 @@ public class Viktor extends AbstractScript {
             offers.setProfitTracker(profit);
 
             MarginProbe probe = new MarginProbe(settings, geAdapter, notify, profit);
+            if (jsonCoord != null) {
+                probe.setProbeCache(jsonCoord);
+            }
             PriceModel price = new PriceModel();
             InventoryBanking bank = new InventoryBanking();
             Timers timers = new Timers();
@@ -327,12 +334,18 @@ public class Viktor extends AbstractScript {
 
             // Create state machine
             state = new StateMachine(
-                    settings, items, coord, limits,
+                    settings, items, limits, geAdapter,
                     nav, offers, probe, price, bank,
                     antiBan, timers, notify, profit, jsonCoord,
                     geHandler
             );
 
+            if (settings.fleetScheduler) {
+                scheduler = new CoordinatorClient(settings.coordinatorUrl);
+                state.setScheduler(scheduler);
+                Logs.info("✓ Fleet scheduler: " + settings.coordinatorUrl);
+            }
+
             // Setup overlay
             overlay = new com.plebsscripts.viktor.ui.OnPaintOverlay(state, profit, limits);
 
@@ -383,9 +396,18 @@ public class Viktor extends AbstractScript {
             hotReloader.stop();
         }
 
+        // Release coordination log
+        if (jsonCoord != null) {
+            jsonCoord.close();
+        }
+        if (scheduler != null) {
+            scheduler.close();
+        }
+
         // Save state
         if (state != null && dataDir != null) {
-            LimitStore.saveForAccount(dataDir, settings.getAccountName(), state.getLimitTracker());
+            LimitStore.saveForAccount(dataDir, settings.getAccountName(), state.getLimitRegistry());
+            state.getLimitRegistry().close();
         }
 
         if (settings != null && dataDir != null) {
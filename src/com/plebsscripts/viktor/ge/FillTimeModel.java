@@ -0,0 +1,199 @@
+package com.plebsscripts.viktor.ge;
+
+import com.plebsscripts.viktor.config.ItemConfig;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Learns how fast each item's offers fill, per side, from what the offer
+ * slots actually do.
+ *
+ * observe() is fed a snapshot every tick. An offer is followed from the
+ * first snapshot it shows up in until it's ready to collect (filled, or
+ * cancelled with a part-fill); then its fill rate (items per minute) and
+ * fill fraction go into the item's running estimate.
+ *
+ * Slow offers must be counted too, or the estimates only ever see the ones
+ * that filled. An offer that leaves its slot uncounted - the repricer
+ * replaced it, or it was cancelled and collected between two snapshots - is
+ * counted with what it had filled by the last snapshot that showed it. One
+ * still open after CENSOR_MINUTES is counted then, with what it has filled
+ * so far; that catches offers nothing ever replaces.
+ *
+ * Estimates start from a prior - a tenth of the CSV's recent liquidity per
+ * minute over its horizon, fully filled - and move to a running mean of the
+ * observations, then to an exponential average once there are enough, so
+ * they follow the market.
+ *
+ * gpPerSlotMinute() turns that into what a slot earns on the item per
+ * minute: one offer's after-tax margin times the share of it we expect to
+ * buy and sell, over the time the buy and the sell take. SmartRotation
+ * ranks by it when Settings.rankByFillTime is on.
+ *
+ * Synchronized: observed on the script thread, read by queue rebuilds
+ * (which a config reload can run from another thread).
+ */
+public class FillTimeModel {
+    private static final int PRIOR_WEIGHT = 2;             // Observations the prior counts as
+    private static final double MIN_ALPHA = 0.2;           // Exponential average once past 1/alpha samples
+    private static final double PRIOR_SHARE = 0.1;         // Of recent volume our offers can expect
+    private static final double DEFAULT_RATE = 1.0;        // Items/min with no liquidity in the CSV
+    private static final double MIN_RATE = 0.01;
+    private static final double OVERHEAD_MINUTES = 1.0;    // Placing, collecting, moving between offers
+    private static final int OFFER_QTY = 100;              // Items one slot takes per offer (GEOffers batches)
+    private static final long CENSOR_MINUTES = 30;         // Count an offer still open after this long
+
+    public enum Side { BUY, SELL }
+
+    public static final class Estimate {
+        public final double itemsPerMinute;
+        public final double fillFraction;   // 0..1 of an offer that fills before it's collected
+        public final int samples;
+
+        Estimate(double itemsPerMinute, double fillFraction, int samples) {
+            this.itemsPerMinute = itemsPerMinute;
+            this.fillFraction = fillFraction;
+            this.samples = samples;
+        }
+
+        /**
+         * @return expected minutes to fill qty items
+         */
+        public double minutesFor(int qty) {
+            return qty / Math.max(MIN_RATE, itemsPerMinute);
+        }
+    }
+
+    // An offer being followed, by slot index
+    private static final class Tracked {
+        final String key;
+        final boolean buy;
+        final int price;
+        final int total;
+        final long since;
+        int filled;         // As of seenAt
+        long seenAt;
+        boolean counted;
+
+        Tracked(String key, GESnapshot.Slot slot, long since) {
+            this.key = key;
+            this.buy = slot.buy;
+            this.price = slot.price;
+            this.total = slot.total;
+            this.since = since;
+            this.seenAt = since;
+        }
+
+        boolean same(GESnapshot.Slot slot) {
+            return slot.itemName.toLowerCase().equals(key) && slot.buy == buy
+                    && slot.price == price && slot.total == total;
+        }
+    }
+
+    // Running figures for one item and side
+    private static final class Stats {
+        double rate;
+        double fraction;
+        int samples;
+    }
+
+    private final Tracked[] tracked = new Tracked[GESnapshot.SLOTS];
+    private final Map<String, Stats> buys = new HashMap<>();   // Lowercase name -> stats
+    private final Map<String, Stats> sells = new HashMap<>();
+
+    /**
+     * Follow the offers in the snapshot; count any that have just finished
+     * or left their slot.
+     */
+    public synchronized void observe(GESnapshot snap, long now) {
+        if (!snap.isComplete()) return;
+
+        for (int i = 0; i < GESnapshot.SLOTS; i++) {
+            GESnapshot.Slot slot = snap.slot(i);
+            Tracked t = tracked[i];
+            if (slot == null || t == null || !t.same(slot)) {
+                if (t != null) count(t); // Replaced or gone: what it had filled when we last saw it
+                tracked[i] = t = slot == null ? null : new Tracked(slot.itemName.toLowerCase(), slot, now);
+                if (t == null) continue;
+            }
+
+            t.filled = slot.filled;
+            t.seenAt = now;
+            if (slot.ready || now - t.since >= CENSOR_MINUTES * 60_000L) {
+                count(t);
+            }
+        }
+    }
+
+    private void count(Tracked t) {
+        if (t.counted || t.total <= 0) return;
+        double minutes = Math.max(0.1, (t.seenAt - t.since) / 60_000.0);
+        record(t.key, t.buy, t.filled / minutes, (double) t.filled / t.total);
+        t.counted = true;
+    }
+
+    /**
+     * Count one finished offer directly (backfills, tests).
+     */
+    public synchronized void record(String itemName, boolean buy, double itemsPerMinute, double fillFraction) {
+        Map<String, Stats> side = buy ? buys : sells;
+        Stats s = side.get(itemName.toLowerCase());
+        if (s == null) {
+            s = new Stats();
+            side.put(itemName.toLowerCase(), s);
+        }
+
+        double alpha = Math.max(MIN_ALPHA, 1.0 / (s.samples + 1));
+        s.rate = s.samples == 0 ? itemsPerMinute : s.rate + alpha * (itemsPerMinute - s.rate);
+        s.fraction = s.samples == 0 ? fillFraction : s.fraction + alpha * (fillFraction - s.fraction);
+        s.samples++;
+    }
+
+    /**
+     * @return the item's estimate for the side, the prior blended in while
+     * there are few observations
+     */
+    public synchronized Estimate estimate(ItemConfig ic, Side side) {
+        double priorRate = ic.liquidity > 0 && ic.horizonMinutes > 0
+                ? Math.max(MIN_RATE, ic.liquidity / ic.horizonMinutes * PRIOR_SHARE)
+                : DEFAULT_RATE;
+
+        Stats s = (side == Side.BUY ? buys : sells).get(ic.key());
+        if (s == null || s.samples == 0) {
+            return new Estimate(priorRate, 1.0, 0);
+        }
+
+        double w = (double) s.samples / (s.samples + PRIOR_WEIGHT);
+        return new Estimate(
+                w * s.rate + (1 - w) * priorRate,
+                w * s.fraction + (1 - w) * 1.0,
+                s.samples);
+    }
+
+    /**
+     * Expected profit one slot makes on the item per minute: an offer's
+     * margin after GE tax, times the share bought and then sold, over the
+     * time both take. Negative margins stay negative so they sort last.
+     */
+    public double gpPerSlotMinute(ItemConfig ic) {
+        int qty = Math.max(1, Math.min(ic.maxQtyPerCycle, OFFER_QTY));
+        int sellPrice = ic.getSellPrice();
+        long margin = sellPrice - PriceModel.taxEach(sellPrice) - ic.getBuyPrice();
+
+        Estimate buy = estimate(ic, Side.BUY);
+        Estimate sell = estimate(ic, Side.SELL);
+
+        double bought = qty * buy.fillFraction;
+        double sold = bought * sell.fillFraction;
+        double minutes = buy.minutesFor(qty) + sell.minutesFor((int) Math.ceil(bought)) + OVERHEAD_MINUTES;
+        return margin * sold / minutes;
+    }
+
+    public synchronized int sampleCount() {
+        int n = 0;
+        for (Stats s : buys.values()) n += s.samples;
+        for (Stats s : sells.values()) n += s.samples;
+        return n;
+    }
+}
@@ -1,5 +1,7 @@
 package com.plebsscripts.viktor.ge;
 
+import java.util.List;
+
 public interface GEApi {
     boolean ensureOpen();
     void close();
@@ -13,6 +15,60 @@ public interface GEApi {
     BuyOutcome placeBuy(String itemName, int priceEach, int qty);
     SellOutcome placeSell(String itemName, int priceEach, int qtyOrZeroForAll);
 
+    /**
+     * Place several orders in one GE session (opened once, left open for the
+     * caller to close). Buys for an item stop at its first LIMIT_HIT; the
+     * rest of that item's buys come back LIMIT_HIT without being tried.
+     * @return one result per order, in order
+     */
+    List<OrderResult> placeOrders(List<Order> orders);
+
+    final class Order {
+        public final boolean buy;
+        public final String itemName;
+        public final int priceEach;
+        public final int qty;
+
+        private Order(boolean buy, String itemName, int priceEach, int qty) {
+            this.buy = buy;
+            this.itemName = itemName;
+            this.priceEach = priceEach;
+            this.qty = qty;
+        }
+
+        public static Order buy(String itemName, int priceEach, int qty) {
+            return new Order(true, itemName, priceEach, qty);
+        }
+
+        public static Order sell(String itemName, int priceEach, int qty) {
+            return new Order(false, itemName, priceEach, qty);
+        }
+
+        public Order withPrice(int newPriceEach) {
+            return new Order(buy, itemName, newPriceEach, qty);
+        }
+    }
+
+    final class OrderResult {
+        public final Order order;
+        public final BuyOutcome buyOutcome;    // Buys only
+        public final SellOutcome sellOutcome;  // Sells only
+
+        public OrderResult(Order order, BuyOutcome buyOutcome, SellOutcome sellOutcome) {
+            this.order = order;
+            this.buyOutcome = buyOutcome;
+            this.sellOutcome = sellOutcome;
+        }
+
+        public boolean isPlaced() {
+            return order.buy ? buyOutcome == BuyOutcome.PLACED : sellOutcome == SellOutcome.PLACED;
+        }
+
+        public boolean isLimitHit() {
+            return buyOutcome == BuyOutcome.LIMIT_HIT;
+        }
+    }
+
     void collectAll();
     void collectIfReady(String itemName);
     boolean inventoryHas(String itemName);
@@ -20,11 +76,17 @@ public interface GEApi {
     boolean hasStaleBuys(String itemName, int staleMinutes);
     boolean hasStaleSells(String itemName, int staleMinutes);
 
+    // Cancel the item's buy offers, collect, and re-buy what was left unfilled at the new price
     boolean repriceBuys(String itemName, int newPriceEach);
     void cancelBuys(String itemName);
+    // Cancel the item's sell offers, collect, and re-list all of it at the new price
     void undercutSells(String itemName, int newSellPrice);
 
     // Add these for polling completion
     boolean offersComplete(String itemName);
     int inventoryCount(String itemName);
+
+    // Slot and inventory state the reads above are answered from
+    GESnapshot snapshot();
+    void invalidateSnapshot(); // Call at the start of each tick
 }
@@ -5,12 +5,20 @@ import org.dreambot.api.methods.grandexchange.GrandExchange;
 import org.dreambot.api.methods.grandexchange.GrandExchangeItem;
 import org.dreambot.api.methods.container.impl.Inventory;
 import org.dreambot.api.methods.widget.Widgets;
+import org.dreambot.api.wrappers.items.Item;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Full implementation of GEApi with DreamBot 3.0+ static API.
+ * Reads are answered from a GESnapshot captured at most once per tick;
+ * anything that changes the GE drops it.
  */
 public class GEApiDreamBotAdapter implements GEApi {
     private static final GEApiDreamBotAdapter INST = new GEApiDreamBotAdapter();
@@ -21,6 +29,7 @@ public class GEApiDreamBotAdapter implements GEApi {
 
     private final GEApiDreamBot track = GEApiDreamBot.instance();
     private final Map<String, Integer> itemToOfferId = new ConcurrentHashMap<String, Integer>();
+    private volatile GESnapshot snapshot;
 
     private GEApiDreamBotAdapter() {
     }
@@ -49,14 +58,60 @@ public class GEApiDreamBotAdapter implements GEApi {
         }
     }
 
+    // ===== Snapshot =====
+
+    @Override
+    public GESnapshot snapshot() {
+        GESnapshot s = snapshot;
+        if (s == null) {
+            s = capture();
+            snapshot = s;
+        }
+        return s;
+    }
+
+    @Override
+    public void invalidateSnapshot() {
+        snapshot = null;
+    }
+
+    private GESnapshot capture() {
+        long now = System.currentTimeMillis();
+        try {
+            GESnapshot.Slot[] slots = new GESnapshot.Slot[GESnapshot.SLOTS];
+            GrandExchangeItem[] items = GrandExchange.getItems();
+            for (int slot = 0; slot < GESnapshot.SLOTS && items != null && slot < items.length; slot++) {
+                GrandExchangeItem geItem = items[slot];
+                if (geItem == null || geItem.getItem() == null) continue;
+
+                slots[slot] = new GESnapshot.Slot(slot, geItem.getItem().getName(), geItem.isBuyOffer(),
+                        geItem.getPrice(), geItem.getTransferredAmount(), geItem.getAmount(),
+                        GrandExchange.isReadyToCollect(slot));
+            }
+
+            Map<String, Integer> inventory = new HashMap<>();
+            for (Item item : Inventory.all()) {
+                if (item != null && item.getName() != null) {
+                    inventory.merge(item.getName(), item.getAmount(), Integer::sum);
+                }
+            }
+            return new GESnapshot(slots, inventory, true, now);
+        } catch (Exception e) {
+            Logs.warn("GE snapshot failed: " + e.getMessage());
+            return GESnapshot.failed();
+        }
+    }
+
     @Override
     public int freeSlots() {
-        return track.freeSlots();
+        GESnapshot s = snapshot();
+        return s.isComplete() ? s.freeSlots() : track.freeSlots();
     }
 
     @Override
     public int gpInFlight() {
-        long v = track.gpInFlight();
+        GESnapshot s = snapshot();
+        long v = s.isComplete() ? s.gpInFlight() : track.gpInFlight();
         return v > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) v;
     }
 
@@ -70,6 +125,7 @@ public class GEApiDreamBotAdapter implements GEApi {
         try {
             // Attempt to place buy order
             boolean success = GrandExchange.buyItem(itemName, qty, priceEach);
+            invalidateSnapshot();
 
             if (success) {
                 GEApiDreamBot.OfferInfo oi = track.registerOffer(itemName, GEApiDreamBot.Type.BUY, priceEach, qty);
@@ -112,7 +168,7 @@ public class GEApiDreamBotAdapter implements GEApi {
         try {
             int qty = qtyOrZeroForAll;
             if (qty == 0) {
-                qty = Inventory.count(itemName);
+                qty = inventoryCount(itemName);
             }
 
             if (qty == 0) {
@@ -121,6 +177,7 @@ public class GEApiDreamBotAdapter implements GEApi {
             }
 
             boolean success = GrandExchange.sellItem(itemName, qty, priceEach);
+            invalidateSnapshot();
             if (success) {
                 GEApiDreamBot.OfferInfo oi = track.registerOffer(itemName, GEApiDreamBot.Type.SELL, priceEach, qty);
                 itemToOfferId.put(itemName + "_sell", oi.offerId);
@@ -134,10 +191,44 @@ public class GEApiDreamBotAdapter implements GEApi {
         }
     }
 
+    @Override
+    public List<OrderResult> placeOrders(List<Order> orders) {
+        List<OrderResult> results = new ArrayList<>(orders.size());
+        if (orders.isEmpty()) return results;
+
+        boolean open = ensureOpen();
+        Set<String> limitHit = new HashSet<>();
+
+        for (int i = 0; i < orders.size(); i++) {
+            Order order = orders.get(i);
+            if (!open) {
+                results.add(order.buy ? new OrderResult(order, BuyOutcome.FAILED, null)
+                        : new OrderResult(order, null, SellOutcome.FAILED));
+                continue;
+            }
+
+            if (order.buy) {
+                BuyOutcome out = limitHit.contains(order.itemName)
+                        ? BuyOutcome.LIMIT_HIT : placeBuy(order.itemName, order.priceEach, order.qty);
+                if (out == BuyOutcome.LIMIT_HIT) limitHit.add(order.itemName);
+                results.add(new OrderResult(order, out, null));
+            } else {
+                results.add(new OrderResult(order, null, placeSell(order.itemName, order.priceEach, order.qty)));
+            }
+
+            // Short human gap between offers - the interface is already up
+            if (i < orders.size() - 1) {
+                org.dreambot.api.utilities.Sleep.sleep(600, 1200);
+            }
+        }
+        return results;
+    }
+
     @Override
     public void collectAll() {
         try {
             GrandExchange.collect();
+            invalidateSnapshot();
 
             // Clear tracked offers since they're collected
             track.cancelAllTrackedOffers();
@@ -151,15 +242,15 @@ public class GEApiDreamBotAdapter implements GEApi {
 
     @Override
     public boolean inventoryHas(String itemName) {
-        try {
-            return Inventory.contains(itemName);
-        } catch (Exception e) {
-            return false;
-        }
+        return inventoryCount(itemName) > 0;
     }
 
     @Override
     public int inventoryCount(String itemName) {
+        GESnapshot s = snapshot();
+        if (s.isComplete()) {
+            return s.inventoryCount(itemName);
+        }
         try {
             return Inventory.count(itemName);
         } catch (Exception e) {
@@ -170,8 +261,18 @@ public class GEApiDreamBotAdapter implements GEApi {
 
     @Override
     public boolean hasStaleBuys(String itemName, int staleMinutes) {
-        long ms = Math.max(1, staleMinutes) * 60L * 1000L;
-        return track.hasStaleBuys(ms);
+        long threshold = Math.max(1, staleMinutes) * 60L * 1000L;
+        long now = System.currentTimeMillis();
+
+        for (GEApiDreamBot.OfferInfo oi : track.getTrackedOffers()) {
+            if (oi.type == GEApiDreamBot.Type.BUY &&
+                    oi.itemName.equals(itemName) &&
+                    oi.remainingQty > 0 &&
+                    (now - oi.timestampMs) > threshold) {
+                return true;
+            }
+        }
+        return false;
     }
 
     @Override
@@ -193,11 +294,17 @@ public class GEApiDreamBotAdapter implements GEApi {
 
     @Override
     public boolean repriceBuys(String itemName, int newPriceEach) {
+        int qty = 0;
+        for (GESnapshot.Slot slot : snapshot().slotsFor(itemName)) {
+            if (slot.buy) qty += slot.remaining();
+        }
+        if (qty <= 0) return false;
+
         cancelBuys(itemName);
 
         try {
             Thread.sleep(600);
-            int qty = 100;
+            collectIfReady(itemName); // Cancelled offers hold the part-fill and the refund
             BuyOutcome result = placeBuy(itemName, newPriceEach, qty);
 
             if (result == BuyOutcome.PLACED) {
@@ -221,35 +328,44 @@ public class GEApiDreamBotAdapter implements GEApi {
 
         // Cancel in GE UI - DreamBot uses GrandExchangeItem
         try {
-            for (int slot = 0; slot < 8; slot++) {
-                GrandExchangeItem geItem = GrandExchange.getItem(slot);
-                if (geItem != null && geItem.getItem() != null &&
-                        geItem.getItem().getName().equals(itemName)) {
-                    GrandExchange.cancelOffer(slot);
+            for (GESnapshot.Slot slot : snapshot().slotsFor(itemName)) {
+                if (slot.buy) {
+                    GrandExchange.cancelOffer(slot.index);
                 }
             }
         } catch (Exception e) {
             Logs.warn("GE cancel failed: " + e.getMessage());
+        } finally {
+            invalidateSnapshot();
         }
     }
 
     @Override
     public void undercutSells(String itemName, int newSellPrice) {
         try {
-            for (int slot = 0; slot < 8; slot++) {
-                GrandExchangeItem geItem = GrandExchange.getItem(slot);
-                if (geItem != null && geItem.getItem() != null &&
-                        geItem.getItem().getName().equals(itemName)) {
-                    GrandExchange.cancelOffer(slot);
-                    Thread.sleep(600);
-
-                    int qty = Inventory.count(itemName);
-                    if (qty > 0) {
-                        placeSell(itemName, newSellPrice, qty);
-                        Logs.info("Undercut sell: " + itemName + " → " + newSellPrice + " gp");
-                    }
+            boolean cancelled = false;
+            for (GESnapshot.Slot slot : snapshot().slotsFor(itemName)) {
+                if (!slot.buy && !slot.ready) {
+                    GrandExchange.cancelOffer(slot.index);
+                    cancelled = true;
                 }
             }
+            if (!cancelled) return;
+
+            for (GEApiDreamBot.OfferInfo oi : track.getTrackedOffers()) {
+                if (oi.type == GEApiDreamBot.Type.SELL && oi.itemName.equals(itemName)) {
+                    track.markOfferCompleted(oi.offerId);
+                }
+            }
+            Thread.sleep(600);
+            invalidateSnapshot();
+            collectIfReady(itemName); // Unsold items come back through the collection box
+
+            int qty = inventoryCount(itemName);
+            if (qty > 0) {
+                placeSell(itemName, newSellPrice, qty);
+                Logs.info("Undercut sell: " + itemName + " → " + newSellPrice + " gp");
+            }
         } catch (Exception e) {
             Logs.warn("Undercut failed: " + e.getMessage());
         }
@@ -257,73 +373,53 @@ public class GEApiDreamBotAdapter implements GEApi {
 
     @Override
     public boolean offersComplete(String itemName) {
-        try {
-            boolean anyReady = false;
-
-            for (int slot = 0; slot < 8; slot++) {
-                GrandExchangeItem geItem = GrandExchange.getItem(slot);
-
-                if (geItem == null) continue;
-
-                // Check if this slot has our item
-                if (geItem.getItem() != null &&
-                        geItem.getItem().getName().equals(itemName)) {
-
-                    // Check if ready to collect (green checkmark)
-                    if (GrandExchange.isReadyToCollect(slot)) {
-                        Logs.info("Offer slot " + slot + " ready to collect: " + itemName);
-                        anyReady = true;
-                    } else {
-                        // Check if offer is stale (been pending too long)
-                        // Since DreamBot doesn't expose timestamps, we rely on the tracker
-                        Logs.debug("Offer slot " + slot + " still pending: " + itemName);
-                    }
-                }
+        boolean anyReady = false;
+
+        for (GESnapshot.Slot slot : snapshot().slotsFor(itemName)) {
+            // Check if ready to collect (green checkmark)
+            if (slot.ready) {
+                Logs.info("Offer slot " + slot.index + " ready to collect: " + itemName);
+                anyReady = true;
+            } else {
+                Logs.debug("Offer slot " + slot.index + " still pending: " + itemName
+                        + " (" + slot.filled + "/" + slot.total + ")");
             }
-
-            return anyReady;
-
-        } catch (Exception e) {
-            Logs.warn("offersComplete() error: " + e.getMessage());
-            return false;
         }
+
+        return anyReady;
     }
+
     //  method to force collection check:
     public void collectIfReady(String itemName) {
         try {
+            GESnapshot.Slot ready = null;
+            for (int i = 0; i < GESnapshot.SLOTS; i++) {
+                GESnapshot.Slot slot = snapshot().slot(i);
+                if (slot != null && slot.ready && (itemName == null || slot.itemName.equals(itemName))) {
+                    ready = slot;
+                    break; // Collect one at a time to avoid issues
+                }
+            }
+
+            if (ready == null) {
+                Logs.debug("No ready offers found for: " + itemName);
+                return;
+            }
+
             if (!GrandExchange.isOpen()) {
                 GrandExchange.open();
                 org.dreambot.api.utilities.Sleep.sleepUntil(() -> GrandExchange.isOpen(), 3000);
             }
 
-            boolean collected = false;
+            Logs.info("Collecting from slot " + ready.index + ": " + ready.itemName);
 
-            for (int slot = 0; slot < 8; slot++) {
-                if (GrandExchange.isReadyToCollect(slot)) {
-                    GrandExchangeItem geItem = GrandExchange.getItem(slot);
-
-                    if (geItem != null && geItem.getItem() != null) {
-                        String item = geItem.getItem().getName();
-
-                        if (item.equals(itemName) || itemName == null) {
-                            Logs.info("Collecting from slot " + slot + ": " + item);
-
-                            // FIXED: Use collectAll() instead of collect(slot)
-                            GrandExchange.collect();
-                            org.dreambot.api.utilities.Sleep.sleep(600, 1000);
-                            collected = true;
-                            break; // Collect one at a time to avoid issues
-                        }
-                    }
-                }
-            }
-
-            if (!collected) {
-                Logs.debug("No ready offers found for: " + itemName);
-            }
+            // FIXED: Use collectAll() instead of collect(slot)
+            GrandExchange.collect();
+            invalidateSnapshot();
+            org.dreambot.api.utilities.Sleep.sleep(600, 1000);
 
         } catch (Exception e) {
             Logs.warn("collectIfReady() error: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+}
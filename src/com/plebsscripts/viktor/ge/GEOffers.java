@@ -2,14 +2,18 @@ package com.plebsscripts.viktor.ge;
 
 import com.plebsscripts.viktor.config.ItemConfig;
 import com.plebsscripts.viktor.config.Settings;
+import com.plebsscripts.viktor.core.CapitalAllocator;
 import com.plebsscripts.viktor.core.ProfitTracker;
 import com.plebsscripts.viktor.core.HumanBehavior;
 import com.plebsscripts.viktor.core.AntiBan;
 import com.plebsscripts.viktor.ge.GEApi.BuyOutcome;
-import com.plebsscripts.viktor.limits.LimitTracker;
+import com.plebsscripts.viktor.limits.LimitRegistry;
 import com.plebsscripts.viktor.notify.DiscordNotifier;
 import com.plebsscripts.viktor.util.KellyCalculator;
 import com.plebsscripts.viktor.util.Logs;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Random;
 
 public class GEOffers {
@@ -18,8 +22,11 @@ public class GEOffers {
     private ProfitTracker profit;
     private HumanBehavior humanBehavior; // Add this
     private AntiBan antiBan; // Add this
+    private CapitalAllocator allocator;
     private Random random = new Random();
 
+    private static final int MAX_ATTEMPTS = 3; // First placement plus retries
+
     public GEOffers(GEApi ge, DiscordNotifier notify) {
         this.ge = ge;
         this.notify = notify;
@@ -38,15 +45,42 @@ public class GEOffers {
         this.antiBan = antiBan;
     }
 
+    /**
+     * Retry delays and repricing draws; seeded for backtests
+     */
+    public void setRandom(Random random) {
+        this.random = random;
+    }
+
+    /**
+     * Size buys from the allocator's per-item budget instead of Kelly on the whole bankroll
+     */
+    public void setCapitalAllocator(CapitalAllocator allocator) {
+        this.allocator = allocator;
+    }
+
     /**
      * IMPROVED: Place bulk buys with retry logic and human mistakes
+     * All batches go through one placeOrders() call; the GE is left open for
+     * the next item - the caller closes it when it's done trading.
+     * Batches that fail come back in the result for retryBuys().
      */
-    public Result placeBuys(ItemConfig ic, PriceModel pricing, LimitTracker limits, Settings s) {
-        if (limits.isBlocked(ic.itemName)) {
+    public Result placeBuys(ItemConfig ic, PriceModel pricing, LimitRegistry limits, Settings s) {
+        if (limits.isBlocked(ic)) {
             Logs.info("4h blocked locally: " + ic.itemName);
             return Result.hit4h();
         }
 
+        // Budget left for this item: its share of the bankroll less its open buys
+        long budget = allocator != null ? allocator.budgetFor(ic) : -1;
+        if (budget >= 0) {
+            budget -= gpInBuys(ic.itemName);
+            if (budget < ic.getBuyPrice()) {
+                Logs.info("No capital allocated to " + ic.itemName + " right now");
+                return Result.fail();
+            }
+        }
+
         if (!ge.ensureOpen()) {
             Logs.warn("Cannot open GE for buys");
             return Result.fail();
@@ -56,37 +90,45 @@ public class GEOffers {
         if (humanBehavior != null && humanBehavior.shouldCheckItemFirst()) {
             humanBehavior.checkItemDetails(ic);
         }
-// KELLY CRITERION: Calculate optimal quantity
-        long bankroll = s.maxGpInFlight;
-        double winProb = ic.probUp; // From CSV
-
-        int kellyQty = KellyCalculator.calculateOptimalQuantity(
-                bankroll,
-                winProb,
-                ic.getBuyPrice(),
-                ic.getSellPrice(),
-                ic.maxQtyPerCycle,
-                s.kellyFraction
-        );
-
-        double kellyPct = KellyCalculator.calculateKellyPercentage(
-                winProb, ic.getBuyPrice(), ic.getSellPrice()
-        );
-
-        String riskCategory = KellyCalculator.getRiskCategory(kellyPct);
-
-        Logs.info("Kelly Analysis: " + kellyQty + " items (" +
-                String.format("%.1f%%", kellyPct * 100) + " of bankroll) - " + riskCategory + " risk");
-
-        // Use Kelly quantity instead of fixed
-        int targetQty = kellyQty;
+        int targetQty;
+        if (budget >= 0) {
+            // Portfolio sizing: this item's share, already Kelly-capped across all items
+            targetQty = (int) Math.min(ic.maxQtyPerCycle, budget / ic.getBuyPrice());
+            Logs.info("Allocated budget: " + targetQty + " items (" + budget + " gp left for " + ic.itemName + ")");
+        } else {
+            // KELLY CRITERION: Calculate optimal quantity
+            long bankroll = s.maxGpInFlight;
+            double winProb = ic.probUp; // From CSV
+
+            int kellyQty = KellyCalculator.calculateOptimalQuantity(
+                    bankroll,
+                    winProb,
+                    ic.getBuyPrice(),
+                    ic.getSellPrice(),
+                    ic.maxQtyPerCycle,
+                    s.kellyFraction
+            );
+
+            double kellyPct = KellyCalculator.calculateKellyPercentage(
+                    winProb, ic.getBuyPrice(), ic.getSellPrice()
+            );
+
+            String riskCategory = KellyCalculator.getRiskCategory(kellyPct);
+
+            Logs.info("Kelly Analysis: " + kellyQty + " items (" +
+                    String.format("%.1f%%", kellyPct * 100) + " of bankroll) - " + riskCategory + " risk");
+
+            // Use Kelly quantity instead of fixed
+            targetQty = kellyQty;
+        }
 
         // Apply human behavior adjustments
         if (humanBehavior != null) {
             targetQty = humanBehavior.maybeAdjustQuantity(targetQty);
         }
-        int placedQty = 0;
-        int buyPrice = ic.getBuyPrice(); // Uses probe data if available
+        // Open at the estimate, not the probe's price: the probe buys at maxBuy,
+        // the top of the ladder the repricer walks stale buys up
+        int buyPrice = Math.min(ic.getBuyPrice(), pricing.buyPrice(ic));
 
 
         // Maybe enter wrong price first (1-2% chance)
@@ -94,18 +136,21 @@ public class GEOffers {
             buyPrice = humanBehavior.maybeWrongPrice(buyPrice, "buy");
         }
 
-        while (placedQty < targetQty) {
-            // Check slot availability
-            int freeSlots = ge.freeSlots();
-            if (freeSlots <= 0) {
-                Logs.warn("No free GE slots");
-                break;
-            }
+        // Plan every batch up front - one per free slot, within the GP budget -
+        // and place them all in one GE session
+        int freeSlots = ge.freeSlots();
+        long availableGp = (long) s.maxGpInFlight - ge.gpInFlight();
+        if (budget >= 0) {
+            availableGp = Math.min(availableGp, budget);
+        }
+        List<GEApi.Order> orders = new ArrayList<>();
+        int plannedQty = 0;
 
-            // Check GP budget
-            int gpInFlight = ge.gpInFlight();
-            long availableGp = s.maxGpInFlight - gpInFlight;
+        if (freeSlots <= 0) {
+            Logs.warn("No free GE slots");
+        }
 
+        while (plannedQty < targetQty && orders.size() < freeSlots) {
             if (availableGp < buyPrice) {
                 Logs.warn("Insufficient GP: need " + buyPrice + " gp, have " + availableGp + " gp available");
 
@@ -120,8 +165,8 @@ public class GEOffers {
             }
 
             // Calculate batch size
-            int affordableQty = (int)(availableGp / buyPrice);
-            int batch = Math.min(targetQty - placedQty, affordableQty);
+            int affordableQty = (int) Math.min(Integer.MAX_VALUE, availableGp / buyPrice);
+            int batch = Math.min(targetQty - plannedQty, affordableQty);
             batch = Math.min(batch, 100); // GE slot limit
 
             if (s.maxGpPerFlip > 0) {
@@ -134,108 +179,123 @@ public class GEOffers {
                 break;
             }
 
-            // Maybe hesitate before confirming
-            if (humanBehavior != null) {
-                humanBehavior.maybeHesitate();
-            }
-
-            // IMPROVED: Retry logic with backoff
-            int maxRetries = 3;
-            int retryCount = 0;
-            BuyOutcome out = BuyOutcome.FAILED;
-
-            while (retryCount < maxRetries) {
-                // Maybe misclick (1% chance)
-                if (humanBehavior != null && humanBehavior.shouldMisclick()) {
-                    humanBehavior.handleMisclick();
-                }
+            orders.add(GEApi.Order.buy(ic.itemName, buyPrice, batch));
+            plannedQty += batch;
+            availableGp -= (long) batch * buyPrice;
+        }
 
-                // Place order
-                out = ge.placeBuy(ic.itemName, buyPrice, batch);
+        // Maybe hesitate before confirming
+        if (humanBehavior != null && !orders.isEmpty()) {
+            humanBehavior.maybeHesitate();
+        }
 
-                if (out == BuyOutcome.LIMIT_HIT) {
-                    limits.blockFor4h(ic.itemName);
-                    Logs.warn("4h trade limit hit: " + ic.itemName);
+        if (orders.isEmpty()) {
+            return withPause(Result.fail());
+        }
+        return submitBuys(ic, orders, 1, limits);
+    }
 
-                    if (notify != null) {
-                        long remainingTime = limits.getRemainingBlockTime(ic.itemName);
-                        notify.limitHit(ic, remainingTime);
-                    }
+    /**
+     * Place the buys that failed last time, once the result's retry delay
+     * has passed. The caller keeps the pipeline waiting in between - nothing
+     * here sleeps.
+     */
+    public Result retryBuys(ItemConfig ic, Result previous, LimitRegistry limits) {
+        if (!ge.ensureOpen()) {
+            Logs.warn("Cannot open GE for buy retry");
+            return Result.fail();
+        }
 
-                    ge.close();
-                    return Result.hit4h();
-                }
+        int attempt = previous.attempt + 1;
+        List<GEApi.Order> orders = previous.retry;
+
+        // Maybe adjust price slightly on the last retry (humans do this)
+        if (attempt > 2 && random.nextInt(100) < 30) {
+            int buyPrice = orders.get(0).priceEach;
+            buyPrice += (int)(buyPrice * 0.01); // +1%
+            Logs.info("Adjusting buy price to " + buyPrice + " gp");
+            List<GEApi.Order> repriced = new ArrayList<>();
+            for (GEApi.Order o : orders) repriced.add(o.withPrice(buyPrice));
+            orders = repriced;
+        }
 
-                if (out == BuyOutcome.PLACED) {
-                    placedQty += batch;
+        return submitBuys(ic, orders, attempt, limits);
+    }
 
-                    if (profit != null) {
-                        profit.recordBuy(ic.itemName, batch, buyPrice);
-                    }
+    /**
+     * One placeOrders() call for the buys; failed batches come back in the result
+     */
+    private Result submitBuys(ItemConfig ic, List<GEApi.Order> orders, int attempt, LimitRegistry limits) {
+        // Maybe misclick (1% chance)
+        if (humanBehavior != null && humanBehavior.shouldMisclick()) {
+            humanBehavior.handleMisclick();
+        }
 
-                    if (notify != null) {
-                        notify.info("Buy placed: " + batch + "x " + ic.itemName + " @ " + buyPrice + " gp");
-                    }
+        List<GEApi.Order> failed = new ArrayList<>();
+        int placedQty = 0;
+        boolean limitHit = false;
 
-                    Logs.info("Buy placed: " + batch + "x " + ic.itemName + " @ " + buyPrice + " gp");
+        for (GEApi.OrderResult r : ge.placeOrders(orders)) {
+            if (r.isLimitHit()) {
+                limitHit = true;
+            } else if (r.isPlaced()) {
+                placedQty += r.order.qty;
 
-                    // Anti-pattern delay with variance
-                    sleep(1500, 3000);
-                    break; // Success!
+                if (profit != null) {
+                    profit.recordBuy(ic.itemName, r.order.qty, r.order.priceEach);
+                }
 
-                } else {
-                    // Failed - retry logic
-                    retryCount++;
+                if (notify != null) {
+                    notify.info("Buy placed: " + r.order.qty + "x " + ic.itemName + " @ " + r.order.priceEach + " gp");
+                }
 
-                    if (retryCount < maxRetries) {
-                        Logs.warn("Buy failed (" + out + "), retrying " + retryCount + "/" + maxRetries);
+                Logs.info("Buy placed: " + r.order.qty + "x " + ic.itemName + " @ " + r.order.priceEach + " gp");
+            } else {
+                failed.add(r.order);
+            }
+        }
 
-                        // Human-like retry delay (increases with each retry)
-                        int retryDelay = 1000 * retryCount + random.nextInt(2000);
-                        sleep(retryDelay, retryDelay + 1000);
+        if (limitHit) {
+            limits.blockFor4h(ic); // Also tells the fleet
+            Logs.warn("4h trade limit hit: " + ic.itemName);
 
-                        // Maybe adjust price slightly on retry (humans do this)
-                        if (retryCount > 1 && random.nextInt(100) < 30) {
-                            int adjustment = (int)(buyPrice * 0.01); // +1%
-                            buyPrice += adjustment;
-                            Logs.info("Adjusting buy price to " + buyPrice + " gp");
-                        }
-                    } else {
-                        Logs.warn("Buy failed after " + maxRetries + " attempts: " + out);
-                    }
-                }
+            if (notify != null) {
+                long remainingTime = limits.getRemainingBlockTime(ic);
+                notify.limitHit(ic, remainingTime);
             }
 
-            // If all retries failed, break
-            if (out != BuyOutcome.PLACED) {
-                break;
-            }
+            return withPause(Result.hit4h(placedQty));
         }
 
-        ge.close();
-
+        if (!failed.isEmpty()) {
+            if (attempt < MAX_ATTEMPTS) {
+                Logs.warn("Buy failed for " + failed.size() + " batch(es), retrying " + attempt + "/" + MAX_ATTEMPTS);
+            } else {
+                Logs.warn("Buy failed after " + MAX_ATTEMPTS + " attempts: " + failed.size() + " batch(es)");
+            }
+        }
         if (placedQty > 0) {
-            Logs.info("Total buys placed: " + placedQty + "x " + ic.itemName);
-            return Result.ok();
+            Logs.info("Buys placed this attempt: " + placedQty + "x " + ic.itemName);
         }
 
-        return Result.fail();
+        return withPause(placed(placedQty, failed, attempt));
     }
 
     /**
      * IMPROVED: Sell with retry logic
+     * Like placeBuys, one GE session and the GE is left open. Failed batches
+     * come back in the result for retrySells().
      */
-    public void listSells(ItemConfig ic, PriceModel pricing, Settings s) {
+    public Result listSells(ItemConfig ic, PriceModel pricing, Settings s) {
         if (!ge.ensureOpen()) {
             Logs.warn("Cannot open GE for sells");
-            return;
+            return Result.fail();
         }
 
         int invQty = ge.inventoryCount(ic.itemName);
         if (invQty <= 0) {
             Logs.info("No items to sell: " + ic.itemName);
-            ge.close();
-            return;
+            return Result.fail();
         }
 
         int sellPrice = ic.getSellPrice();
@@ -245,70 +305,86 @@ public class GEOffers {
             sellPrice = humanBehavior.maybeWrongPrice(sellPrice, "sell");
         }
 
-        int totalSold = 0;
+        // One batch of up to 100 per free slot, all placed in one GE session
+        List<GEApi.Order> orders = new ArrayList<>();
         int remaining = invQty;
-
-        while (remaining > 0 && ge.freeSlots() > 0) {
+        int freeSlots = ge.freeSlots();
+        while (remaining > 0 && orders.size() < freeSlots) {
             int batch = Math.min(remaining, 100);
+            orders.add(GEApi.Order.sell(ic.itemName, sellPrice, batch));
+            remaining -= batch;
+        }
 
-            // Maybe hesitate
-            if (humanBehavior != null) {
-                humanBehavior.maybeHesitate();
-            }
+        // Maybe hesitate
+        if (humanBehavior != null && !orders.isEmpty()) {
+            humanBehavior.maybeHesitate();
+        }
 
-            // Retry logic
-            int maxRetries = 3;
-            int retryCount = 0;
-            GEApi.SellOutcome out = GEApi.SellOutcome.FAILED;
+        if (orders.isEmpty()) {
+            return withPause(Result.fail());
+        }
+        return submitSells(ic, orders, 1);
+    }
 
-            while (retryCount < maxRetries) {
-                out = ge.placeSell(ic.itemName, sellPrice, batch);
+    /**
+     * Place the sells that failed last time, once the retry delay has passed
+     */
+    public Result retrySells(ItemConfig ic, Result previous) {
+        if (!ge.ensureOpen()) {
+            Logs.warn("Cannot open GE for sell retry");
+            return Result.fail();
+        }
 
-                if (out == GEApi.SellOutcome.PLACED) {
-                    remaining -= batch;
-                    totalSold += batch;
+        int attempt = previous.attempt + 1;
+        List<GEApi.Order> orders = previous.retry;
+
+        // Adjust price on the last retry
+        if (attempt > 2 && random.nextInt(100) < 30) {
+            int sellPrice = orders.get(0).priceEach;
+            sellPrice -= (int)(sellPrice * 0.01); // -1% (undercut)
+            Logs.info("Adjusting sell price to " + sellPrice + " gp");
+            List<GEApi.Order> repriced = new ArrayList<>();
+            for (GEApi.Order o : orders) repriced.add(o.withPrice(sellPrice));
+            orders = repriced;
+        }
 
-                    if (profit != null) {
-                        profit.recordSell(ic.itemName, batch, sellPrice);
-                    }
+        return submitSells(ic, orders, attempt);
+    }
 
-                    if (notify != null) {
-                        notify.info("Sell placed: " + batch + "x " + ic.itemName + " @ " + sellPrice + " gp");
-                    }
+    private Result submitSells(ItemConfig ic, List<GEApi.Order> orders, int attempt) {
+        List<GEApi.Order> failed = new ArrayList<>();
+        int totalSold = 0;
 
-                    Logs.info("Sell placed: " + batch + "x " + ic.itemName + " @ " + sellPrice + " gp");
-                    sleep(1500, 3000);
-                    break;
-
-                } else {
-                    retryCount++;
-
-                    if (retryCount < maxRetries) {
-                        Logs.warn("Sell failed, retrying " + retryCount + "/" + maxRetries);
-                        int retryDelay = 1000 * retryCount + random.nextInt(2000);
-                        sleep(retryDelay, retryDelay + 1000);
-
-                        // Adjust price on retry
-                        if (retryCount > 1 && random.nextInt(100) < 30) {
-                            sellPrice -= (int)(sellPrice * 0.01); // -1% (undercut)
-                            Logs.info("Adjusting sell price to " + sellPrice + " gp");
-                        }
-                    } else {
-                        Logs.warn("Sell failed after " + maxRetries + " attempts");
-                    }
+        for (GEApi.OrderResult r : ge.placeOrders(orders)) {
+            if (r.isPlaced()) {
+                totalSold += r.order.qty;
+
+                if (profit != null) {
+                    profit.recordSell(ic.itemName, r.order.qty, r.order.priceEach);
                 }
-            }
 
-            if (out != GEApi.SellOutcome.PLACED) {
-                break;
+                if (notify != null) {
+                    notify.info("Sell placed: " + r.order.qty + "x " + ic.itemName + " @ " + r.order.priceEach + " gp");
+                }
+
+                Logs.info("Sell placed: " + r.order.qty + "x " + ic.itemName + " @ " + r.order.priceEach + " gp");
+            } else {
+                failed.add(r.order);
             }
         }
 
-        ge.close();
-
+        if (!failed.isEmpty()) {
+            if (attempt < MAX_ATTEMPTS) {
+                Logs.warn("Sell failed for " + failed.size() + " batch(es), retrying " + attempt + "/" + MAX_ATTEMPTS);
+            } else {
+                Logs.warn("Sell failed after " + MAX_ATTEMPTS + " attempts");
+            }
+        }
         if (totalSold > 0) {
-            Logs.info("Total sells placed: " + totalSold + "x " + ic.itemName);
+            Logs.info("Sells placed this attempt: " + totalSold + "x " + ic.itemName);
         }
+
+        return withPause(placed(totalSold, failed, attempt));
     }
 
     // === Helpers ===
@@ -316,29 +392,68 @@ public class GEOffers {
         return Math.max(1, Math.min(max, 1000));
     }
 
-    private void sleep(int min, int max) {
-        try {
-            Thread.sleep(min + random.nextInt(max - min));
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+    /**
+     * Result of one attempt; failed orders are kept for a retry if any are left
+     */
+    private Result placed(int qty, List<GEApi.Order> failed, int attempt) {
+        if (failed.isEmpty() || attempt >= MAX_ATTEMPTS) {
+            return new Result(false, qty, Collections.<GEApi.Order>emptyList(), attempt, 0);
         }
+        // Human-like retry delay (increases with each retry)
+        int retryDelay = 1000 * attempt + random.nextInt(2000) + random.nextInt(1000);
+        return new Result(false, qty, failed, attempt, retryDelay);
     }
 
-    // Result class unchanged...
+    /**
+     * Hand the human pauses taken while placing to the caller, who waits them out
+     */
+    private Result withPause(Result r) {
+        if (humanBehavior != null) {
+            r.pauseMs = humanBehavior.takePause();
+        }
+        return r;
+    }
+
+    // gp still tied up in this item's unfilled buy offers
+    private long gpInBuys(String itemName) {
+        long gp = 0;
+        for (GESnapshot.Slot slot : ge.snapshot().slotsFor(itemName)) {
+            if (slot.buy && !slot.ready) gp += (long) slot.price * slot.remaining();
+        }
+        return gp;
+    }
+
+    /**
+     * Outcome of one placing attempt. retryOrders() are batches that failed
+     * and may go again after retryDelayMs(); pauseMs() is human time spent
+     * (hesitating, correcting a typo) that the caller should wait out.
+     */
     public static class Result {
-        private final boolean ok;
         private final boolean hit4h;
+        private final int qty;
+        private final List<GEApi.Order> retry;
+        private final int attempt;
+        private final int retryDelayMs;
+        private int pauseMs;
 
-        private Result(boolean ok, boolean hit4h) {
-            this.ok = ok;
+        private Result(boolean hit4h, int qty, List<GEApi.Order> retry, int attempt, int retryDelayMs) {
             this.hit4h = hit4h;
+            this.qty = qty;
+            this.retry = retry;
+            this.attempt = attempt;
+            this.retryDelayMs = retryDelayMs;
         }
 
-        public boolean isOk() { return ok; }
+        public boolean isOk() { return qty > 0; }
         public boolean hit4hLimit() { return hit4h; }
-
-        public static Result ok() { return new Result(true, false); }
-        public static Result fail() { return new Result(false, false); }
-        public static Result hit4h() { return new Result(false, true); }
+        public int getQty() { return qty; } // Items placed this attempt
+        public boolean hasRetry() { return !retry.isEmpty(); }
+        public List<GEApi.Order> retryOrders() { return retry; }
+        public int retryDelayMs() { return retryDelayMs; }
+        public int pauseMs() { return pauseMs; }
+
+        public static Result fail() { return new Result(false, 0, Collections.<GEApi.Order>emptyList(), 0, 0); }
+        public static Result hit4h() { return hit4h(0); }
+        static Result hit4h(int qty) { return new Result(true, qty, Collections.<GEApi.Order>emptyList(), 0, 0); }
     }
-}
\ No newline at end of file
+}
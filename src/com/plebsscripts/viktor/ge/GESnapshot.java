@@ -0,0 +1,116 @@
+package com.plebsscripts.viktor.ge;
+
+import java.util.*;
+
+/**
+ * Immutable view of the 8 GE offer slots and the inventory at one moment.
+ *
+ * GEApiDreamBotAdapter captures one per tick (two client calls: the slots
+ * and the inventory) and answers every read - free slots, gp in flight,
+ * "are my offers done", inventory counts - from it, so the state machine
+ * sees one consistent picture instead of re-scanning the client for each
+ * question. Anything that changes the GE (placing, collecting, cancelling)
+ * drops the snapshot so the next read captures a fresh one.
+ */
+public final class GESnapshot {
+    public static final int SLOTS = 8;
+
+    public static final class Slot {
+        public final int index;
+        public final String itemName;
+        public final boolean buy;       // false = sell offer
+        public final int price;         // Each
+        public final int filled;        // Items transferred so far
+        public final int total;
+        public final boolean ready;     // Something to collect
+
+        public Slot(int index, String itemName, boolean buy, int price, int filled, int total, boolean ready) {
+            this.index = index;
+            this.itemName = itemName;
+            this.buy = buy;
+            this.price = price;
+            this.filled = filled;
+            this.total = total;
+            this.ready = ready;
+        }
+
+        public int remaining() {
+            return Math.max(0, total - filled);
+        }
+    }
+
+    private final Slot[] slots;                   // By slot index, null = empty
+    private final Map<String, Integer> inventory; // Item name -> count
+    private final boolean complete;
+    private final long capturedAt;
+
+    /**
+     * @param complete false if the client couldn't be read; callers fall
+     *                 back to their own bookkeeping for slot counts then
+     */
+    public GESnapshot(Slot[] slots, Map<String, Integer> inventory, boolean complete, long capturedAt) {
+        this.slots = Arrays.copyOf(slots, SLOTS);
+        this.inventory = Collections.unmodifiableMap(new HashMap<>(inventory));
+        this.complete = complete;
+        this.capturedAt = capturedAt;
+    }
+
+    public static GESnapshot failed() {
+        return new GESnapshot(new Slot[SLOTS], Collections.<String, Integer>emptyMap(), false, System.currentTimeMillis());
+    }
+
+    public boolean isComplete() { return complete; }
+    public long getCapturedAt() { return capturedAt; }
+
+    public Slot slot(int index) {
+        return slots[index];
+    }
+
+    public int freeSlots() {
+        int free = 0;
+        for (Slot s : slots) {
+            if (s == null) free++;
+        }
+        return free;
+    }
+
+    /**
+     * @return gp still tied up in unfilled buy offers
+     */
+    public long gpInFlight() {
+        long sum = 0;
+        for (Slot s : slots) {
+            if (s != null && s.buy) {
+                sum += (long) s.price * s.remaining();
+            }
+        }
+        return sum;
+    }
+
+    public List<Slot> slotsFor(String itemName) {
+        List<Slot> result = new ArrayList<>(2);
+        for (Slot s : slots) {
+            if (s != null && s.itemName.equals(itemName)) {
+                result.add(s);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return true if any slot for the item has something to collect
+     */
+    public boolean anyReady(String itemName) {
+        for (Slot s : slots) {
+            if (s != null && s.ready && s.itemName.equals(itemName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int inventoryCount(String itemName) {
+        Integer n = inventory.get(itemName);
+        return n != null ? n : 0;
+    }
+}
@@ -2,8 +2,10 @@ package com.plebsscripts.viktor.ge;
 
 import com.plebsscripts.viktor.config.ItemConfig;
 import com.plebsscripts.viktor.config.Settings;
+import com.plebsscripts.viktor.coord.ProbeCache;
 import com.plebsscripts.viktor.core.ProfitTracker;
 import com.plebsscripts.viktor.notify.DiscordNotifier;
+import com.plebsscripts.viktor.util.Clock;
 import com.plebsscripts.viktor.util.Logs;
 
 import java.time.Instant;
@@ -11,6 +13,8 @@ import java.util.Random;
 
 /**
  * IMPROVED: Margin probe with account-specific timing and exponential backoff
+ * Reuses fresh fleet probe results when a ProbeCache is set
+ * Resumable: startProbe() returns a Session the caller steps without blocking
  */
 public class MarginProbe {
 
@@ -18,11 +22,14 @@ public class MarginProbe {
     private final GEApi ge;
     private final DiscordNotifier notify;
     private final ProfitTracker profit;
-    private final Random random;
+    private Random random;
     private final Random accountRandom;
+    private ProbeCache probeCache; // Optional - fleet-shared results
+    private Clock clock = Clock.SYSTEM;
 
     // Account-specific timing (consistent per account)
     private final int accountBaseWaitMs;
+    private static final int MAX_CHECKS = 8;
 
     public MarginProbe(Settings settings, GEApi ge, DiscordNotifier notify, ProfitTracker profit) {
         this.settings = settings;
@@ -42,153 +49,244 @@ public class MarginProbe {
         Logs.info("MarginProbe: Account base wait = " + accountBaseWaitMs + "ms");
     }
 
+    public void setProbeCache(ProbeCache probeCache) {
+        this.probeCache = probeCache;
+    }
+
+    public void setClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Jitter on the fill checks; the Backtester passes a seeded one
+     */
+    public void setRandom(Random random) {
+        this.random = random;
+    }
+
     /**
      * IMPROVED: Buy/sell probe with exponential backoff and jitter
+     * The caller steps the Session itself (SlotScheduler does one step per
+     * tick instead of sleeping while the offers fill)
      */
-    public boolean ensureFreshMargin(ItemConfig ic) {
-        Logs.info("Starting margin probe: " + ic.itemName);
+    public Session startProbe(ItemConfig ic) {
+        return new Session(ic);
+    }
 
-        if (!ge.ensureOpen()) {
-            Logs.warn("GE open failed for probe: " + ic.itemName);
-            if (notify != null) notify.probeFail(ic);
-            return false;
+    private enum Step { START, AWAIT_BUY, VERIFY_BUY, AWAIT_SELL, VERIFY_SELL, DONE }
+
+    /**
+     * One probe in progress: buy probeQty at maxBuy, sell at minSell, check
+     * the margin. Each step() does the GE work that's due and returns how
+     * long to wait before the next one.
+     */
+    public final class Session {
+        private final ItemConfig ic;
+        private final int buyPrice;
+        private final int sellPrice;
+        private Step step = Step.START;
+        private int checks;
+        private int waitMs;
+        private int receivedQty;
+        private boolean profitable;
+
+        private Session(ItemConfig ic) {
+            this.ic = ic;
+            this.buyPrice = ic.maxBuy;
+            this.sellPrice = ic.minSell;
         }
 
-        int probeQty = Math.max(1, ic.probeQty);
-        int buyPrice = ic.maxBuy;
-        int sellPrice = ic.minSell;
+        public ItemConfig getItem() { return ic; }
+        public boolean isDone() { return step == Step.DONE; }
+        public boolean isProfitable() { return profitable; }
+
+        /**
+         * @return ms until the next step is due, 0 once done
+         */
+        public int step() {
+            switch (step) {
+                case START:
+                    return start();
+                case AWAIT_BUY:
+                    return awaitOffer("buy", Step.VERIFY_BUY);
+                case VERIFY_BUY:
+                    return verifyBuy();
+                case AWAIT_SELL:
+                    return awaitOffer("sell", Step.VERIFY_SELL);
+                case VERIFY_SELL:
+                    return verifySell();
+                default:
+                    return 0;
+            }
+        }
 
-        Logs.info("Probe buy: " + probeQty + "x " + ic.itemName + " @ " + buyPrice + " gp");
+        private int start() {
+            if (useFleetProbe(ic)) {
+                profitable = ic.hasGoodMargin();
+                step = Step.DONE;
+                return 0;
+            }
 
-        // === BUY PHASE ===
-        GEApi.BuyOutcome buyResult = ge.placeBuy(ic.itemName, buyPrice, probeQty);
+            Logs.info("Starting margin probe: " + ic.itemName);
 
-        if (buyResult != GEApi.BuyOutcome.PLACED) {
-            Logs.warn("Probe buy failed: " + buyResult);
-            ge.close();
-            if (notify != null) notify.probeFail(ic);
-            return false;
-        }
+            if (!ge.ensureOpen()) {
+                return fail("GE open failed for probe: " + ic.itemName);
+            }
 
-        // IMPROVED: Exponential backoff with account-specific timing
-        if (!waitForOfferWithBackoff(ic.itemName, "buy")) {
-            Logs.warn("Probe buy timeout: " + ic.itemName);
-            ge.close();
-            if (notify != null) notify.probeFail(ic);
-            return false;
-        }
+            int probeQty = Math.max(1, ic.probeQty);
+            Logs.info("Probe buy: " + probeQty + "x " + ic.itemName + " @ " + buyPrice + " gp");
 
-        ge.collectAll();
-        sleepWithJitter(800, 1200);
+            // === BUY PHASE ===
+            GEApi.BuyOutcome buyResult = ge.placeBuy(ic.itemName, buyPrice, probeQty);
+            if (buyResult != GEApi.BuyOutcome.PLACED) {
+                return fail("Probe buy failed: " + buyResult);
+            }
 
-        // Verify items received
-        int receivedQty = ge.inventoryCount(ic.itemName);
-        if (receivedQty == 0) {
-            Logs.warn("Probe buy not filled: " + ic.itemName);
-            ge.close();
-            if (notify != null) notify.probeFail(ic);
-            return false;
+            step = Step.AWAIT_BUY;
+            return firstCheck();
         }
 
-        Logs.info("Buy filled: " + receivedQty + "x " + ic.itemName);
-        ic.updateProbe(buyPrice, sellPrice);
+        private int verifyBuy() {
+            // Verify items received
+            receivedQty = ge.inventoryCount(ic.itemName);
+            if (receivedQty == 0) {
+                return fail("Probe buy not filled: " + ic.itemName);
+            }
 
-        // === SELL PHASE ===
-        Logs.info("Probe sell: " + receivedQty + "x " + ic.itemName + " @ " + sellPrice + " gp");
+            Logs.info("Buy filled: " + receivedQty + "x " + ic.itemName);
+            ic.updateProbe(buyPrice, sellPrice, clock.instant());
 
-        GEApi.SellOutcome sellResult = ge.placeSell(ic.itemName, sellPrice, receivedQty);
+            // === SELL PHASE ===
+            Logs.info("Probe sell: " + receivedQty + "x " + ic.itemName + " @ " + sellPrice + " gp");
 
-        if (sellResult != GEApi.SellOutcome.PLACED) {
-            Logs.warn("Probe sell failed: " + sellResult);
-            ge.close();
-            if (notify != null) notify.probeFail(ic);
-            return false;
-        }
+            GEApi.SellOutcome sellResult = ge.placeSell(ic.itemName, sellPrice, receivedQty);
+            if (sellResult != GEApi.SellOutcome.PLACED) {
+                return fail("Probe sell failed: " + sellResult);
+            }
 
-        // IMPROVED: Exponential backoff for sell
-        if (!waitForOfferWithBackoff(ic.itemName, "sell")) {
-            Logs.warn("Probe sell timeout: " + ic.itemName);
-            ge.close();
-            if (notify != null) notify.probeFail(ic);
-            return false;
+            step = Step.AWAIT_SELL;
+            return firstCheck();
         }
 
-        ge.collectAll();
-        sleepWithJitter(800, 1200);
+        private int verifySell() {
+            // Verify sold
+            int remainingQty = ge.inventoryCount(ic.itemName);
+            if (remainingQty > 0) {
+                return fail("Probe sell not filled: " + remainingQty + " remaining");
+            }
+
+            Logs.info("Sell filled: " + receivedQty + "x " + ic.itemName);
+            ic.updateProbe(buyPrice, sellPrice, clock.instant());
 
-        // Verify sold
-        int remainingQty = ge.inventoryCount(ic.itemName);
-        if (remainingQty > 0) {
-            Logs.warn("Probe sell not filled: " + remainingQty + " remaining");
             ge.close();
-            if (notify != null) notify.probeFail(ic);
-            return false;
-        }
+            step = Step.DONE;
+
+            // === VALIDATE MARGIN ===
+            int margin = sellPrice - buyPrice;
 
-        Logs.info("Sell filled: " + receivedQty + "x " + ic.itemName);
-        ic.updateProbe(buyPrice, sellPrice);
+            // Record in profit tracker
+            if (profit != null) {
+                profit.recordBuy(ic.itemName, receivedQty, buyPrice);
+                profit.recordSell(ic.itemName, receivedQty, sellPrice);
+            }
 
-        ge.close();
+            publishProbe(ic.itemName, buyPrice, sellPrice);
 
-        // === VALIDATE MARGIN ===
-        int margin = sellPrice - buyPrice;
-        int totalProfit = margin * receivedQty;
+            profitable = margin >= ic.minMarginGp;
 
-        // Record in profit tracker
-        if (profit != null) {
-            profit.recordBuy(ic.itemName, receivedQty, buyPrice);
-            profit.recordSell(ic.itemName, receivedQty, sellPrice);
+            if (profitable) {
+                Logs.info("✓ Probe OK: " + ic.itemName + " | Margin: " + margin + " gp");
+                if (notify != null) {
+                    notify.probeOk(ic, buyPrice, sellPrice);
+                }
+            } else {
+                Logs.warn("✗ Margin too low: " + ic.itemName + " | " + margin + " < " + ic.minMarginGp + " gp");
+                if (notify != null) {
+                    notify.probeFail(ic);
+                }
+            }
+            return 0;
         }
 
-        boolean profitable = margin >= ic.minMarginGp;
-
-        if (profitable) {
-            Logs.info("✓ Probe OK: " + ic.itemName + " | Margin: " + margin + " gp");
-            if (notify != null) {
-                notify.probeOk(ic, buyPrice, sellPrice);
+        /**
+         * IMPROVED: Wait for offer with exponential backoff and jitter
+         * Humans check more frequently at first, then less often
+         */
+        private int awaitOffer(String type, Step next) {
+            if (ge.offersComplete(ic.itemName)) {
+                Logs.info(type + " completed after " + (checks + 1) + " checks");
+                ge.collectAll();
+                step = next;
+                return jitterBetween(800, 1200);
             }
-        } else {
-            Logs.warn("✗ Margin too low: " + ic.itemName + " | " + margin + " < " + ic.minMarginGp + " gp");
-            if (notify != null) {
-                notify.probeFail(ic);
+
+            checks++;
+            if (checks >= MAX_CHECKS) {
+                Logs.warn(type + " did not complete after " + MAX_CHECKS + " checks");
+                return fail("Probe " + type + " timeout: " + ic.itemName);
             }
-        }
 
-        return profitable;
-    }
+            // Exponential backoff: each check waits 1.5x longer
+            // But cap at 15 seconds max per check
+            waitMs = Math.min(15000, (int) (waitMs * 1.5));
+            return nextCheck(type);
+        }
 
-    /**
-     * IMPROVED: Wait for offer with exponential backoff and jitter
-     * Humans check more frequently at first, then less often
-     */
-    private boolean waitForOfferWithBackoff(String itemName, String type) {
-        int maxChecks = 8;
-        int checkCount = 0;
-        int waitMs = accountBaseWaitMs; // Start with account-specific base
+        private int firstCheck() {
+            checks = 0;
+            waitMs = accountBaseWaitMs; // Start with account-specific base
+            return nextCheck(step == Step.AWAIT_BUY ? "buy" : "sell");
+        }
 
-        while (checkCount < maxChecks) {
+        private int nextCheck(String type) {
             // Add jitter (±25%)
             int jitter = (int) (waitMs * 0.25 * (random.nextDouble() * 2 - 1));
             int actualWait = waitMs + jitter;
+            Logs.debug("Waiting " + actualWait + "ms for " + type + " (check " + (checks + 1) + "/" + MAX_CHECKS + ")");
+            return actualWait;
+        }
 
-            Logs.debug("Waiting " + actualWait + "ms for " + type + " (check " + (checkCount + 1) + "/" + maxChecks + ")");
-            sleepExact(actualWait);
+        private int fail(String reason) {
+            Logs.warn(reason);
+            ge.close();
+            if (notify != null) notify.probeFail(ic);
+            profitable = false;
+            step = Step.DONE;
+            return 0;
+        }
+    }
 
-            // Check if complete
-            if (ge.offersComplete(itemName)) {
-                Logs.info(type + " completed after " + (checkCount + 1) + " checks");
-                return true;
-            }
+    /**
+     * Take another bot's probe if it is fresher than our stale limit.
+     * @return true if ic now holds the fleet result
+     */
+    private boolean useFleetProbe(ItemConfig ic) {
+        if (probeCache == null) return false;
 
-            checkCount++;
+        try {
+            ProbeCache.ProbeResult fleet = probeCache.getProbe(ic.itemName);
+            if (fleet == null || fleet.ageMs() > settings.probeStaleMinutes * 60_000L) {
+                return false;
+            }
 
-            // Exponential backoff: each check waits 1.5x longer
-            // But cap at 15 seconds max per check
-            waitMs = Math.min(15000, (int) (waitMs * 1.5));
+            ic.updateProbe(fleet.buyPrice, fleet.sellPrice, Instant.ofEpochMilli(fleet.probedAt));
+            Logs.info("Using fleet probe from " + fleet.account + ": " + ic.itemName + " | Margin: "
+                    + (fleet.sellPrice - fleet.buyPrice) + " gp (" + (fleet.ageMs() / 60_000) + " min old)");
+            return true;
+        } catch (Exception e) {
+            Logs.warn("Fleet probe lookup failed: " + e.getMessage());
+            return false;
         }
+    }
+
+    private void publishProbe(String itemName, int buyPrice, int sellPrice) {
+        if (probeCache == null) return;
 
-        Logs.warn(type + " did not complete after " + maxChecks + " checks");
-        return false;
+        try {
+            probeCache.publishProbe(itemName, buyPrice, sellPrice);
+        } catch (Exception e) {
+            Logs.warn("Failed to share probe: " + e.getMessage());
+        }
     }
 
     /**
@@ -199,28 +297,16 @@ public class MarginProbe {
             return true;
         }
 
-        long ageSeconds = java.time.Duration.between(ic.lastProbeAt, Instant.now()).getSeconds();
+        long ageSeconds = (clock.now() - ic.lastProbeAt.toEpochMilli()) / 1000;
         long maxAgeSeconds = settings.probeStaleMinutes * 60;
 
         return ageSeconds > maxAgeSeconds;
     }
 
     /**
-     * Sleep with jitter
-     */
-    private void sleepWithJitter(int minMs, int maxMs) {
-        int duration = minMs + random.nextInt(maxMs - minMs);
-        sleepExact(duration);
-    }
-
-    /**
-     * Exact sleep
+     * Random duration in [minMs, maxMs)
      */
-    private void sleepExact(int ms) {
-        try {
-            Thread.sleep(ms);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-        }
+    private int jitterBetween(int minMs, int maxMs) {
+        return minMs + random.nextInt(maxMs - minMs);
     }
 }
\ No newline at end of file
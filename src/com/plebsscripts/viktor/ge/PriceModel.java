@@ -4,8 +4,18 @@ import com.plebsscripts.viktor.config.ItemConfig;
 import com.plebsscripts.viktor.config.Settings;
 
 public class PriceModel {
+    // GE sales tax: 2% per item, none under 50 gp, capped per item
+    public static final double TAX_RATE = 0.02;
+    public static final int TAX_FREE_BELOW = 50;
+    public static final long TAX_CAP = 5_000_000;
+
     public PriceModel() {}
 
+    public static long taxEach(int sellPriceEach) {
+        if (sellPriceEach < TAX_FREE_BELOW) return 0;
+        return Math.min(TAX_CAP, (long) Math.floor(sellPriceEach * TAX_RATE));
+    }
+
     public int buyPrice(ItemConfig ic) {
         return Math.min(ic.maxBuy, ic.estBuy);
     }
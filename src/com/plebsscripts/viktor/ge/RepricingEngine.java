@@ -0,0 +1,233 @@
+package com.plebsscripts.viktor.ge;
+
+import com.plebsscripts.viktor.config.ItemConfig;
+import com.plebsscripts.viktor.config.Settings;
+import com.plebsscripts.viktor.util.Clock;
+import com.plebsscripts.viktor.util.Logs;
+
+import java.util.*;
+
+/**
+ * Looks after offers once their pipeline has moved on, so they don't sit in
+ * a slot for hours at a price the market has left behind.
+ *
+ * An offer is stale when it hasn't filled anything for buyStaleMinutes
+ * (buys) or sellStaleMinutes (sells). Stale buys walk up the price ladder -
+ * 1% a step, at least 1 gp - until maxBuy or the item's sell price less
+ * minMarginGp; a buy already at that ceiling is cancelled. Stale sells walk
+ * down to minSell or cost plus minMarginGp, where cost is the highest price
+ * we repriced a buy to; a sell at that floor is left to fill.
+ *
+ * It also collects finished offers for items no pipeline is working on and
+ * lists whatever they left in the inventory, so late buy fills get sold.
+ * Items being probed are left alone: the probe reads its own offers.
+ *
+ * Staleness is timed from the snapshot (the last time a slot's filled count
+ * moved), not from when the offer was placed, so a slowly filling offer is
+ * left alone and the same rule holds for offers placed before a restart.
+ */
+public class RepricingEngine {
+    private static final double STEP = 0.01;     // Of the offer price, per reprice
+    private static final int MIN_STEP_GP = 1;
+
+    // What a slot held at the last look, and since when it hasn't moved
+    private static final class Seen {
+        final String itemName;
+        final boolean buy;
+        final int price;
+        final int filled;
+        final long since;
+
+        Seen(GESnapshot.Slot slot, long since) {
+            this.itemName = slot.itemName;
+            this.buy = slot.buy;
+            this.price = slot.price;
+            this.filled = slot.filled;
+            this.since = since;
+        }
+
+        boolean same(GESnapshot.Slot slot) {
+            return slot.itemName.equals(itemName) && slot.buy == buy
+                    && slot.price == price && slot.filled == filled;
+        }
+    }
+
+    private final Settings settings;
+    private final GEApi ge;
+    private final GEOffers offers;
+    private final PriceModel price;
+    private Clock clock = Clock.SYSTEM;
+
+    private final Map<String, ItemConfig> watched = new LinkedHashMap<>(); // Lowercase name -> item
+    private final Map<String, Integer> paidUpTo = new HashMap<>();         // Highest repriced buy
+    private final Set<String> atFloor = new HashSet<>();                   // Already said so
+    private final Seen[] seen = new Seen[GESnapshot.SLOTS];
+    private long repriced = 0;
+
+    public RepricingEngine(Settings settings, GEApi ge, GEOffers offers, PriceModel price) {
+        this.settings = settings;
+        this.ge = ge;
+        this.offers = offers;
+        this.price = price;
+    }
+
+    public void setClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Start looking after an item's offers (buys placed or sells listed).
+     * It's dropped again once it has no offers and nothing in the inventory.
+     */
+    public void watch(ItemConfig ic) {
+        watched.put(ic.key(), ic);
+    }
+
+    public boolean isWatching(ItemConfig ic) {
+        return watched.containsKey(ic.key());
+    }
+
+    /**
+     * @return offers repriced since start
+     */
+    public long repriceCount() {
+        return repriced;
+    }
+
+    /**
+     * Do at most one GE action for a watched item.
+     * @param inPipeline keys of items a pipeline is working on - their stale
+     *                   offers are repriced, but the pipeline collects and lists
+     * @param probing    keys of items being probed - left alone
+     * @return true if something was done
+     */
+    public boolean tick(Set<String> inPipeline, Set<String> probing) {
+        if (watched.isEmpty()) return false;
+
+        long now = clock.now();
+        GESnapshot snap = ge.snapshot();
+        if (!snap.isComplete()) return false;
+        refresh(snap, now);
+
+        for (Iterator<ItemConfig> it = watched.values().iterator(); it.hasNext(); ) {
+            ItemConfig ic = it.next();
+            if (probing.contains(ic.key())) continue;
+            boolean unowned = !inPipeline.contains(ic.key());
+            List<GESnapshot.Slot> slots = snap.slotsFor(ic.itemName);
+
+            try {
+                if (unowned && snap.anyReady(ic.itemName)) {
+                    Logs.info("Collecting finished offers: " + ic.itemName);
+                    ge.collectIfReady(ic.itemName);
+                    return true;
+                }
+
+                if (unowned && snap.inventoryCount(ic.itemName) > 0 && snap.freeSlots() > 0) {
+                    Logs.info("Listing leftover " + ic.itemName + " x" + snap.inventoryCount(ic.itemName));
+                    offers.listSells(ic, price, settings);
+                    return true;
+                }
+
+                GESnapshot.Slot buy = stalest(slots, true, settings.buyStaleMinutes, now);
+                if (buy != null) {
+                    repriceBuy(ic, buy);
+                    return true;
+                }
+
+                GESnapshot.Slot sell = stalest(slots, false, settings.sellStaleMinutes, now);
+                if (sell != null && undercutSell(ic, sell)) {
+                    return true;
+                }
+
+                if (unowned && slots.isEmpty() && snap.inventoryCount(ic.itemName) <= 0) {
+                    it.remove(); // Done with it
+                    paidUpTo.remove(ic.key());
+                    atFloor.remove(ic.key());
+                }
+            } catch (Exception e) {
+                Logs.warn("Repricing " + ic.itemName + " failed: " + e.getMessage());
+                return true; // Counts as this tick's action
+            }
+        }
+        return false;
+    }
+
+    // ===== Price ladder =====
+
+    private void repriceBuy(ItemConfig ic, GESnapshot.Slot slot) {
+        int ceiling = Math.min(ic.maxBuy, ic.getSellPrice() - ic.minMarginGp);
+        if (slot.price >= ceiling) {
+            Logs.info("Stale buy already at " + slot.price + " gp (ceiling " + ceiling + ") - cancelling " + ic.itemName);
+            ge.cancelBuys(ic.itemName);
+            return;
+        }
+
+        int next = Math.min(ceiling, slot.price + step(slot.price));
+        if (ge.repriceBuys(ic.itemName, next)) {
+            paidUpTo.merge(ic.key(), next, Math::max);
+            repriced++;
+            Logs.info("Repriced stale buy: " + ic.itemName + " " + slot.price + " → " + next + " gp");
+        } else {
+            Logs.warn("Buy reprice failed: " + ic.itemName + " (offers cancelled, leftovers will be sold)");
+        }
+    }
+
+    /**
+     * @return false if the sell is already at its floor (nothing done)
+     */
+    private boolean undercutSell(ItemConfig ic, GESnapshot.Slot slot) {
+        int cost = Math.max(ic.getBuyPrice(), paidUpTo.getOrDefault(ic.key(), 0));
+        int floor = Math.max(ic.minSell, cost + ic.minMarginGp);
+        if (slot.price <= floor) {
+            if (atFloor.add(ic.key())) {
+                Logs.info("Stale sell at its floor (" + floor + " gp) - holding " + ic.itemName);
+            }
+            return false;
+        }
+
+        int next = Math.max(floor, slot.price - step(slot.price));
+        ge.undercutSells(ic.itemName, next);
+        repriced++;
+        Logs.info("Repriced stale sell: " + ic.itemName + " " + slot.price + " → " + next + " gp");
+        return true;
+    }
+
+    private static int step(int priceEach) {
+        return Math.max(MIN_STEP_GP, (int) Math.round(priceEach * STEP));
+    }
+
+    // ===== Staleness =====
+
+    /**
+     * Note when each slot last changed (new offer or more filled).
+     */
+    private void refresh(GESnapshot snap, long now) {
+        for (int i = 0; i < GESnapshot.SLOTS; i++) {
+            GESnapshot.Slot slot = snap.slot(i);
+            if (slot == null) {
+                seen[i] = null;
+            } else if (seen[i] == null || !seen[i].same(slot)) {
+                seen[i] = new Seen(slot, now);
+            }
+        }
+    }
+
+    /**
+     * @return the side's unfinished slot that has been still the longest,
+     * if longer than staleMinutes
+     */
+    private GESnapshot.Slot stalest(List<GESnapshot.Slot> slots, boolean buy, int staleMinutes, long now) {
+        long threshold = Math.max(1, staleMinutes) * 60_000L;
+        GESnapshot.Slot stalest = null;
+        long oldest = Long.MAX_VALUE;
+        for (GESnapshot.Slot slot : slots) {
+            if (slot.buy != buy || slot.ready || seen[slot.index] == null) continue;
+            long since = seen[slot.index].since;
+            if (now - since >= threshold && since < oldest) {
+                stalest = slot;
+                oldest = since;
+            }
+        }
+        return stalest;
+    }
+}
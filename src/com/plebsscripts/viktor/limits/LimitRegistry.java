@@ -0,0 +1,341 @@
+package com.plebsscripts.viktor.limits;
+
+import com.plebsscripts.viktor.config.ItemConfig;
+import com.plebsscripts.viktor.coord.JsonCoordinator;
+import com.plebsscripts.viktor.util.Clock;
+import com.plebsscripts.viktor.util.Logs;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One place to ask "can I trade this item?".
+ *
+ * Two tiers in a single map keyed by lowercase item name:
+ *   L1 - our own 4h limits (set by blockFor4h, persisted by LimitStore)
+ *   L2 - other bots' limits from the JsonCoordinator, i.e. takeover chances
+ * status() answers both with one map lookup; ItemConfig caches its
+ * lowercase key so the hot path doesn't re-lowercase either.
+ *
+ * L2 is a read-through cache: lookups never touch the coordination file.
+ * It is refreshed when the coordinator pushes a change and by a background
+ * thread (every few seconds without push, as a safety net with it).
+ *
+ * A single expiry index (min-heap of expiry times for both tiers) lets a
+ * lookup check one timestamp to know nothing has expired; when something
+ * has, the expired tier is dropped from its entry.
+ *
+ * Thread-safe: lookups come from the script thread, L2 updates from the
+ * watcher/refresh threads.
+ *
+ * Expiry is judged against the Clock, so under a VirtualClock own blocks
+ * run out in simulated time.
+ */
+public class LimitRegistry {
+    public enum Status {
+        FREE,       // Tradeable, nobody hit the limit
+        BLOCKED,    // We hit the limit - can't buy
+        TAKEOVER    // Another bot hit it - we can, and should
+    }
+
+    private static final long LIMIT_DURATION_MS = 4L * 60 * 60 * 1000;
+    private static final long REFRESH_INTERVAL_MS = 5_000;        // Without push
+    private static final long PUSH_SAFETY_REFRESH_MS = 60_000;    // With push
+
+    private static final class Entry {
+        final String item;          // Display name
+        final long ownUntil;        // Epoch millis, 0 = no own limit
+        final String fleetAccount;  // null = no fleet limit
+        final long fleetUntil;
+
+        Entry(String item, long ownUntil, String fleetAccount, long fleetUntil) {
+            this.item = item;
+            this.ownUntil = ownUntil;
+            this.fleetAccount = fleetAccount;
+            this.fleetUntil = fleetUntil;
+        }
+
+        /** @return this entry without the tiers expired at now, or null if nothing is left */
+        Entry expire(long now) {
+            boolean own = ownUntil > now;
+            boolean fleet = fleetAccount != null && fleetUntil > now;
+            if (own && fleet) return this;
+            if (!own && !fleet) return null;
+            return own ? new Entry(item, ownUntil, null, 0) : new Entry(item, 0, fleetAccount, fleetUntil);
+        }
+    }
+
+    private static final class Expiry {
+        final long at;
+        final String key;
+
+        Expiry(long at, String key) {
+            this.at = at;
+            this.key = key;
+        }
+    }
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final PriorityQueue<Expiry> expiryIndex = new PriorityQueue<>((a, b) -> Long.compare(a.at, b.at));
+    private volatile long nextExpiryAt = Long.MAX_VALUE;
+
+    private volatile JsonCoordinator fleet;
+    private volatile long lastFleetRefresh = 0;
+    private ScheduledExecutorService refresher;
+    private final Clock clock;
+
+    public LimitRegistry() {
+        this(Clock.SYSTEM);
+    }
+
+    public LimitRegistry(Clock clock) {
+        this.clock = clock;
+    }
+
+    // ===== Lookups =====
+
+    public Status status(ItemConfig ic) {
+        return status(ic.key(), clock.now());
+    }
+
+    public Status status(String itemName) {
+        return status(itemName.toLowerCase(), clock.now());
+    }
+
+    private Status status(String key, long now) {
+        if (now >= nextExpiryAt) {
+            purgeExpired(now);
+        }
+        Entry e = entries.get(key);
+        if (e == null) return Status.FREE;
+        if (e.ownUntil > now) return Status.BLOCKED;
+        if (e.fleetAccount != null && e.fleetUntil > now) return Status.TAKEOVER;
+        return Status.FREE;
+    }
+
+    /**
+     * @return true if WE hit the 4h limit on this item
+     */
+    public boolean isBlocked(ItemConfig ic) {
+        return status(ic) == Status.BLOCKED;
+    }
+
+    public boolean isBlocked(String itemName) {
+        return status(itemName) == Status.BLOCKED;
+    }
+
+    /**
+     * @return seconds until our own limit on the item ends (0 if not blocked)
+     */
+    public long getRemainingBlockTime(ItemConfig ic) {
+        Entry e = entries.get(ic.key());
+        if (e == null) return 0;
+        return Math.max(0, (e.ownUntil - clock.now()) / 1000);
+    }
+
+    /**
+     * @return formatted like "3h 45m", or "Not blocked"
+     */
+    public String getRemainingTimeFormatted(ItemConfig ic) {
+        long seconds = getRemainingBlockTime(ic);
+        if (seconds == 0) {
+            return "Not blocked";
+        }
+
+        long hours = seconds / 3600;
+        long minutes = (seconds % 3600) / 60;
+        return hours > 0 ? hours + "h " + minutes + "m" : minutes + "m";
+    }
+
+    /**
+     * @return number of items we're blocked on ourselves
+     */
+    public int getBlockedCount() {
+        long now = clock.now();
+        int count = 0;
+        for (Entry e : entries.values()) {
+            if (e.ownUntil > now) count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return other bots' active limits: lowercase item -> account
+     */
+    public Map<String, String> getFleetBlocked() {
+        long now = clock.now();
+        Map<String, String> result = new HashMap<>();
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            Entry entry = e.getValue();
+            if (entry.fleetAccount != null && entry.fleetUntil > now) {
+                result.put(e.getKey(), entry.fleetAccount);
+            }
+        }
+        return result;
+    }
+
+    // ===== L1: own limits =====
+
+    /**
+     * Record that we hit the 4h limit, and tell the fleet if attached.
+     * @return epoch seconds when the block ends
+     */
+    public long blockFor4h(ItemConfig ic) {
+        long until = clock.now() + LIMIT_DURATION_MS;
+        setOwn(ic.itemName, ic.key(), until);
+
+        JsonCoordinator coord = fleet;
+        if (coord != null) {
+            coord.reportLimit(ic.itemName);
+        }
+        return until / 1000;
+    }
+
+    /**
+     * Restore a saved block (LimitStore)
+     * @param untilEpoch epoch seconds
+     */
+    public void restore(String itemName, long untilEpoch) {
+        long until = untilEpoch * 1000;
+        if (until > clock.now()) {
+            setOwn(itemName, itemName.toLowerCase(), until);
+        }
+    }
+
+    /**
+     * @return own active blocks for saving: lowercase item -> epoch seconds
+     */
+    public Map<String, Long> snapshot() {
+        long now = clock.now();
+        Map<String, Long> result = new HashMap<>();
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            if (e.getValue().ownUntil > now) {
+                result.put(e.getKey(), e.getValue().ownUntil / 1000);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Manually unblock an item (for testing/debugging)
+     */
+    public void unblock(ItemConfig ic) {
+        entries.computeIfPresent(ic.key(), (k, e) -> e.fleetAccount != null
+                ? new Entry(e.item, 0, e.fleetAccount, e.fleetUntil) : null);
+    }
+
+    private void setOwn(String item, String key, long until) {
+        entries.compute(key, (k, e) -> e == null
+                ? new Entry(item, until, null, 0)
+                : new Entry(e.item, until, e.fleetAccount, e.fleetUntil));
+        index(until, key);
+    }
+
+    // ===== L2: fleet limits =====
+
+    /**
+     * Start mirroring other bots' limits from the coordinator, and report our
+     * own limits to it from now on.
+     */
+    public synchronized void attachFleet(JsonCoordinator coordinator) {
+        if (coordinator == null || fleet != null) return;
+        fleet = coordinator;
+
+        coordinator.addListener(blockedByOthers -> refreshFleet()); // Push: watcher thread
+        refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "LimitRegistry-refresh");
+            t.setDaemon(true);
+            return t;
+        });
+        refresher.scheduleWithFixedDelay(() -> {
+            long age = clock.now() - lastFleetRefresh;
+            if (age >= (coordinator.isPushActive() ? PUSH_SAFETY_REFRESH_MS : REFRESH_INTERVAL_MS)) {
+                refreshFleet();
+            }
+        }, REFRESH_INTERVAL_MS, REFRESH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Replace L2 with the coordinator's current view. Safe from any thread.
+     */
+    public void refreshFleet() {
+        JsonCoordinator coord = fleet;
+        if (coord == null) return;
+
+        Map<String, JsonCoordinator.FleetLimit> latest = new HashMap<>();
+        try {
+            for (JsonCoordinator.FleetLimit l : coord.getLimitsOfOtherBots()) {
+                latest.put(l.item.toLowerCase(), l);
+            }
+        } catch (Exception e) {
+            Logs.warn("LimitRegistry: fleet refresh failed: " + e.getMessage());
+            return;
+        }
+
+        synchronized (this) { // One refresh at a time, or an older one could win
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                if (e.getValue().fleetAccount != null && !latest.containsKey(e.getKey())) {
+                    entries.computeIfPresent(e.getKey(), (k, old) -> old.ownUntil > 0
+                            ? new Entry(old.item, old.ownUntil, null, 0) : null);
+                }
+            }
+            for (Map.Entry<String, JsonCoordinator.FleetLimit> e : latest.entrySet()) {
+                JsonCoordinator.FleetLimit l = e.getValue();
+                Entry before = entries.get(e.getKey()); // Fleet fields only change here, under this lock
+                entries.compute(e.getKey(), (k, old) -> old == null
+                        ? new Entry(l.item, 0, l.account, l.expiresAt)
+                        : new Entry(old.item, old.ownUntil, l.account, l.expiresAt));
+                if (before == null || before.fleetUntil != l.expiresAt || !l.account.equals(before.fleetAccount)) {
+                    index(l.expiresAt, e.getKey());
+                }
+            }
+            lastFleetRefresh = clock.now();
+        }
+    }
+
+    public void close() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+    }
+
+    // ===== Expiry index =====
+
+    private void index(long at, String key) {
+        synchronized (expiryIndex) {
+            expiryIndex.add(new Expiry(at, key));
+            if (at < nextExpiryAt) {
+                nextExpiryAt = at;
+            }
+            // Superseded expiries pile up in the heap; rebuild if it gets silly
+            if (expiryIndex.size() > 64 + 4 * entries.size()) {
+                rebuildIndex();
+            }
+        }
+    }
+
+    private void purgeExpired(long now) {
+        synchronized (expiryIndex) {
+            while (!expiryIndex.isEmpty() && expiryIndex.peek().at <= now) {
+                Expiry x = expiryIndex.poll();
+                entries.computeIfPresent(x.key, (k, e) -> e.expire(now));
+            }
+            nextExpiryAt = expiryIndex.isEmpty() ? Long.MAX_VALUE : expiryIndex.peek().at;
+        }
+    }
+
+    /**
+     * Must hold expiryIndex.
+     */
+    private void rebuildIndex() {
+        expiryIndex.clear();
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            if (e.getValue().ownUntil > 0) expiryIndex.add(new Expiry(e.getValue().ownUntil, e.getKey()));
+            if (e.getValue().fleetAccount != null) expiryIndex.add(new Expiry(e.getValue().fleetUntil, e.getKey()));
+        }
+        nextExpiryAt = expiryIndex.isEmpty() ? Long.MAX_VALUE : expiryIndex.peek().at;
+    }
+}
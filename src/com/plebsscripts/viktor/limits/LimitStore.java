@@ -23,14 +23,14 @@ import java.util.Map;
 public class LimitStore {
 
     /**
-     * Load limit tracker from disk for a specific account.
-     * Returns empty tracker if file doesn't exist or fails to load.
+     * Load own limits from disk for a specific account.
+     * Returns an empty registry if file doesn't exist or fails to load.
      *
      * @param dataDir Base data directory (e.g., "data/")
      * @param account Account name (will be sanitized)
-     * @return LimitTracker with restored blocks
+     * @return LimitRegistry with restored blocks
      */
-    public static LimitTracker loadForAccount(File dataDir, String account) {
+    public static LimitRegistry loadForAccount(File dataDir, String account) {
         try {
             // Create limits directory if needed
             File dir = new File(dataDir, "limits");
@@ -39,8 +39,8 @@ public class LimitStore {
             // Get account-specific file
             File f = new File(dir, safe(account) + ".json");
 
-            // Return empty tracker if file doesn't exist
-            LimitTracker lt = new LimitTracker();
+            // Return empty registry if file doesn't exist
+            LimitRegistry lt = new LimitRegistry();
             if (!f.exists()) {
                 Logs.info("No saved limits found for " + account);
                 return lt;
@@ -60,19 +60,19 @@ public class LimitStore {
 
         } catch (Exception e) {
             Logs.warn("LimitStore load failed: " + e.getMessage());
-            return new LimitTracker();
+            return new LimitRegistry();
         }
     }
 
     /**
-     * Save limit tracker to disk for a specific account.
+     * Save own limits to disk for a specific account.
      * Only saves blocks that are still active (in the future).
      *
      * @param dataDir Base data directory (e.g., "data/")
      * @param account Account name (will be sanitized)
-     * @param tracker LimitTracker to save
+     * @param registry LimitRegistry to save (own limits only)
      */
-    public static void saveForAccount(File dataDir, String account, LimitTracker tracker) {
+    public static void saveForAccount(File dataDir, String account, LimitRegistry registry) {
         try {
             // Create limits directory if needed
             File dir = new File(dataDir, "limits");
@@ -82,7 +82,7 @@ public class LimitStore {
             File f = new File(dir, safe(account) + ".json");
 
             // Get snapshot and convert to JSON
-            Map<String, Long> snapshot = tracker.snapshot();
+            Map<String, Long> snapshot = registry.snapshot();
             String json = toJson(snapshot);
 
             // Write to file
@@ -0,0 +1,292 @@
+package com.plebsscripts.viktor.sim;
+
+import com.plebsscripts.viktor.config.CSVConfigLoader;
+import com.plebsscripts.viktor.config.ItemConfig;
+import com.plebsscripts.viktor.config.Settings;
+import com.plebsscripts.viktor.config.SettingsStore;
+import com.plebsscripts.viktor.core.ProfitTracker;
+import com.plebsscripts.viktor.core.StateMachine;
+import com.plebsscripts.viktor.core.Timers;
+import com.plebsscripts.viktor.ge.GEOffers;
+import com.plebsscripts.viktor.ge.MarginProbe;
+import com.plebsscripts.viktor.ge.PriceModel;
+import com.plebsscripts.viktor.limits.LimitRegistry;
+import com.plebsscripts.viktor.util.Logs;
+import com.plebsscripts.viktor.util.VirtualClock;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.*;
+
+/**
+ * Runs the real trading stack - StateMachine, SmartRotation, SlotScheduler,
+ * GEOffers, MarginProbe, LimitRegistry - against a SimulatedGEApi on a
+ * VirtualClock, so a day of trading takes seconds.
+ *
+ * Prices come from a PriceHistory replayed as the clock passes each point,
+ * or without one from a random walk around each item's CSV estimates.
+ * There is no client: the state machine runs without navigation, banking
+ * or anti-ban (it is always at the GE), and no coordinator.
+ *
+ * Use it to compare an items CSV, kellyFraction or probeStaleMinutes before
+ * giving them to the fleet.
+ *
+ * Run: java com.plebsscripts.viktor.sim.Backtester items=data/items.csv [key=value...]
+ *   history=             price history CSV (see PriceHistory); none = random walk
+ *   settings=            data dir with settings.json; none = defaults
+ *   kellyFraction= probeStaleMinutes= maxGpInFlight= offerSlots= rankByFillTime=   overrides
+ *   coins=               starting coins (default maxGpInFlight)
+ *   hours=               simulated hours (default history span, or 24)
+ *   participation=0.1    share of recorded volume our offers can take
+ *   volatility=0.02      random walk, per sqrt(hour), for items without history
+ *   buyLimit=1000        4h limit for items the history gives none for
+ *   seed=1               seeds the market and every RNG in the stack: same seed, same run
+ *   verbose=false        log like the live script does
+ */
+public class Backtester {
+
+    private static final long MIN_STEP_MS = 50;
+
+    private final Settings settings;
+    private final List<ItemConfig> items;
+    private final PriceHistory history;      // null = random walk
+    private long startingCoins;
+    private double hours = 24;
+    private double volatility = 0.02;
+    private int defaultBuyLimit = 1000;
+    private long seed = 1;
+
+    public Backtester(Settings settings, List<ItemConfig> items, PriceHistory history) {
+        this.settings = settings;
+        this.items = items;
+        this.history = history;
+        this.startingCoins = settings.maxGpInFlight;
+        if (history != null && !history.isEmpty() && history.endTime() > history.startTime()) {
+            this.hours = (history.endTime() - history.startTime()) / 3_600_000.0;
+        }
+    }
+
+    public void setStartingCoins(long coins) { this.startingCoins = coins; }
+    public void setHours(double hours) { this.hours = hours; }
+    public void setVolatility(double volatility) { this.volatility = volatility; }
+    public void setDefaultBuyLimit(int buyLimit) { this.defaultBuyLimit = buyLimit; }
+    public void setSeed(long seed) { this.seed = seed; }
+
+    public Report run() {
+        long start = history != null && !history.isEmpty() ? history.startTime() : System.currentTimeMillis();
+        VirtualClock clock = new VirtualClock(start);
+        Map<String, SimMarket> markets = buildMarkets();
+        SimulatedGEApi ge = new SimulatedGEApi(markets.values(), startingCoins, seed, clock);
+        Random seeds = new Random(seed); // Every other RNG in the stack draws its seed from here
+
+        LimitRegistry limits = new LimitRegistry(clock);
+        ProfitTracker profit = new ProfitTracker(clock);
+        Timers timers = new Timers(clock);
+        timers.setRandom(new Random(seeds.nextLong()));
+
+        GEOffers offers = new GEOffers(ge, null);
+        offers.setProfitTracker(profit);
+        offers.setRandom(new Random(seeds.nextLong()));
+
+        MarginProbe probe = new MarginProbe(settings, ge, null, profit);
+        probe.setClock(clock);
+        probe.setRandom(new Random(seeds.nextLong()));
+
+        StateMachine state = new StateMachine(
+                settings, new ArrayList<>(items), limits, ge,
+                null, offers, probe, new PriceModel(), null,
+                null, timers, null, profit, null,
+                null
+        );
+        state.setRandom(seeds);
+
+        long wallStart = System.currentTimeMillis();
+        long end = start + (long) (hours * 3_600_000);
+        long startWorth = ge.netWorth();
+        long deployedGpMs = 0;
+        long peakDeployed = 0;
+
+        state.start();
+        while (clock.now() < end) {
+            if (history != null) {
+                ge.sync(); // Fills up to now happen at the old quotes
+                history.applyUntil(clock.now(), markets);
+            }
+
+            long delay = Math.max(MIN_STEP_MS, state.tick());
+            delay = Math.min(delay, end - clock.now());
+
+            long deployed = ge.capitalDeployed();
+            deployedGpMs += deployed * delay;
+            peakDeployed = Math.max(peakDeployed, deployed);
+            clock.sleep(delay);
+        }
+        state.stop();
+        limits.close();
+
+        Report r = new Report();
+        r.hours = hours;
+        r.wallMs = System.currentTimeMillis() - wallStart;
+        r.startWorth = startWorth;
+        r.endWorth = ge.netWorth();
+        r.capitalUtilisation = startWorth > 0 ? deployedGpMs / (hours * 3_600_000.0) / startWorth : 0;
+        r.peakDeployed = peakDeployed;
+        r.slotUtilisation = state.getSlotScheduler().slotUtilisation();
+        r.itemsTraded = state.getSlotScheduler().completedCount();
+        r.repriced = state.getSlotScheduler().getRepricer().repriceCount();
+        r.limitHits = ge.getLimitHits();
+        r.taxPaid = ge.getTaxPaid();
+        for (Map.Entry<String, SimulatedGEApi.ItemLedger> e : ge.getLedgers().entrySet()) {
+            r.items.add(new ItemResult(e.getKey(), e.getValue(), markets.get(e.getKey().toLowerCase()).bid()));
+        }
+        r.items.sort((a, b) -> Long.compare(b.profit, a.profit));
+        return r;
+    }
+
+    /**
+     * One market per CSV item: seeded from its first recorded point when the
+     * history has one (then moved only by the history), otherwise a random
+     * walk around the CSV estimates.
+     */
+    private Map<String, SimMarket> buildMarkets() {
+        Map<String, PriceHistory.Point> first = history != null
+                ? history.firstPoints() : Collections.<String, PriceHistory.Point>emptyMap();
+        Map<String, Integer> limits = history != null
+                ? history.buyLimits() : Collections.<String, Integer>emptyMap();
+
+        Map<String, SimMarket> markets = new HashMap<>();
+        for (ItemConfig ic : items) {
+            int buyLimit = limits.getOrDefault(ic.key(), defaultBuyLimit);
+            SimMarket m;
+            if (first.containsKey(ic.key())) {
+                m = SimMarket.fromConfig(ic, 0, buyLimit);
+            } else {
+                if (history != null) {
+                    Logs.warn("No history for " + ic.itemName + " - random walk from CSV estimates");
+                }
+                m = SimMarket.fromConfig(ic, volatility, buyLimit);
+            }
+            markets.put(ic.key(), m);
+        }
+        if (history != null) {
+            history.applyUntil(history.startTime(), markets);
+        }
+        return markets;
+    }
+
+    // ===== Results =====
+
+    public static final class ItemResult {
+        public final String itemName;
+        public final long bought;
+        public final long sold;
+        public final long costGp;
+        public final long profit;      // Unsold items at the final bid
+        public final int limitHits;
+
+        ItemResult(String itemName, SimulatedGEApi.ItemLedger l, int bid) {
+            this.itemName = itemName;
+            this.bought = l.bought;
+            this.sold = l.sold;
+            this.costGp = l.boughtGp;
+            this.profit = l.profit(bid);
+            this.limitHits = l.limitHits;
+        }
+
+        public double roi() {
+            return costGp > 0 ? (double) profit / costGp : 0;
+        }
+    }
+
+    public static final class Report {
+        public double hours;
+        public long wallMs;
+        public long startWorth;
+        public long endWorth;
+        public double capitalUtilisation;   // Time-average deployed / starting worth
+        public long peakDeployed;
+        public double slotUtilisation;
+        public long itemsTraded;
+        public long repriced;
+        public long limitHits;
+        public long taxPaid;
+        public final List<ItemResult> items = new ArrayList<>();
+
+        public long profit() {
+            return endWorth - startWorth;
+        }
+
+        public long gpPerHour() {
+            return hours > 0 ? (long) (profit() / hours) : 0;
+        }
+
+        public void print(PrintStream out) {
+            out.printf("Backtest: %.1f h simulated in %.1f s%n", hours, wallMs / 1000.0);
+            out.printf("  Net worth     %,d -> %,d gp (%+,d)%n", startWorth, endWorth, profit());
+            out.printf("  GP/h          %,d%n", gpPerHour());
+            out.printf("  Capital used  %.1f%% avg, %,d gp peak%n", capitalUtilisation * 100, peakDeployed);
+            out.printf("  Slots used    %.1f%%%n", slotUtilisation * 100);
+            out.printf("  Items traded  %d%n", itemsTraded);
+            out.printf("  Repriced      %d offers%n", repriced);
+            out.printf("  Limit hits    %d%n", limitHits);
+            out.printf("  Tax paid      %,d gp%n", taxPaid);
+            out.println();
+            out.printf("  %-28s %10s %10s %14s %8s %6s%n", "Item", "Bought", "Sold", "Profit", "ROI", "Limits");
+            for (ItemResult i : items) {
+                out.printf("  %-28s %,10d %,10d %,14d %7.2f%% %6d%n",
+                        i.itemName, i.bought, i.sold, i.profit, i.roi() * 100, i.limitHits);
+            }
+        }
+    }
+
+    // ===== CLI =====
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opts = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) {
+                System.err.println("Bad argument (expected key=value): " + arg);
+                System.exit(2);
+            }
+            opts.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        if (!opts.containsKey("items")) {
+            System.err.println("Usage: Backtester items=<items.csv> [history=<prices.csv>] [key=value...]");
+            System.exit(2);
+        }
+
+        Logs.setQuiet(!Boolean.parseBoolean(opts.getOrDefault("verbose", "false")));
+
+        Settings settings = opts.containsKey("settings")
+                ? SettingsStore.loadOrDefault(new File(opts.get("settings"))) : new Settings();
+        settings.enableCoordinator = false;
+        settings.fleetScheduler = false;
+        if (opts.containsKey("kellyFraction")) settings.kellyFraction = Double.parseDouble(opts.get("kellyFraction"));
+        if (opts.containsKey("probeStaleMinutes")) settings.probeStaleMinutes = Integer.parseInt(opts.get("probeStaleMinutes"));
+        if (opts.containsKey("maxGpInFlight")) settings.maxGpInFlight = Integer.parseInt(opts.get("maxGpInFlight"));
+        if (opts.containsKey("offerSlots")) settings.offerSlots = Integer.parseInt(opts.get("offerSlots"));
+        if (opts.containsKey("rankByFillTime")) settings.rankByFillTime = Boolean.parseBoolean(opts.get("rankByFillTime"));
+
+        List<ItemConfig> items = CSVConfigLoader.load(opts.get("items"));
+        if (items.isEmpty()) {
+            System.err.println("No items loaded from " + opts.get("items"));
+            System.exit(1);
+        }
+
+        PriceHistory history = null;
+        if (opts.containsKey("history")) {
+            history = PriceHistory.load(opts.get("history"),
+                    Double.parseDouble(opts.getOrDefault("participation", "0.1")));
+        }
+
+        Backtester bt = new Backtester(settings, items, history);
+        if (opts.containsKey("coins")) bt.setStartingCoins(Long.parseLong(opts.get("coins")));
+        if (opts.containsKey("hours")) bt.setHours(Double.parseDouble(opts.get("hours")));
+        if (opts.containsKey("volatility")) bt.setVolatility(Double.parseDouble(opts.get("volatility")));
+        if (opts.containsKey("buyLimit")) bt.setDefaultBuyLimit(Integer.parseInt(opts.get("buyLimit")));
+        if (opts.containsKey("seed")) bt.setSeed(Long.parseLong(opts.get("seed")));
+
+        bt.run().print(System.out);
+    }
+}
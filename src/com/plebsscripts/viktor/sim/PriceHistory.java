@@ -0,0 +1,202 @@
+package com.plebsscripts.viktor.sim;
+
+import com.plebsscripts.viktor.config.CSVConfigLoader;
+import com.plebsscripts.viktor.util.Logs;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Recorded GE prices and volumes, replayed into SimMarkets as time passes.
+ *
+ * Expects header (column order free, names as in the OSRS Wiki timeseries):
+ * timestamp,item_name,avg_high_price,avg_low_price[,high_price_volume,low_price_volume][,buy_limit]
+ *
+ * timestamp is epoch seconds, epoch ms or ISO-8601. avg_low_price is the
+ * instant-sell price (bid), avg_high_price the instant-buy price (ask).
+ * Volume is what traded in the row's interval (the gap to the item's next
+ * row); participation is the share of it our offers can expect to take.
+ * A row missing one price uses the other for both; rows with neither are
+ * skipped.
+ */
+public class PriceHistory {
+
+    public static final class Point {
+        public final long at;           // Epoch ms
+        public final String itemName;
+        public final double bid;
+        public final double ask;
+        public final double volume;     // Traded in the interval, both sides
+        public final int buyLimit;      // 0 = not given
+        double volumePerHour;           // Set once intervals are known
+
+        Point(long at, String itemName, double bid, double ask, double volume, int buyLimit) {
+            this.at = at;
+            this.itemName = itemName;
+            this.bid = bid;
+            this.ask = ask;
+            this.volume = volume;
+            this.buyLimit = buyLimit;
+        }
+    }
+
+    private static final long DEFAULT_INTERVAL_MS = 60 * 60 * 1000;
+
+    private final List<Point> points;   // By time
+    private final double participation;
+    private int cursor = 0;
+
+    private PriceHistory(List<Point> points, double participation) {
+        this.points = points;
+        this.participation = participation;
+    }
+
+    public static PriceHistory load(String path, double participation) throws IOException {
+        List<Point> out = new ArrayList<>();
+        try (BufferedReader br = new BufferedReader(new FileReader(path))) {
+            String header = br.readLine();
+            if (header == null) {
+                throw new IOException("History CSV is empty: " + path);
+            }
+
+            Map<String, Integer> col = new HashMap<>();
+            String[] names = CSVConfigLoader.safeSplit(header);
+            for (int i = 0; i < names.length; i++) {
+                col.put(names[i].trim().toLowerCase(), i);
+            }
+            for (String required : new String[]{"timestamp", "item_name", "avg_high_price", "avg_low_price"}) {
+                if (!col.containsKey(required)) {
+                    throw new IOException("History CSV missing column " + required + ": " + path);
+                }
+            }
+
+            String line;
+            int lineNum = 1;
+            while ((line = br.readLine()) != null) {
+                lineNum++;
+                if (line.trim().isEmpty()) continue;
+
+                String[] p = CSVConfigLoader.safeSplit(line);
+                try {
+                    long at = parseTime(field(p, col, "timestamp"));
+                    String itemName = field(p, col, "item_name").trim();
+                    double ask = number(field(p, col, "avg_high_price"));
+                    double bid = number(field(p, col, "avg_low_price"));
+                    if (itemName.isEmpty() || (ask <= 0 && bid <= 0)) continue;
+                    if (ask <= 0) ask = bid;
+                    if (bid <= 0) bid = ask;
+
+                    double volume = Math.max(0, number(field(p, col, "high_price_volume")))
+                            + Math.max(0, number(field(p, col, "low_price_volume")));
+                    int buyLimit = (int) Math.max(0, number(field(p, col, "buy_limit")));
+                    out.add(new Point(at, itemName, bid, ask, volume, buyLimit));
+                } catch (Exception e) {
+                    Logs.warn("History line " + lineNum + " unreadable, skipping: " + e.getMessage());
+                }
+            }
+        }
+
+        out.sort((a, b) -> Long.compare(a.at, b.at));
+        setRates(out);
+        Logs.info("Loaded " + out.size() + " price points from " + path);
+        return new PriceHistory(out, participation);
+    }
+
+    /**
+     * Volume per hour from each point's interval: the gap to the item's next
+     * point, or for its last point the gap before it.
+     */
+    private static void setRates(List<Point> points) {
+        Map<String, Point> previous = new HashMap<>();
+        Map<String, Long> lastGap = new HashMap<>();
+        for (Point p : points) {
+            String key = p.itemName.toLowerCase();
+            Point prev = previous.put(key, p);
+            if (prev != null && p.at > prev.at) {
+                long gap = p.at - prev.at;
+                prev.volumePerHour = prev.volume * 3_600_000.0 / gap;
+                lastGap.put(key, gap);
+            }
+        }
+        for (Map.Entry<String, Point> e : previous.entrySet()) {
+            long gap = lastGap.getOrDefault(e.getKey(), DEFAULT_INTERVAL_MS);
+            e.getValue().volumePerHour = e.getValue().volume * 3_600_000.0 / gap;
+        }
+    }
+
+    public boolean isEmpty() {
+        return points.isEmpty();
+    }
+
+    public long startTime() {
+        return points.isEmpty() ? 0 : points.get(0).at;
+    }
+
+    public long endTime() {
+        return points.isEmpty() ? 0 : points.get(points.size() - 1).at;
+    }
+
+    /**
+     * @return lowercase item name -> buy limit, for items whose rows give one
+     */
+    public Map<String, Integer> buyLimits() {
+        Map<String, Integer> limits = new HashMap<>();
+        for (Point p : points) {
+            if (p.buyLimit > 0) limits.put(p.itemName.toLowerCase(), p.buyLimit);
+        }
+        return limits;
+    }
+
+    /**
+     * @return the first recorded point per item (lowercase name), to seed markets
+     */
+    public Map<String, Point> firstPoints() {
+        Map<String, Point> first = new HashMap<>();
+        for (Point p : points) {
+            first.putIfAbsent(p.itemName.toLowerCase(), p);
+        }
+        return first;
+    }
+
+    /**
+     * Apply every point up to now to its market.
+     * @param markets lowercase item name -> market; items without one are ignored
+     * @return number of points applied
+     */
+    public int applyUntil(long now, Map<String, SimMarket> markets) {
+        int applied = 0;
+        while (cursor < points.size() && points.get(cursor).at <= now) {
+            Point p = points.get(cursor++);
+            SimMarket m = markets.get(p.itemName.toLowerCase());
+            if (m != null) {
+                m.setQuote(p.bid, p.ask, p.volumePerHour * participation);
+                applied++;
+            }
+        }
+        return applied;
+    }
+
+    // -------- helpers --------
+    private static String field(String[] p, Map<String, Integer> col, String name) {
+        Integer i = col.get(name);
+        return i != null && i < p.length ? p[i] : "";
+    }
+
+    private static double number(String s) {
+        s = s.trim();
+        if (s.isEmpty() || s.equalsIgnoreCase("null")) return 0;
+        return Double.parseDouble(s);
+    }
+
+    private static long parseTime(String s) {
+        s = s.trim();
+        if (s.matches("\\d+")) {
+            long v = Long.parseLong(s);
+            return v < 100_000_000_000L ? v * 1000 : v; // Seconds or ms
+        }
+        return Instant.parse(s).toEpochMilli();
+    }
+}
@@ -0,0 +1,118 @@
+package com.plebsscripts.viktor.sim;
+
+import com.plebsscripts.viktor.config.ItemConfig;
+
+import java.util.Random;
+
+/**
+ * Price and fill model for one item in the SimulatedGEApi.
+ *
+ * The market has an instant-sell price (bid) and an instant-buy price (ask)
+ * around a mid that does a random walk: log(mid) moves with the given
+ * volatility per sqrt(hour). Offers fill at a rate drawn from the item's
+ * traded volume:
+ *   - at or through the touch (buy >= ask, sell <= bid) at the full rate
+ *   - inside the spread at 15-100% of it, the closer to the touch the faster
+ *   - outside the spread rarely, decaying the further away the price is,
+ *     until the market moves to it
+ * Buys fill at no more than the ask and sells at no less than the bid, as
+ * in the real GE where the earlier offer sets the price.
+ */
+public final class SimMarket {
+    private static final double INSIDE_MIN_SHARE = 0.15;
+
+    public final String itemName;
+    public final int buyLimit;             // Per 4h window
+    private double spread;                 // (ask - bid) / mid
+    private final double volatility;       // Std dev of log(mid) per sqrt(hour)
+    private double volumePerHour;          // What our offers can take at the touch
+    private double mid;
+
+    public SimMarket(String itemName, double mid, double spread, double volatility, double volumePerHour,
+                     int buyLimit) {
+        this.itemName = itemName;
+        this.mid = mid;
+        this.spread = Math.max(0, spread);
+        this.volatility = Math.max(0, volatility);
+        this.volumePerHour = Math.max(0, volumePerHour);
+        this.buyLimit = buyLimit;
+    }
+
+    /**
+     * Market from a CSV row: bid = est_buy, ask = est_sell, volume from
+     * liquidity_recent_sum (read as per hour).
+     */
+    public static SimMarket fromConfig(ItemConfig ic, double volatility, int buyLimit) {
+        double bid = Math.max(1, ic.estBuy);
+        double ask = Math.max(bid, ic.estSell);
+        double mid = (bid + ask) / 2;
+        return new SimMarket(ic.itemName, mid, (ask - bid) / mid, volatility, Math.max(1, ic.liquidity), buyLimit);
+    }
+
+    public int bid() {
+        return (int) Math.max(1, Math.round(mid * (1 - spread / 2)));
+    }
+
+    public int ask() {
+        return (int) Math.max(bid(), Math.round(mid * (1 + spread / 2)));
+    }
+
+    public double mid() {
+        return mid;
+    }
+
+    /**
+     * Move the mid by one random-walk step of dtHours
+     */
+    void advance(double dtHours, Random rnd) {
+        if (dtHours <= 0 || volatility == 0) return;
+        double sigma = volatility * Math.sqrt(dtHours);
+        mid = Math.max(1, mid * Math.exp(sigma * rnd.nextGaussian() - sigma * sigma / 2));
+    }
+
+    /**
+     * Set the mid directly (replaying recorded prices)
+     */
+    public void setMid(double mid) {
+        this.mid = Math.max(1, mid);
+    }
+
+    /**
+     * Set the whole quote from a recorded price point (PriceHistory)
+     */
+    public void setQuote(double bid, double ask, double volumePerHour) {
+        bid = Math.max(1, Math.min(bid, ask));
+        ask = Math.max(bid, ask);
+        this.mid = (bid + ask) / 2;
+        this.spread = (ask - bid) / mid;
+        this.volumePerHour = Math.max(0, volumePerHour);
+    }
+
+    /**
+     * @return items per hour an offer at this price can expect to fill
+     */
+    double fillRate(boolean buy, int price) {
+        int bid = bid();
+        int ask = ask();
+        double width = Math.max(1, ask - bid);
+        // How far towards the other side of the book the offer reaches: 0 at our own touch, 1 at theirs
+        double reach = buy ? (price - bid) / width : (ask - price) / width;
+
+        double share;
+        if (reach >= 1) {
+            share = 1;
+        } else if (reach >= 0) {
+            share = INSIDE_MIN_SHARE + (1 - INSIDE_MIN_SHARE) * reach;
+        } else {
+            share = INSIDE_MIN_SHARE * Math.exp(reach * 4);
+        }
+        return volumePerHour * share;
+    }
+
+    /**
+     * @return price each a fill happens at (offer price, or better)
+     */
+    int fillPrice(boolean buy, int price) {
+        return buy ? Math.min(price, ask()) : Math.max(price, bid());
+    }
+}
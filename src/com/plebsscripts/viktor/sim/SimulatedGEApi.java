@@ -0,0 +1,501 @@
+package com.plebsscripts.viktor.sim;
+
+import com.plebsscripts.viktor.ge.GEApi;
+import com.plebsscripts.viktor.ge.GESnapshot;
+import com.plebsscripts.viktor.ge.PriceModel;
+import com.plebsscripts.viktor.util.Clock;
+import com.plebsscripts.viktor.util.Logs;
+
+import java.util.*;
+
+/**
+ * Offline Grand Exchange implementing GEApi, so StateMachine, GEOffers and
+ * MarginProbe can run without a DreamBot client.
+ *
+ * Models what the bot relies on:
+ *   - 8 offer slots; buys reserve their coins when placed, sells their items
+ *   - fills from each item's SimMarket (liquidity and volatility), partial
+ *     fills included, at the offer price or better
+ *   - a ready flag once an offer is complete or cancelled; collecting moves
+ *     items and coins into the inventory
+ *   - per-item 4h buy limits counted on filled items: a buy for an item
+ *     with nothing left in its window returns LIMIT_HIT, and fills stop at
+ *     the limit
+ *   - GE tax on sells: 2% per item, items under 50 gp exempt, capped at
+ *     5M per item
+ *
+ * Time comes from the Clock and the market catches up to it on every
+ * call; with a VirtualClock shared with the bot, a simulated day runs in
+ * as long as the code takes.
+ *
+ * Not thread-safe: one bot drives it from one thread.
+ */
+public class SimulatedGEApi implements GEApi {
+    public static final String COINS = "Coins";
+    private static final long LIMIT_WINDOW_MS = 4L * 60 * 60 * 1000;
+    private static final long MAX_STEP_MS = 60_000;
+
+    private static final class Offer {
+        final String itemName;
+        final boolean buy;
+        final int price;
+        final int total;
+        final long placedAt;
+        int filled;
+        int itemsToCollect;
+        long coinsToCollect;
+        boolean cancelled;
+        double carry; // Fractional fill carried to the next update
+
+        Offer(String itemName, boolean buy, int price, int total, long placedAt) {
+            this.itemName = itemName;
+            this.buy = buy;
+            this.price = price;
+            this.total = total;
+            this.placedAt = placedAt;
+        }
+
+        boolean ready() {
+            return cancelled || filled >= total;
+        }
+    }
+
+    /**
+     * What actually traded for one item: fills at their real prices, sells
+     * net of tax.
+     */
+    public static final class ItemLedger {
+        public long bought;
+        public long boughtGp;
+        public long sold;
+        public long soldGp;
+        public int limitHits;
+
+        /**
+         * @return gp made, counting what's still held at valueEach
+         */
+        public long profit(int valueEach) {
+            return soldGp + (bought - sold) * (long) valueEach - boughtGp;
+        }
+    }
+
+    private static final class LimitWindow {
+        long start;
+        int bought;
+    }
+
+    private final Map<String, SimMarket> markets = new HashMap<>();
+    private final Offer[] slots = new Offer[GESnapshot.SLOTS];
+    private final Map<String, Integer> inventory = new HashMap<>();
+    private final Map<String, LimitWindow> limitWindows = new HashMap<>();
+    private final Map<String, ItemLedger> ledgers = new HashMap<>();
+    private final Random rnd;
+    private long coins;
+    private long lastUpdate;
+    private boolean open;
+    private GESnapshot snapshot;
+    private final Clock clock;
+
+    // Stats
+    private long opens;
+    private long ordersPlaced;
+    private long limitHits;
+    private long taxPaid;
+
+    public SimulatedGEApi(Collection<SimMarket> markets, long startingCoins, long seed) {
+        this(markets, startingCoins, seed, Clock.SYSTEM);
+    }
+
+    public SimulatedGEApi(Collection<SimMarket> markets, long startingCoins, long seed, Clock clock) {
+        this.clock = clock;
+        for (SimMarket m : markets) {
+            this.markets.put(m.itemName, m);
+        }
+        this.coins = startingCoins;
+        this.rnd = new Random(seed);
+        this.lastUpdate = now();
+    }
+
+    private long now() {
+        return clock.now();
+    }
+
+    // ===== Market =====
+
+    /**
+     * Catch the market and all offers up to now
+     */
+    private void update() {
+        long now = now();
+        if (now <= lastUpdate) return;
+
+        // Step at most a minute at a time, so a long gap between calls still
+        // fills along the price path rather than at wherever it ended up
+        while (lastUpdate < now) {
+            long step = Math.min(MAX_STEP_MS, now - lastUpdate);
+            lastUpdate += step;
+            double hours = step / 3_600_000.0;
+
+            for (SimMarket m : markets.values()) {
+                m.advance(hours, rnd);
+            }
+            for (Offer o : slots) {
+                if (o != null && !o.ready()) {
+                    fill(o, hours, lastUpdate);
+                }
+            }
+        }
+        snapshot = null;
+    }
+
+    private void fill(Offer o, double hours, long now) {
+        SimMarket m = markets.get(o.itemName);
+        double expected = m.fillRate(o.buy, o.price) * hours + o.carry;
+        int n = (int) Math.min(o.total - o.filled, Math.floor(expected));
+        o.carry = expected - Math.floor(expected);
+
+        if (o.buy) {
+            n = Math.min(n, limitLeft(o.itemName, now));
+            if (n <= 0) return;
+            window(o.itemName, now).bought += n;
+        }
+        if (n <= 0) return;
+
+        int each = m.fillPrice(o.buy, o.price);
+        ItemLedger ledger = ledger(o.itemName);
+        o.filled += n;
+        if (o.buy) {
+            o.itemsToCollect += n;
+            o.coinsToCollect += (long) (o.price - each) * n; // Paid less than offered
+            ledger.bought += n;
+            ledger.boughtGp += (long) each * n;
+        } else {
+            long tax = taxEach(each);
+            o.coinsToCollect += (each - tax) * n;
+            taxPaid += tax * n;
+            ledger.sold += n;
+            ledger.soldGp += (each - tax) * n;
+        }
+    }
+
+    public static long taxEach(int priceEach) {
+        return PriceModel.taxEach(priceEach);
+    }
+
+    private LimitWindow window(String itemName, long now) {
+        LimitWindow w = limitWindows.get(itemName);
+        if (w == null) {
+            w = new LimitWindow();
+            limitWindows.put(itemName, w);
+        }
+        if (w.bought == 0 || now - w.start >= LIMIT_WINDOW_MS) {
+            w.start = now; // Window starts with the first purchase
+            w.bought = 0;
+        }
+        return w;
+    }
+
+    private int limitLeft(String itemName, long now) {
+        SimMarket m = markets.get(itemName);
+        if (m.buyLimit <= 0) return Integer.MAX_VALUE;
+        LimitWindow w = limitWindows.get(itemName);
+        if (w == null || now - w.start >= LIMIT_WINDOW_MS) return m.buyLimit;
+        return Math.max(0, m.buyLimit - w.bought);
+    }
+
+    // ===== GEApi =====
+
+    @Override
+    public boolean ensureOpen() {
+        if (!open) {
+            open = true;
+            opens++;
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        open = false;
+    }
+
+    @Override
+    public int freeSlots() {
+        return snapshot().freeSlots();
+    }
+
+    @Override
+    public int gpInFlight() {
+        return (int) Math.min(Integer.MAX_VALUE, snapshot().gpInFlight());
+    }
+
+    @Override
+    public BuyOutcome placeBuy(String itemName, int priceEach, int qty) {
+        update();
+        if (qty <= 0 || priceEach <= 0 || !markets.containsKey(itemName)) return BuyOutcome.FAILED;
+
+        int slot = freeSlot();
+        if (slot < 0) return BuyOutcome.FAILED;
+
+        if (limitLeft(itemName, now()) <= 0) {
+            limitHits++;
+            ledger(itemName).limitHits++;
+            Logs.warn("[SIM] 4h limit hit: " + itemName);
+            return BuyOutcome.LIMIT_HIT;
+        }
+
+        long cost = (long) priceEach * qty;
+        if (cost > coins) return BuyOutcome.FAILED;
+
+        coins -= cost;
+        slots[slot] = new Offer(itemName, true, priceEach, qty, now());
+        ordersPlaced++;
+        snapshot = null;
+        return BuyOutcome.PLACED;
+    }
+
+    @Override
+    public SellOutcome placeSell(String itemName, int priceEach, int qtyOrZeroForAll) {
+        update();
+        int have = inventoryCount(itemName);
+        int qty = qtyOrZeroForAll == 0 ? have : qtyOrZeroForAll;
+        if (priceEach <= 0 || qty <= 0 || qty > have || !markets.containsKey(itemName)) return SellOutcome.FAILED;
+
+        int slot = freeSlot();
+        if (slot < 0) return SellOutcome.FAILED;
+
+        take(itemName, qty);
+        slots[slot] = new Offer(itemName, false, priceEach, qty, now());
+        ordersPlaced++;
+        snapshot = null;
+        return SellOutcome.PLACED;
+    }
+
+    @Override
+    public List<OrderResult> placeOrders(List<Order> orders) {
+        ensureOpen();
+        List<OrderResult> results = new ArrayList<>(orders.size());
+        Set<String> limitHit = new HashSet<>();
+        for (Order order : orders) {
+            if (order.buy) {
+                BuyOutcome out = limitHit.contains(order.itemName)
+                        ? BuyOutcome.LIMIT_HIT : placeBuy(order.itemName, order.priceEach, order.qty);
+                if (out == BuyOutcome.LIMIT_HIT) limitHit.add(order.itemName);
+                results.add(new OrderResult(order, out, null));
+            } else {
+                results.add(new OrderResult(order, null, placeSell(order.itemName, order.priceEach, order.qty)));
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public void collectAll() {
+        update();
+        for (int i = 0; i < slots.length; i++) {
+            if (slots[i] != null) collect(i);
+        }
+    }
+
+    @Override
+    public void collectIfReady(String itemName) {
+        update();
+        for (int i = 0; i < slots.length; i++) {
+            Offer o = slots[i];
+            if (o != null && o.ready() && (itemName == null || o.itemName.equals(itemName))) {
+                collect(i);
+            }
+        }
+    }
+
+    @Override
+    public boolean inventoryHas(String itemName) {
+        return inventoryCount(itemName) > 0;
+    }
+
+    @Override
+    public boolean hasStaleBuys(String itemName, int staleMinutes) {
+        return hasStale(itemName, true, staleMinutes);
+    }
+
+    @Override
+    public boolean hasStaleSells(String itemName, int staleMinutes) {
+        return hasStale(itemName, false, staleMinutes);
+    }
+
+    @Override
+    public boolean repriceBuys(String itemName, int newPriceEach) {
+        update();
+        int qty = 0;
+        for (Offer o : slots) {
+            if (o != null && o.buy && !o.ready() && o.itemName.equals(itemName)) qty += o.total - o.filled;
+        }
+        if (qty <= 0) return false;
+
+        cancelBuys(itemName);
+        collectIfReady(itemName);
+        return placeBuy(itemName, newPriceEach, qty) == BuyOutcome.PLACED;
+    }
+
+    @Override
+    public void cancelBuys(String itemName) {
+        cancel(itemName, true);
+    }
+
+    @Override
+    public void undercutSells(String itemName, int newSellPrice) {
+        cancel(itemName, false);
+        collectIfReady(itemName);
+        int qty = inventoryCount(itemName);
+        if (qty > 0) {
+            placeSell(itemName, newSellPrice, qty);
+        }
+    }
+
+    @Override
+    public boolean offersComplete(String itemName) {
+        return snapshot().anyReady(itemName);
+    }
+
+    @Override
+    public int inventoryCount(String itemName) {
+        return snapshot().inventoryCount(itemName);
+    }
+
+    @Override
+    public GESnapshot snapshot() {
+        update();
+        if (snapshot == null) {
+            GESnapshot.Slot[] view = new GESnapshot.Slot[GESnapshot.SLOTS];
+            for (int i = 0; i < slots.length; i++) {
+                Offer o = slots[i];
+                if (o != null) {
+                    view[i] = new GESnapshot.Slot(i, o.itemName, o.buy, o.price, o.filled, o.total, o.ready());
+                }
+            }
+            Map<String, Integer> inv = new HashMap<>(inventory);
+            inv.put(COINS, (int) Math.min(Integer.MAX_VALUE, coins));
+            snapshot = new GESnapshot(view, inv, true, now());
+        }
+        return snapshot;
+    }
+
+    @Override
+    public void invalidateSnapshot() {
+        snapshot = null;
+    }
+
+    // ===== Helpers =====
+
+    private ItemLedger ledger(String itemName) {
+        ItemLedger l = ledgers.get(itemName);
+        if (l == null) {
+            l = new ItemLedger();
+            ledgers.put(itemName, l);
+        }
+        return l;
+    }
+
+    private int freeSlot() {
+        for (int i = 0; i < slots.length; i++) {
+            if (slots[i] == null) return i;
+        }
+        return -1;
+    }
+
+    private void collect(int slot) {
+        Offer o = slots[slot];
+        if (o.itemsToCollect > 0) {
+            inventory.merge(o.itemName, o.itemsToCollect, Integer::sum);
+            o.itemsToCollect = 0;
+        }
+        coins += o.coinsToCollect;
+        o.coinsToCollect = 0;
+        if (o.ready()) {
+            slots[slot] = null;
+        }
+        snapshot = null;
+    }
+
+    private void cancel(String itemName, boolean buys) {
+        update();
+        for (Offer o : slots) {
+            if (o == null || o.ready() || o.buy != buys || !o.itemName.equals(itemName)) continue;
+            int left = o.total - o.filled;
+            if (o.buy) {
+                o.coinsToCollect += (long) o.price * left;
+            } else {
+                o.itemsToCollect += left;
+            }
+            o.cancelled = true;
+        }
+        snapshot = null;
+    }
+
+    private boolean hasStale(String itemName, boolean buy, int staleMinutes) {
+        update();
+        long threshold = Math.max(1, staleMinutes) * 60_000L;
+        for (Offer o : slots) {
+            if (o != null && o.buy == buy && !o.ready() && o.itemName.equals(itemName)
+                    && now() - o.placedAt > threshold) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void take(String itemName, int qty) {
+        int left = inventory.getOrDefault(itemName, 0) - qty;
+        if (left > 0) inventory.put(itemName, left);
+        else inventory.remove(itemName);
+    }
+
+    // ===== Inspection (tests, backtests) =====
+
+    public long getCoins() { return coins; }
+    public Map<String, Integer> getInventory() { return Collections.unmodifiableMap(inventory); }
+    public SimMarket getMarket(String itemName) { return markets.get(itemName); }
+    public long getOpens() { return opens; }
+    public long getOrdersPlaced() { return ordersPlaced; }
+    public long getLimitHits() { return limitHits; }
+    public long getTaxPaid() { return taxPaid; }
+    public Map<String, ItemLedger> getLedgers() { return Collections.unmodifiableMap(ledgers); }
+
+    /**
+     * Bring markets and offers up to the clock (before changing a market's
+     * quote, so fills so far happen at the old one)
+     */
+    public void sync() {
+        update();
+    }
+
+    /**
+     * @return gp tied up: unfilled buys plus items held or listed, at the bid
+     */
+    public long capitalDeployed() {
+        long uncollected = 0;
+        for (Offer o : slots) {
+            if (o != null) uncollected += o.coinsToCollect;
+        }
+        return netWorth() - coins - uncollected;
+    }
+
+    /**
+     * @return coins plus everything else valued at what it would sell for now
+     */
+    public long netWorth() {
+        update();
+        long worth = coins;
+        for (Map.Entry<String, Integer> e : inventory.entrySet()) {
+            worth += (long) e.getValue() * markets.get(e.getKey()).bid();
+        }
+        for (Offer o : slots) {
+            if (o == null) continue;
+            worth += o.coinsToCollect + (long) o.itemsToCollect * markets.get(o.itemName).bid();
+            int left = o.total - o.filled;
+            if (o.cancelled) continue;
+            worth += o.buy ? (long) o.price * left : (long) left * markets.get(o.itemName).bid();
+        }
+        return worth;
+    }
+}
@@ -3,7 +3,7 @@ package com.plebsscripts.viktor.ui;
 import com.plebsscripts.viktor.core.StateMachine;
 import com.plebsscripts.viktor.core.ProfitTracker;
 import com.plebsscripts.viktor.config.ItemConfig;
-import com.plebsscripts.viktor.limits.LimitTracker;
+import com.plebsscripts.viktor.limits.LimitRegistry;
 import com.plebsscripts.viktor.util.Logs;
 import org.dreambot.api.methods.widget.Widget;
 import org.dreambot.api.methods.widget.Widgets;
@@ -22,7 +22,7 @@ import java.text.DecimalFormat;
 public class OnPaintOverlay {
     private final StateMachine state;
     private final ProfitTracker profit;
-    private final LimitTracker limits;
+    private final LimitRegistry limits;
     private final long startTime = System.currentTimeMillis();
 
     private final DecimalFormat df0 = new DecimalFormat("#,##0");
@@ -40,7 +40,7 @@ public class OnPaintOverlay {
     // Background (optional - can load image or draw rectangle)
     private BufferedImage background = null;
 
-    public OnPaintOverlay(StateMachine state, ProfitTracker profit, LimitTracker limits) {
+    public OnPaintOverlay(StateMachine state, ProfitTracker profit, LimitRegistry limits) {
         this.state = state;
         this.profit = profit;
         this.limits = limits;
@@ -151,7 +151,7 @@ public class OnPaintOverlay {
 
         g2.drawString("Buys: " + profit.getTotalBuys(), col2X, col2Y);
         g2.drawString("Sells: " + profit.getTotalSells(), col2X, col2Y + 25);
-        g2.drawString("Items: " + (state != null ? getItemCount() : "0"), col2X, col2Y + 50);
+        g2.drawString("Items: " + (state != null ? getItemCount() : "0") + " | Slots: " + formatSlots(), col2X, col2Y + 50);
 
         // Column 3 - Current Status
         int col3X = posX + 350;
@@ -222,9 +222,7 @@ public class OnPaintOverlay {
         switch (p) {
             case "IDLE": return "Idle";
             case "WALK_TO_GE": return "Walking";
-            case "PROBE": return "Probing";
-            case "BUY_BULK": return "Buying";
-            case "SELL_BULK": return "Selling";
+            case "TRADING": return "Trading";
             case "BANKING": return "Banking";
             case "COOLDOWN": return "Cooldown";
             case "ROTATE": return "Rotating";
@@ -239,9 +237,16 @@ public class OnPaintOverlay {
 
     private int getItemCount() {
         try {
-            return state.getCurrentItem() != null ? 1 : 0;
+            return state.getSlotScheduler().activeCount();
         } catch (Exception e) {
             return 0;
         }
     }
+
+    // Busy slots now, and time-weighted utilisation so far
+    private String formatSlots() {
+        if (state == null || state.getSlotScheduler().busySlots() < 0) return "—";
+        return state.getSlotScheduler().busySlots() + " ("
+                + String.format("%.0f%%", state.getSlotScheduler().slotUtilisation() * 100) + ")";
+    }
 }
\ No newline at end of file
@@ -0,0 +1,52 @@
+package com.plebsscripts.viktor.util;
+
+import java.time.Instant;
+
+/**
+ * Where the trading stack gets the time and waits.
+ *
+ * SYSTEM is the wall clock and Thread.sleep - what the live script uses.
+ * VirtualClock jumps time forward instead of sleeping, so a simulated
+ * session runs as fast as the code does.
+ *
+ * Classes that read the time or sleep take a Clock (constructor or
+ * setClock) and default to SYSTEM.
+ */
+public interface Clock {
+
+    /**
+     * @return current time in epoch ms
+     */
+    long now();
+
+    /**
+     * Wait ms. Restores the interrupt flag if interrupted.
+     */
+    void sleep(long ms);
+
+    default Instant instant() {
+        return Instant.ofEpochMilli(now());
+    }
+
+    Clock SYSTEM = new Clock() {
+        @Override
+        public long now() {
+            return System.currentTimeMillis();
+        }
+
+        @Override
+        public void sleep(long ms) {
+            if (ms <= 0) return;
+            try {
+                Thread.sleep(ms);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "SystemClock";
+        }
+    };
+}
@@ -1,5 +1,7 @@
 package com.plebsscripts.viktor.util;
 
+import com.plebsscripts.viktor.ge.PriceModel;
+
 /**
  * Kelly Criterion calculator for optimal GP allocation per flip
  * Helps determine how much to invest in each item based on probability and margin
@@ -59,6 +61,29 @@ public class KellyCalculator {
         return investment;
     }
 
+    /**
+     * Kelly fraction for a flip: with winProbability it sells at sellPrice,
+     * otherwise it has to be dumped about one margin below buyPrice.
+     * f = (2p - 1) / b, b = margin / buyPrice, margin after GE tax - a flip
+     * whose spread the tax eats is no bet.
+     *
+     * calculateOptimalInvestment assumes a lost flip loses the whole stake,
+     * which makes any thin-margin flip a no-bet; this is what a failed flip
+     * usually costs on the GE.
+     *
+     * @return full-Kelly fraction of bankroll, 0.0 to 1.0
+     */
+    public static double calculateFlipKelly(double winProbability, int buyPrice, int sellPrice) {
+        long margin = sellPrice - PriceModel.taxEach(sellPrice) - buyPrice;
+        if (buyPrice <= 0 || margin <= 0) {
+            return 0.0;
+        }
+
+        double b = (double) margin / buyPrice;
+        double kelly = (2 * winProbability - 1) / b;
+
+        return Math.max(0, Math.min(kelly, 1.0));
+    }
 
     public static boolean isSafeToTrade(double winProbability, int margin, int buyPrice) {
         // Reject if probUp is unrealistic
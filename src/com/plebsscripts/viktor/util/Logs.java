@@ -5,30 +5,35 @@ import org.dreambot.api.utilities.Logger;
 /**
  * Centralized logging for Viktor bot.
  * Uses DreamBot's Logger for console output with color coding.
+ * Falls back to System.out/err outside the client (simulator, benchmarks,
+ * coordinator server).
  */
 public class Logs {
 
     private static final String PREFIX = "[Viktor] ";
+    private static volatile boolean dreamBot = detectDreamBot();
+    private static volatile boolean debugEnabled = true;
+    private static volatile boolean quiet = false;
 
     /**
      * Log info message (default white text)
      */
     public static void info(String msg) {
-        Logger.log(PREFIX + msg);
+        out(0, PREFIX + msg);
     }
 
     /**
      * Log warning message (yellow text in DreamBot console)
      */
     public static void warn(String msg) {
-        Logger.warn(PREFIX + msg);
+        out(1, PREFIX + msg);
     }
 
     /**
      * Log error message (red text in DreamBot console)
      */
     public static void error(String msg) {
-        Logger.error(PREFIX + msg);
+        out(2, PREFIX + msg);
     }
 
     /**
@@ -36,7 +41,7 @@ public class Logs {
      */
     public static void debug(String msg) {
         if (isDebugEnabled()) {
-            Logger.log(PREFIX + "[DEBUG] " + msg);
+            out(0, PREFIX + "[DEBUG] " + msg);
         }
     }
 
@@ -44,28 +49,63 @@ public class Logs {
      * Log success message (green checkmark)
      */
     public static void success(String msg) {
-        Logger.log(PREFIX + "✓ " + msg);
+        out(0, PREFIX + "✓ " + msg);
     }
 
     /**
      * Log trade-specific message (for filtering)
      */
     public static void trade(String msg) {
-        Logger.log(PREFIX + "[TRADE] " + msg);
+        out(0, PREFIX + "[TRADE] " + msg);
     }
 
     /**
      * Log with custom prefix
      */
     public static void log(String prefix, String msg) {
-        Logger.log(PREFIX + prefix + " " + msg);
+        out(0, PREFIX + prefix + " " + msg);
     }
 
     /**
      * Check if debug mode is enabled
      */
     private static boolean isDebugEnabled() {
-        // Could read from Settings or system property
-        return true; // temp
+        return debugEnabled;
+    }
+
+    public static void setDebugEnabled(boolean enabled) {
+        debugEnabled = enabled;
+    }
+
+    /**
+     * Errors only (long simulations that would otherwise log every tick)
+     */
+    public static void setQuiet(boolean q) {
+        quiet = q;
+    }
+
+    // level: 0 = log, 1 = warn, 2 = error
+    private static void out(int level, String msg) {
+        if (quiet && level < 2) return;
+        if (dreamBot) {
+            try {
+                if (level == 2) Logger.error(msg);
+                else if (level == 1) Logger.warn(msg);
+                else Logger.log(msg);
+                return;
+            } catch (Throwable t) {
+                dreamBot = false; // Client classes present but not running
+            }
+        }
+        (level > 0 ? System.err : System.out).println(msg);
+    }
+
+    private static boolean detectDreamBot() {
+        try {
+            Class.forName("org.dreambot.api.utilities.Logger");
+            return true;
+        } catch (Throwable t) {
+            return false;
+        }
     }
 }
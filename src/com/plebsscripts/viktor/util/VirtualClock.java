@@ -0,0 +1,42 @@
+package com.plebsscripts.viktor.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Clock that only moves when told to: sleep(ms) returns immediately with
+ * the time ms later. A 24h session's worth of waits takes no time at all.
+ *
+ * Safe to read from other threads (e.g. LimitRegistry's refresher), but
+ * meant to be advanced by the one thread driving the simulation.
+ */
+public class VirtualClock implements Clock {
+    private final AtomicLong now;
+
+    public VirtualClock(long startMs) {
+        this.now = new AtomicLong(startMs);
+    }
+
+    @Override
+    public long now() {
+        return now.get();
+    }
+
+    @Override
+    public void sleep(long ms) {
+        advance(ms);
+    }
+
+    /**
+     * Move time forward (never backwards)
+     */
+    public void advance(long ms) {
+        if (ms > 0) {
+            now.addAndGet(ms);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "VirtualClock@" + now.get();
+    }
+}